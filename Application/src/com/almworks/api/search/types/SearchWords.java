@@ -9,6 +9,7 @@
 import com.almworks.api.syncreg.SyncCubeRegistry;
 import com.almworks.api.syncreg.SyncRegistry;
 import com.almworks.items.api.DBReader;
+import com.almworks.items.api.DBTextIndex;
 import com.almworks.items.api.DP;
 import com.almworks.util.English;
 import com.almworks.util.Terms;
@@ -56,7 +57,7 @@ public static BoolExpr<DP> createFilter(Connection connection, final String[] se
     if(searchWords == null || searchWords.length == 0) {
       return BoolExpr.TRUE();
     }
-    return new MyDP(connection, searchWords).term();
+    return new MyDP(connection, searchWords, false).term();
   }
 
   public static char[][] wordsToCharArrays(String[] searchWords) {
@@ -117,11 +118,25 @@ private static class MyDP extends DP {
     @NotNull private final Connection myConnection;
     @NotNull private final String[] myStringWords;
     @NotNull private final char[][] myCharWords;
+    /**
+     * Verifier is applied to the candidates selected by the connection's text index, so it does not resolve.
+     */
+    private final boolean myVerifier;
 
-    public MyDP(@NotNull Connection connection, @NotNull String[] stringWords) {
+    public MyDP(@NotNull Connection connection, @NotNull String[] stringWords, boolean verifier) {
       myConnection = connection;
       myStringWords = stringWords;
       myCharWords = wordsToCharArrays(stringWords);
+      myVerifier = verifier;
+    }
+
+    @Override
+    public BoolExpr<DP> resolve(DBReader reader, @Nullable ResolutionSubscription subscription) {
+      if (myVerifier) return null;
+      DBTextIndex index = myConnection.getTextIndex();
+      BoolExpr<DP> candidates = index == null ? null : index.candidates(reader, myStringWords);
+      if (candidates == null) return null;
+      return candidates.and(new MyDP(myConnection, myStringWords, true).term());
     }
 
     @Override
@@ -133,12 +148,13 @@ public boolean accept(long item, DBReader reader) {
     protected boolean equalDP(DP other) {
       final MyDP that = (MyDP)other;
       return myConnection.getConnectionID().equals(that.myConnection.getConnectionID())
-        && Arrays.equals(myStringWords, that.myStringWords);
+        && Arrays.equals(myStringWords, that.myStringWords) && myVerifier == that.myVerifier;
     }
 
     @Override
     protected int hashCodeDP() {
-      return 31 * (41 + myConnection.getConnectionID().hashCode()) + Arrays.hashCode(myStringWords);
+      return 31 * (31 * (41 + myConnection.getConnectionID().hashCode()) + Arrays.hashCode(myStringWords))
+        + (myVerifier ? 1 : 0);
     }
 
     @Override
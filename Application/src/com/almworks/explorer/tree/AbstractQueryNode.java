@@ -352,6 +352,12 @@ boolean isFullyInitialized() {
     return myInitializationFinished;
   }
 
+  @Nullable
+  protected DBFilter getCountFilter() {
+    QueryResult queryResult = getQueryResult();
+    return queryResult == null ? null : queryResult.getDbFilter();
+  }
+
   /**
    * This method calculates the preview. It does not
    * change this instance fields.
@@ -334,6 +334,11 @@ protected boolean isPreviewAvailable() {
     return myState.getDbFilter() != null;
   }
 
+  @Nullable
+  protected DBFilter getCountFilter() {
+    return myState.getDbFilter();
+  }
+
   @Nullable
   protected ItemsPreview calculatePreview(Lifespan lifespan, DBReader reader) {
     DBFilter view = myState.getDbFilter();
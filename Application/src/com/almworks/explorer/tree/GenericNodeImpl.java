@@ -7,6 +7,7 @@
 import com.almworks.api.container.ComponentContainer;
 import com.almworks.api.engine.Connection;
 import com.almworks.api.syncreg.*;
+import com.almworks.items.api.DBFilter;
 import com.almworks.items.api.DBReader;
 import com.almworks.util.Getter;
 import com.almworks.util.collections.ChangeListener;
@@ -86,11 +87,33 @@ protected void execute(GenericNodeImpl job) {
   private boolean myOrderCleared = false;
 
   private ItemsPreview myItemsPreview;
-  private final Procedure2<Lifespan, DBReader> myCalcPreviewJob = new Procedure2<Lifespan, DBReader>() {
+  private final ItemsPreviewManager.CountJob myCalcPreviewJob = new ItemsPreviewManager.CountJob() {
     @Override
     public void invoke(Lifespan lifespan, DBReader reader) {
       GenericNodeImpl.this.getOrCalculatePreview(lifespan, reader);
     }
+
+    @Override
+    public DBFilter getCountFilter() {
+      if (!isNarrowing())
+        return null;
+      ItemsPreview preview;
+      synchronized (GenericNodeImpl.this) {
+        preview = myItemsPreview;
+      }
+      return preview != null && preview.isValid() ? null : GenericNodeImpl.this.getCountFilter();
+    }
+
+    @Override
+    public void setCount(Lifespan lifespan, long count) {
+      if (lifespan.isEnded())
+        return;
+      synchronized (GenericNodeImpl.this) {
+        if (myItemsPreview != null && myItemsPreview.isValid())
+          return;
+      }
+      setPreview(new CountPreview((int) count));
+    }
   };
 
   public GenericNodeImpl(CanvasRenderable presentation, Configuration config) {
@@ -761,6 +784,16 @@ public ItemsPreview getOrCalculatePreview(Lifespan lifespan, DBReader reader) {
     }
   }
 
+  /**
+   * Returns the filter whose item count is the preview of this node, so the preview can be counted together with
+   * the previews of other nodes. Returns null if the preview has to be {@link #calculatePreview calculated}.
+   */
+  @CanBlock
+  @Nullable
+  protected DBFilter getCountFilter() {
+    return null;
+  }
+
   @CanBlock
   @Nullable
   protected ItemsPreview calculatePreview(Lifespan lifespan, DBReader reader) {
@@ -64,6 +64,11 @@ public boolean isSynchronized() {
     return true;
   }
 
+  @Nullable
+  protected DBFilter getCountFilter() {
+    return myState.getDbFilter();
+  }
+
   @CanBlock
   @Nullable
   protected ItemsPreview calculatePreview(Lifespan lifespan, DBReader reader) {
@@ -144,6 +144,11 @@ protected boolean isPreviewAvailable() {
     return myResult.getDbFilter() != null;
   }
 
+  @Nullable
+  protected DBFilter getCountFilter() {
+    return myResult.getDbFilter();
+  }
+
   @CanBlock
   @Nullable
   protected ItemsPreview calculatePreview(Lifespan lifespan, DBReader reader) {
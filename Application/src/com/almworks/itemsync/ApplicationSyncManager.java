@@ -101,6 +101,11 @@ public DBResult<Object> writeDownloaded(DownloadProcedure<? super DBDrain> proce
     return myManager.writeDownloaded(procedure);
   }
 
+  @Override
+  public DBResult<Object> writeDownloadedGrouped(DownloadProcedure<? super DBDrain> procedure) {
+    return myManager.writeDownloadedGrouped(procedure);
+  }
+
   @Override
   public Modifiable getModifiable() {
     return myManager.getModifiable();
@@ -11,6 +11,7 @@
 import com.almworks.api.syncreg.ItemHypercubeUtils;
 import com.almworks.explorer.qbuilder.filter.TextAttribute;
 import com.almworks.items.api.DBReader;
+import com.almworks.items.api.DBTextIndex;
 import com.almworks.items.api.DP;
 import com.almworks.items.util.SyncAttributes;
 import com.almworks.util.bool.BoolExpr;
@@ -21,6 +22,7 @@
 import com.almworks.util.components.renderer.CellState;
 import com.almworks.util.properties.PropertyMap;
 import com.almworks.util.text.parser.FormulaWriter;
+import org.almworks.util.Collections15;
 import org.jetbrains.annotations.*;
 
 import java.util.*;
@@ -85,7 +87,7 @@ public BoolExpr<DP> createFilter(PropertyMap data, ItemHypercube hypercube) {
       return conn != null ? SearchWords.createFilter(conn, words) : BoolExpr.<DP>FALSE();
     }
 
-    return new MyDP(words).term();
+    return new MyDP(words, false).term();
   }
 
   @Override
@@ -121,10 +123,34 @@ private class MyDP extends DP {
     private final String[] myWords;
     private final char[][] myChars;
     private final ConcurrentHashMap<Long, Connection> myConnections = new ConcurrentHashMap<Long, Connection>();
+    private final boolean myVerifier;
 
-    public MyDP(String[] words) {
+    public MyDP(String[] words, boolean verifier) {
       myWords = words;
       myChars = SearchWords.wordsToCharArrays(words);
+      myVerifier = verifier;
+    }
+
+    /**
+     * Narrows the search with the text indexes when every connection has one.
+     */
+    @Override
+    public BoolExpr<DP> resolve(DBReader reader, @Nullable ResolutionSubscription subscription) {
+      if (myVerifier) return null;
+      Set<DBTextIndex> indexes = Collections15.linkedHashSet();
+      for (Connection connection : myEngine.getConnectionManager().getConnections().copyCurrent()) {
+        DBTextIndex index = connection.getTextIndex();
+        if (index == null) return null;
+        indexes.add(index);
+      }
+      if (indexes.isEmpty()) return null;
+      List<BoolExpr<DP>> candidates = Collections15.arrayList();
+      for (DBTextIndex index : indexes) {
+        BoolExpr<DP> expr = index.candidates(reader, myWords);
+        if (expr == null) return null;
+        candidates.add(expr);
+      }
+      return BoolExpr.or(candidates).and(new MyDP(myWords, true).term());
     }
 
     @Override
@@ -155,12 +181,13 @@ public boolean accept(long item, DBReader reader) {
 
     @Override
     protected boolean equalDP(DP other) {
-      return Arrays.equals(myWords, ((MyDP)other).myWords);
+      MyDP that = (MyDP) other;
+      return Arrays.equals(myWords, that.myWords) && myVerifier == that.myVerifier;
     }
 
     @Override
     protected int hashCodeDP() {
-      return 41 + Arrays.hashCode(myWords);
+      return 31 * (41 + Arrays.hashCode(myWords)) + (myVerifier ? 1 : 0);
     }
   }
 }
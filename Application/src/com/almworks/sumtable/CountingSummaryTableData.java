@@ -1,6 +1,7 @@
 package com.almworks.sumtable;
 
 import com.almworks.integers.LongArray;
+import com.almworks.integers.LongList;
 import com.almworks.items.api.*;
 import com.almworks.util.commons.Procedure;
 import com.almworks.util.exec.ThreadGate;
@@ -9,7 +10,6 @@
 import org.almworks.util.Collections15;
 import org.jetbrains.annotations.*;
 import util.concurrent.SynchronizedBoolean;
-import util.external.BitSet2;
 
 import java.util.*;
 
@@ -19,6 +19,7 @@ class CountingSummaryTableData extends SummaryTableData {
   private final Procedure<CountingSummaryTableData> myFinish;
 
   private final boolean myEmpty;
+  private final SummaryCounts myCounts;
 
   private int[] myTotals;
   private final SynchronizedBoolean myCancelled = new SynchronizedBoolean(false);
@@ -31,12 +32,31 @@ public CountingSummaryTableData(List<STFilter> columns, List<STFilter> rows, Lis
     myDelayedRecount = delayedRecount;
     myFinish = finish;
     myEmpty = myCounters.size() == 0;
+    myCounts = myEmpty ? null : new SummaryCounts(myRows, myColumns, myCounters);
+  }
+
+  /**
+   * Creates data with the counts that have been updated since the source data was counted.
+   */
+  private CountingSummaryTableData(CountingSummaryTableData source) {
+    super(Collections15.<STFilter>arrayList(), Collections15.<STFilter>arrayList(), source.myCounters);
+    myFilter = source.myFilter;
+    myDelayedRecount = source.myDelayedRecount;
+    myFinish = source.myFinish;
+    myEmpty = source.myEmpty;
+    myCounts = source.myCounts;
+    myTotals = myCounts.project(myRows, myColumns);
   }
 
   public boolean isDataAvailable() {
     return !myEmpty;
   }
 
+  @ThreadAWT
+  public boolean isCounted() {
+    return myTotals != null;
+  }
+
   private static List<STFilter> copyWithTotal(List<STFilter> columns) {
     List<STFilter> result = Collections15.arrayList(columns);
     result.add(STFilter.TOTAL);
@@ -51,6 +71,47 @@ public void startCounting() {
     }
   }
 
+  /**
+   * Recounts the changed items, without recounting the whole table. The result is passed to the finish procedure
+   * as a new data. Must be called only after the data is counted; updates are applied one after another.
+   * <p>
+   * If the changes cannot be applied item by item (see {@link SummaryCounts#canUpdate}), the data is left as is and
+   * a full recount is requested.
+   */
+  @ThreadAWT
+  public void startUpdate(final LongList itemsSorted) {
+    assert isCounted() && !myEmpty;
+    ThreadGate.LONG_QUEUED(myCounts).execute(new Runnable() {
+      public void run() {
+        if (shouldStop())
+          return;
+        Boolean updatedItems = Database.require().readForeground(new ReadTransaction<Boolean>() {
+          public Boolean transaction(DBReader reader) {
+            LongList counted = myFilter.query(reader).filterItemsSorted(itemsSorted);
+            if (!myCounts.canUpdate(itemsSorted, counted))
+              return false;
+            for (int i = 0; i < itemsSorted.size(); i++) {
+              long item = itemsSorted.get(i);
+              myCounts.update(item, reader, counted.binarySearch(item) >= 0);
+            }
+            return true;
+          }
+        }).waitForCompletion();
+        if (!Boolean.TRUE.equals(updatedItems)) {
+          if (!myCancelled.get())
+            myDelayedRecount.requestDelayed();
+          return;
+        }
+        final CountingSummaryTableData updated = new CountingSummaryTableData(CountingSummaryTableData.this);
+        ThreadGate.AWT.execute(new Runnable() {
+          public void run() {
+            if (!myCancelled.get()) myFinish.invoke(updated);
+          }
+        });
+      }
+    });
+  }
+
   @ThreadAWT
   private void setCounted(int[] totals, boolean success) {
     if (myCancelled.get()) {
@@ -149,36 +210,17 @@ public void run() {
         if (shouldStop())
           return;
 
-        BitSet2[] rowBits = new BitSet2[myRows.size()];
-        BitSet2[] columnBits = new BitSet2[myColumns.size()];
-        BitSet2[] counterBits = new BitSet2[myCounters.size()];
-
-        fillBits(rowBits, columnBits, counterBits);
-
-        if (shouldStop())
-          return;
-
-        BitSet2 allCounters = union(counterBits);
+        countItems();
 
         if (shouldStop())
           return;
 
+        List<STFilter> rows = Collections15.arrayList();
+        List<STFilter> columns = Collections15.arrayList();
+        totals = myCounts.project(rows, columns);
         // warning: myRows and myColumns are changed!
-        cleanEmpty(myRows, rowBits, allCounters);
-        cleanEmpty(myColumns, columnBits, allCounters);
-
-        if (shouldStop())
-          return;
-
-        int rowCount = myRows.size();
-        int columnCount = myColumns.size();
-        int counterCount = myCounters.size();
-
-        totals = new int[counterCount * rowCount * columnCount];
-        fillTotals3(totals, counterBits, counterCount, rowBits, rowCount, columnBits, columnCount);
-
-        if (shouldStop())
-          return;
+        setAll(myRows, rows);
+        setAll(myColumns, columns);
         success = true;
       } finally {
         final boolean finalSuccess = success;
@@ -191,113 +233,26 @@ public void run() {
       }
     }
 
-    private BitSet2 union(BitSet2[] counterBits) {
-      BitSet2 set = new BitSet2();
-      for (BitSet2 bits : counterBits) {
-        if (bits != null) {
-          set.or(bits);
-        }
-      }
-      return set;
+    private void setAll(List<STFilter> target, List<STFilter> source) {
+      target.clear();
+      target.addAll(source);
     }
 
-    private void fillBits(final BitSet2[] rowBits, final BitSet2[] columnBits, final BitSet2[] counterBits) {
+    private void countItems() {
       Database.require().readForeground(new ReadTransaction<Object>() {
         public Object transaction(DBReader reader) {
-          final Map<DBAttribute, Object> cache = Collections15.hashMap();
-          int k = 0;
           final LongArray items = myFilter.query(reader).copyItemsSorted();
           final int size = items.size();
           for (int i = 0; i < size; i++) {
             if (shouldStop()) {
               return null;
             }
-            cache.clear();
-            long item = items.get(i);
-            fillFilterListBits(item, k, myRows, rowBits, reader, cache, size);
-            fillFilterListBits(item, k, myColumns, columnBits, reader, cache, size);
-            fillFilterListBits(item, k, myCounters, counterBits, reader, cache, size);
-            k++;
+            myCounts.update(items.get(i), reader, true);
           }
           return null;
         }
       }).waitForCompletion();
     }
-
-    private void fillFilterListBits(long item, int revisionIndex, List<STFilter> filters, BitSet2[] bits,
-      DBReader reader, Map<DBAttribute, Object> cache, int size)
-    {
-      int count = filters.size();
-      for (int i = 0; i < count; i++) {
-        final STFilter filter = filters.get(i);
-
-        final boolean accepted;
-        final DBAttribute attr = filter.getAttribute();
-        if(attr != null) {
-          Object attrValue = cache.get(attr);
-          if(attrValue == null) {
-            attrValue = reader.getValue(item, attr);
-            cache.put(attr, attrValue);
-          }
-          accepted = filter.accepts(attrValue);
-        } else {
-          accepted = filter.accepts(item, reader);
-        }
-
-        if (accepted) {
-          BitSet2 set = bits[i];
-          if (set == null) {
-            bits[i] = set = new BitSet2(size);
-          }
-          set.set(revisionIndex);
-        }
-      }
-    }
-
-    private void fillTotals3(int[] totals, BitSet2[] counterBits, int counterCount, BitSet2[] rowBits, int rowCount,
-      BitSet2[] columnBits, int columnCount)
-    {
-      assert counterBits.length == counterCount;
-      assert rowBits.length >= rowCount;
-      assert columnBits.length >= columnCount;
-      assert totals.length == counterCount * rowCount * columnCount;
-      int z = 0;
-      for (int i = 0; i < counterCount; i++) {
-        for (int j = 0; j < rowCount; j++) {
-          for (int k = 0; k < columnCount; k++) {
-            totals[z++] = BitSet2.intersectionCardinality(counterBits[i], rowBits[j], columnBits[k]);
-          }
-        }
-      }
-    }
-
-    private void cleanEmpty(List<STFilter> list, BitSet2[] bits, BitSet2 allCounters) {
-      if (bits.length != list.size()) {
-        assert false : this;
-        return;
-      }
-      int length = bits.length;
-      int removed = 0;
-      for (int i = 0; i < length; i++) {
-        BitSet2 bitset = bits[i];
-        boolean remove = bitset == null || BitSet2.intersectionCardinality(bitset, allCounters) == 0;
-        if (remove) {
-          if (list.get(i - removed) != STFilter.TOTAL) {
-            list.remove(i - removed);
-            removed++;
-          } else {
-            bits[i - removed] = new BitSet2();
-          }
-        } else {
-          assert bitset.cardinality() > 0;
-          // pack
-          if (removed > 0) {
-            bits[i - removed] = bitset;
-          }
-        }
-      }
-      assert list.size() == length - removed;
-    }
   }
 
 
@@ -4,6 +4,7 @@
 import com.almworks.api.application.qb.FilterNode;
 import com.almworks.api.syncreg.ItemHypercube;
 import com.almworks.items.api.*;
+import com.almworks.items.util.DatabaseUtil;
 import com.almworks.util.Env;
 import com.almworks.util.bool.BoolExpr;
 import com.almworks.util.components.Canvas;
@@ -96,6 +97,17 @@ public DBAttribute getAttribute() {
     return myAttribute;
   }
 
+  /**
+   * @return true if the filter checks only the values of the item itself, so changes of other items cannot change
+   * whether the filter accepts it
+   */
+  public boolean dependsOnItemValuesOnly() {
+    if (myAttribute != null)
+      return true;
+    BoolExpr<DP> filter = myFilter;
+    return filter == null || DatabaseUtil.collectAffectingAttributes(filter) != null;
+  }
+
   public boolean accepts(Object attrValue) {
     if(myLongs != null) {
       if(attrValue instanceof Collection) {
@@ -0,0 +1,186 @@
+package com.almworks.sumtable;
+
+import com.almworks.integers.IntArray;
+import com.almworks.integers.LongList;
+import com.almworks.items.api.DBAttribute;
+import com.almworks.items.api.DBReader;
+import gnu.trove.TLongObjectHashMap;
+import org.almworks.util.Collections15;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts of items in summary table cells, maintained item by item.
+ * <p>
+ * For every counted item the cells it belongs to are remembered (accepting rows, columns and counters), so when an
+ * item changes its old contribution is subtracted and the new one is added. Counts are kept for all configured rows
+ * and columns, hiding of empty rows and columns is done by {@link #project}.
+ * <p>
+ * Rows and columns must end with {@link STFilter#TOTAL}.
+ * <p>
+ * Recounting only the changed items is correct while the filters check the values of the counted items themselves.
+ * If some filter checks other items (for example, a formula over comments), a change of an item that is not counted
+ * may change the cells of counted items, so {@link #canUpdate} requires a full count then.
+ */
+class SummaryCounts {
+  private final List<STFilter> myRows;
+  private final List<STFilter> myColumns;
+  private final List<STFilter> myCounters;
+  /**
+   * counter * rows * columns + row * columns + column
+   */
+  private final int[] myTotals;
+  /**
+   * Accepting rows, columns and counters of items: {rowCount, rows..., columnCount, columns..., counters...}
+   */
+  private final TLongObjectHashMap<int[]> myCells = new TLongObjectHashMap<int[]>();
+
+  /**
+   * True if all filters check only the values of the item they are applied to.
+   */
+  private final boolean myItemValuesOnly;
+
+  private final Map<DBAttribute, Object> myValueCache = Collections15.hashMap();
+  private final IntArray myBuffer = new IntArray();
+
+  SummaryCounts(List<STFilter> rows, List<STFilter> columns, List<STFilter> counters) {
+    assert rows.get(rows.size() - 1) == STFilter.TOTAL && columns.get(columns.size() - 1) == STFilter.TOTAL;
+    myRows = Collections15.arrayList(rows);
+    myColumns = Collections15.arrayList(columns);
+    myCounters = Collections15.arrayList(counters);
+    myTotals = new int[myCounters.size() * myRows.size() * myColumns.size()];
+    myItemValuesOnly = dependOnItemValuesOnly(myRows) && dependOnItemValuesOnly(myColumns) &&
+      dependOnItemValuesOnly(myCounters);
+  }
+
+  private static boolean dependOnItemValuesOnly(List<STFilter> filters) {
+    for (STFilter filter : filters) {
+      if (!filter.dependsOnItemValuesOnly())
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether the changes can be applied by {@link #update updating} the changed items only.
+   * @param changedSorted changed items
+   * @param countedSorted changed items that satisfy the table query
+   * @return false if some filter depends on other items and a changed item is neither counted nor going to be
+   * counted, so the whole table has to be counted again
+   */
+  public synchronized boolean canUpdate(LongList changedSorted, LongList countedSorted) {
+    if (myItemValuesOnly)
+      return true;
+    for (int i = 0; i < changedSorted.size(); i++) {
+      long item = changedSorted.get(i);
+      if (!myCells.containsKey(item) && countedSorted.binarySearch(item) < 0)
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Recounts the item.
+   * @param counted true if the item should be counted (it satisfies the table query), false if it should not be
+   * counted anymore
+   */
+  public synchronized void update(long item, DBReader reader, boolean counted) {
+    int[] cells = counted ? collectCells(item, reader) : null;
+    int[] old = cells != null ? myCells.put(item, cells) : myCells.remove(item);
+    if (old != null) add(old, -1);
+    if (cells != null) add(cells, 1);
+  }
+
+  public synchronized int getItemCount() {
+    return myCells.size();
+  }
+
+  /**
+   * Builds counts of non-empty rows and columns. A row (column) is empty if no item of any counter gets into it.
+   * @param rows target for non-empty rows
+   * @param columns target for non-empty columns
+   * @return counts for the target rows and columns, see {@link CountingSummaryTableData#getCellCount}
+   */
+  public synchronized int[] project(List<STFilter> rows, List<STFilter> columns) {
+    int rowCount = myRows.size();
+    int columnCount = myColumns.size();
+    int counterCount = myCounters.size();
+    IntArray rowIndexes = new IntArray();
+    for (int j = 0; j < rowCount; j++) {
+      boolean empty = true;
+      for (int i = 0; i < counterCount && empty; i++) empty = myTotals[(i * rowCount + j) * columnCount + columnCount - 1] == 0;
+      if (!empty || myRows.get(j) == STFilter.TOTAL) {
+        rowIndexes.add(j);
+        rows.add(myRows.get(j));
+      }
+    }
+    IntArray columnIndexes = new IntArray();
+    for (int k = 0; k < columnCount; k++) {
+      boolean empty = true;
+      for (int i = 0; i < counterCount && empty; i++) empty = myTotals[(i * rowCount + rowCount - 1) * columnCount + k] == 0;
+      if (!empty || myColumns.get(k) == STFilter.TOTAL) {
+        columnIndexes.add(k);
+        columns.add(myColumns.get(k));
+      }
+    }
+    int[] result = new int[counterCount * rowIndexes.size() * columnIndexes.size()];
+    int z = 0;
+    for (int i = 0; i < counterCount; i++) {
+      for (int j = 0; j < rowIndexes.size(); j++) {
+        for (int k = 0; k < columnIndexes.size(); k++) {
+          result[z++] = myTotals[(i * rowCount + rowIndexes.get(j)) * columnCount + columnIndexes.get(k)];
+        }
+      }
+    }
+    return result;
+  }
+
+  private void add(int[] cells, int delta) {
+    int rowCount = myRows.size();
+    int columnCount = myColumns.size();
+    int rowsEnd = 1 + cells[0];
+    int columnsEnd = rowsEnd + 1 + cells[rowsEnd];
+    for (int c = columnsEnd; c < cells.length; c++) {
+      int counterOffset = cells[c] * rowCount;
+      for (int r = 1; r < rowsEnd; r++) {
+        int rowOffset = (counterOffset + cells[r]) * columnCount;
+        for (int k = rowsEnd + 1; k < columnsEnd; k++) {
+          myTotals[rowOffset + cells[k]] += delta;
+        }
+      }
+    }
+  }
+
+  private int[] collectCells(long item, DBReader reader) {
+    myValueCache.clear();
+    myBuffer.clear();
+    collectAccepted(item, reader, myRows);
+    collectAccepted(item, reader, myColumns);
+    int countersStart = myBuffer.size();
+    collectAccepted(item, reader, myCounters);
+    myBuffer.removeAt(countersStart);
+    return myBuffer.toNativeArray();
+  }
+
+  private void collectAccepted(long item, DBReader reader, List<STFilter> filters) {
+    int countIndex = myBuffer.size();
+    myBuffer.add(0);
+    int count = filters.size();
+    for (int i = 0; i < count; i++) {
+      if (accepts(filters.get(i), item, reader)) myBuffer.add(i);
+    }
+    myBuffer.set(countIndex, myBuffer.size() - countIndex - 1);
+  }
+
+  private boolean accepts(STFilter filter, long item, DBReader reader) {
+    DBAttribute attr = filter.getAttribute();
+    if (attr == null) return filter.accepts(item, reader);
+    Object attrValue = myValueCache.get(attr);
+    if (attrValue == null) {
+      attrValue = reader.getValue(item, attr);
+      myValueCache.put(attr, attrValue);
+    }
+    return filter.accepts(attrValue);
+  }
+}
@@ -1,6 +1,9 @@
 package com.almworks.sumtable;
 
 import com.almworks.api.application.tree.GenericNode;
+import com.almworks.integers.LongArray;
+import com.almworks.integers.LongList;
+import com.almworks.integers.util.LongSetBuilder;
 import com.almworks.items.api.*;
 import com.almworks.util.advmodel.AListModel;
 import com.almworks.util.commons.Procedure;
@@ -23,14 +26,35 @@ class SummaryTableCounter {
 
   private CountingSummaryTableData myCountingData = null;
 
+  /**
+   * Items changed since the current data has been counted (or last updated). Guarded by itself.
+   */
+  private final LongSetBuilder myChangedItems = new LongSetBuilder();
+  private boolean myUpdating = false;
+
   private final Procedure<CountingSummaryTableData> myDataFinish = new Procedure<CountingSummaryTableData>() {
     public void invoke(CountingSummaryTableData data) {
-      if (data == myCountingData) {
+      CountingSummaryTableData current = myCountingData;
+      if (data == current) {
+        myDataModel.setValue(data);
+      } else if (myUpdating && current != null && data.getCounters() == current.getCounters()) {
+        // incremental update of the current data
+        myUpdating = false;
+        myCountingData = data;
         myDataModel.setValue(data);
+      } else {
+        return;
       }
+      update();
     }
   };
 
+  private final Bottleneck myUpdateBottleneck = new Bottleneck(500, ThreadGate.AWT, new Runnable() {
+    public void run() {
+      update();
+    }
+  });
+
   private final DoubleBottleneck myRecountBottleneck = new DoubleBottleneck(50, 500, ThreadGate.AWT, new Runnable() {
     public void run() {
       recount();
@@ -63,7 +87,10 @@ public void attach(Lifespan lifespan, @NotNull GenericNode node) {
 
     Database.require().addListener(lifespan, new DBListener() {
       public void onDatabaseChanged(DBEvent event, DBReader reader) {
-        myRecountBottleneck.requestDelayed();
+        synchronized (myChangedItems) {
+          myChangedItems.addAll(event.getAffectedSorted());
+        }
+        myUpdateBottleneck.requestDelayed();
       }
     });
 
@@ -79,6 +106,11 @@ private void recount() {
     if (data != null) {
       data.cancelCounting();
     }
+    myUpdating = false;
+    synchronized (myChangedItems) {
+      // the full count sees all changes made so far
+      myChangedItems.clear(true);
+    }
     List<STFilter> columns = myColumnModel.toList();
     List<STFilter> rows = myRowModel.toList();
     List<STFilter> counters = myCounterModel.toList();
@@ -91,4 +123,24 @@ private void recount() {
     myCountingData = new CountingSummaryTableData(columns, rows, counters, filter, myDelayedRecounter, myDataFinish);
     myCountingData.startCounting();
   }
+
+  /**
+   * Applies changed items to the counted data. Changes that come while the data is being counted or updated are
+   * applied after that. If the changes cannot be applied item by item, the data requests a full recount.
+   */
+  @ThreadAWT
+  private void update() {
+    CountingSummaryTableData data = myCountingData;
+    if (data == null || !data.isDataAvailable() || !data.isCounted() || myUpdating)
+      return;
+    LongList changed;
+    synchronized (myChangedItems) {
+      if (myChangedItems.isEmpty())
+        return;
+      changed = LongArray.copy(myChangedItems.toSortedCollection());
+      myChangedItems.clear(true);
+    }
+    myUpdating = true;
+    data.startUpdate(changed);
+  }
 }
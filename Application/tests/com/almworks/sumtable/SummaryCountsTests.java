@@ -0,0 +1,227 @@
+package com.almworks.sumtable;
+
+import com.almworks.integers.LongArray;
+import com.almworks.items.api.*;
+import com.almworks.items.dp.DPEquals;
+import com.almworks.util.commons.Procedure;
+import com.almworks.util.exec.ThreadGate;
+import com.almworks.util.threads.Bottleneck;
+import org.almworks.util.Collections15;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class SummaryCountsTests extends MemoryDatabaseFixture {
+  private static final DBAttribute<Boolean> BUG = DBAttribute.Bool("sumtableTest:bug", "Bug");
+  private static final DBAttribute<Long> STATUS = DBAttribute.Long("sumtableTest:status", "Status");
+  private static final DBAttribute<Long> OWNER = DBAttribute.Link("sumtableTest:owner", "Owner", true);
+  private static final DBAttribute<Integer> LEVEL = DBAttribute.Int("sumtableTest:level", "Level");
+
+  private final STFilter myOpen = statusFilter(1);
+  private final STFilter myClosed = statusFilter(2);
+  private final STFilter mySenior = new STFilter(new OwnerLevel(2).term(), "Senior", null, "senior");
+
+  private long myJunior;
+  private long mySeniorOwner;
+  private long myBug1;
+  private long myBug2;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    writeNoFail(new Procedure<DBWriter>() {
+      public void invoke(DBWriter writer) {
+        myJunior = createOwner(writer, 1);
+        mySeniorOwner = createOwner(writer, 2);
+        myBug1 = createBug(writer, 1, myJunior);
+        myBug2 = createBug(writer, 1, mySeniorOwner);
+      }
+    });
+  }
+
+  public void testUpdateMovesItemBetweenCells() {
+    final SummaryCounts counts = new SummaryCounts(withTotal(myOpen, myClosed), withTotal(), counters());
+    countAll(counts);
+    checkRows(counts, 2, 0, 2);
+
+    setValue(myBug1, STATUS, 2L);
+    update(counts, myBug1, true);
+    checkRows(counts, 1, 1, 2);
+    assertEquals(2, counts.getItemCount());
+
+    update(counts, myBug2, false);
+    checkRows(counts, 0, 1, 1);
+    assertEquals(1, counts.getItemCount());
+  }
+
+  public void testCanUpdateWithItemValueFilters() {
+    SummaryCounts counts = new SummaryCounts(withTotal(myOpen, myClosed), withTotal(), counters());
+    countAll(counts);
+    assertTrue(counts.canUpdate(LongArray.create(myJunior), new LongArray()));
+    assertTrue(counts.canUpdate(LongArray.create(myBug1), new LongArray()));
+  }
+
+  public void testCanUpdateWithFilterDependingOnOtherItems() {
+    assertFalse(mySenior.dependsOnItemValuesOnly());
+    assertTrue(myOpen.dependsOnItemValuesOnly());
+    assertTrue(STFilter.TOTAL.dependsOnItemValuesOnly());
+
+    SummaryCounts counts = new SummaryCounts(withTotal(mySenior), withTotal(), counters());
+    countAll(counts);
+    // counted items are recounted by themselves
+    assertTrue(counts.canUpdate(LongArray.create(myBug1), new LongArray()));
+    // new item that gets into the table
+    assertTrue(counts.canUpdate(LongArray.create(100), LongArray.create(100)));
+    // an owner is not counted but senior bugs depend on it
+    assertFalse(counts.canUpdate(LongArray.create(myJunior, myBug1), LongArray.create(myBug1)));
+  }
+
+  public void testUpdateData() throws InterruptedException {
+    Data data = new Data(myOpen, myClosed);
+    data.myData.startCounting();
+    CountingSummaryTableData counted = data.takeFinished();
+    assertSame(data.myData, counted);
+    assertEquals(2, (int) counted.getCellCount(0, 0, 0));
+
+    setValue(myBug1, STATUS, 2L);
+    data.myData.startUpdate(LongArray.create(myJunior, myBug1));
+    CountingSummaryTableData updated = data.takeFinished();
+    assertNotSame(counted, updated);
+    assertEquals(Arrays.asList(myOpen, myClosed, STFilter.TOTAL), updated.getRows());
+    assertEquals(1, (int) updated.getCellCount(0, 0, 0));
+    assertEquals(1, (int) updated.getCellCount(0, 1, 0));
+    assertEquals(2, (int) updated.getCellCount(0, 2, 0));
+    assertEquals(0, data.myRecounts.availablePermits());
+  }
+
+  public void testChangeOfOtherItemRequestsRecount() throws InterruptedException {
+    Data data = new Data(mySenior);
+    data.myData.startCounting();
+    CountingSummaryTableData counted = data.takeFinished();
+    assertEquals(1, (int) counted.getCellCount(0, 0, 0));
+
+    setValue(myJunior, LEVEL, 2);
+    data.myData.startUpdate(LongArray.create(myJunior));
+    assertTrue(data.myRecounts.tryAcquire(10, TimeUnit.SECONDS));
+    assertNull(data.myFinished.poll(500, TimeUnit.MILLISECONDS));
+  }
+
+  private static STFilter statusFilter(long status) {
+    return new STFilter(DPEquals.create(STATUS, status), "Status " + status, null, "status" + status, STATUS,
+      Arrays.asList(status));
+  }
+
+  private static List<STFilter> withTotal(STFilter... filters) {
+    List<STFilter> result = Collections15.arrayList(filters);
+    result.add(STFilter.TOTAL);
+    return result;
+  }
+
+  private static List<STFilter> counters() {
+    return Collections15.arrayList(STFilter.TOTAL);
+  }
+
+  private static long createOwner(DBWriter writer, int level) {
+    long owner = writer.nextItem();
+    writer.setValue(owner, LEVEL, level);
+    return owner;
+  }
+
+  private static long createBug(DBWriter writer, long status, long owner) {
+    long bug = writer.nextItem();
+    writer.setValue(bug, BUG, true);
+    writer.setValue(bug, STATUS, status);
+    writer.setValue(bug, OWNER, owner);
+    return bug;
+  }
+
+  private <T> void setValue(final long item, final DBAttribute<T> attribute, final T value) {
+    writeNoFail(new Procedure<DBWriter>() {
+      public void invoke(DBWriter writer) {
+        writer.setValue(item, attribute, value);
+      }
+    });
+  }
+
+  private void countAll(SummaryCounts counts) {
+    update(counts, myBug1, true);
+    update(counts, myBug2, true);
+  }
+
+  private void update(final SummaryCounts counts, final long item, final boolean counted) {
+    db.readForeground(new ReadTransaction<Object>() {
+      public Object transaction(DBReader reader) {
+        counts.update(item, reader, counted);
+        return null;
+      }
+    }).waitForCompletion();
+  }
+
+  private static void checkRows(SummaryCounts counts, int open, int closed, int total) {
+    List<STFilter> rows = Collections15.arrayList();
+    List<STFilter> columns = Collections15.arrayList();
+    int[] totals = counts.project(rows, columns);
+    List<Integer> expected = Collections15.arrayList();
+    if (open > 0) expected.add(open);
+    if (closed > 0) expected.add(closed);
+    expected.add(total);
+    assertEquals(expected.size(), rows.size());
+    assertEquals(Arrays.asList(STFilter.TOTAL), columns);
+    List<Integer> actual = Collections15.arrayList();
+    for (int count : totals) actual.add(count);
+    assertEquals(expected, actual);
+  }
+
+
+  private class Data {
+    private final BlockingQueue<CountingSummaryTableData> myFinished =
+      new LinkedBlockingQueue<CountingSummaryTableData>();
+    private final Semaphore myRecounts = new Semaphore(0);
+    private final CountingSummaryTableData myData;
+
+    public Data(STFilter... rows) {
+      Bottleneck recount = new Bottleneck(10, ThreadGate.STRAIGHT, new Runnable() {
+        public void run() {
+          myRecounts.release();
+        }
+      });
+      myData = new CountingSummaryTableData(Collections15.<STFilter>arrayList(), Arrays.asList(rows), counters(),
+        db.filter(DPEquals.create(BUG, true)), recount, new Procedure<CountingSummaryTableData>() {
+          public void invoke(CountingSummaryTableData data) {
+            myFinished.add(data);
+          }
+        });
+    }
+
+    public CountingSummaryTableData takeFinished() throws InterruptedException {
+      CountingSummaryTableData data = myFinished.poll(10, TimeUnit.SECONDS);
+      assertNotNull(data);
+      return data;
+    }
+  }
+
+
+  /**
+   * Accepts items with the owner of the given level; the result depends on the owner item.
+   */
+  private static class OwnerLevel extends DP {
+    private final int myLevel;
+
+    public OwnerLevel(int level) {
+      myLevel = level;
+    }
+
+    public boolean accept(long item, DBReader reader) {
+      Long owner = reader.getValue(item, OWNER);
+      return owner != null && Integer.valueOf(myLevel).equals(reader.getValue(owner, LEVEL));
+    }
+
+    protected boolean equalDP(DP other) {
+      return myLevel == ((OwnerLevel) other).myLevel;
+    }
+
+    protected int hashCodeDP() {
+      return myLevel;
+    }
+  }
+}
@@ -2,6 +2,7 @@
 
 import com.almworks.api.connector.*;
 import com.almworks.api.connector.http.DocumentLoader;
+import com.almworks.api.connector.http.HttpPageCache;
 import com.almworks.api.http.*;
 import com.almworks.bugzilla.integration.data.*;
 import com.almworks.bugzilla.integration.err.*;
@@ -13,6 +14,7 @@
 import com.almworks.util.threads.Threads;
 import com.almworks.util.xml.JDOMUtils;
 import org.almworks.util.*;
+import org.almworks.util.detach.Detach;
 import org.almworks.util.detach.Lifespan;
 import org.apache.commons.httpclient.Cookie;
 import org.apache.commons.httpclient.HttpMethodBase;
@@ -31,14 +33,16 @@
 
 
 /**
- * This is facade class for all operations on this bugzilla link. All operations are synchronized and
- * cannot happen simultaneously.
+ * This is facade class for all operations on this bugzilla link. Operations may run simultaneously over the
+ * same authenticated session; their number is limited by the {@link OperationGate} of the connection, if set.
+ * Authentication is done by one thread at a time, and bug submissions and updates are done one at a time.
  *
  * @author sereda
  */
 public class BugzillaIntegration implements AuthenticationMaster {
   private static final boolean EXCLUDE_ATTACHMENTS = Env.getBoolean("bugzilla.qload.noattach", false);
   private static final int LOAD_DICTIONARY_ATTEMPTS = 3;
+  private static final long GATE_CHECK_PERIOD = 500;
   // https://bugzilla.mozilla.org/show_bug.cgi?id=632717
   private static final BugzillaVersion MAX_SEARCH_RESULTS_PARAM = BugzillaVersion.V4_2;
   // https://bugzilla.mozilla.org/show_bug.cgi?id=632718
@@ -53,11 +57,37 @@ public class BugzillaIntegration implements AuthenticationMaster {
   private final AtomicReference<String> myBzVersion;
   private final AtomicReference<ServerInfo> myInfo = new AtomicReference<ServerInfo>(null);
 
-  private String myPassword = null;
-  private String myUsername = null;
-  private String myOverrideCharset = null;
-  private Procedure<String> myAccountNameSink = null;
-  private boolean myEnvAuthenticationDetected = false;
+  private volatile String myPassword = null;
+  private volatile String myUsername = null;
+  private volatile String myOverrideCharset = null;
+  private volatile Procedure<String> myAccountNameSink = null;
+  private volatile boolean myEnvAuthenticationDetected = false;
+
+  /**
+   * Guards logging in, so that concurrent operations that find the session expired log in once
+   */
+  private final Object myAuthLock = new Object();
+  /**
+   * Number of times the session has been renewed
+   */
+  private volatile int myAuthGeneration = 0;
+  /**
+   * Depth of nested operations of the current thread and the session generation seen when the outer one started
+   */
+  private final ThreadLocal<int[]> myOperation = new ThreadLocal<int[]>() {
+    protected int[] initialValue() {
+      return new int[2];
+    }
+  };
+  /**
+   * IDs of the bugs being updated. Updates of one bug wait for each other, updates of different bugs and submissions
+   * of new bugs run at once
+   */
+  private final Set<String> myUpdatedBugs = Collections15.hashSet();
+
+  @Nullable
+  private volatile OperationGate myGate;
+  private volatile boolean myInteractive;
 
   private ConnectorStateStorage myStateStorage;
   private volatile Procedure<String> myVersionSink;
@@ -80,13 +110,29 @@ public void setStateStorage(ConnectorStateStorage storage) {
     myStateStorage = storage;
   }
 
-  public ConnectorStateStorage getStateStorage() {
+  /**
+   * @param gate limits operations of all integrations of the connection
+   * @param interactive if true, operations of this integration are served by the interactive lane of the gate
+   */
+  public void setOperationGate(@Nullable OperationGate gate, boolean interactive) {
+    myGate = gate;
+    myInteractive = interactive;
+  }
+
+  public synchronized ConnectorStateStorage getStateStorage() {
     ConnectorStateStorage storage = myStateStorage;
     if (storage == null)
       storage = myStateStorage = new DefaultStateStorage();
     return storage;
   }
 
+  /**
+   * @return cache of the pages that rarely change, such as the config and the value lists
+   */
+  public HttpPageCache getPageCache() {
+    return HttpPageCache.getInstance(getStateStorage());
+  }
+
   public synchronized void close() {
     myMaterial.dispose();
   }
@@ -121,14 +167,19 @@ public Integer getBugIdFromURL(String url) {
     }
   }
 
-  public synchronized BugzillaLists getBugzillaLists(@Nullable BugzillaRDFConfig rdfConfig, @Nullable List<String> productsList) throws ConnectorException {
+  public BugzillaLists getBugzillaLists(@Nullable BugzillaRDFConfig rdfConfig, @Nullable List<String> productsList) throws ConnectorException {
+    enter();
     try {
-      return getBugzillaListsFromUrl(myBaseURL + BugzillaHTMLConstants.URL_QUERY_FOR_LOAD_DICTIONARIES, rdfConfig, productsList);
+      return getBugzillaListsFromUrl(myBaseURL + BugzillaHTMLConstants.URL_QUERY_FOR_LOAD_DICTIONARIES, rdfConfig,
+        productsList);
     } catch (ConnectorException e) {
       if (e instanceof CancelledException)
         throw e;
       Log.warn(e);
-      return getBugzillaListsFromUrl(myBaseURL + BugzillaHTMLConstants.URL_QUERY_PAGE_NOFORMAT, rdfConfig, productsList);
+      return getBugzillaListsFromUrl(myBaseURL + BugzillaHTMLConstants.URL_QUERY_PAGE_NOFORMAT, rdfConfig,
+        productsList);
+    } finally {
+      exit();
     }
   }
 
@@ -137,8 +188,9 @@ public synchronized BugzillaLists getBugzillaLists(@Nullable BugzillaRDFConfig r
    */
   @Nullable
   public BugzillaRDFConfig loadRDFConfig(@Nullable List<String> productsList) throws ConnectorException {
+    enter();
     try {
-      BugzillaRDFConfig config = new RDFConfigLoader(getMaterial(), myBaseURL, productsList, this).loadRDFConfig();
+      BugzillaRDFConfig config = new RDFConfigLoader(getMaterial(), myBaseURL, productsList, this, getPageCache()).loadRDFConfig();
       String version = config.getInstallVersion();
       myBzVersion.compareAndSet(null, version);
       ServerInfo serverInfo = myInfo.get();
@@ -149,6 +201,8 @@ public BugzillaRDFConfig loadRDFConfig(@Nullable List<String> productsList) thro
     } catch (ConnectorException e) {
       Log.warn("cannot load rdf config", e);
       throw e;
+    } finally {
+      exit();
     }
   }
 
@@ -157,29 +211,39 @@ public void ensureVersionIsKnown() throws ConnectorException {
     loadRDFConfig(Collections.<String>emptyList());
   }
 
-  public synchronized Map<String, BugzillaProductInformation> getProductsInformation(Collection<String> products)
+  public Map<String, BugzillaProductInformation> getProductsInformation(Collection<String> products)
     throws ConnectorException
   {
-    if (!isAuthenticationAvailable())
-      throw new BugzillaLoginRequiredException();
-    LinkedHashMap<String, BugzillaProductInformation> result = Collections15.linkedHashMap();
-    for (String product : products) {
-      BugzillaProductInformation info = getProductInformation(product);
-      if (info == null) {
-        assert false : product;
-        continue;
+    enter();
+    try {
+      if (!isAuthenticationAvailable())
+        throw new BugzillaLoginRequiredException();
+      LinkedHashMap<String, BugzillaProductInformation> result = Collections15.linkedHashMap();
+      for (String product : products) {
+        BugzillaProductInformation info = getProductInformation(product);
+        if (info == null) {
+          assert false : product;
+          continue;
+        }
+        result.put(product, info);
       }
-      result.put(product, info);
+      return result;
+    } finally {
+      exit();
     }
-    return result;
   }
 
   public BugzillaProductInformation getProductInformation(String product) throws ConnectorException {
-    if (!isAuthenticationAvailable())
-      throw new BugzillaLoginRequiredException();
-    ensureVersionIsKnown();
-    ProductInformationLoader retriever = new ProductInformationLoader(getServerInfo(), product);
-    return retriever.getInfo();
+    enter();
+    try {
+      if (!isAuthenticationAvailable())
+        throw new BugzillaLoginRequiredException();
+      ensureVersionIsKnown();
+      ProductInformationLoader retriever = new ProductInformationLoader(getServerInfo(), product);
+      return retriever.getInfo();
+    } finally {
+      exit();
+    }
   }
 
   private BugzillaLists getBugzillaListsFromUrl(String url, @Nullable BugzillaRDFConfig rdfConfig, @Nullable List<String> productsList) throws ConnectorException {
@@ -190,7 +254,7 @@ private BugzillaLists getBugzillaListsFromUrl(String url, @Nullable BugzillaRDFC
     ensureVersionIsKnown();
     for (int i = 0; i < LOAD_DICTIONARY_ATTEMPTS; i++) {
       try {
-        LoadDictionaries retriever = new LoadDictionaries(getMaterial(), url, isAuthenticationAvailable(), this, rdfConfig);
+        LoadDictionaries retriever = new LoadDictionaries(getMaterial(), url, isAuthenticationAvailable(), this, rdfConfig, getPageCache());
         return retriever.retrieveLists();
       } catch (BugzillaLoginRequiredException e) {
         Log.debug("retrying " + LoadDictionaries.class);
@@ -210,19 +274,29 @@ public QueryURLBuilder getURLQueryBuilder() {
     return new QueryURLBuilder(myOverrideCharset, timeZone);
   }
 
-  public synchronized boolean loadBugDetails(Integer[] IDs, Progress progress, Procedure<BugInfo> sink)
+  public boolean loadBugDetails(Integer[] IDs, Progress progress, Procedure<BugInfo> sink)
     throws ConnectorException
   {
-    ensureVersionIsKnown();
-    LoadBugsXML loader = createLoader(IDs, progress);
-    loader.loadBugsInto(sink);
-    return false;
+    enter();
+    try {
+      ensureVersionIsKnown();
+      LoadBugsXML loader = createLoader(IDs, progress);
+      loader.loadBugsInto(sink);
+      return false;
+    } finally {
+      exit();
+    }
   }
 
-  public synchronized Collection<BugInfo> loadBugDetails(Integer[] IDs, Progress progress) throws ConnectorException {
-    ensureVersionIsKnown();
-    LoadBugsXML loader = createLoader(IDs, progress);
-    return loader.loadBugs();
+  public Collection<BugInfo> loadBugDetails(Integer[] IDs, Progress progress) throws ConnectorException {
+    enter();
+    try {
+      ensureVersionIsKnown();
+      LoadBugsXML loader = createLoader(IDs, progress);
+      return loader.loadBugs();
+    } finally {
+      exit();
+    }
   }
 
   private LoadBugsXML createLoader(Integer[] IDs, Progress progress) throws ConnectorException {
@@ -239,73 +313,108 @@ private ServerInfo getServerInfo() throws ConnectorException {
     }
   }
 
-  public synchronized Collection<BugInfo> loadBugDetailsOnlyIdAndMtime(Integer[] IDs, Progress progress)
+  public Collection<BugInfo> loadBugDetailsOnlyIdAndMtime(Integer[] IDs, Progress progress)
     throws ConnectorException
   {
-    ensureVersionIsKnown();
-    LoadBugsXML loader = new LoadBugsXML(getServerInfo(), IDs, progress, "field=bug_id&field=delta_ts", false, true);
-    return loader.loadBugs();
+    enter();
+    try {
+      ensureVersionIsKnown();
+      LoadBugsXML loader = new LoadBugsXML(getServerInfo(), IDs, progress, "field=bug_id&field=delta_ts", false, true);
+      return loader.loadBugs();
+    } finally {
+      exit();
+    }
   }
 
   /**
    * @return map name->url
    */
-  public synchronized List<Pair<String, String>> loadSavedSearches() throws ConnectorException {
-    ensureVersionIsKnown();
-    LoadSavedSearches loader = new LoadSavedSearches(getMaterial(), myBaseURL, this);
-    return loader.loadSavedSearches();
+  public List<Pair<String, String>> loadSavedSearches() throws ConnectorException {
+    enter();
+    try {
+      ensureVersionIsKnown();
+      LoadSavedSearches loader = new LoadSavedSearches(getMaterial(), myBaseURL, this);
+      return loader.loadSavedSearches();
+    } finally {
+      exit();
+    }
   }
 
   /** Loads a potentially large query. */
-  public synchronized List<BugInfoMinimal> loadQuery(QueryURL query, Progress progress) throws ConnectorException {
-    ensureVersionIsKnown();
-    ServerInfo serverInfo = getServerInfo();
-    boolean usePaging = serverInfo.versionAtLeast(MAX_SEARCH_RESULTS_PARAM) && query instanceof QueryURL.Changeable;
-    if (!usePaging) {
-      return new LoadQuery(myMaterial, myBaseURL + query.getURL(), this).loadBugs(progress);      
-    } else {
-      boolean overrideSoftLimit = serverInfo.versionAtLeast(DEFAULT_SEARCH_LIMIT);
-      QueryPaging loader = new QueryPaging(myQueryLoader, (QueryURL.Changeable) query, overrideSoftLimit);
-      return loader.loadBugs(progress);
+  public List<BugInfoMinimal> loadQuery(QueryURL query, Progress progress) throws ConnectorException {
+    enter();
+    try {
+      ensureVersionIsKnown();
+      ServerInfo serverInfo = getServerInfo();
+      boolean usePaging = serverInfo.versionAtLeast(MAX_SEARCH_RESULTS_PARAM) && query instanceof QueryURL.Changeable;
+      if (!usePaging) {
+        return new LoadQuery(myMaterial, myBaseURL + query.getURL(), this).loadBugs(progress);      
+      } else {
+        boolean overrideSoftLimit = serverInfo.versionAtLeast(DEFAULT_SEARCH_LIMIT);
+        QueryPaging loader = new QueryPaging(myQueryLoader, (QueryURL.Changeable) query, overrideSoftLimit);
+        return loader.loadBugs(progress);
+      }
+    } finally {
+      exit();
     }
   }
   
   /** Loads a query known to be small or query from which only a small portion of first bugs is used. 
    * "Small" means less than any sensible max_search_results Bugzilla parameter (default is 10000.) */
-  public synchronized List<BugInfoMinimal> loadSmallQuery(String queryURL, Progress progress) throws ConnectorException {
-    ensureVersionIsKnown();
-    LoadQuery loader = new LoadQuery(getMaterial(), myBaseURL + queryURL, this);
-    return loader.loadBugs(progress);
+  public List<BugInfoMinimal> loadSmallQuery(String queryURL, Progress progress) throws ConnectorException {
+    enter();
+    try {
+      ensureVersionIsKnown();
+      LoadQuery loader = new LoadQuery(getMaterial(), myBaseURL + queryURL, this);
+      return loader.loadBugs(progress);
+    } finally {
+      exit();
+    }
   }
 
   public int countBugs(String queryURL, @Nullable Progress progress) throws ConnectorException {
-    ensureVersionIsKnown();
-    CountQuery counter = new CountQuery(getMaterial(), myBaseURL + queryURL, this);
-    int result = counter.count();
-    Log.debug("BI: bug count " + result);
-    if (result >= 0) {
-      if (progress != null)
-        progress.setDone();
-      return result;
+    enter();
+    try {
+      ensureVersionIsKnown();
+      CountQuery counter = new CountQuery(getMaterial(), myBaseURL + queryURL, this);
+      int result = counter.count();
+      Log.debug("BI: bug count " + result);
+      if (result >= 0) {
+        if (progress != null)
+          progress.setDone();
+        return result;
+      }
+      LoadQuery loader = new LoadQuery(getMaterial(), myBaseURL + queryURL, this);
+      int loadedResult = loader.loadBugs(progress).size();
+      Log.debug("BI: bug count (loaded query) " + loadedResult);
+      return loadedResult;
+    } finally {
+      exit();
     }
-    LoadQuery loader = new LoadQuery(getMaterial(), myBaseURL + queryURL, this);
-    int loadedResult = loader.loadBugs(progress).size();
-    Log.debug("BI: bug count (loaded query) " + loadedResult);
-    return loadedResult;
   }
 
   public Map<String, Integer> loadProductBugCounts() throws ConnectorException {
-    ensureVersionIsKnown();
-    final BugsByProductCountQuery query = new BugsByProductCountQuery(getMaterial(), myBaseURL, this);
-    return query.countBugs();
+    enter();
+    try {
+      ensureVersionIsKnown();
+      final BugsByProductCountQuery query = new BugsByProductCountQuery(getMaterial(), myBaseURL, this);
+      return query.countBugs();
+    } finally {
+      exit();
+    }
   }
 
-  public synchronized BugSubmitResult submitBug(BugInfoForUpload bugInfo) throws ConnectorException {
-    checkWriteAccess();
-    ensureVersionIsKnown();
-    SubmitBug submitter =
-      new SubmitBug(getServerInfo(), this, myBaseURL + BugzillaHTMLConstants.URL_SUBMIT_BUG, myUsername);
-    return submitter.submit(bugInfo);
+  public BugSubmitResult submitBug(BugInfoForUpload bugInfo) throws ConnectorException {
+    enter();
+    try {
+      checkWriteAccess();
+      ensureVersionIsKnown();
+      SubmitBug submitter =
+        new SubmitBug(getServerInfo(), this, myBaseURL + BugzillaHTMLConstants.URL_SUBMIT_BUG, myUsername);
+      return submitter.submit(bugInfo);
+    } finally {
+      exit();
+    }
   }
 
   private void checkWriteAccess() throws BugzillaAccessException {
@@ -317,48 +426,78 @@ private void checkWriteAccess() throws BugzillaAccessException {
   /**
    * Returns number of update requests performed.
    */
-  public synchronized int updateBug(BugInfoForUpload bugInfo) throws ConnectorException {
-    checkWriteAccess();
-    String id = bugInfo.getAnyValue(BugzillaAttribute.ID, null);
-    if (id == null)
-      throw new UploadException("cannot update bug without id", L.tooltip("Cannot upload bug without bug ID"),
-        L.tooltip("Cannot upload bug without ID. \n\nThe bug does not have ID set. This is probably a defect in " +
-          "the application, please send a word to support team."));
-    ensureVersionIsKnown();
-    UpdateBug updater = new UpdateBug(getServerInfo(), id, bugInfo, myUsername);
-    return updater.update(true);
+  public int updateBug(BugInfoForUpload bugInfo) throws ConnectorException {
+    enter();
+    try {
+      checkWriteAccess();
+      String id = bugInfo.getAnyValue(BugzillaAttribute.ID, null);
+      if (id == null)
+        throw new UploadException("cannot update bug without id", L.tooltip("Cannot upload bug without bug ID"),
+          L.tooltip("Cannot upload bug without ID. \n\nThe bug does not have ID set. This is probably a defect in " +
+            "the application, please send a word to support team."));
+      ensureVersionIsKnown();
+      UpdateBug updater = new UpdateBug(getServerInfo(), id, bugInfo, myUsername);
+      lockBug(id);
+      try {
+        return updater.update(true);
+      } finally {
+        unlockBug(id);
+      }
+    } finally {
+      exit();
+    }
   }
 
 
-  public synchronized List<Pair<BugzillaUser, Integer>> loadVotes(Integer ID) throws ConnectorException {
-    ensureVersionIsKnown();
-    LoadVotes loader = new LoadVotes(getServerInfo(), String.valueOf(ID));
-    List<Pair<BugzillaUser, Integer>> r = loader.loadBugVotes();
-    Log.debug(this + ": loaded votes for [" + ID + "]: " + r);
-    return r;
+  public List<Pair<BugzillaUser, Integer>> loadVotes(Integer ID) throws ConnectorException {
+    enter();
+    try {
+      ensureVersionIsKnown();
+      LoadVotes loader = new LoadVotes(getServerInfo(), String.valueOf(ID));
+      List<Pair<BugzillaUser, Integer>> r = loader.loadBugVotes();
+      Log.debug(this + ": loaded votes for [" + ID + "]: " + r);
+      return r;
+    } finally {
+      exit();
+    }
   }
 
-  public synchronized UserVoteInfo loadVotesDefaults() throws ConnectorException {
-    if (!isAuthenticationAvailable())
-      return null;
-    ensureVersionIsKnown();
-    LoadVotes loader = new LoadVotes(getServerInfo(), null);
-    UserVoteInfo r = loader.loadMyVotes();
-    Log.debug(this + ": loaded user votes: " + r);
-    return r;
+  public UserVoteInfo loadVotesDefaults() throws ConnectorException {
+    enter();
+    try {
+      if (!isAuthenticationAvailable())
+        return null;
+      ensureVersionIsKnown();
+      LoadVotes loader = new LoadVotes(getServerInfo(), null);
+      UserVoteInfo r = loader.loadMyVotes();
+      Log.debug(this + ": loaded user votes: " + r);
+      return r;
+    } finally {
+      exit();
+    }
   }
 
-  public synchronized List<ChangeSet> loadActivity(Integer ID) throws ConnectorException {
-    ensureVersionIsKnown();
-    LoadActivity loader = new LoadActivity(getServerInfo(), ID);
-    return loader.loadActivity();
+  public List<ChangeSet> loadActivity(Integer ID) throws ConnectorException {
+    enter();
+    try {
+      ensureVersionIsKnown();
+      LoadActivity loader = new LoadActivity(getServerInfo(), ID);
+      return loader.loadActivity();
+    } finally {
+      exit();
+    }
   }
 
-  public synchronized FrontPageData loadBugPage(Integer ID) throws ConnectorException {
-    ensureVersionIsKnown();
-    assert ID != null;
-    LoadFrontPage loader = new LoadFrontPage(getServerInfo(), getBugUrl(myBaseURL, ID), ID);
-    return loader.loadFrontPage();
+  public FrontPageData loadBugPage(Integer ID) throws ConnectorException {
+    enter();
+    try {
+      ensureVersionIsKnown();
+      assert ID != null;
+      LoadFrontPage loader = new LoadFrontPage(getServerInfo(), getBugUrl(myBaseURL, ID), ID);
+      return loader.loadFrontPage();
+    } finally {
+      exit();
+    }
   }
 
   /**
@@ -368,27 +507,46 @@ public synchronized FrontPageData loadBugPage(Integer ID) throws ConnectorExcept
   public Pair<Pair<List<String>, List<Integer>>, Pair<List<String>, List<Integer>>> loadRequestPage(
     @Nullable String singleProject) throws ConnectorException
   {
-    ensureVersionIsKnown();
-    return new LoadRequestPage(getMaterial(), this, myBaseURL, singleProject).loadRequestPage();
+    enter();
+    try {
+      ensureVersionIsKnown();
+      return new LoadRequestPage(getMaterial(), this, myBaseURL, singleProject).loadRequestPage();
+    } finally {
+      exit();
+    }
   }
 
   /**
    * @return all flags and flag types available for current user to requested attachment
    */
   public List<FrontPageData.FlagInfo> loadAttachmentPage(Integer attachmentId) throws ConnectorException {
-    ensureVersionIsKnown();
-    if (attachmentId == null) return Collections.emptyList();
-    return new LoadAttachmentPage(getServerInfo(), attachmentId).loadAttachmentPage();
+    enter();
+    try {
+      ensureVersionIsKnown();
+      if (attachmentId == null) return Collections.emptyList();
+      return new LoadAttachmentPage(getServerInfo(), attachmentId).loadAttachmentPage();
+    } finally {
+      exit();
+    }
   }
 
-  public synchronized Map<String, String> loadKeywords() throws ConnectorException {
-    ensureVersionIsKnown();
-    LoadKeywords loader =
-      new LoadKeywords(getMaterial(), myBaseURL + BugzillaHTMLConstants.URL_KEYWORDS_DESCRIPTION, this);
-    return loader.loadKeywords();
+  public Map<String, String> loadKeywords() throws ConnectorException {
+    enter();
+    try {
+      ensureVersionIsKnown();
+      LoadKeywords loader =
+        new LoadKeywords(getMaterial(), myBaseURL + BugzillaHTMLConstants.URL_KEYWORDS_DESCRIPTION, this, getPageCache());
+      return loader.loadKeywords();
+    } finally {
+      exit();
+    }
   }
 
-  public synchronized void setCancelFlag(Lifespan lifespan, ScalarModel<Boolean> cancelFlag) {
+  /**
+   * Sets the cancel flag of the operations of the current thread and of the threads that {@link #joinOperation join}
+   * them. Operations of other threads are not affected.
+   */
+  public void setCancelFlag(Lifespan lifespan, ScalarModel<Boolean> cancelFlag) {
     myMaterial.setCancelFlag(lifespan, cancelFlag);
   }
 
@@ -405,17 +563,47 @@ public void invoke(String arg) {
   }
 
 
-  public synchronized void setFeedbackHandler(FeedbackHandler feedbackHandler) {
+  /**
+   * Sets the feedback handler of the operations of the current thread, see {@link #setCancelFlag}.
+   */
+  public void setFeedbackHandler(FeedbackHandler feedbackHandler) {
     myMaterial.setFeedbackHandler(feedbackHandler);
   }
 
+  /**
+   * Sets the feedback handler of the operations of threads that have not set their own.
+   */
+  public void setDefaultFeedbackHandler(FeedbackHandler feedbackHandler) {
+    myMaterial.setDefaultFeedbackHandler(feedbackHandler);
+  }
+
+  /**
+   * @return operation of the current thread, to be {@link #joinOperation joined} by the threads that work for it
+   */
+  public HttpOperation getOperation() {
+    return myMaterial.getOperation();
+  }
+
+  /**
+   * Makes operations of the current thread use the cancel flag and the feedback handler of the operation, until
+   * the result is detached.
+   */
+  public Detach joinOperation(HttpOperation operation) {
+    return myMaterial.joinOperation(operation);
+  }
+
   String getBaseURL() {
     return myBaseURL;
   }
 
-  public synchronized void checkAuthentication() throws ConnectorException {
-    Threads.assertLongOperationsAllowed();
-    authenticate();
+  public void checkAuthentication() throws ConnectorException {
+    enter();
+    try {
+      Threads.assertLongOperationsAllowed();
+      authenticate();
+    } finally {
+      exit();
+    }
   }
 
   private void authenticate() throws ConnectorException {
@@ -423,30 +611,93 @@ private void authenticate() throws ConnectorException {
       return;
     if (isAuthenticated())
       return;
-    String url = myBaseURL + BugzillaHTMLConstants.URL_AUTHENTICATE;
-    Authenticate auth = new Authenticate(myMaterial, url, myUsername, myPassword, myAccountNameSink);
-    BugzillaAuthType authType = auth.authenticate();
-    if (authType == BugzillaAuthType.ENV) {
-      myEnvAuthenticationDetected = true;
-    }
-    if (!isAuthenticated()) {
-      throw new BugzillaAccessException("Bugzilla Authentication Failed", L.tooltip("Bugzilla Authentication Failed"),
-        L.tooltip(
+    synchronized (myAuthLock) {
+      if (isAuthenticated())
+        return;
+      String url = myBaseURL + BugzillaHTMLConstants.URL_AUTHENTICATE;
+      Authenticate auth = new Authenticate(myMaterial, url, myUsername, myPassword, myAccountNameSink);
+      BugzillaAuthType authType = auth.authenticate();
+      if (authType == BugzillaAuthType.ENV) {
+        myEnvAuthenticationDetected = true;
+      }
+      if (!isAuthenticated()) {
+        throw new BugzillaAccessException("Bugzilla Authentication Failed",
+          L.tooltip("Bugzilla Authentication Failed"), L.tooltip(
           "Bugzilla authentication failed. \n\n" + "Most probably the problem is incorrect Bugzilla username and " +
             "password. Please review your username and password, or " + "verify them using URL:\n\n" + myBaseURL +
             BugzillaHTMLConstants.URL_LOGIN_SCREEN));
+      }
+      myAuthGeneration++;
+      myOperation.get()[1] = myAuthGeneration;
     }
   }
 
+  /**
+   * Renews the session. If another operation has renewed it since the current operation started, the renewed
+   * session is used.
+   */
   public void reauthenticate() throws ConnectorException {
-    clearAuthentication();
-    authenticate();
+    synchronized (myAuthLock) {
+      int[] operation = myOperation.get();
+      if (operation[0] > 0 && operation[1] < myAuthGeneration && isAuthenticated()) {
+        operation[1] = myAuthGeneration;
+        return;
+      }
+      clearAuthentication();
+      authenticate();
+    }
   }
 
   public void clearAuthentication() {
-    HttpUtils.removeCookies(myMaterial.getHttpClient().getState(), BugzillaHTMLConstants.COOKIE_BUGZILLA_LOGIN,
-      BugzillaHTMLConstants.COOKIE_BUGZILLA_LOGINCOOKIE);
-    myEnvAuthenticationDetected = false;
+    synchronized (myAuthLock) {
+      HttpUtils.removeCookies(myMaterial.getHttpClient().getState(), BugzillaHTMLConstants.COOKIE_BUGZILLA_LOGIN,
+        BugzillaHTMLConstants.COOKIE_BUGZILLA_LOGINCOOKIE);
+      myEnvAuthenticationDetected = false;
+    }
+  }
+
+  private void enter() throws ConnectorException {
+    OperationGate gate = myGate;
+    if (gate != null) {
+      try {
+        while (!gate.enter(myInteractive, GATE_CHECK_PERIOD))
+          if (myMaterial.isCancelled())
+            throw new CancelledException();
+      } catch (InterruptedException e) {
+        throw new CancelledException(e);
+      }
+    }
+    int[] operation = myOperation.get();
+    if (operation[0]++ == 0)
+      operation[1] = myAuthGeneration;
+  }
+
+  private void lockBug(String id) throws CancelledException {
+    synchronized (myUpdatedBugs) {
+      while (!myUpdatedBugs.add(id)) {
+        if (myMaterial.isCancelled())
+          throw new CancelledException();
+        try {
+          myUpdatedBugs.wait(GATE_CHECK_PERIOD);
+        } catch (InterruptedException e) {
+          throw new CancelledException(e);
+        }
+      }
+    }
+  }
+
+  private void unlockBug(String id) {
+    synchronized (myUpdatedBugs) {
+      myUpdatedBugs.remove(id);
+      myUpdatedBugs.notifyAll();
+    }
+  }
+
+  private void exit() {
+    myOperation.get()[0]--;
+    OperationGate gate = myGate;
+    if (gate != null)
+      gate.exit();
   }
 
   private HttpMaterial getMaterial() throws ConnectorException {
@@ -519,32 +770,37 @@ public static String normalizeURL(String urlString) throws MalformedURLException
     return result;
   }
 
-  public synchronized void checkConnection() throws ConnectorException {
-    final String baseURL = getBaseURL();
-    final String url = baseURL + BugzillaHTMLConstants.URL_AUTHENTICATE;
+  public void checkConnection() throws ConnectorException {
+    enter();
+    try {
+      final String baseURL = getBaseURL();
+      final String url = baseURL + BugzillaHTMLConstants.URL_AUTHENTICATE;
 
-    class Checker extends BugzillaOperation implements RunnableRE<Void, ConnectorException> {
-      Checker(HttpMaterial material, @Nullable AuthenticationMaster authenticationMaster) {
-        super(material, authenticationMaster);
-      }
+      class Checker extends BugzillaOperation implements RunnableRE<Void, ConnectorException> {
+        Checker(HttpMaterial material, @Nullable AuthenticationMaster authenticationMaster) {
+          super(material, authenticationMaster);
+        }
 
-      @Override
-      public Void run() throws ConnectorException {
-        DocumentLoader loader = getDocumentLoader(url, true, "check_connection");
-        Document topPage = loader.httpGET().loadHTML();
-        Element body = JDOMUtils.searchElement(topPage.getRootElement(), "body");
-        if (body == null)
-          throw new BugzillaResponseException("cannot load bugzilla top page [" + url + "]",
-            L.tooltip("Bugzilla not found at " + baseURL), "");
-        return null;
-      }
+        @Override
+        public Void run() throws ConnectorException {
+          DocumentLoader loader = getDocumentLoader(url, true, "check_connection");
+          Document topPage = loader.httpGET().loadHTML();
+          Element body = JDOMUtils.searchElement(topPage.getRootElement(), "body");
+          if (body == null)
+            throw new BugzillaResponseException("cannot load bugzilla top page [" + url + "]",
+              L.tooltip("Bugzilla not found at " + baseURL), "");
+          return null;
+        }
 
-      public void check() throws ConnectorException {
-        runOperation(this);
+        public void check() throws ConnectorException {
+          runOperation(this);
+        }
       }
-    }
 
-    new Checker(getMaterial(), this).check();
+      new Checker(getMaterial(), this).check();
+    } finally {
+      exit();
+    }
   }
 
   public synchronized void setOverrideCharset(String charset) {
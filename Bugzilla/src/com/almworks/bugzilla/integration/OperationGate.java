@@ -0,0 +1,89 @@
+package com.almworks.bugzilla.integration;
+
+import com.almworks.util.Env;
+
+/**
+ * Limits the number of operations that run against one Bugzilla connection at once. It is shared by the
+ * integrations of the connection.
+ * <p>
+ * One place is kept for interactive operations, such as loading details of a bug the user has opened. Background
+ * operations, such as synchronization, cannot take it. Waiting interactive operations are let in before waiting
+ * background operations.
+ * <p>
+ * Entering is reentrant: an operation that calls another operation of the integration takes one place.
+ */
+public class OperationGate {
+  public static final int DEFAULT_LIMIT = Env.getInteger("bugzilla.concurrent.operations", 1, 100, 4);
+
+  private final int myLimit;
+  private final ThreadLocal<int[]> myDepth = new ThreadLocal<int[]>() {
+    protected int[] initialValue() {
+      return new int[1];
+    }
+  };
+
+  private int myActive;
+  private int myWaitingInteractive;
+
+  /**
+   * @param limit maximum number of operations at once, including the one for interactive operations
+   */
+  public OperationGate(int limit) {
+    myLimit = Math.max(1, limit);
+  }
+
+  /**
+   * Waits for a place for the operation.
+   *
+   * @param timeout milliseconds to wait
+   * @return true if entered, false if timed out
+   */
+  public boolean enter(boolean interactive, long timeout) throws InterruptedException {
+    int[] depth = myDepth.get();
+    if (depth[0] > 0) {
+      depth[0]++;
+      return true;
+    }
+    long deadline = System.currentTimeMillis() + timeout;
+    synchronized (this) {
+      if (interactive)
+        myWaitingInteractive++;
+      try {
+        while (!canEnter(interactive)) {
+          long wait = deadline - System.currentTimeMillis();
+          if (wait <= 0)
+            return false;
+          wait(wait);
+        }
+        myActive++;
+      } finally {
+        if (interactive)
+          myWaitingInteractive--;
+      }
+    }
+    depth[0] = 1;
+    return true;
+  }
+
+  public void exit() {
+    int[] depth = myDepth.get();
+    assert depth[0] > 0;
+    if (depth[0] <= 0 || --depth[0] > 0)
+      return;
+    synchronized (this) {
+      myActive--;
+      notifyAll();
+    }
+  }
+
+  public synchronized int getActiveCount() {
+    return myActive;
+  }
+
+  private boolean canEnter(boolean interactive) {
+    if (interactive)
+      return myActive < myLimit;
+    int backgroundLimit = myLimit > 1 ? myLimit - 1 : 1;
+    return myActive < backgroundLimit && myWaitingInteractive == 0;
+  }
+}
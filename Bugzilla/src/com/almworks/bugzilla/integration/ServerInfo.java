@@ -1,6 +1,7 @@
 package com.almworks.bugzilla.integration;
 
 import com.almworks.api.connector.ConnectorStateStorage;
+import com.almworks.api.connector.http.HttpPageCache;
 import com.almworks.api.http.HttpMaterial;
 import com.almworks.bugzilla.integration.oper.AuthenticationMaster;
 import org.almworks.util.Log;
@@ -17,6 +18,7 @@ public class ServerInfo {
   private volatile BugzillaVersion myBzVersion;
   @Nullable
   private final String myEmailSuffix;
+  private long myNextPageLoad;
 
   public ServerInfo(HttpMaterial material, String baseURL, ConnectorStateStorage stateStorage, TimeZone defaultTimezone,
     AuthenticationMaster master, @Nullable String emailSuffix, @Nullable String bzVersion)
@@ -47,6 +49,10 @@ public ConnectorStateStorage getStateStorage() {
     return myStateStorage;
   }
 
+  public HttpPageCache getPageCache() {
+    return HttpPageCache.getInstance(myStateStorage);
+  }
+
   public TimeZone getDefaultTimezone() {
     return myDefaultTimezone;
   }
@@ -81,6 +87,17 @@ public boolean versionAtLeast(@NotNull BugzillaVersion leastExpectedVersion) {
      return leastExpectedVersion.compareTo(myBzVersion) <= 0;
   }
 
+  /**
+   * Reserves time for a page load so that loads are at least minDelay apart, even if they are made by
+   * concurrent operations.
+   * @return the time when the reserved load may start
+   */
+  public synchronized long reservePageLoad(long minDelay) {
+    long time = Math.max(System.currentTimeMillis(), myNextPageLoad);
+    myNextPageLoad = time + minDelay;
+    return time;
+  }
+
   @Nullable
   public BugzillaVersion getBzVersion() {
     return myBzVersion;
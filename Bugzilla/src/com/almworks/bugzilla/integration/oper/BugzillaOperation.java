@@ -9,6 +9,7 @@
 import com.almworks.platform.DiagnosticRecorder;
 import com.almworks.util.RunnableRE;
 import com.almworks.util.xml.JDOMUtils;
+import com.almworks.util.xml.StreamingSAXHandler;
 import org.almworks.util.*;
 import org.jdom.Document;
 import org.jdom.Element;
@@ -129,18 +130,23 @@ public Element run() throws ConnectorException {
   }
 
   protected Element loadSubmitPage(String baseUrl, String product) throws ConnectorException {
-    Element page;
+    DocumentLoader loader = getDocumentLoader(getSubmitPageUrl(baseUrl, product), true);
+    return getSubmitPage(loader.httpGET(), product);
+  }
+
+  protected static String getSubmitPageUrl(String baseUrl, String product) throws ConnectorException {
     try {
-      String url = baseUrl + BugzillaHTMLConstants.URL_ENTER_BUG + URLEncoder.encode(product, "UTF-8");
-      DocumentLoader loader = getDocumentLoader(url, true);
-      Document document = loader.httpGET().loadHTML();
-      BugzillaErrorDetector.detectAndThrow(document, "loading defaults for product " + product);
-      page = document.getRootElement();
+      return baseUrl + BugzillaHTMLConstants.URL_ENTER_BUG + URLEncoder.encode(product, "UTF-8");
     } catch (UnsupportedEncodingException e) {
       Log.error(e);
       throw new ConnectorException("internal error", e, "Internal Error", "Internal Error");
     }
-    return page;
+  }
+
+  protected static Element getSubmitPage(DocumentLoader loader, String product) throws ConnectorException {
+    Document document = loader.loadHTML();
+    BugzillaErrorDetector.detectAndThrow(document, "loading defaults for product " + product);
+    return document.getRootElement();
   }
 
   /**
@@ -156,21 +162,41 @@ protected Document loadXMLSafe(DocumentLoader loader, String url) throws Connect
     try {
       document = loader.loadXML();
     } catch (CannotParseException e) {
-      Document html = null;
-      try {
-        html = loader.loadHTML();
-      } catch (ConnectorException ee) {
-        Log.warn("cannot parse XML, cannot parse HTML", ee);
-        throw e;
-      }
-      // look for errors
-      BugzillaErrorDetector.detectAndThrow(html, "loading xml");
-      // otherwise just throw title
-      throw createGenericCannotParseException(url, html, e);
+      throw handleXMLFailure(loader, url, e);
     }
     return document;
   }
 
+  /**
+   * Streaming version of {@link #loadXMLSafe(DocumentLoader, String)}. Note that when the response cannot be
+   * parsed, the handler may have already processed some elements.
+   */
+  protected void loadXMLSafe(DocumentLoader loader, String url, StreamingSAXHandler handler)
+    throws ConnectorException
+  {
+    try {
+      loader.loadXML(handler);
+    } catch (CannotParseException e) {
+      throw handleXMLFailure(loader, url, e);
+    }
+  }
+
+  private ConnectorException handleXMLFailure(DocumentLoader loader, String url, CannotParseException e)
+    throws ConnectorException
+  {
+    Document html = null;
+    try {
+      html = loader.loadHTML();
+    } catch (ConnectorException ee) {
+      Log.warn("cannot parse XML, cannot parse HTML", ee);
+      return e;
+    }
+    // look for errors
+    BugzillaErrorDetector.detectAndThrow(html, "loading xml");
+    // otherwise just throw title
+    return createGenericCannotParseException(url, html, e);
+  }
+
   private ConnectorException createGenericCannotParseException(String url, Document html, CannotParseException e) {
     Element title = JDOMUtils.searchElement(html.getRootElement(), "title");
     String s = title == null ? "" : JDOMUtils.getTextTrim(title);
@@ -11,16 +11,18 @@
 import com.almworks.util.RunnableRE;
 import com.almworks.util.commons.Function;
 import com.almworks.util.commons.Procedure;
+import com.almworks.util.io.CharTransferTracker;
 import com.almworks.util.io.StringTransferTracker;
 import com.almworks.util.progress.Progress;
 import com.almworks.util.xml.JDOMUtils;
+import com.almworks.util.xml.StreamingSAXHandler;
 import org.almworks.util.*;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.httpclient.URI;
 import org.apache.commons.httpclient.URIException;
-import org.jdom.Document;
 import org.jdom.Element;
 import org.jetbrains.annotations.*;
+import org.xml.sax.SAXException;
 
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
@@ -45,8 +47,6 @@ public class LoadBugsXML extends BugzillaOperation {
   @Nullable
   private final Progress[] myRequestProgresses;
 
-  private long myLastPageLoad;
-
   private Function<Long, Long> myGuessedServerOffsetConvertor;
   private RedirectURIHandler myRedirectHandler = new RedirectURIHandler() {
     @Nullable
@@ -160,14 +160,7 @@ public Void run() throws ConnectorException {
                   loader.addRedirectUriHandler(myRedirectHandler);
                   pauseForMinimumDelay();
                   loader.httpGET();
-                  Document document = loadXMLSafe(loader, url);
-                  boolean fix214 = isBugzilla214(document);
-                  List<Element> bugList = document.getRootElement().getChildren(BugzillaHTMLConstants.XML_TAG_BUG);
-                  for (Iterator<Element> iterator = bugList.iterator(); iterator.hasNext();) {
-                    myMaterial.checkCancelled();
-                    BugInfo bug = buildBugInfo(iterator.next(), fix214);
-                    sink.invoke(bug);
-                  }
+                  loadXMLSafe(loader, url, new BugStreamHandler(sink));
                 } catch (HttpCancelledException e) {
                   throw new CancelledException(e);
                 } catch (InterruptedException e) {
@@ -205,21 +198,17 @@ public Void run() throws ConnectorException {
   private void pauseForMinimumDelay() throws InterruptedException, HttpCancelledException {
     if (BugzillaHTMLConstants.PAGELOAD_MINIMUM_DELAY <= 0)
       return;
-    if (myLastPageLoad > 0) {
-      long allowedTime = myLastPageLoad + BugzillaHTMLConstants.PAGELOAD_MINIMUM_DELAY * 1000;
-      long wait = allowedTime - System.currentTimeMillis();
-      while (wait > 10 && wait <= 60000) {
-        Thread.sleep(Math.min(wait, 250));
-        myMaterial.checkCancelled();
-        wait = allowedTime - System.currentTimeMillis();
-      }
+    long allowedTime = myServerInfo.reservePageLoad(BugzillaHTMLConstants.PAGELOAD_MINIMUM_DELAY * 1000);
+    long wait = allowedTime - System.currentTimeMillis();
+    while (wait > 10 && wait <= 60000) {
+      Thread.sleep(Math.min(wait, 250));
+      myMaterial.checkCancelled();
+      wait = allowedTime - System.currentTimeMillis();
     }
-    myLastPageLoad = System.currentTimeMillis();
   }
 
-  private boolean isBugzilla214(Document document) {
-    String version =
-      JDOMUtils.getAttributeValue(document.getRootElement(), BugzillaHTMLConstants.XML_TAG_VERSION, null, true);
+  private boolean isBugzilla214(Element root) {
+    String version = JDOMUtils.getAttributeValue(root, BugzillaHTMLConstants.XML_TAG_VERSION, null, true);
     boolean fix214 = (version != null && version.startsWith("2.14"));
     return fix214;
   }
@@ -588,12 +577,57 @@ private Pair<String, Integer> buildNextURL() {
     return Pair.create(url, count);
   }
 
-  private static class BugTracker implements StringTransferTracker {
+  /**
+   * Builds bugs one by one as the response is parsed, so the whole document tree is never built.
+   */
+  private class BugStreamHandler extends StreamingSAXHandler {
+    private final Procedure<BugInfo> mySink;
+    private Boolean myFix214;
+
+    public BugStreamHandler(Procedure<BugInfo> sink) {
+      super(BugzillaHTMLConstants.XML_TAG_BUG);
+      mySink = sink;
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+      // attachment data is not used when attachments are excluded, but old servers may send it anyway
+      if (myAttachmentsExcluded && getDepth() == 4 && isAttachmentData(getCurrentElement()))
+        return;
+      super.characters(ch, start, length);
+    }
+
+    private boolean isAttachmentData(Element element) {
+      if (!"data".equals(element.getName()))
+        return false;
+      Element parent = element.getParentElement();
+      return parent != null && BugzillaHTMLConstants.XML_TAG_BUG_ATTACHMENT.equals(parent.getName());
+    }
+
+    @Override
+    protected void processElement(@NotNull Element element) throws CancelledException {
+      try {
+        myMaterial.checkCancelled();
+      } catch (HttpCancelledException e) {
+        throw new CancelledException(e);
+      }
+      if (myFix214 == null)
+        myFix214 = isBugzilla214(getDocument().getRootElement());
+      mySink.invoke(buildBugInfo(element, myFix214));
+    }
+  }
+
+  private static class BugTracker implements CharTransferTracker {
     private static final String LOOK_FOR = "</" + BugzillaHTMLConstants.XML_TAG_BUG + ">";
     private final Progress myProgress;
     private final float myIncrement;
 
     private long myNextCountPossible = 0;
+    /**
+     * Number of chars of LOOK_FOR matched at the end of the last chunk
+     */
+    private int myMatched;
+    private int myCount;
 
     public BugTracker(Progress sink, int expectedTotal) {
       myProgress = sink;
@@ -620,6 +654,32 @@ public void onTransfer(StringBuilder buffer) {
       // take less than 1% cpu time, but count not rarely than once in 5 sec
       myNextCountPossible = now + Math.min(spent * 100, 5000);
 
+      setProgress(count);
+    }
+
+    public void onTransfer(char[] chars, int offset, int length) {
+      // LOOK_FOR starts with a char that does not occur in it again, so a mismatch restarts matching
+      int matched = myMatched;
+      int count = myCount;
+      for (int i = offset; i < offset + length; i++) {
+        char c = chars[i];
+        if (c == LOOK_FOR.charAt(matched)) {
+          if (++matched == LOOK_FOR.length()) {
+            count++;
+            matched = 0;
+          }
+        } else {
+          matched = c == LOOK_FOR.charAt(0) ? 1 : 0;
+        }
+      }
+      myMatched = matched;
+      if (count != myCount) {
+        myCount = count;
+        setProgress(count);
+      }
+    }
+
+    private void setProgress(int count) {
       float progress = Math.min(myIncrement * count, 1F);
       myProgress.setProgress(progress, count);
     }
@@ -2,6 +2,8 @@
 
 import com.almworks.api.connector.CancelledException;
 import com.almworks.api.connector.ConnectorException;
+import com.almworks.api.connector.http.DocumentLoader;
+import com.almworks.api.connector.http.HttpPageCache;
 import com.almworks.api.http.HttpCancelledException;
 import com.almworks.api.http.HttpMaterial;
 import com.almworks.bugzilla.integration.*;
@@ -33,6 +35,10 @@ public class LoadDictionaries extends BugzillaOperation {
     new DependencyExtractor219(), new DependencyExtractor216(), new DependencyExtractor214() };
 
   private final boolean myAuthenticationAvailable;
+  @Nullable
+  private final BugzillaRDFConfig myRdfConfig;
+  @Nullable
+  private final HttpPageCache myPageCache;
 
   private final RunnableRE<BugzillaLists, ConnectorException> myOperation =
     new RunnableRE<BugzillaLists, ConnectorException>() {
@@ -45,12 +51,24 @@ public BugzillaLists run() throws ConnectorException {
 
   public LoadDictionaries(HttpMaterial material, String URL, boolean authenticationAvailable,
     AuthenticationMaster authMaster, BugzillaRDFConfig rdfConfig)
+  {
+    this(material, URL, authenticationAvailable, authMaster, rdfConfig, null);
+  }
+
+  /**
+   * @param pageCache if not null, the page is requested conditionally and is not parsed again if neither it nor
+   * the RDF config has changed
+   */
+  public LoadDictionaries(HttpMaterial material, String URL, boolean authenticationAvailable,
+    AuthenticationMaster authMaster, BugzillaRDFConfig rdfConfig, @Nullable HttpPageCache pageCache)
   {
     super(material, authMaster);
     assert URL != null;
     myUrl = URL;
     myAuthenticationAvailable = authenticationAvailable;
+    myRdfConfig = rdfConfig;
     myRdfExtractor = new DependencyExtractorRDF(rdfConfig);
+    myPageCache = pageCache;
   }
 
   public BugzillaLists retrieveLists() throws ConnectorException {
@@ -59,7 +77,19 @@ public BugzillaLists retrieveLists() throws ConnectorException {
 
   private BugzillaLists doRetrieve() throws ConnectorException {
     LogHelper.debug("Load dictionaries STARTED");
-    Document document = getDocumentLoader(myUrl, true).httpGET().loadHTML();
+    DocumentLoader loader = getDocumentLoader(myUrl, true);
+    HttpPageCache.Page page = myPageCache == null ? null : myPageCache.request(loader, myUrl);
+    loader.httpGET();
+    if (page != null) {
+      page.receive();
+      Pair<?, ?> cached = page.getParsed(Pair.class);
+      // lists are parsed with the help of the RDF config, which is the same object if it has not changed
+      if (cached != null && cached.getFirst() == myRdfConfig && cached.getSecond() instanceof BugzillaLists) {
+        LogHelper.debug("Load dictionaries: not modified");
+        return (BugzillaLists) cached.getSecond();
+      }
+    }
+    Document document = loader.loadHTML();
     try {
       BugzillaErrorDetector.detectAndThrow(document, "loading value lists");
       if (myAuthenticationAvailable) {
@@ -75,6 +105,8 @@ private BugzillaLists doRetrieve() throws ConnectorException {
       loadDependencies(document, info);
       loadCustomFieldNames(document, info);
       info.fix();
+      if (page != null)
+        page.commit(Pair.create(myRdfConfig, info));
       LogHelper.debug("Load dictionaries DONE");
       return info;
     } catch (ConnectorException e) {
@@ -1,6 +1,8 @@
 package com.almworks.bugzilla.integration.oper;
 
 import com.almworks.api.connector.ConnectorException;
+import com.almworks.api.connector.http.DocumentLoader;
+import com.almworks.api.connector.http.HttpPageCache;
 import com.almworks.api.http.HttpMaterial;
 import com.almworks.util.RunnableRE;
 import com.almworks.util.xml.JDOMUtils;
@@ -13,10 +15,12 @@
 
 public class LoadKeywords extends BugzillaOperation {
   private String myUrl;
+  private final HttpPageCache myPageCache;
 
-  public LoadKeywords(HttpMaterial material, String url, AuthenticationMaster authMaster) {
+  public LoadKeywords(HttpMaterial material, String url, AuthenticationMaster authMaster, HttpPageCache pageCache) {
     super(material, authMaster);
     myUrl = url;
+    myPageCache = pageCache;
   }
 
   public Map<String, String> loadKeywords() throws ConnectorException {
@@ -28,7 +32,14 @@ public Map<String, String> run() throws ConnectorException {
   }
 
   private Map<String, String> load() throws ConnectorException {
-    Document document = getDocumentLoader(myUrl, true).httpGET().loadHTML();
+    DocumentLoader loader = getDocumentLoader(myUrl, true);
+    HttpPageCache.Page page = myPageCache.request(loader, myUrl);
+    loader.httpGET();
+    page.receive();
+    Map<String, String> cached = page.getParsed(Map.class);
+    if (cached != null)
+      return Collections15.hashMap(cached);
+    Document document = loader.loadHTML();
     Element body = JDOMUtils.searchElement(document.getRootElement(), "div", "id", "bugzilla-body");
     if (body != null) {
       Map<String, String> result = Collections15.hashMap();
@@ -48,6 +59,7 @@ private Map<String, String> load() throws ConnectorException {
           result.put(strName, strDescr);
         }
       }
+      page.commit(Collections15.hashMap(result));
       return result;
     }
     return null;
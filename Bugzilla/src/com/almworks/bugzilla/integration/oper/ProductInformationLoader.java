@@ -1,8 +1,10 @@
 package com.almworks.bugzilla.integration.oper;
 
 import com.almworks.api.connector.ConnectorException;
+import com.almworks.api.connector.http.DocumentLoader;
 import com.almworks.api.connector.http.ExtractFormParameters;
 import com.almworks.api.connector.http.HtmlUtils;
+import com.almworks.api.connector.http.HttpPageCache;
 import com.almworks.bugzilla.integration.*;
 import com.almworks.bugzilla.integration.data.*;
 import com.almworks.bugzilla.integration.oper.js.*;
@@ -41,7 +43,15 @@ public ProductInformationLoader(ServerInfo serverInfo,String product) {
   public BugzillaProductInformation getInfo() throws ConnectorException {
     return runOperation(new RunnableRE<BugzillaProductInformation, ConnectorException>() {
       public BugzillaProductInformation run() throws ConnectorException {
-        Element page = loadSubmitPage(myServerInfo.getBaseURL(), myProduct);
+        String url = getSubmitPageUrl(myServerInfo.getBaseURL(), myProduct);
+        DocumentLoader loader = getDocumentLoader(url, true);
+        HttpPageCache.Page cachedPage = myServerInfo.getPageCache().request(loader, url);
+        loader.httpGET();
+        cachedPage.receive();
+        BugzillaProductInformation cached = cachedPage.getParsed(BugzillaProductInformation.class);
+        if (cached != null)
+          return cached;
+        Element page = getSubmitPage(loader, myProduct);
         Element form = OperUtils.findSubmitFormElement(page, false);
         BugzillaProductInformation result = new BugzillaProductInformation(myProduct);
         if (form == null) {
@@ -80,6 +90,7 @@ public BugzillaProductInformation run() throws ConnectorException {
         result.setCustomFieldDependencies(
           CustomFieldDependencyExtractor.getDependencies(page, CustomFieldDependencies.Source.NEW_BUG));
 
+        cachedPage.commit(result);
         return result;
       }
     });
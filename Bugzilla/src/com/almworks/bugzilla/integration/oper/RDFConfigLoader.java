@@ -3,6 +3,7 @@
 import com.almworks.api.connector.ConnectorException;
 import com.almworks.api.connector.http.CannotParseException;
 import com.almworks.api.connector.http.DocumentLoader;
+import com.almworks.api.connector.http.HttpPageCache;
 import com.almworks.api.http.HttpMaterial;
 import com.almworks.api.http.HttpUtils;
 import com.almworks.bugzilla.integration.data.*;
@@ -19,11 +20,15 @@
 public class RDFConfigLoader extends BugzillaOperation {
   private final String myBaseURL;
   private final List<String> myProductsList;
+  private final HttpPageCache myPageCache;
 
-  public RDFConfigLoader(HttpMaterial material, String baseURL, List<String> productsList, AuthenticationMaster authMaster) {
+  public RDFConfigLoader(HttpMaterial material, String baseURL, List<String> productsList,
+    AuthenticationMaster authMaster, HttpPageCache pageCache)
+  {
     super(material, authMaster);
     myBaseURL = baseURL;
     myProductsList = productsList;
+    myPageCache = pageCache;
   }
 
   public BugzillaRDFConfig loadRDFConfig() throws ConnectorException {
@@ -48,7 +53,14 @@ private BugzillaRDFConfig doLoad() throws ConnectorException {
       }
     }
     DocumentLoader loader = getDocumentLoader(url, true);
+    HttpPageCache.Page page = myPageCache.request(loader, url);
     loader.httpGET();
+    page.receive();
+    BugzillaRDFConfig cached = page.getParsed(BugzillaRDFConfig.class);
+    if (cached != null) {
+      LogHelper.debug("RDFConfig: not modified");
+      return cached;
+    }
     Document xml = loadXMLSafe(loader, url);
     LogHelper.debug("RDFConfig: loaded");
 
@@ -76,6 +88,7 @@ private BugzillaRDFConfig doLoad() throws ConnectorException {
     loadDependencies(installation, r);
     loadKeywords(installation, r);
 
+    page.commit(r);
     LogHelper.debug("RDFConfig DOME");
     return r;
   }
@@ -456,6 +456,11 @@ public boolean matchAllWords(long item, char[][] charWords, String[] stringWords
     return false;
   }
 
+  @Override
+  public DBTextIndex getTextIndex() {
+    return BugzillaTextIndex.INSTANCE;
+  }
+
   @Override
   @Nullable
   @CanBlock
@@ -47,6 +47,10 @@ public class BugzillaContextImpl extends BaseConnectionContext implements Bugzil
 
   //private BugzillaIntegration myIntegration = null;
   private final Map<BugzillaAccessPurpose, BugzillaIntegration> myIntegrations = Collections15.hashMap();
+  /**
+   * Limits concurrent operations of all integrations of the connection
+   */
+  private final OperationGate myOperationGate = new OperationGate(OperationGate.DEFAULT_LIMIT);
   private volatile Factory<BugzillaIntegration> myIntegrationFactory;
 
   private final DetachComposite myDetach = new DetachComposite();
@@ -128,6 +132,7 @@ public BugzillaIntegration getIntegration(BugzillaAccessPurpose purpose) throws
         if (myIntegrationFactory == null)
           throw new ConnectionNotConfiguredException();
         integration = myIntegrationFactory.create();
+        integration.setOperationGate(myOperationGate, isInteractive(purpose));
         myIntegrations.put(purpose, integration);
       }
       assert integration != null;
@@ -135,6 +140,10 @@ public BugzillaIntegration getIntegration(BugzillaAccessPurpose purpose) throws
     }
   }
 
+  private static boolean isInteractive(BugzillaAccessPurpose purpose) {
+    return purpose == BugzillaAccessPurpose.IMMEDIATE_DOWNLOAD || purpose == BugzillaAccessPurpose.ATTACHMENT_DOWNLOAD;
+  }
+
   @NotNull
   public ScalarModel<OurConfiguration> getConfiguration() {
     return myConfiguration;
@@ -225,6 +234,7 @@ void configure(ReadonlyConfiguration configuration) throws ConfigurationExceptio
       try {
         BugzillaIntegration integration =
           createIntegration(baseURL, anonymousAccess, username, password, charset, ignoreProxy, timeZone, emailSuffix, myBzVersion);
+        integration.setOperationGate(myOperationGate, isInteractive(BugzillaAccessPurpose.SYNCHRONIZATION));
         myIntegrations.put(BugzillaAccessPurpose.SYNCHRONIZATION, integration);
       } catch (MalformedURLException e) {
         throw new ConfigurationException("bad URL [" + baseURL + "]", e);
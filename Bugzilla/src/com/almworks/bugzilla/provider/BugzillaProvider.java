@@ -110,6 +110,7 @@ private void registerTriggers() {
     final Database db = mySubcontainer.getActor(Database.ROLE);
     Flags.registerTrigger(db);
     HoursWorkedLink.registerTrigger(db);
+    BugzillaTextIndex.registerTrigger(db);
   }
 
   public void stop() {
@@ -0,0 +1,38 @@
+package com.almworks.bugzilla.provider;
+
+import com.almworks.api.explorer.gui.SimpleModelKey;
+import com.almworks.bugzilla.provider.datalink.schema.Bug;
+import com.almworks.bugzilla.provider.datalink.schema.custom.CustomField;
+import com.almworks.bugzilla.provider.meta.BugzillaKeys;
+import com.almworks.items.api.*;
+import com.almworks.items.sync.util.SyncUtils;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Index over the texts checked by {@link BugzillaConnection#matchAllWords}: text keys, text custom fields and comments.
+ * All text custom fields are indexed, whether or not text search is enabled for them.
+ */
+class BugzillaTextIndex extends DBTextIndex {
+  public static final BugzillaTextIndex INSTANCE = new BugzillaTextIndex();
+
+  private BugzillaTextIndex() {
+    super(Bug.BUG_NS.obj("textIndex"), Bug.IS_BUG);
+  }
+
+  @Override
+  protected void collectTexts(long item, DBReader reader, Collection<String> target) {
+    for (SimpleModelKey<?, String> key : BugzillaKeys.allTextKeys) {
+      target.add(key.getAttribute().getValue(item, reader));
+    }
+    for (DBAttribute<String> attribute : CustomField.getTextAttributes(reader)) {
+      target.add(attribute.getValue(item, reader));
+    }
+    target.addAll(Arrays.asList(BugzillaKeys.comments.getCommentsText(SyncUtils.readTrunk(reader, item))));
+  }
+
+  public static void registerTrigger(Database db) {
+    db.registerTrigger(INSTANCE);
+  }
+}
@@ -62,7 +62,7 @@ static BugzillaIntegration createIntegration(HttpLoaderFactory httpLoaderFactory
     if (!anonymous)
       integration.setCredentials(username, password, sink);
     if (feedbackHandler != null)
-      integration.setFeedbackHandler(feedbackHandler);
+      integration.setDefaultFeedbackHandler(feedbackHandler);
     if (cancelFlag != null)
       integration.setCancelFlag(Lifespan.FOREVER, cancelFlag);
     if (noProxy)
@@ -53,6 +53,10 @@ public final class CommonMetadata {
   public static final DBItemType typeConnection = CONNECTION_NS.type();
   public static final DBAttribute<String> attrConnectionID = CONNECTION_NS.string("id", "ID", false);
   public static final DBAttribute<String> attrBugzillaVerison = CONNECTION_NS.string("bugzillaVersion", "Bugzilla Version", false);
+  /**
+   * Hash of the pages the value lists were last written from, see {@link com.almworks.api.connector.http.HttpPageCache}
+   */
+  public static final DBAttribute<String> attrValueListsSignature = CONNECTION_NS.string("valueListsSignature", "Value Lists Signature", false);
 
   public static final CommentsLink commentsLink = new CommentsLink();
   public static final AttachmentsLink attachmentsLink = new AttachmentsLink();
@@ -19,6 +19,7 @@
 import com.almworks.items.sync.*;
 import com.almworks.items.sync.impl.AttributeInfo;
 import com.almworks.items.sync.util.*;
+import com.almworks.items.util.BadUtil;
 import com.almworks.items.util.DBNamespace;
 import com.almworks.items.util.SyncAttributes;
 import com.almworks.itemsync.MergeOperationsManager;
@@ -39,6 +40,7 @@
 public class CustomField {
   private static final TypedKey<Pair<Long, LongList>> ALL_FIELDS_NO_REMOVED = TypedKey.create("allFields");
   private static final TypedKey<Pair<Long, LongList>> ALL_FIELDS_INCL_REMOVED = TypedKey.create("allFieldsIncludingRemoved");
+  private static final TypedKey<List<DBAttribute<String>>> TEXT_ATTRIBUTES = TypedKey.create("textAttributes");
 
   static final DBNamespace NS = BugzillaProvider.NS.subModule("cf");
 
@@ -186,6 +188,32 @@ public static BoolExpr<DP> getCFAttributeFilter(PrivateMetadata pm) {
       DPEqualsIdentified.create(SyncAttributes.CONNECTION, pm.thisConnection));
   }
 
+  /**
+   * @return attributes of text custom fields of all connections
+   */
+  public static List<DBAttribute<String>> getTextAttributes(DBReader reader) {
+    Map cache = reader.getTransactionCache();
+    List<DBAttribute<String>> result = TEXT_ATTRIBUTES.getFrom(cache);
+    if (result != null) return result;
+    result = arrayList();
+    LongList attributes = reader.query(DPNotNull.create(AT_ATTR_FIELD)).copyItemsSorted();
+    for (int i = 0; i < attributes.size(); i++) {
+      DBAttribute<?> attribute = BadUtil.getAttribute(reader, attributes.get(i));
+      if (attribute != null && attribute.getScalarClass() == String.class
+        && attribute.getComposition() == DBAttribute.ScalarComposition.SCALAR)
+      {
+        //noinspection unchecked
+        result.add((DBAttribute<String>) attribute);
+      }
+    }
+    TEXT_ATTRIBUTES.putTo(cache, result);
+    return result;
+  }
+
+  static void fieldAttributeChanged(DBReader reader) {
+    reader.getTransactionCache().remove(TEXT_ATTRIBUTES);
+  }
+
   public static BugzillaCustomField createCustomField(ItemVersion attr, BugzillaCustomFields fields,
     @Nullable BugzillaCustomField prevField) {
     Long fieldItem = attr.getValue(AT_ATTR_FIELD);
@@ -139,6 +139,7 @@ private void updateAttribute() {
     newAttribute.setValue(SyncAttributes.CONNECTION, myCreator.getValue(SyncAttributes.CONNECTION));
     if (oldAttribute != null && oldAttribute > 0 && oldAttribute != newAttribute.getItem())
       myCreator.changeItem(oldAttribute).setValue(CustomField.AT_ATTR_FIELD, (Long)null);
+    CustomField.fieldAttributeChanged(myCreator.getReader());
   }
 
   public void setValue(ItemVersionCreator bug, @Nullable List<String> values) {
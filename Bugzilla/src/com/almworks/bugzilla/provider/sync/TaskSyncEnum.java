@@ -3,8 +3,10 @@
 import com.almworks.api.application.ResolvedItem;
 import com.almworks.api.connector.CancelledException;
 import com.almworks.api.connector.ConnectorException;
+import com.almworks.api.connector.http.HttpPageCache;
 import com.almworks.api.engine.SyncParameter;
 import com.almworks.api.engine.SyncParameters;
+import com.almworks.api.platform.ProductInformation;
 import com.almworks.bugzilla.integration.BugzillaAttribute;
 import com.almworks.bugzilla.integration.BugzillaIntegration;
 import com.almworks.bugzilla.integration.data.*;
@@ -31,11 +33,22 @@
  * @author sereda
  */
 class TaskSyncEnum extends LinearProgressTask {
+  /**
+   * Version of the way the value lists are written to the database. It is a part of the signature together with the
+   * build number, so the values are written again after an upgrade, even if the pages have not changed.
+   */
+  private static final int VALUE_LISTS_FORMAT = 1;
+
   private volatile BugzillaLists myInfo;
   private final LinkedHashMap<String, BugzillaProductInformation> myProductInfo = Collections15.linkedHashMap();
   private volatile Map<String, String> myKeywords;
   @Nullable
   private volatile BugzillaRDFConfig myConfig;
+  /**
+   * Format, build and hash of the pages the values are loaded from, null if unknown
+   */
+  @Nullable
+  private volatile String mySignature;
 
   public TaskSyncEnum(SyncController controller) {
     super(controller, "load-enums", L.progress("Downloading value lists"), 2000, false);
@@ -46,13 +59,28 @@ public void doRun() throws ConnectorException {
     String[] products = config.getLimitingProducts();
     List<String> productsList = products.length == 0 ? null : Arrays.asList(products);
     BugzillaIntegration integration = getIntegration();
-    myConfig = integration.loadRDFConfig(productsList);
-    myInfo = integration.getBugzillaLists(myConfig, productsList);
-    loadProductDefaults(integration);
-    myKeywords = integration.loadKeywords();
+    HttpPageCache pageCache = integration.getPageCache();
+    pageCache.startRecording();
+    try {
+      myConfig = integration.loadRDFConfig(productsList);
+      myInfo = integration.getBugzillaLists(myConfig, productsList);
+      loadProductDefaults(integration);
+      myKeywords = integration.loadKeywords();
+    } finally {
+      mySignature = getSignature(pageCache.stopRecording());
+    }
     getContext().getActor(SyncManager.ROLE).writeDownloaded(new WriteDB());
   }
 
+  @Nullable
+  private String getSignature(@Nullable String pagesHash) {
+    if (pagesHash == null)
+      return null;
+    ProductInformation product = getContext().getActor(ProductInformation.ROLE);
+    String build = product == null ? "" : product.getBuildNumber().toString();
+    return VALUE_LISTS_FORMAT + ":" + build + ":" + pagesHash;
+  }
+
   public boolean isApplicable(SyncParameters syncParameters) {
     return syncParameters.get(SyncParameter.INITIALIZE_CONNECTION) != null ||
       syncParameters.get(SyncParameter.ALL_ITEMS) != null;
@@ -119,13 +147,24 @@ private class WriteDB implements DownloadProcedure<DBDrain> {
     @Override
     public void write(DBDrain drain) throws DBOperationCancelledException {
       try {
+        BugzillaRDFConfig config = myConfig;
+        String signature = mySignature;
+        if (signature != null && signature.equals(
+          drain.forItem(getPrivateMetadata().getConnectionRef()).getValue(CommonMetadata.attrValueListsSignature)))
+        {
+          // same pages as the last time, the database is up to date
+          Log.debug(TaskSyncEnum.this + ": value lists have not changed");
+          if (config != null)
+            getContext().getWorkflowTracker().reportStatusInfos(config.getStatusInfos());
+          updateInitialStatuses();
+          return;
+        }
         updateEnums(drain);
         Product.updateDependencies(drain, TaskSyncEnum.this, myProductInfo, myStringMaps, myInfo);
         updateCustomFields(drain);
         updateUserList(drain);
         getPrivateMetadata().updateBugPrototype(drain);
         updateInitialStatuses();
-        BugzillaRDFConfig config = myConfig;
         Map<String, String> keywords = new HashMap<>(Util.NN(myKeywords, Collections.emptyMap()));
         if (config != null) {
           getContext().getWorkflowTracker().reportStatusInfos(config.getStatusInfos());
@@ -133,6 +172,8 @@ public void write(DBDrain drain) throws DBOperationCancelledException {
           keywords.putAll(config.getKeywords());
         }
         Keywords.updateAll(drain, getPrivateMetadata(), keywords);
+        drain.changeItem(getPrivateMetadata().getConnectionRef())
+          .setValue(CommonMetadata.attrValueListsSignature, signature);
       } catch (CancelledException e) {
         throw new DBOperationCancelledException();
       }
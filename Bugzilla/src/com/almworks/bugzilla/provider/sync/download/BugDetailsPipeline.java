@@ -0,0 +1,175 @@
+package com.almworks.bugzilla.provider.sync.download;
+
+import com.almworks.api.connector.CancelledException;
+import com.almworks.api.connector.ConnectorException;
+import com.almworks.api.http.HttpOperation;
+import com.almworks.bugzilla.integration.BugzillaHTMLConstants;
+import com.almworks.bugzilla.integration.data.BugInfo;
+import com.almworks.bugzilla.provider.sync.Task;
+import com.almworks.integers.IntList;
+import com.almworks.util.Env;
+import com.almworks.util.exec.ThreadFactory;
+import com.almworks.util.progress.Progress;
+import org.almworks.util.Collections15;
+import org.almworks.util.Log;
+import org.almworks.util.detach.Detach;
+import org.jetbrains.annotations.*;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads bug details with several concurrent fetchers, each loading one batch of bugs at a time. Downloaded bugs
+ * are consumed with {@link #next} while the following batches are being loaded. When the consumer falls behind,
+ * fetchers wait, so no more than a few batches are held in memory.
+ * <p>
+ * Fetchers do not block while an integration call is in progress, so the consumer may use the integration too.
+ */
+class BugDetailsPipeline<B> {
+  static final int FETCHERS = Env.getInteger("bugzilla.download.fetchers", 1, 8, 2);
+  private static final long POLL_TIMEOUT = 100;
+
+  private final Host<B> myHost;
+  private final List<Integer[]> myBatches = Collections15.arrayList();
+  private final List<Progress> myBatchProgresses = Collections15.arrayList();
+  private final AtomicInteger myNextBatch = new AtomicInteger();
+  private final BlockingQueue<B> myBugs;
+  private final CountDownLatch myFetchersDone;
+  private final ExecutorService myExecutor;
+  private volatile ConnectorException myFailure;
+  private volatile boolean myStopped;
+
+  private BugDetailsPipeline(Host<B> host, IntList ids, int batchSize, int maxFetchers, Progress progress) {
+    myHost = host;
+    for (int i = 0; i < ids.size(); i += batchSize) {
+      IntList batch = ids.subList(i, Math.min(ids.size(), i + batchSize));
+      myBatches.add(batch.toList().toArray(new Integer[batch.size()]));
+    }
+    for (int i = 0; i < myBatches.size(); i++) {
+      myBatchProgresses.add(progress.createDelegate(1F / myBatches.size(), "BDP." + (i + 1)));
+    }
+    int fetchers = Math.max(1, Math.min(maxFetchers, myBatches.size()));
+    myBugs = new ArrayBlockingQueue<B>(batchSize);
+    myFetchersDone = new CountDownLatch(fetchers);
+    myExecutor = ThreadFactory.newFixedThreadPool(fetchers, "bugDetails");
+  }
+
+  public static BugDetailsPipeline<BugInfo> start(Task task, IntList ids, Progress progress) {
+    return start(new TaskHost(task), ids, BugzillaHTMLConstants.BUG_FIELDS_URL_MAX_IDS, FETCHERS, progress);
+  }
+
+  /**
+   * @param batchSize the number of bugs loaded at once, also the number of loaded bugs that may wait for the consumer
+   */
+  static <B> BugDetailsPipeline<B> start(Host<B> host, IntList ids, int batchSize, int maxFetchers, Progress progress) {
+    BugDetailsPipeline<B> pipeline = new BugDetailsPipeline<B>(host, ids, batchSize, maxFetchers, progress);
+    for (long i = pipeline.myFetchersDone.getCount(); i > 0; i--) {
+      pipeline.myExecutor.execute(pipeline.new Fetcher());
+    }
+    return pipeline;
+  }
+
+  /**
+   * @return next downloaded bug, or null if all bugs are consumed
+   * @throws ConnectorException if a fetcher has failed
+   */
+  @Nullable
+  public B next() throws ConnectorException, InterruptedException {
+    while (true) {
+      myHost.checkCancelled();
+      ConnectorException failure = myFailure;
+      if (failure != null) throw failure;
+      boolean finished = myFetchersDone.getCount() == 0;
+      B bug = myBugs.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+      if (bug != null) return bug;
+      if (finished) {
+        failure = myFailure;
+        if (failure != null) throw failure;
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Stops fetchers, must be called when the pipeline is not needed anymore.
+   */
+  public void stop() {
+    myStopped = true;
+    myExecutor.shutdown();
+    myBugs.clear();
+  }
+
+  /**
+   * What the pipeline needs from the sync: the cancel flag, joining the fetchers to the HTTP operation of the sync,
+   * and loading a batch of bugs
+   */
+  interface Host<B> {
+    void checkCancelled() throws CancelledException;
+
+    /**
+     * Called by each fetcher before it loads bugs
+     *
+     * @return detach that is called when the fetcher is finished
+     */
+    Detach joinFetcher();
+
+    Collection<B> loadBatch(Integer[] ids, Progress progress) throws ConnectorException;
+  }
+
+
+  private static class TaskHost implements Host<BugInfo> {
+    private final Task myTask;
+    private final HttpOperation myOperation;
+
+    public TaskHost(Task task) {
+      myTask = task;
+      myOperation = task.getIntegration().getOperation();
+    }
+
+    public void checkCancelled() throws CancelledException {
+      myTask.checkCancelled();
+    }
+
+    public Detach joinFetcher() {
+      return myTask.getIntegration().joinOperation(myOperation);
+    }
+
+    public Collection<BugInfo> loadBatch(Integer[] ids, Progress progress) throws ConnectorException {
+      return myTask.getIntegration().loadBugDetails(ids, progress);
+    }
+  }
+
+
+  private class Fetcher implements Runnable {
+    public void run() {
+      Detach operation = myHost.joinFetcher();
+      try {
+        while (!myStopped) {
+          int index = myNextBatch.getAndIncrement();
+          if (index >= myBatches.size()) break;
+          Collection<B> bugs = myHost.loadBatch(myBatches.get(index), myBatchProgresses.get(index));
+          for (B bug : bugs) {
+            while (!myStopped && !myBugs.offer(bug, POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+              myHost.checkCancelled();
+            }
+          }
+        }
+      } catch (ConnectorException e) {
+        if (myFailure == null) myFailure = e;
+        myStopped = true;
+      } catch (InterruptedException e) {
+        if (myFailure == null) myFailure = new CancelledException(e);
+        myStopped = true;
+      } catch (RuntimeException e) {
+        Log.error(e);
+        if (myFailure == null) myFailure = new ConnectorException("download failed", e, e.getMessage(), e.getMessage());
+        myStopped = true;
+      } finally {
+        operation.detach();
+        myFetchersDone.countDown();
+      }
+    }
+  }
+}
@@ -7,12 +7,22 @@
 import com.almworks.items.api.DBOperationCancelledException;
 import com.almworks.items.api.DBResult;
 import com.almworks.items.sync.*;
+import com.almworks.util.Env;
 import org.almworks.util.Collections15;
 import org.almworks.util.Log;
 
 import java.util.*;
 
 class DBQueue {
+  /**
+   * Number of boxes waiting for a write transaction, after which {@link #addToUpdateWhenReady} blocks.
+   */
+  private static final int MAX_PENDING = Env.getInteger("bugzilla.download.pending", 1, Integer.MAX_VALUE, 500);
+  /**
+   * Maximum number of boxes written in one transaction.
+   */
+  private static final int MAX_WRITE = Env.getInteger("bugzilla.download.write", 1, Integer.MAX_VALUE, 200);
+
   private final BugzillaContext myContext;
   private final List<BugBox> myToWrite = Collections15.arrayList();
   private long myLastCommitICN = 0;
@@ -39,6 +49,17 @@ public void addToUpdate(Collection<BugBox> boxes) {
     if (enqueue) enqueueUpdate();
   }
 
+  /**
+   * Same as {@link #addToUpdate(BugBox)}, but first waits while too many boxes are waiting for the database, so
+   * a fast download does not pile up downloaded bugs in memory.
+   */
+  public void addToUpdateWhenReady(BugBox box) throws InterruptedException {
+    synchronized (myToWrite) {
+      while (myToWrite.size() >= MAX_PENDING && myFailuresLeft >= 0) myToWrite.wait(30);
+    }
+    addToUpdate(box);
+  }
+
   public long getLastCommitICN() {
     synchronized (myToWrite) {
       return myLastCommitICN;
@@ -55,19 +76,22 @@ public boolean waitFinished() throws InterruptedException {
   }
 
   private void enqueueUpdate() {
-    myContext.getActor(SyncManager.ROLE).writeDownloaded(new DownloadProcedure<DBDrain>() {
+    final long enqueued = System.currentTimeMillis();
+    myContext.getActor(SyncManager.ROLE).writeDownloadedGrouped(new DownloadProcedure<DBDrain>() {
       private final List<BugBox> myAttempt = Collections15.arrayList();
 
       @Override
       public void write(DBDrain drain) throws DBOperationCancelledException {
         try {
-          while (true) {
+          while (myAttempt.size() < MAX_WRITE) {
             List<BugBox> task;
             synchronized (myToWrite) {
               assert myRunning;
-              task = Collections15.arrayList(myToWrite);
+              List<BugBox> head = myToWrite.subList(0, Math.min(myToWrite.size(), MAX_WRITE - myAttempt.size()));
+              task = Collections15.arrayList(head);
+              head.clear();
               myAttempt.addAll(task);
-              myToWrite.clear();
+              myToWrite.notifyAll();
             }
             if (task.isEmpty()) break;
             updateDB(drain, task);
@@ -97,6 +121,8 @@ private void updateDB(DBDrain drain, List<BugBox> task) {
       public void onFinished(DBResult<?> result) {
         boolean successful = result.isSuccessful();
         long icn = result.getCommitIcn();
+        Log.debug("DBQueue: " + myAttempt.size() + " bugs " + (successful ? "written" : "failed") + " in " +
+          (System.currentTimeMillis() - enqueued) + "ms");
         try {
           if (!successful) {
             boolean retry;
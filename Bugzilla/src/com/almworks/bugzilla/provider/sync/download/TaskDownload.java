@@ -14,7 +14,6 @@
 import org.almworks.util.Const;
 import org.almworks.util.Log;
 
-import java.util.Collection;
 import java.util.Date;
 
 /**
@@ -67,17 +66,21 @@ protected void doRun() throws ConnectorException, InterruptedException {
     IntList receiveFull = getBugIds(false);
     if (!receiveFull.isEmpty()) {
       Progress fullProgress = download.createDelegate(1 - fastPart);
-      Collection<BugInfo> infos =
-        getIntegration().loadBugDetails(receiveFull.toList().toArray(new Integer[receiveFull.size()]), fullProgress);
       DBQueue queue = new DBQueue(getContext());
-      for (BugInfo info : infos) {
-        BugBox box = LightUpdate.updateLightInfo(info, this);
-        if (box == null || box.getError() != null) continue;
-        if (box.getID() != null && box.getSyncType() != SyncType.RECEIVE_ONLY) SyncUtil.runExtraDownload(box, this);
-        FrontPageData fpd = box.getFrontPageData();
-        if (fpd != null) box.getBugInfo().updateWith(fpd);
-        bestUpdateTime = LightUpdate.chooseBestUpdateTime(bestUpdateTime, info);
-        queue.addToUpdate(box);
+      BugDetailsPipeline<BugInfo> pipeline = BugDetailsPipeline.start(this, receiveFull, fullProgress);
+      try {
+        BugInfo info;
+        while ((info = pipeline.next()) != null) {
+          BugBox box = LightUpdate.updateLightInfo(info, this);
+          if (box == null || box.getError() != null) continue;
+          if (box.getID() != null && box.getSyncType() != SyncType.RECEIVE_ONLY) SyncUtil.runExtraDownload(box, this);
+          FrontPageData fpd = box.getFrontPageData();
+          if (fpd != null) box.getBugInfo().updateWith(fpd);
+          bestUpdateTime = LightUpdate.chooseBestUpdateTime(bestUpdateTime, info);
+          queue.addToUpdateWhenReady(box);
+        }
+      } finally {
+        pipeline.stop();
       }
       if (!queue.waitFinished()) writeDone = false;
       data.logCommit(queue.getLastCommitICN());
@@ -0,0 +1,220 @@
+package com.almworks.bugzilla.provider.sync.upload;
+
+import com.almworks.api.connector.CancelledException;
+import com.almworks.api.http.HttpOperation;
+import com.almworks.bugzilla.provider.sync.Task;
+import com.almworks.util.Env;
+import com.almworks.util.exec.ThreadFactory;
+import org.almworks.util.Collections15;
+import org.almworks.util.ExceptionUtil;
+import org.almworks.util.detach.Detach;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uploads bugs with several concurrent workers. While one worker posts a bug, others load front pages and post the
+ * next bugs, so the round trips to the server overlap. The number of requests at once is still limited by the
+ * {@link com.almworks.bugzilla.integration.OperationGate operation gate} of the connection.
+ * <p>
+ * Bugs that refer to each other with blocks/depends or duplicate-of links, directly or through other uploaded bugs,
+ * form a chain that is uploaded by one worker in the original order. A new bug may be referred to only after it is
+ * submitted and gets an ID, and an update of a link changes the other bug on the server, which would be a mid-air
+ * collision if the other bug were being uploaded at the same time.
+ */
+class BugUploadPipeline<T> {
+  static final int WORKERS = Env.getInteger("bugzilla.upload.workers", 1, 8, 3);
+  private static final long POLL_TIMEOUT = 100;
+
+  private final Host<T> myHost;
+  private final List<List<T>> myChains;
+  private final AtomicInteger myNextChain = new AtomicInteger();
+  private final CountDownLatch myWorkersDone;
+  private volatile Throwable myFailure;
+  private volatile boolean myStopped;
+
+  private BugUploadPipeline(Host<T> host, List<List<T>> chains, int workers) {
+    myHost = host;
+    myChains = chains;
+    myWorkersDone = new CountDownLatch(workers);
+  }
+
+  /**
+   * Runs the chains of upload tasks and waits until they are finished.
+   *
+   * @param task the task that runs the pipeline
+   * @param chains upload tasks; tasks of one chain are run one after another
+   */
+  public static void run(Task task, List<List<Task>> chains) throws CancelledException, InterruptedException {
+    run(new TaskHost(task), chains, WORKERS);
+  }
+
+  static <T> void run(Host<T> host, List<List<T>> chains, int maxWorkers)
+    throws CancelledException, InterruptedException
+  {
+    int workers = Math.max(1, Math.min(maxWorkers, chains.size()));
+    BugUploadPipeline<T> pipeline = new BugUploadPipeline<T>(host, chains, workers);
+    if (workers == 1) {
+      pipeline.new Worker().run();
+    } else {
+      ExecutorService executor = ThreadFactory.newFixedThreadPool(workers, "bugUpload");
+      try {
+        for (int i = 0; i < workers; i++) {
+          executor.execute(pipeline.new Worker());
+        }
+        pipeline.waitWorkers(executor);
+      } finally {
+        executor.shutdown();
+      }
+    }
+    Throwable failure = pipeline.myFailure;
+    if (failure instanceof CancelledException)
+      throw (CancelledException) failure;
+    if (failure != null)
+      throw ExceptionUtil.rethrow(failure);
+  }
+
+  /**
+   * Workers are waited for even when the sync is cancelled, so that no upload continues after the sync has finished.
+   */
+  private void waitWorkers(ExecutorService executor) throws InterruptedException {
+    try {
+      while (!myWorkersDone.await(POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+        myHost.checkCancelled();
+      }
+    } catch (CancelledException e) {
+      if (myFailure == null) myFailure = e;
+      myStopped = true;
+      myWorkersDone.await();
+    } catch (InterruptedException e) {
+      myStopped = true;
+      executor.shutdownNow();
+      myWorkersDone.await(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+      throw e;
+    }
+  }
+
+  /**
+   * @param items uploaded items in the order of upload
+   * @param links item => items it refers to
+   * @return chains of the items that are linked to each other, directly or through other items of the list; chains
+   * are ordered by their first items, and items in a chain are in the order of the list
+   */
+  static List<List<Long>> buildChains(List<Long> items, Map<Long, ? extends Collection<Long>> links) {
+    Map<Long, Integer> indexes = Collections15.hashMap();
+    for (int i = 0; i < items.size(); i++) {
+      indexes.put(items.get(i), i);
+    }
+    int[] parents = new int[items.size()];
+    for (int i = 0; i < parents.length; i++) {
+      parents[i] = i;
+    }
+    for (Map.Entry<Long, ? extends Collection<Long>> e : links.entrySet()) {
+      Integer from = indexes.get(e.getKey());
+      if (from == null || e.getValue() == null)
+        continue;
+      for (Long referent : e.getValue()) {
+        Integer to = indexes.get(referent);
+        if (to != null)
+          union(parents, from, to);
+      }
+    }
+    List<List<Long>> chains = Collections15.arrayList();
+    Map<Integer, List<Long>> byRoot = Collections15.hashMap();
+    for (int i = 0; i < items.size(); i++) {
+      int root = find(parents, i);
+      List<Long> chain = byRoot.get(root);
+      if (chain == null) {
+        chain = Collections15.arrayList();
+        byRoot.put(root, chain);
+        chains.add(chain);
+      }
+      chain.add(items.get(i));
+    }
+    return chains;
+  }
+
+  private static int find(int[] parents, int i) {
+    while (parents[i] != i) {
+      parents[i] = parents[parents[i]];
+      i = parents[i];
+    }
+    return i;
+  }
+
+  private static void union(int[] parents, int a, int b) {
+    int rootA = find(parents, a);
+    int rootB = find(parents, b);
+    if (rootA < rootB)
+      parents[rootB] = rootA;
+    else if (rootB < rootA)
+      parents[rootA] = rootB;
+  }
+
+
+  /**
+   * What the pipeline needs from the sync: the cancel flag, joining the workers to the HTTP operation of the sync,
+   * and running an upload task
+   */
+  interface Host<T> {
+    void checkCancelled() throws CancelledException;
+
+    /**
+     * Called by each worker before it runs tasks
+     *
+     * @return detach that is called when the worker is finished
+     */
+    Detach joinWorker();
+
+    void runTask(T task) throws CancelledException;
+  }
+
+
+  private static class TaskHost implements Host<Task> {
+    private final Task myTask;
+    private final HttpOperation myOperation;
+
+    public TaskHost(Task task) {
+      myTask = task;
+      myOperation = task.getIntegration().getOperation();
+    }
+
+    public void checkCancelled() throws CancelledException {
+      myTask.checkCancelled();
+    }
+
+    public Detach joinWorker() {
+      return myTask.getIntegration().joinOperation(myOperation);
+    }
+
+    public void runTask(Task task) throws CancelledException {
+      task.getController().runTask(task);
+    }
+  }
+
+
+  private class Worker implements Runnable {
+    public void run() {
+      Detach operation = myHost.joinWorker();
+      try {
+        while (!myStopped) {
+          int index = myNextChain.getAndIncrement();
+          if (index >= myChains.size()) break;
+          for (T task : myChains.get(index)) {
+            if (myStopped) break;
+            myHost.runTask(task);
+          }
+        }
+      } catch (Throwable e) {
+        if (myFailure == null) myFailure = e;
+        myStopped = true;
+      } finally {
+        operation.detach();
+        myWorkersDone.countDown();
+      }
+    }
+  }
+}
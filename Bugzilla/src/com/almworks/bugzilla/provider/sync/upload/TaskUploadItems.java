@@ -3,14 +3,17 @@
 import com.almworks.api.connector.ConnectorException;
 import com.almworks.api.engine.SyncParameters;
 import com.almworks.api.engine.SyncType;
+import com.almworks.bugzilla.provider.datalink.schema.Bug;
 import com.almworks.bugzilla.provider.sync.*;
+import com.almworks.items.api.*;
+import com.almworks.items.sync.ItemVersion;
+import com.almworks.items.sync.util.SyncUtils;
 import com.almworks.util.L;
 import com.almworks.util.progress.Progress;
 import com.almworks.util.progress.ProgressSource;
 import org.almworks.util.Collections15;
 
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
 
 public class TaskUploadItems extends Task {
   protected final Progress myProgress;
@@ -34,11 +37,75 @@ protected void doRun() throws ConnectorException, InterruptedException {
       return;
     }
     float span = 1F / upload.size();
+    Map<Long, Task> tasks = Collections15.hashMap();
+    List<Long> items = Collections15.arrayList();
+    List<Task> unlinked = Collections15.arrayList();
     for (BugBox box : upload) {
       PrepareUploadBox task = new PrepareUploadBox(myController, box);
       myProgress.delegate(task.getProgress(), span);
-      myController.runTask(task);
+      long item = box.getItem();
+      if (item > 0 && !tasks.containsKey(item)) {
+        tasks.put(item, task);
+        items.add(item);
+      } else {
+        unlinked.add(task);
+      }
+    }
+    List<List<Task>> chains = Collections15.arrayList();
+    if (BugUploadPipeline.WORKERS > 1 && items.size() > 1) {
+      for (List<Long> chain : BugUploadPipeline.buildChains(items, loadLinks(items))) {
+        List<Task> chainTasks = Collections15.arrayList();
+        for (Long item : chain) {
+          chainTasks.add(tasks.get(item));
+        }
+        chains.add(chainTasks);
+      }
+    } else {
+      List<Task> chainTasks = Collections15.arrayList();
+      for (Long item : items) {
+        chainTasks.add(tasks.get(item));
+      }
+      chains.add(chainTasks);
+    }
+    for (Task task : unlinked) {
+      chains.add(Collections15.arrayList(task));
     }
+    BugUploadPipeline.run(this, chains);
+  }
+
+  /**
+   * @return item => bugs it blocks, depends on or duplicates, locally or on the server, so that both the added and
+   * the removed links are counted. Marking a bug as a duplicate adds a comment to the other bug on the server.
+   */
+  private Map<Long, Set<Long>> loadLinks(final List<Long> items) {
+    return getContext().getActor(Database.ROLE).readBackground(new ReadTransaction<Map<Long, Set<Long>>>() {
+      @Override
+      public Map<Long, Set<Long>> transaction(DBReader reader) throws DBOperationCancelledException {
+        Map<Long, Set<Long>> links = Collections15.hashMap();
+        for (Long item : items) {
+          Set<Long> referents = Collections15.hashSet();
+          ItemVersion trunk = SyncUtils.readTrunk(reader, item);
+          addReferents(referents, trunk);
+          addReferents(referents, trunk.switchToServer());
+          links.put(item, referents);
+        }
+        return links;
+      }
+    }).waitForCompletion();
+  }
+
+  private static void addReferents(Set<Long> referents, ItemVersion version) {
+    if (version == null)
+      return;
+    Set<Long> blockedBy = version.getValue(Bug.attrBlockedBy);
+    if (blockedBy != null)
+      referents.addAll(blockedBy);
+    Set<Long> blocks = version.getValue(Bug.attrBlocks);
+    if (blocks != null)
+      referents.addAll(blocks);
+    Long duplicateOf = version.getValue(Bug.attrDuplicateOf);
+    if (duplicateOf != null && duplicateOf > 0)
+      referents.add(duplicateOf);
   }
 
   public boolean isApplicable(SyncParameters syncParameters) {
@@ -0,0 +1,100 @@
+package com.almworks.bugzilla.integration;
+
+import com.almworks.util.tests.BaseTestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class OperationGateTests extends BaseTestCase {
+  public void testInteractiveLane() throws InterruptedException {
+    OperationGate gate = new OperationGate(3);
+    assertTrue(enterInThread(gate, false));
+    assertTrue(enterInThread(gate, false));
+    assertFalse(enterInThread(gate, false));
+    assertTrue(enterInThread(gate, true));
+    assertFalse(enterInThread(gate, true));
+    assertEquals(3, gate.getActiveCount());
+  }
+
+  public void testReentrant() throws InterruptedException {
+    OperationGate gate = new OperationGate(1);
+    assertTrue(gate.enter(false, 0));
+    assertTrue(gate.enter(true, 0));
+    gate.exit();
+    assertEquals(1, gate.getActiveCount());
+    gate.exit();
+    assertEquals(0, gate.getActiveCount());
+  }
+
+  public void testInteractiveGoesFirst() throws InterruptedException {
+    OperationGate gate = new OperationGate(2);
+    CountDownLatch release = new CountDownLatch(1);
+    Holder holder = new Holder(gate, false, release);
+    holder.start();
+    assertTrue(holder.myEntered.await(5, TimeUnit.SECONDS));
+    Holder interactive = new Holder(gate, true, new CountDownLatch(1));
+    interactive.start();
+    assertTrue(interactive.myEntered.await(5, TimeUnit.SECONDS));
+
+    Holder background = new Holder(gate, false, new CountDownLatch(1));
+    background.start();
+    Thread.sleep(50);
+    Holder waitingInteractive = new Holder(gate, true, new CountDownLatch(1));
+    waitingInteractive.start();
+    Thread.sleep(50);
+    release.countDown();
+    assertTrue(waitingInteractive.myEntered.await(5, TimeUnit.SECONDS));
+    assertFalse(background.myEntered.await(100, TimeUnit.MILLISECONDS));
+    assertEquals(2, gate.getActiveCount());
+
+    waitingInteractive.myRelease.countDown();
+    interactive.myRelease.countDown();
+    assertTrue(background.myEntered.await(5, TimeUnit.SECONDS));
+    background.myRelease.countDown();
+  }
+
+  private static boolean enterInThread(final OperationGate gate, final boolean interactive)
+    throws InterruptedException
+  {
+    final AtomicBoolean entered = new AtomicBoolean();
+    Thread thread = new Thread() {
+      public void run() {
+        try {
+          entered.set(gate.enter(interactive, 50));
+        } catch (InterruptedException e) {
+          // ignore
+        }
+      }
+    };
+    thread.start();
+    thread.join();
+    return entered.get();
+  }
+
+
+  private static class Holder extends Thread {
+    private final OperationGate myGate;
+    private final boolean myInteractive;
+    private final CountDownLatch myEntered = new CountDownLatch(1);
+    private final CountDownLatch myRelease;
+
+    public Holder(OperationGate gate, boolean interactive, CountDownLatch release) {
+      myGate = gate;
+      myInteractive = interactive;
+      myRelease = release;
+    }
+
+    public void run() {
+      try {
+        if (!myGate.enter(myInteractive, 5000))
+          return;
+        myEntered.countDown();
+        myRelease.await();
+        myGate.exit();
+      } catch (InterruptedException e) {
+        // ignore
+      }
+    }
+  }
+}
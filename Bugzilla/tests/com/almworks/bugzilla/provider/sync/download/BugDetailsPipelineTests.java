@@ -0,0 +1,219 @@
+package com.almworks.bugzilla.provider.sync.download;
+
+import com.almworks.api.connector.CancelledException;
+import com.almworks.api.connector.ConnectorException;
+import com.almworks.integers.IntArray;
+import com.almworks.util.progress.Progress;
+import com.almworks.util.tests.BaseTestCase;
+import org.almworks.util.Collections15;
+import org.almworks.util.detach.Detach;
+
+import java.util.*;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+public class BugDetailsPipelineTests extends BaseTestCase {
+  public void testSingleFetcherKeepsOrder() throws Exception {
+    TestHost host = new TestHost();
+    BugDetailsPipeline<Integer> pipeline = BugDetailsPipeline.start(host, ids(10), 3, 1, new Progress());
+    try {
+      assertEquals(ids(10).toList(), consume(pipeline));
+    } finally {
+      pipeline.stop();
+    }
+    assertEquals(Arrays.asList("1 2 3", "4 5 6", "7 8 9", "10"), host.getBatches());
+    host.waitFetchers(1);
+  }
+
+  public void testFetchersFeedConsumerConcurrently() throws Exception {
+    final CyclicBarrier barrier = new CyclicBarrier(3);
+    TestHost host = new TestHost() {
+      protected void beforeLoad(Integer[] ids) throws Exception {
+        if (ids[0] <= 6)
+          barrier.await(5, TimeUnit.SECONDS);
+      }
+    };
+    BugDetailsPipeline<Integer> pipeline = BugDetailsPipeline.start(host, ids(12), 2, 3, new Progress());
+    List<Integer> bugs;
+    try {
+      bugs = consume(pipeline);
+    } finally {
+      pipeline.stop();
+    }
+    assertEquals(ids(12).toList(), sorted(bugs));
+    // bugs of a batch come in the order of the batch
+    for (int i = 1; i <= 12; i += 2) {
+      assertTrue(bugs.indexOf(i) < bugs.indexOf(i + 1));
+    }
+    // batches are handed out in order
+    List<String> batches = host.getBatches();
+    assertEquals(6, batches.size());
+    assertEquals(Collections15.hashSet("1 2", "3 4", "5 6"), Collections15.hashSet(batches.subList(0, 3)));
+    host.waitFetchers(3);
+    assertEquals(3, host.getLoaders().size());
+  }
+
+  public void testFailureIsPassedToConsumer() throws Exception {
+    final ConnectorException failure = new ConnectorException("failure", "failure", "failure");
+    TestHost host = new TestHost() {
+      protected void beforeLoad(Integer[] ids) throws ConnectorException {
+        if (ids[0] == 3)
+          throw failure;
+      }
+    };
+    BugDetailsPipeline<Integer> pipeline = BugDetailsPipeline.start(host, ids(8), 2, 1, new Progress());
+    try {
+      consume(pipeline);
+      fail();
+    } catch (ConnectorException e) {
+      assertSame(failure, e);
+    } finally {
+      pipeline.stop();
+    }
+    host.waitFetchers(1);
+    assertEquals(Arrays.asList("1 2", "3 4"), host.getBatches());
+  }
+
+  public void testFailureOfConcurrentFetcher() throws Exception {
+    // unexpected exceptions are logged as errors
+    setTestFailLevel(Level.OFF);
+    final RuntimeException failure = new RuntimeException("failure");
+    TestHost host = new TestHost() {
+      protected void beforeLoad(Integer[] ids) {
+        if (ids[0] == 3)
+          throw failure;
+      }
+    };
+    BugDetailsPipeline<Integer> pipeline = BugDetailsPipeline.start(host, ids(40), 2, 3, new Progress());
+    try {
+      consume(pipeline);
+      fail();
+    } catch (ConnectorException e) {
+      assertSame(failure, e.getCause());
+    } finally {
+      pipeline.stop();
+    }
+    host.waitFetchers(3);
+    assertTrue(host.getBatches().size() < 20);
+  }
+
+  public void testCancellation() throws Exception {
+    final TestHost host = new TestHost();
+    BugDetailsPipeline<Integer> pipeline = BugDetailsPipeline.start(host, ids(100), 2, 2, new Progress());
+    try {
+      assertEquals(1, (int) pipeline.next());
+      host.myCancelled = true;
+      pipeline.next();
+      fail();
+    } catch (CancelledException e) {
+      // ok
+    } finally {
+      pipeline.stop();
+    }
+    host.waitFetchers(2);
+    assertTrue(host.getBatches().size() < 50);
+  }
+
+  private static IntArray ids(int count) {
+    IntArray ids = new IntArray();
+    for (int i = 1; i <= count; i++) {
+      ids.add(i);
+    }
+    return ids;
+  }
+
+  private static List<Integer> consume(BugDetailsPipeline<Integer> pipeline) throws Exception {
+    List<Integer> result = Collections15.arrayList();
+    Integer bug;
+    while ((bug = pipeline.next()) != null) {
+      result.add(bug);
+    }
+    return result;
+  }
+
+  private static List<Integer> sorted(List<Integer> bugs) {
+    List<Integer> result = Collections15.arrayList(bugs);
+    Collections.sort(result);
+    return result;
+  }
+
+
+  private static class TestHost implements BugDetailsPipeline.Host<Integer> {
+    private final Set<Thread> myFetchers = Collections15.hashSet();
+    private final Set<Thread> myLoaders = Collections15.hashSet();
+    private final List<String> myBatches = Collections15.arrayList();
+    private final AtomicInteger myDetached = new AtomicInteger();
+    volatile boolean myCancelled;
+
+    public void checkCancelled() throws CancelledException {
+      if (myCancelled)
+        throw new CancelledException();
+    }
+
+    public Detach joinFetcher() {
+      synchronized (myFetchers) {
+        myFetchers.add(Thread.currentThread());
+      }
+      return new Detach() {
+        protected void doDetach() {
+          myDetached.incrementAndGet();
+        }
+      };
+    }
+
+    public Collection<Integer> loadBatch(Integer[] ids, Progress progress) throws ConnectorException {
+      synchronized (myFetchers) {
+        assertTrue(myFetchers.contains(Thread.currentThread()));
+        myLoaders.add(Thread.currentThread());
+        StringBuilder batch = new StringBuilder();
+        for (Integer id : ids) {
+          if (batch.length() > 0)
+            batch.append(' ');
+          batch.append(id);
+        }
+        myBatches.add(batch.toString());
+      }
+      try {
+        beforeLoad(ids);
+      } catch (ConnectorException e) {
+        throw e;
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+      return Arrays.asList(ids);
+    }
+
+    protected void beforeLoad(Integer[] ids) throws Exception {
+    }
+
+    public List<String> getBatches() {
+      synchronized (myFetchers) {
+        return Collections15.arrayList(myBatches);
+      }
+    }
+
+    public Set<Thread> getLoaders() {
+      synchronized (myFetchers) {
+        return Collections15.hashSet(myLoaders);
+      }
+    }
+
+    /**
+     * Fetchers are not waited for by {@link BugDetailsPipeline#stop}
+     */
+    public void waitFetchers(int count) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + 5000;
+      while (myDetached.get() < count && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(count, myDetached.get());
+      synchronized (myFetchers) {
+        assertEquals(count, myFetchers.size());
+      }
+    }
+  }
+}
@@ -0,0 +1,198 @@
+package com.almworks.bugzilla.provider.sync.upload;
+
+import com.almworks.api.connector.CancelledException;
+import com.almworks.util.tests.BaseTestCase;
+import org.almworks.util.Collections15;
+import org.almworks.util.detach.Detach;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BugUploadPipelineTests extends BaseTestCase {
+  public void testIndependentBugs() {
+    List<List<Long>> chains = BugUploadPipeline.buildChains(Arrays.asList(1L, 2L, 3L), Collections15.<Long, Set<Long>>hashMap());
+    assertEquals(Arrays.asList(Arrays.asList(1L), Arrays.asList(2L), Arrays.asList(3L)), chains);
+  }
+
+  public void testLinkedBugsKeepOrder() {
+    Map<Long, Set<Long>> links = Collections15.hashMap();
+    links.put(4L, Collections15.hashSet(1L));
+    links.put(5L, Collections15.hashSet(100L));
+    links.put(3L, Collections15.hashSet(4L));
+    links.put(2L, Collections15.hashSet(5L));
+    List<List<Long>> chains = BugUploadPipeline.buildChains(Arrays.asList(1L, 2L, 3L, 4L, 5L), links);
+    assertEquals(Arrays.asList(Arrays.asList(1L, 3L, 4L), Arrays.asList(2L, 5L)), chains);
+  }
+
+  public void testOneWayLinkJoinsChain() {
+    // a duplicate refers to the original bug, but not the other way round
+    Map<Long, Set<Long>> links = Collections15.hashMap();
+    links.put(3L, Collections15.hashSet(1L));
+    List<List<Long>> chains = BugUploadPipeline.buildChains(Arrays.asList(1L, 2L, 3L), links);
+    assertEquals(Arrays.asList(Arrays.asList(1L, 3L), Arrays.asList(2L)), chains);
+  }
+
+  public void testIndependentChainsOverlap() throws Exception {
+    final CyclicBarrier barrier = new CyclicBarrier(3);
+    final List<String> done = Collections15.arrayList();
+    TestHost host = new TestHost() {
+      protected void doRun(String task) throws Exception {
+        if (task.endsWith("1"))
+          barrier.await(5, TimeUnit.SECONDS);
+        synchronized (done) {
+          done.add(task);
+        }
+      }
+    };
+    BugUploadPipeline.run(host, chains("a1 a2", "b1 b2", "c1"), 3);
+    assertEquals(5, done.size());
+    assertTrue(done.indexOf("a1") < done.indexOf("a2"));
+    assertTrue(done.indexOf("b1") < done.indexOf("b2"));
+    host.checkWorkers(3);
+  }
+
+  public void testFailureStopsUpload() throws Exception {
+    final RuntimeException failure = new RuntimeException("failure");
+    final List<String> done = Collections15.synchronizedList();
+    TestHost host = new TestHost() {
+      protected void doRun(String task) {
+        if (task.equals("a1"))
+          throw failure;
+        done.add(task);
+      }
+    };
+    try {
+      BugUploadPipeline.run(host, chains("a1 a2", "b1"), 1);
+      fail();
+    } catch (RuntimeException e) {
+      assertSame(failure, e);
+    }
+    assertEquals(Collections15.emptyList(), done);
+    host.checkWorkers(1);
+  }
+
+  public void testFailureOfConcurrentWorker() throws Exception {
+    final RuntimeException failure = new RuntimeException("failure");
+    TestHost host = new TestHost() {
+      protected void doRun(String task) {
+        if (task.equals("b1"))
+          throw failure;
+      }
+    };
+    try {
+      BugUploadPipeline.run(host, chains("a1", "b1 b2", "c1"), 3);
+      fail();
+    } catch (RuntimeException e) {
+      assertSame(failure, e);
+    }
+    assertFalse(host.hasRun("b2"));
+    host.checkWorkers(3);
+  }
+
+  public void testCancellationWaitsForWorkers() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final AtomicInteger running = new AtomicInteger();
+    final TestHost host = new TestHost() {
+      protected void doRun(String task) throws Exception {
+        running.incrementAndGet();
+        try {
+          if (task.equals("a1")) {
+            started.countDown();
+            Thread.sleep(300);
+          }
+        } finally {
+          running.decrementAndGet();
+        }
+      }
+    };
+    Thread canceller = new Thread() {
+      public void run() {
+        try {
+          started.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          return;
+        }
+        host.myCancelled = true;
+      }
+    };
+    canceller.start();
+    try {
+      BugUploadPipeline.run(host, chains("a1 a2", "b1"), 2);
+      fail();
+    } catch (CancelledException e) {
+      // ok
+    }
+    canceller.join(5000);
+    assertEquals(0, running.get());
+    assertTrue(host.hasRun("a1"));
+    assertFalse(host.hasRun("a2"));
+    host.checkWorkers(2);
+  }
+
+  private static List<List<String>> chains(String... chains) {
+    List<List<String>> result = Collections15.arrayList();
+    for (String chain : chains) {
+      result.add(Arrays.asList(chain.split(" ")));
+    }
+    return result;
+  }
+
+
+  private static abstract class TestHost implements BugUploadPipeline.Host<String> {
+    private final Set<Thread> myWorkers = Collections15.hashSet();
+    private final AtomicInteger myDetached = new AtomicInteger();
+    private final Set<String> myRun = Collections15.hashSet();
+    volatile boolean myCancelled;
+
+    public void checkCancelled() throws CancelledException {
+      if (myCancelled)
+        throw new CancelledException();
+    }
+
+    public Detach joinWorker() {
+      synchronized (myWorkers) {
+        myWorkers.add(Thread.currentThread());
+      }
+      return new Detach() {
+        protected void doDetach() {
+          myDetached.incrementAndGet();
+        }
+      };
+    }
+
+    public void runTask(String task) {
+      synchronized (myWorkers) {
+        assertTrue(task, myWorkers.contains(Thread.currentThread()));
+        myRun.add(task);
+      }
+      try {
+        doRun(task);
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    protected abstract void doRun(String task) throws Exception;
+
+    public boolean hasRun(String task) {
+      synchronized (myWorkers) {
+        return myRun.contains(task);
+      }
+    }
+
+    public void checkWorkers(int count) {
+      synchronized (myWorkers) {
+        assertEquals(count, myWorkers.size());
+      }
+      assertEquals(count, myDetached.get());
+    }
+  }
+}
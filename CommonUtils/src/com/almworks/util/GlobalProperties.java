@@ -11,6 +11,8 @@ public class GlobalProperties extends PropertiesDictionary {
   public static final String USE_WINLAF = register("use.winlaf");
   public static final String USE_METAL = register("use.metal");
   public static final String SINGLE_WORKER = register("single.worker");
+  public static final String FORK_JOIN_WORKERS = register("fork.join.workers");
+  public static final String WORKER_METRICS = register("worker.metrics");
   public static final String SOCKET_TIMEOUT = register("socket.timeout");
   public static final String INTERNAL_ACTIONS = register("i.a");
   public static final String DEBUG_THREADS = register("debug.threads");
@@ -36,6 +38,12 @@ public class GlobalProperties extends PropertiesDictionary {
   // jira client 2.1
   public static final String FORCE_HTTP_USER_AGENT = register("force.http.user.agent");
 
+  public static final String DISABLE_HTTP_POOL = register("disable.http.pool");
+  public static final String HTTP_CONNECTIONS_PER_HOST = register("http.connections.per.host");
+  public static final String HTTP_IDLE_TIMEOUT = register("http.idle.timeout");
+  public static final String DISABLE_HTTP_STREAMING = register("disable.http.streaming");
+  public static final String HTTP_CAPTURE_CHARS = register("http.capture.chars");
+
 
   private GlobalProperties() {
   }
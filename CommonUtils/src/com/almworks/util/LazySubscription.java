@@ -1,30 +1,19 @@
 package com.almworks.util;
 
-import com.almworks.util.events.DefaultFiringStrategy;
+import com.almworks.util.events.FireEventSupport;
 import com.almworks.util.exec.ThreadGate;
 import org.almworks.util.detach.Detach;
 import org.almworks.util.detach.Lifespan;
 
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
-
 public class LazySubscription<L> {
   private final Subscriber mySubscriber;
-  private final DefaultFiringStrategy<L> myStrategy;
-  private final L myDispatcher;
+  private final FireEventSupport<L> myEventSupport;
   private final Object myLock = new Object();
   private Boolean mySubscribed = false;
 
   public LazySubscription(Subscriber subscriber, Class<L> listenerClass) {
     mySubscriber = subscriber;
-    myStrategy = new DefaultFiringStrategy<L>();
-    //noinspection unchecked
-    myDispatcher = (L) Proxy.newProxyInstance(listenerClass.getClassLoader(), new Class[] {listenerClass},
-      new BaseInvocationHandler() {
-        protected Object invokeTarget(Method method, Object[] args) {
-          return myStrategy.fireFromDispatcher(getListeners(), method, args);
-        }
-      });
+    myEventSupport = FireEventSupport.createUnsynchronized(listenerClass);
   }
   
   public static <L> LazySubscription<L> create(Class<L> listenerClass, Subscriber subscriber) {
@@ -35,7 +24,7 @@ public void addListener(Lifespan life, ThreadGate gate, final L listener) {
     if (life.isEnded() || listener == null) return;
     synchronized (myLock) {
       waitStableState();
-      myStrategy.addListener(Lifespan.FOREVER, gate, listener);
+      myEventSupport.addListener(Lifespan.FOREVER, gate, listener);
     }
     life.add(new Detach() {
       @Override
@@ -49,13 +38,13 @@ protected void doDetach() throws Exception {
   public void removeListener(L listener) {
     synchronized (myLock) {
       waitStableState();
-      myStrategy.removeListener(listener);
+      myEventSupport.removeListener(listener);
     }
     updateSubscription();
   }
 
   public L getDispatcher() {
-    return myDispatcher;
+    return myEventSupport.getDispatcher();
   }
 
   private void updateSubscription() {
@@ -63,7 +52,7 @@ private void updateSubscription() {
     boolean state;
     synchronized (myLock) {
       state = waitStableState();
-      required = myStrategy.getListenersCount() > 0;
+      required = myEventSupport.getListenersCount() > 0;
       if (state == required) return;
       mySubscribed = null;
     }
@@ -88,12 +77,6 @@ private boolean waitStableState() {
     return mySubscribed;
   }
 
-  private Pair[] getListeners() {
-    synchronized (myLock) {
-      return myStrategy.getListeners();
-    }
-  }
-
   public interface Subscriber {
     void subscribe();
 
@@ -6,15 +6,15 @@
 import org.almworks.util.detach.Detach;
 import org.almworks.util.detach.Lifespan;
 
-import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.ArrayList;
-import java.util.Iterator;
 
 public class DefaultFiringStrategy<L> implements FiringStrategy<L> {
   private static final Pair[] EMPTY_ARRAY = {};
   private static final AddListenerHook EMPTY_HOOK = new AddListenerHook.Adapter();
-  private ArrayList<Pair<L, ThreadGate>> myListeners = null;
+  /**
+   * Copy-on-write array of listeners, so firing does not copy it
+   */
+  private volatile Pair[] myListeners = EMPTY_ARRAY;
   private volatile boolean myNoMoreEvents = false;
   private volatile Throwable myNoMoreEventsSetterStack = null;
   protected final AddListenerHook<L> myAddListenerHook;
@@ -27,17 +27,19 @@ public DefaultFiringStrategy() {
     this(null);
   }
 
-  public Object fireFromDispatcher(Pair[] listeners, Method method, Object[] args) {
+  public Object fireFromDispatcher(Pair[] listeners, ListenerInvoker invoker, int method, Object a0, Object a1,
+    Object a2, Object a3, Object[] args)
+  {
     if (!checkFire())
       return null;
-    doDispatch(listeners, method, args, ProcessingLock.DUMMY);
+    doDispatch(listeners, invoker, method, a0, a1, a2, a3, args, ProcessingLock.DUMMY);
     return null;
   }
 
-  public Object fireFromDipatcherSnapshot(Pair[] listeners, Method method, Object[] args,
-    ProcessingLock processingLock)
+  public Object fireFromDipatcherSnapshot(Pair[] listeners, ListenerInvoker invoker, int method, Object a0,
+    Object a1, Object a2, Object a3, Object[] args, ProcessingLock processingLock)
   {
-    doDispatch(listeners, method, args, processingLock);
+    doDispatch(listeners, invoker, method, a0, a1, a2, a3, args, processingLock);
     return null;
   }
 
@@ -74,9 +76,11 @@ protected final void doAddListener(Lifespan life, ThreadGate callbackGate, final
     assert listener == null || listener.equals(listener) : listener;
     if (life.isEnded())
       return;
-    if (myListeners == null)
-      myListeners = new ArrayList<Pair<L, ThreadGate>>(1);
-    myListeners.add(Pair.create(listener, callbackGate));
+    Pair[] listeners = myListeners;
+    Pair[] added = new Pair[listeners.length + 1];
+    System.arraycopy(listeners, 0, added, 0, listeners.length);
+    added[listeners.length] = Pair.create(listener, callbackGate);
+    myListeners = added;
     if (life == Lifespan.FOREVER)
       return;
     life.add(new Detach() {
@@ -90,27 +94,29 @@ protected void doDetach() {
    * //TODO "equals()" or "==" ?
    */
   public void removeListener(L listener) {
-    if (myListeners != null && listener != null)
-      for (Iterator<Pair<L, ThreadGate>> iterator = myListeners.iterator(); iterator.hasNext();) {
-        if (iterator.next().getFirst().equals(listener)) {
-          iterator.remove();
-          break;
-        }
+    if (listener == null)
+      return;
+    Pair[] listeners = myListeners;
+    for (int i = 0; i < listeners.length; i++) {
+      if (listeners[i].getFirst().equals(listener)) {
+        Pair[] removed = listeners.length == 1 ? EMPTY_ARRAY : new Pair[listeners.length - 1];
+        System.arraycopy(listeners, 0, removed, 0, i);
+        System.arraycopy(listeners, i + 1, removed, i, listeners.length - i - 1);
+        myListeners = removed;
+        break;
       }
+    }
   }
 
+  /**
+   * @return current listeners; the array is shared and must not be modified
+   */
   public Pair/*<L, ThreadGate>*/[] getListeners() {
-    if (myListeners == null || myListeners.size() == 0)
-      return EMPTY_ARRAY;
-    else
-      return myListeners.toArray(new Pair[myListeners.size()]);
+    return myListeners;
   }
 
   public void noMoreEvents() {
-    if (myListeners != null) {
-      myListeners.clear();
-      myListeners = null;
-    }
+    myListeners = EMPTY_ARRAY;
     if (!myNoMoreEvents) {
       myNoMoreEvents = true;
       myNoMoreEventsSetterStack = new Throwable();
@@ -122,7 +128,7 @@ public final boolean isNoMoreEvents() {
   }
 
   public int getListenersCount() {
-    return myListeners == null ? 0 : myListeners.size();
+    return myListeners.length;
   }
 
   protected boolean checkFire() {
@@ -137,46 +143,60 @@ private boolean throwNoMoreEventsViolation() {
     throw new Failure("noMoreEvents flag was set by: ", myNoMoreEventsSetterStack);
   }
 
-  protected void doDispatch(Pair/*<L, ThreadGate>*/[] listeners, final Method method, final Object[] args,
+  /**
+   * Calls the listeners or passes the calls to their gates. Nothing is allocated for a listener with a
+   * {@link ThreadGate#isRightNow right-now} gate, unless event debugging is on or the processing lock is real.
+   */
+  protected void doDispatch(Pair/*<L, ThreadGate>*/[] listeners, final ListenerInvoker invoker, final int method,
+    final Object a0, final Object a1, final Object a2, final Object a3, final Object[] args,
     final ProcessingLock processingLock)
   {
-    final int dispatchID = EventDebugger.isEnabled() ? EventDebugger.logStartDispatch(listeners, method, args) : -1;
+    final int dispatchID = EventDebugger.isEnabled() ? EventDebugger.logStartDispatch(listeners,
+      invoker.getMethod(method), invoker.getArguments(method, a0, a1, a2, a3, args)) : -1;
     processingLock.lock(this);
     try {
-      assert Modifier.isPublic(method.getDeclaringClass().getModifiers()) : method;
+      assert Modifier.isPublic(invoker.getMethod(method).getDeclaringClass().getModifiers()) :
+        invoker.getMethod(method);
       for (Pair pair : listeners) {
         final Object listener = pair.getFirst();
         final ThreadGate gate = (ThreadGate) pair.getSecond();
         if (EventDebugger.isEnabled())
-          EventDebugger.logDispatchBeforeGating(dispatchID, gate, listener, method, args);
-        final LockOwner lockOwner = new LockOwner("DFS", listener);
+          EventDebugger.logDispatchBeforeGating(dispatchID, gate, listener, invoker.getMethod(method),
+            invoker.getArguments(method, a0, a1, a2, a3, args));
+        final LockOwner lockOwner = processingLock == ProcessingLock.DUMMY ? null : new LockOwner("DFS", listener);
         processingLock.lock(lockOwner);
         if (ThreadGate.isRightNow(gate))
-          doInvokeListener(dispatchID, gate, listener, method, args, processingLock, lockOwner);
+          doInvokeListener(dispatchID, gate, listener, invoker, method, a0, a1, a2, a3, args, processingLock,
+            lockOwner);
         else
           gate.execute(new Runnable() {
             public void run() {
-              doInvokeListener(dispatchID, gate, listener, method, args, processingLock, lockOwner);
+              doInvokeListener(dispatchID, gate, listener, invoker, method, a0, a1, a2, a3, args, processingLock,
+                lockOwner);
             }
           });
       }
     } finally {
       processingLock.release(this);
       if (EventDebugger.isEnabled())
-        EventDebugger.logEndDispatch(dispatchID, listeners, method, args);
+        EventDebugger.logEndDispatch(dispatchID, listeners, invoker.getMethod(method),
+          invoker.getArguments(method, a0, a1, a2, a3, args));
     }
   }
 
-  private void doInvokeListener(int dispatchID, ThreadGate gate, Object listener, Method method, Object[] args,
-    ProcessingLock processingLock, LockOwner lockOwner)
+  private void doInvokeListener(int dispatchID, ThreadGate gate, Object listener, ListenerInvoker invoker,
+    int method, Object a0, Object a1, Object a2, Object a3, Object[] args, ProcessingLock processingLock,
+    LockOwner lockOwner)
   {
     try {
       if (EventDebugger.isEnabled())
-        EventDebugger.logDispatchInvocationStarts(dispatchID, gate, listener, method, args);
-      method.invoke(listener, args);
+        EventDebugger.logDispatchInvocationStarts(dispatchID, gate, listener, invoker.getMethod(method),
+          invoker.getArguments(method, a0, a1, a2, a3, args));
+      invoker.invoke(method, listener, a0, a1, a2, a3, args);
     } catch (Throwable e) {
       if (EventDebugger.isEnabled())
-        EventDebugger.logDispatchInvocationException(dispatchID, e, gate, listener, method, args);
+        EventDebugger.logDispatchInvocationException(dispatchID, e, gate, listener, invoker.getMethod(method),
+          invoker.getArguments(method, a0, a1, a2, a3, args));
       Throwable cause = ExceptionUtil.unwrapInvocationException(e);
       if (cause instanceof InterruptedException || cause instanceof RuntimeInterruptedException) {
         Log.debug(listener + " interrupted", e);
@@ -185,7 +205,8 @@ private void doInvokeListener(int dispatchID, ThreadGate gate, Object listener,
       }
     } finally {
       if (EventDebugger.isEnabled())
-        EventDebugger.logDispatchInvocationFinishes(dispatchID, gate, listener, method, args);
+        EventDebugger.logDispatchInvocationFinishes(dispatchID, gate, listener, invoker.getMethod(method),
+          invoker.getArguments(method, a0, a1, a2, a3, args));
       processingLock.release(lockOwner);
     }
   }
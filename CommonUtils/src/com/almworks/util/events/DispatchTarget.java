@@ -0,0 +1,10 @@
+package com.almworks.util.events;
+
+/**
+ * Receives calls of the dispatchers made by {@link DispatcherFactory}. Arguments of a method with up to
+ * {@link DispatcherFactory#INLINE_ARGUMENTS} parameters come in a0..a3, the unused ones are null and args is null.
+ * Arguments of a longer method come in args.
+ */
+interface DispatchTarget {
+  void fire(int method, Object a0, Object a1, Object a2, Object a3, Object[] args);
+}
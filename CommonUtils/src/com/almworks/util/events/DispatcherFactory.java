@@ -0,0 +1,654 @@
+package com.almworks.util.events;
+
+import com.almworks.util.BaseInvocationHandler;
+import com.almworks.util.Env;
+import org.almworks.util.Collections15;
+import org.almworks.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Makes dispatchers of listener interfaces. For each public listener interface a class is generated that implements
+ * it: a call of a method passes the method index and the arguments to a {@link DispatchTarget}, and
+ * {@link EventDispatcher#invoke} calls the method on a listener directly. Arguments of methods with up to
+ * {@link #INLINE_ARGUMENTS} parameters are passed one by one, so neither the dispatcher nor the listener call
+ * allocates anything but boxes for primitive arguments.
+ * <p>
+ * Interfaces that cannot be implemented by a generated class, such as non-public ones, get a {@link Proxy} and are
+ * called with reflection. Setting the {@link #PROXY_PROPERTY} property turns generation off.
+ */
+final class DispatcherFactory {
+  public static final int INLINE_ARGUMENTS = 4;
+  public static final String PROXY_PROPERTY = "events.proxy.dispatchers";
+
+  private static final boolean PROXY_ONLY = Env.getBoolean(PROXY_PROPERTY);
+  private static final AtomicInteger ourClassCounter = new AtomicInteger();
+
+  private static final ClassValue<ListenerClass> ourClasses = new ClassValue<ListenerClass>() {
+    protected ListenerClass computeValue(Class<?> type) {
+      return new ListenerClass(type);
+    }
+  };
+
+  private DispatcherFactory() {}
+
+  public static ListenerInvoker getInvoker(Class<?> listenerClass) {
+    return ourClasses.get(listenerClass).myInvoker;
+  }
+
+  public static <L> L createDispatcher(Class<L> listenerClass, DispatchTarget target) {
+    return listenerClass.cast(ourClasses.get(listenerClass).createDispatcher(target));
+  }
+
+  /**
+   * @param dispatcher a dispatcher made by this factory
+   * @return the target that the dispatcher passes calls to
+   */
+  public static DispatchTarget getTarget(Object dispatcher) {
+    if (dispatcher instanceof EventDispatcher)
+      return ((EventDispatcher) dispatcher).getTarget();
+    return ((ProxyHandler) Proxy.getInvocationHandler(dispatcher)).myTarget;
+  }
+
+
+  private static class ListenerClass {
+    private final Class<?> myListenerClass;
+    private final Method[] myMethods;
+    private final Map<Method, Integer> myIndexes = Collections15.hashMap();
+    private final Constructor<?> myConstructor;
+    private final ListenerInvoker myInvoker;
+
+    public ListenerClass(Class<?> listenerClass) {
+      myListenerClass = listenerClass;
+      myMethods = collectMethods(listenerClass);
+      for (int i = 0; i < myMethods.length; i++) {
+        myIndexes.put(myMethods[i], i);
+      }
+      Constructor<?> constructor = PROXY_ONLY ? null : generate(listenerClass, myMethods);
+      EventDispatcher generated = null;
+      if (constructor != null) {
+        try {
+          generated = (EventDispatcher) constructor.newInstance(new Object[] {null});
+        } catch (Throwable e) {
+          Log.warn("cannot generate dispatcher for " + listenerClass, e);
+          constructor = null;
+        }
+      }
+      myConstructor = constructor;
+      myInvoker = new ListenerInvoker(myMethods, generated);
+    }
+
+    public Object createDispatcher(DispatchTarget target) {
+      if (myConstructor != null) {
+        try {
+          return myConstructor.newInstance(target);
+        } catch (Exception e) {
+          Log.error(e);
+        }
+      }
+      return Proxy.newProxyInstance(myListenerClass.getClassLoader(), new Class[] {myListenerClass},
+        new ProxyHandler(myIndexes, target));
+    }
+  }
+
+
+  private static class ProxyHandler extends BaseInvocationHandler {
+    private final Map<Method, Integer> myIndexes;
+    private final DispatchTarget myTarget;
+
+    public ProxyHandler(Map<Method, Integer> indexes, DispatchTarget target) {
+      myIndexes = indexes;
+      myTarget = target;
+    }
+
+    protected Object invokeTarget(Method method, Object[] args) {
+      Integer index = myIndexes.get(method);
+      if (index == null)
+        throw new IllegalArgumentException(method.toString());
+      int count = args == null ? 0 : args.length;
+      if (count > INLINE_ARGUMENTS) {
+        myTarget.fire(index, null, null, null, null, args);
+      } else {
+        myTarget.fire(index, count > 0 ? args[0] : null, count > 1 ? args[1] : null, count > 2 ? args[2] : null,
+          count > 3 ? args[3] : null, null);
+      }
+      return null;
+    }
+  }
+
+
+  /**
+   * @return non-static methods of the interface that are not methods of Object, one per signature
+   */
+  private static Method[] collectMethods(Class<?> listenerClass) {
+    List<Method> methods = Collections15.arrayList();
+    List<String> signatures = Collections15.arrayList();
+    for (Method method : listenerClass.getMethods()) {
+      if (Modifier.isStatic(method.getModifiers()))
+        continue;
+      try {
+        Object.class.getMethod(method.getName(), method.getParameterTypes());
+        continue;
+      } catch (NoSuchMethodException e) {
+        // not a method of Object
+      }
+      String signature = method.getName() + getDescriptor(method);
+      if (signatures.contains(signature))
+        continue;
+      signatures.add(signature);
+      methods.add(method);
+    }
+    return methods.toArray(new Method[methods.size()]);
+  }
+
+  private static Constructor<?> generate(Class<?> listenerClass, Method[] methods) {
+    if (!listenerClass.isInterface() || !isPublic(listenerClass))
+      return null;
+    for (Method method : methods) {
+      if (!isPublic(method.getDeclaringClass()))
+        return null;
+      for (Class<?> type : method.getParameterTypes()) {
+        if (!isPublic(type))
+          return null;
+      }
+      try {
+        EventDispatcher.class.getDeclaredMethod(method.getName(), method.getParameterTypes());
+        return null;
+      } catch (NoSuchMethodException e) {
+        // no clash
+      }
+    }
+    String className = EventDispatcher.class.getName() + "$" + listenerClass.getSimpleName() + "$" +
+      ourClassCounter.incrementAndGet();
+    try {
+      byte[] bytes = new DispatcherClassWriter(className, listenerClass, methods).write();
+      Class<?> generated = new DispatcherLoader(listenerClass.getClassLoader()).define(className, bytes);
+      return generated.getConstructor(DispatchTarget.class);
+    } catch (Throwable e) {
+      Log.warn("cannot generate dispatcher for " + listenerClass, e);
+      return null;
+    }
+  }
+
+  private static boolean isPublic(Class<?> type) {
+    while (type.isArray()) {
+      type = type.getComponentType();
+    }
+    if (type.isPrimitive())
+      return true;
+    for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+      if (!Modifier.isPublic(c.getModifiers()))
+        return false;
+    }
+    return true;
+  }
+
+  private static String getDescriptor(Method method) {
+    StringBuilder builder = new StringBuilder("(");
+    for (Class<?> type : method.getParameterTypes()) {
+      builder.append(getDescriptor(type));
+    }
+    return builder.append(')').append(getDescriptor(method.getReturnType())).toString();
+  }
+
+  private static String getDescriptor(Class<?> type) {
+    if (type.isArray())
+      return getInternalName(type);
+    if (type.isPrimitive()) {
+      if (type == void.class) return "V";
+      if (type == boolean.class) return "Z";
+      if (type == byte.class) return "B";
+      if (type == char.class) return "C";
+      if (type == short.class) return "S";
+      if (type == int.class) return "I";
+      if (type == long.class) return "J";
+      if (type == float.class) return "F";
+      return "D";
+    }
+    return "L" + getInternalName(type) + ";";
+  }
+
+  private static String getInternalName(Class<?> type) {
+    return type.getName().replace('.', '/');
+  }
+
+
+  /**
+   * Loads classes that a generated class refers to from the class loader of the listener interface, so the
+   * generated class sees the same types as the interface.
+   */
+  private static class DispatcherLoader extends ClassLoader {
+    private final ClassLoader myListenerLoader;
+
+    public DispatcherLoader(ClassLoader listenerLoader) {
+      super(EventDispatcher.class.getClassLoader());
+      myListenerLoader = listenerLoader;
+    }
+
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (myListenerLoader != null && !name.equals(EventDispatcher.class.getName()) &&
+        !name.equals(DispatchTarget.class.getName()))
+      {
+        try {
+          return myListenerLoader.loadClass(name);
+        } catch (ClassNotFoundException e) {
+          // try own loader
+        }
+      }
+      return super.loadClass(name, resolve);
+    }
+
+    public Class<?> define(String name, byte[] bytes) {
+      return defineClass(name, bytes, 0, bytes.length);
+    }
+  }
+
+
+  /**
+   * Writes a class that extends {@link EventDispatcher} and implements a listener interface. The class file version
+   * is 49, so the code needs no stack map frames.
+   */
+  private static class DispatcherClassWriter {
+    private static final String BASE = getInternalName(EventDispatcher.class);
+    private static final String OBJECT = "java/lang/Object";
+    private static final String ARGUMENTS = "Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;" +
+      "[Ljava/lang/Object;";
+    private static final String FIRE = "(I" + ARGUMENTS + ")V";
+    private static final String INVOKE = "(ILjava/lang/Object;" + ARGUMENTS + ")V";
+    private static final String CONSTRUCTOR = "(L" + getInternalName(DispatchTarget.class) + ";)V";
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private final String myClassName;
+    private final Class<?> myListenerClass;
+    private final Method[] myMethods;
+    private final Map<String, Integer> myConstants = Collections15.hashMap();
+    private final Bytes myPool = new Bytes();
+    private int myPoolSize = 1;
+
+    public DispatcherClassWriter(String className, Class<?> listenerClass, Method[] methods) {
+      myClassName = className.replace('.', '/');
+      myListenerClass = listenerClass;
+      myMethods = methods;
+    }
+
+    public byte[] write() {
+      Bytes body = new Bytes();
+      body.u2(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+      body.u2(classConstant(myClassName));
+      body.u2(classConstant(BASE));
+      body.u2(1);
+      body.u2(classConstant(getInternalName(myListenerClass)));
+      body.u2(0);
+      body.u2(myMethods.length + 2);
+      writeConstructor(body);
+      writeInvoke(body);
+      for (int i = 0; i < myMethods.length; i++) {
+        writeListenerMethod(body, i);
+      }
+      body.u2(0);
+
+      Bytes result = new Bytes();
+      result.u4(0xCAFEBABE);
+      result.u2(0);
+      result.u2(49);
+      result.u2(myPoolSize);
+      result.bytes(myPool.toByteArray());
+      result.bytes(body.toByteArray());
+      return result.toByteArray();
+    }
+
+    private void writeConstructor(Bytes body) {
+      Bytes code = new Bytes();
+      code.u1(0x2a); // aload_0
+      code.u1(0x2b); // aload_1
+      code.u1(0xb7); // invokespecial
+      code.u2(methodConstant(BASE, "<init>", CONSTRUCTOR));
+      code.u1(0xb1); // return
+      writeMethod(body, "<init>", CONSTRUCTOR, code, 2, 2);
+    }
+
+    /**
+     * invoke(method, listener, a0, a1, a2, a3, args): switch on method; each case casts the listener and the
+     * arguments and calls the listener method
+     */
+    private void writeInvoke(Bytes body) {
+      Bytes code = new Bytes();
+      int maxStack = 1;
+      if (myMethods.length > 0) {
+        code.u1(0x1b); // iload_1
+        int switchStart = code.size();
+        code.u1(0xaa); // tableswitch
+        while (code.size() % 4 != 0) {
+          code.u1(0);
+        }
+        int defaultOffset = code.size();
+        code.u4(0);
+        code.u4(0);
+        code.u4(myMethods.length - 1);
+        int caseOffsets = code.size();
+        for (Method ignored : myMethods) {
+          code.u4(0);
+        }
+        for (int i = 0; i < myMethods.length; i++) {
+          code.setU4(caseOffsets + 4 * i, code.size() - switchStart);
+          Method method = myMethods[i];
+          Class<?>[] parameters = method.getParameterTypes();
+          code.u1(0x2c); // aload_2
+          code.u1(0xc0); // checkcast
+          code.u2(classConstant(getInternalName(myListenerClass)));
+          int stack = 1;
+          for (int j = 0; j < parameters.length; j++) {
+            if (parameters.length <= INLINE_ARGUMENTS) {
+              loadLocal(code, 'L', 3 + j);
+            } else {
+              loadLocal(code, 'L', 7);
+              pushInt(code, j);
+              code.u1(0x32); // aaload
+            }
+            maxStack = Math.max(maxStack, stack + 2);
+            unbox(code, parameters[j]);
+            stack += getSize(parameters[j]);
+          }
+          maxStack = Math.max(maxStack, stack);
+          code.u1(0xb9); // invokeinterface
+          code.u2(interfaceMethodConstant(getInternalName(myListenerClass), method.getName(), getDescriptor(method)));
+          code.u1(stack);
+          code.u1(0);
+          int result = getSize(method.getReturnType());
+          if (result == 1)
+            code.u1(0x57); // pop
+          else if (result == 2)
+            code.u1(0x58); // pop2
+          maxStack = Math.max(maxStack, result);
+          code.u1(0xb1); // return
+        }
+        code.setU4(defaultOffset, code.size() - switchStart);
+      }
+      code.u1(0xb1); // return
+      writeMethod(body, "invoke", INVOKE, code, maxStack, 8);
+    }
+
+    /**
+     * Interface method: this.fire(index, arguments)
+     */
+    private void writeListenerMethod(Bytes body, int index) {
+      Method method = myMethods[index];
+      Class<?>[] parameters = method.getParameterTypes();
+      Bytes code = new Bytes();
+      code.u1(0x2a); // aload_0
+      pushInt(code, index);
+      int local = 1;
+      if (parameters.length <= INLINE_ARGUMENTS) {
+        for (Class<?> parameter : parameters) {
+          local = loadParameter(code, parameter, local);
+        }
+        for (int j = parameters.length; j <= INLINE_ARGUMENTS; j++) {
+          code.u1(0x01); // aconst_null
+        }
+      } else {
+        for (int j = 0; j < INLINE_ARGUMENTS; j++) {
+          code.u1(0x01); // aconst_null
+        }
+        pushInt(code, parameters.length);
+        code.u1(0xbd); // anewarray
+        code.u2(classConstant(OBJECT));
+        for (int j = 0; j < parameters.length; j++) {
+          code.u1(0x59); // dup
+          pushInt(code, j);
+          local = loadParameter(code, parameters[j], local);
+          code.u1(0x53); // aastore
+        }
+      }
+      code.u1(0xb6); // invokevirtual
+      code.u2(methodConstant(BASE, "fire", FIRE));
+      Class<?> returnType = method.getReturnType();
+      if (returnType == void.class) {
+        code.u1(0xb1); // return
+      } else if (!returnType.isPrimitive()) {
+        code.u1(0x01); // aconst_null
+        code.u1(0xb0); // areturn
+      } else if (returnType == long.class) {
+        code.u1(0x09); // lconst_0
+        code.u1(0xad); // lreturn
+      } else if (returnType == float.class) {
+        code.u1(0x0b); // fconst_0
+        code.u1(0xae); // freturn
+      } else if (returnType == double.class) {
+        code.u1(0x0e); // dconst_0
+        code.u1(0xaf); // dreturn
+      } else {
+        code.u1(0x03); // iconst_0
+        code.u1(0xac); // ireturn
+      }
+      // this, index, 5 arguments, and a long argument or an array being filled with one
+      writeMethod(body, method.getName(), getDescriptor(method), code, 12, Math.max(local, 2));
+    }
+
+    private void writeMethod(Bytes body, String name, String descriptor, Bytes code, int maxStack, int maxLocals) {
+      body.u2(ACC_PUBLIC);
+      body.u2(utf8Constant(name));
+      body.u2(utf8Constant(descriptor));
+      body.u2(1);
+      body.u2(utf8Constant("Code"));
+      body.u4(12 + code.size());
+      body.u2(maxStack);
+      body.u2(maxLocals);
+      body.u4(code.size());
+      body.bytes(code.toByteArray());
+      body.u2(0);
+      body.u2(0);
+    }
+
+    /**
+     * Loads a parameter of an interface method and boxes it if it is primitive
+     *
+     * @return the local variable of the next parameter
+     */
+    private int loadParameter(Bytes code, Class<?> type, int local) {
+      if (!type.isPrimitive()) {
+        loadLocal(code, 'L', local);
+        return local + 1;
+      }
+      char descriptor = getDescriptor(type).charAt(0);
+      loadLocal(code, descriptor, local);
+      String box = getInternalName(getBox(type));
+      code.u1(0xb8); // invokestatic
+      code.u2(methodConstant(box, "valueOf", "(" + descriptor + ")L" + box + ";"));
+      return local + getSize(type);
+    }
+
+    private void unbox(Bytes code, Class<?> type) {
+      if (type == Object.class)
+        return;
+      if (!type.isPrimitive()) {
+        code.u1(0xc0); // checkcast
+        code.u2(classConstant(getInternalName(type)));
+        return;
+      }
+      String box = getInternalName(getBox(type));
+      code.u1(0xc0); // checkcast
+      code.u2(classConstant(box));
+      code.u1(0xb6); // invokevirtual
+      code.u2(methodConstant(box, type.getName() + "Value", "()" + getDescriptor(type)));
+    }
+
+    private static Class<?> getBox(Class<?> type) {
+      if (type == boolean.class) return Boolean.class;
+      if (type == byte.class) return Byte.class;
+      if (type == char.class) return Character.class;
+      if (type == short.class) return Short.class;
+      if (type == int.class) return Integer.class;
+      if (type == long.class) return Long.class;
+      if (type == float.class) return Float.class;
+      return Double.class;
+    }
+
+    private static int getSize(Class<?> type) {
+      if (type == void.class) return 0;
+      if (type == long.class || type == double.class) return 2;
+      return 1;
+    }
+
+    private static void loadLocal(Bytes code, char descriptor, int local) {
+      int opcode;
+      switch (descriptor) {
+      case 'J': opcode = 0x16; break; // lload
+      case 'F': opcode = 0x17; break; // fload
+      case 'D': opcode = 0x18; break; // dload
+      case 'L': opcode = 0x19; break; // aload
+      default: opcode = 0x15; // iload
+      }
+      if (local > 255) {
+        code.u1(0xc4); // wide
+        code.u1(opcode);
+        code.u2(local);
+      } else {
+        code.u1(opcode);
+        code.u1(local);
+      }
+    }
+
+    private void pushInt(Bytes code, int value) {
+      if (value <= 5) {
+        code.u1(0x03 + value); // iconst_<n>
+      } else if (value <= Byte.MAX_VALUE) {
+        code.u1(0x10); // bipush
+        code.u1(value);
+      } else if (value <= Short.MAX_VALUE) {
+        code.u1(0x11); // sipush
+        code.u2(value);
+      } else {
+        code.u1(0x13); // ldc_w
+        code.u2(intConstant(value));
+      }
+    }
+
+    private int utf8Constant(String value) {
+      String key = "1:" + value;
+      Integer index = myConstants.get(key);
+      if (index != null)
+        return index;
+      myPool.u1(1);
+      myPool.utf8(value);
+      return addConstant(key, 1);
+    }
+
+    private int intConstant(int value) {
+      String key = "3:" + value;
+      Integer index = myConstants.get(key);
+      if (index != null)
+        return index;
+      myPool.u1(3);
+      myPool.u4(value);
+      return addConstant(key, 1);
+    }
+
+    private int classConstant(String internalName) {
+      String key = "7:" + internalName;
+      Integer index = myConstants.get(key);
+      if (index != null)
+        return index;
+      int name = utf8Constant(internalName);
+      myPool.u1(7);
+      myPool.u2(name);
+      return addConstant(key, 1);
+    }
+
+    private int methodConstant(String owner, String name, String descriptor) {
+      return memberConstant(10, owner, name, descriptor);
+    }
+
+    private int interfaceMethodConstant(String owner, String name, String descriptor) {
+      return memberConstant(11, owner, name, descriptor);
+    }
+
+    private int memberConstant(int tag, String owner, String name, String descriptor) {
+      String key = tag + ":" + owner + "." + name + descriptor;
+      Integer index = myConstants.get(key);
+      if (index != null)
+        return index;
+      int ownerIndex = classConstant(owner);
+      int nameAndType = nameAndTypeConstant(name, descriptor);
+      myPool.u1(tag);
+      myPool.u2(ownerIndex);
+      myPool.u2(nameAndType);
+      return addConstant(key, 1);
+    }
+
+    private int nameAndTypeConstant(String name, String descriptor) {
+      String key = "12:" + name + ":" + descriptor;
+      Integer index = myConstants.get(key);
+      if (index != null)
+        return index;
+      int nameIndex = utf8Constant(name);
+      int descriptorIndex = utf8Constant(descriptor);
+      myPool.u1(12);
+      myPool.u2(nameIndex);
+      myPool.u2(descriptorIndex);
+      return addConstant(key, 1);
+    }
+
+    private int addConstant(String key, int size) {
+      int index = myPoolSize;
+      myPoolSize += size;
+      myConstants.put(key, index);
+      return index;
+    }
+  }
+
+
+  private static class Bytes extends ByteArrayOutputStream {
+    public void u1(int value) {
+      write(value);
+    }
+
+    public void u2(int value) {
+      write(value >>> 8);
+      write(value);
+    }
+
+    public void u4(int value) {
+      u2(value >>> 16);
+      u2(value);
+    }
+
+    public void setU4(int offset, int value) {
+      buf[offset] = (byte) (value >>> 24);
+      buf[offset + 1] = (byte) (value >>> 16);
+      buf[offset + 2] = (byte) (value >>> 8);
+      buf[offset + 3] = (byte) value;
+    }
+
+    public void bytes(byte[] bytes) {
+      write(bytes, 0, bytes.length);
+    }
+
+    public void utf8(String value) {
+      ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        if (c >= 1 && c <= 0x7f) {
+          encoded.write(c);
+        } else if (c <= 0x7ff) {
+          encoded.write(0xc0 | (c >> 6));
+          encoded.write(0x80 | (c & 0x3f));
+        } else {
+          encoded.write(0xe0 | (c >> 12));
+          encoded.write(0x80 | ((c >> 6) & 0x3f));
+          encoded.write(0x80 | (c & 0x3f));
+        }
+      }
+      u2(encoded.size());
+      bytes(encoded.toByteArray());
+    }
+  }
+}
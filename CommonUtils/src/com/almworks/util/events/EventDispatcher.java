@@ -0,0 +1,29 @@
+package com.almworks.util.events;
+
+/**
+ * Base class of the dispatchers that {@link DispatcherFactory} generates for listener interfaces. A generated
+ * dispatcher implements the listener interface by passing the index of the called method and its arguments to the
+ * {@link DispatchTarget}, and calls a method of the interface on a listener by index, without reflection.
+ * <p>
+ * The class is public only because generated classes are defined by their own class loaders.
+ */
+public abstract class EventDispatcher {
+  private final DispatchTarget myTarget;
+
+  protected EventDispatcher(DispatchTarget target) {
+    myTarget = target;
+  }
+
+  protected final void fire(int method, Object a0, Object a1, Object a2, Object a3, Object[] args) {
+    myTarget.fire(method, a0, a1, a2, a3, args);
+  }
+
+  final DispatchTarget getTarget() {
+    return myTarget;
+  }
+
+  /**
+   * Calls a method of the listener interface. Arguments are passed as to {@link DispatchTarget#fire}.
+   */
+  public abstract void invoke(int method, Object listener, Object a0, Object a1, Object a2, Object a3, Object[] args);
+}
@@ -1,23 +1,23 @@
 package com.almworks.util.events;
 
-import com.almworks.util.BaseInvocationHandler;
 import com.almworks.util.Pair;
 import com.almworks.util.commons.Condition;
 import com.almworks.util.exec.ThreadGate;
-import org.almworks.util.Collections15;
 import org.almworks.util.Log;
 import org.almworks.util.detach.Lifespan;
 
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
-import java.util.Iterator;
-import java.util.List;
-
 public class FireEventSupport <L> extends EventSource<L> {
+  private static final FireEventSupport[] NO_CHAINED = {};
+
   protected final Class<L> myListenerClass;
   protected final FiringStrategy<L> myStrategy;
   protected final L myDispatcher;
-  protected List<FireEventSupport<L>> myChained;
+  private final ListenerInvoker myInvoker;
+
+  /**
+   * Copy-on-write array of chained supports
+   */
+  private volatile FireEventSupport<L>[] myChained = NO_CHAINED;
 
   protected FireEventSupport(Class<L> listenerClass, FiringStrategy<L> strategy) {
     if (listenerClass == null)
@@ -26,6 +26,7 @@ protected FireEventSupport(Class<L> listenerClass, FiringStrategy<L> strategy) {
       throw new NullPointerException("strategy");
     myListenerClass = listenerClass;
     myStrategy = strategy;
+    myInvoker = DispatcherFactory.getInvoker(listenerClass);
     myDispatcher = createDispatcher(listenerClass);
   }
 
@@ -76,15 +77,26 @@ public void removeFirstListener(Condition<L> condition) {
   public synchronized void addChainedSource(EventSource<L> eventSource) {
     if (!(eventSource instanceof FireEventSupport))
       throw new IllegalArgumentException(eventSource.toString());
-    if (myChained == null)
-      myChained = Collections15.arrayList();
-    myChained.add((FireEventSupport<L>) eventSource);
+    if (((FireEventSupport<L>) eventSource).myListenerClass != myListenerClass)
+      throw new IllegalArgumentException(eventSource + " " + myListenerClass);
+    FireEventSupport<L>[] chained = myChained;
+    FireEventSupport<L>[] added = new FireEventSupport[chained.length + 1];
+    System.arraycopy(chained, 0, added, 0, chained.length);
+    added[chained.length] = (FireEventSupport<L>) eventSource;
+    myChained = added;
   }
 
   public synchronized void removeChainedSource(EventSource<L> eventSource) {
-    if (myChained == null)
-      return;
-    myChained.remove(eventSource);
+    FireEventSupport<L>[] chained = myChained;
+    for (int i = 0; i < chained.length; i++) {
+      if (chained[i].equals(eventSource)) {
+        FireEventSupport<L>[] removed = new FireEventSupport[chained.length - 1];
+        System.arraycopy(chained, 0, removed, 0, i);
+        System.arraycopy(chained, i + 1, removed, i, chained.length - i - 1);
+        myChained = removed;
+        return;
+      }
+    }
   }
 
   public L getDispatcher() {
@@ -110,18 +122,15 @@ public L getDispatcherSnapshot() {
    * has been called.
    */
   public L getDispatcherSnapshot(final ProcessingLock processingLock) {
-    L result = (L) Proxy.newProxyInstance(myListenerClass.getClassLoader(), new Class[]{myListenerClass}, new BaseInvocationHandler() {
-      private final Pair[] myCopiedListeners = getListeners();
-      private final Object[] myCopiedChainedDispatchers = getChainedDispatchers(true, processingLock);
-
-      protected Object invokeTarget(Method method, Object[] args) {
-        Object result = myStrategy.fireFromDipatcherSnapshot(myCopiedListeners, method, args, processingLock);
-        if (myCopiedChainedDispatchers != null)
-          fireChained(myCopiedChainedDispatchers, method, args);
-        return result;
+    final Pair[] listeners = getListeners();
+    final DispatchTarget[] chained = getChainedSnapshots(processingLock);
+    L result = DispatcherFactory.createDispatcher(myListenerClass, new DispatchTarget() {
+      public void fire(int method, Object a0, Object a1, Object a2, Object a3, Object[] args) {
+        myStrategy.fireFromDipatcherSnapshot(listeners, myInvoker, method, a0, a1, a2, a3, args, processingLock);
+        if (chained != null)
+          fireChained(chained, method, a0, a1, a2, a3, args);
       }
     });
-
     return myStrategy.returningDispatcherSnapshot(result);
   }
 
@@ -138,39 +147,56 @@ public void noMoreEvents() {
   }
 
   private L createDispatcher(Class<L> listenerClass) {
-    return (L) Proxy.newProxyInstance(listenerClass.getClassLoader(), new Class[]{listenerClass}, new BaseInvocationHandler() {
-      protected Object invokeTarget(Method method, Object[] args) {
-        Object result = myStrategy.fireFromDispatcher(getListeners(), method, args);
-        if (myChained != null && myChained.size() > 0)
-          fireChained(getChainedDispatchers(false, ProcessingLock.DUMMY), method, args);
-        return result;
+    return DispatcherFactory.createDispatcher(listenerClass, new DispatchTarget() {
+      public void fire(int method, Object a0, Object a1, Object a2, Object a3, Object[] args) {
+        dispatch(method, a0, a1, a2, a3, args);
       }
     });
   }
 
-  private void fireChained(Object[] dispatchers, Method method, Object[] args) {
-    if (dispatchers == null)
-      return;
-    for (int i = 0; i < dispatchers.length; i++) {
-      Object dispatcher = dispatchers[i];
+  /**
+   * Does what a call to the {@link #getDispatcher dispatcher} does. Chained supports are fired directly rather than
+   * through their dispatchers. Arguments are passed as to {@link DispatchTarget#fire}, so nothing is allocated.
+   */
+  private void dispatch(int method, Object a0, Object a1, Object a2, Object a3, Object[] args) {
+    myStrategy.fireFromDispatcher(getListeners(), myInvoker, method, a0, a1, a2, a3, args);
+    FireEventSupport<L>[] chained = myChained;
+    for (FireEventSupport<L> support : chained) {
+      try {
+        support.dispatch(method, a0, a1, a2, a3, args);
+      } catch (Throwable e) {
+        Log.warn(e);
+      }
+    }
+  }
+
+  private static void fireChained(DispatchTarget[] targets, int method, Object a0, Object a1, Object a2, Object a3,
+    Object[] args)
+  {
+    for (DispatchTarget target : targets) {
+      if (target == null)
+        continue;
       try {
-        method.invoke(dispatcher, args);
+        target.fire(method, a0, a1, a2, a3, args);
       } catch (Exception e) {
         Log.warn(e);
       }
     }
   }
 
-  private Object[] getChainedDispatchers(boolean takeSnapshot, ProcessingLock processingLock) {
-    if (myChained == null || myChained.size() == 0)
+  /**
+   * @return targets of the snapshot dispatchers of the chained supports, null for those that return no dispatcher
+   */
+  private DispatchTarget[] getChainedSnapshots(ProcessingLock processingLock) {
+    FireEventSupport<L>[] chained = myChained;
+    if (chained.length == 0)
       return null;
-    Object[] dispatchers = new Object[myChained.size()];
-    int i = 0;
-    for (Iterator<FireEventSupport<L>> ii = myChained.iterator(); ii.hasNext();) {
-      FireEventSupport<L> eventSupport = ii.next();
-      dispatchers[i++] = takeSnapshot ? eventSupport.getDispatcherSnapshot(processingLock) : eventSupport.getDispatcher();
+    DispatchTarget[] targets = new DispatchTarget[chained.length];
+    for (int i = 0; i < chained.length; i++) {
+      L dispatcher = chained[i].getDispatcherSnapshot(processingLock);
+      targets[i] = dispatcher == null ? null : DispatcherFactory.getTarget(dispatcher);
     }
-    return dispatchers;
+    return targets;
   }
 
   private final Pair[] getListeners() {
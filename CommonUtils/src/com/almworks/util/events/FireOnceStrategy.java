@@ -4,8 +4,6 @@
 import com.almworks.util.exec.ThreadGate;
 import org.almworks.util.detach.Lifespan;
 
-import java.lang.reflect.Method;
-
 /**
  * :todoc:
  *
@@ -27,21 +25,23 @@ public L returningDispatcherSnapshot(L dispatcher) {
     return result;
   }
 
-  public Object fireFromDispatcher(Pair[] listeners, Method method, Object[] args) {
+  public Object fireFromDispatcher(Pair[] listeners, ListenerInvoker invoker, int method, Object a0, Object a1,
+    Object a2, Object a3, Object[] args)
+  {
     if (!myDelegate.checkFire())
       return null;
     myDelegate.noMoreEvents();
-    myDelegate.doDispatch(listeners, method, args, ProcessingLock.DUMMY);
+    myDelegate.doDispatch(listeners, invoker, method, a0, a1, a2, a3, args, ProcessingLock.DUMMY);
     return null;
   }
 
-  public Object fireFromDipatcherSnapshot(Pair[] listeners, Method method, Object[] args,
-    ProcessingLock processingLock)
+  public Object fireFromDipatcherSnapshot(Pair[] listeners, ListenerInvoker invoker, int method, Object a0,
+    Object a1, Object a2, Object a3, Object[] args, ProcessingLock processingLock)
   {
     assert myDelegate.isNoMoreEvents();
     if (!mySnapshotDispatched) {
       mySnapshotDispatched = true;
-      myDelegate.doDispatch(listeners, method, args, processingLock);
+      myDelegate.doDispatch(listeners, invoker, method, a0, a1, a2, a3, args, processingLock);
     }
     return null;
   }
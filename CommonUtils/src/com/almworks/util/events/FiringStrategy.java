@@ -4,18 +4,20 @@
 import com.almworks.util.exec.ThreadGate;
 import org.almworks.util.detach.Lifespan;
 
-import java.lang.reflect.Method;
-
 /**
  * :todoc:
  *
  * @author sereda
  */
 public interface FiringStrategy <L> {
-  Object fireFromDispatcher(Pair/*<L, ThreadGate>*/[] listeners, Method method, Object[] args);
-
-  Object fireFromDipatcherSnapshot(Pair/*<L, ThreadGate>*/[] listeners, Method method, Object[] args,
-    ProcessingLock processingLock);
+  /**
+   * Arguments of the listener method are passed as to {@link DispatchTarget#fire}.
+   */
+  Object fireFromDispatcher(Pair/*<L, ThreadGate>*/[] listeners, ListenerInvoker invoker, int method, Object a0,
+    Object a1, Object a2, Object a3, Object[] args);
+
+  Object fireFromDipatcherSnapshot(Pair/*<L, ThreadGate>*/[] listeners, ListenerInvoker invoker, int method,
+    Object a0, Object a1, Object a2, Object a3, Object[] args, ProcessingLock processingLock);
 
   L returningDispatcher(L dispatcher);
 
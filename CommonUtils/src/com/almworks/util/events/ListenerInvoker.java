@@ -0,0 +1,51 @@
+package com.almworks.util.events;
+
+import java.lang.reflect.Method;
+
+/**
+ * Calls methods of a listener interface by their indexes. Arguments are passed as to {@link DispatchTarget#fire}.
+ */
+final class ListenerInvoker {
+  private final Method[] myMethods;
+  /**
+   * Generated dispatcher with no target, or null if methods are called with reflection
+   */
+  private final EventDispatcher myGenerated;
+
+  ListenerInvoker(Method[] methods, EventDispatcher generated) {
+    myMethods = methods;
+    myGenerated = generated;
+  }
+
+  public Method getMethod(int method) {
+    return myMethods[method];
+  }
+
+  public boolean isGenerated() {
+    return myGenerated != null;
+  }
+
+  public void invoke(int method, Object listener, Object a0, Object a1, Object a2, Object a3, Object[] args)
+    throws Exception
+  {
+    if (myGenerated != null)
+      myGenerated.invoke(method, listener, a0, a1, a2, a3, args);
+    else
+      myMethods[method].invoke(listener, getArguments(method, a0, a1, a2, a3, args));
+  }
+
+  /**
+   * @return arguments of a call in an array, for reflection and event debugging
+   */
+  public Object[] getArguments(int method, Object a0, Object a1, Object a2, Object a3, Object[] args) {
+    if (args != null)
+      return args;
+    int count = myMethods[method].getParameterTypes().length;
+    Object[] result = new Object[count];
+    if (count > 0) result[0] = a0;
+    if (count > 1) result[1] = a1;
+    if (count > 2) result[2] = a2;
+    if (count > 3) result[3] = a3;
+    return result;
+  }
+}
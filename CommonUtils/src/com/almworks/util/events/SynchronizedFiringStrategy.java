@@ -1,6 +1,5 @@
 package com.almworks.util.events;
 
-import com.almworks.util.Pair;
 import com.almworks.util.exec.ThreadGate;
 import org.almworks.util.detach.Lifespan;
 
@@ -58,21 +57,9 @@ public void removeListener(L listener) {
     }
   }
 
-  public Pair[] getListeners() {
-    synchronized (myLock) {
-      return super.getListeners();
-    }
-  }
-
   public void noMoreEvents() {
     synchronized (myLock) {
       super.noMoreEvents();
     }
   }
-
-  public int getListenersCount() {
-    synchronized (myLock) {
-      return super.getListenersCount();
-    }
-  }
 }
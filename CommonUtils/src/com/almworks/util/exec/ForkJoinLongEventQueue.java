@@ -0,0 +1,486 @@
+package com.almworks.util.exec;
+
+import org.almworks.util.*;
+import org.jetbrains.annotations.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LongEventQueue that runs tasks on a work-stealing {@link ForkJoinPool}. Tasks with the same sequence key are kept
+ * in a mailbox, which is scheduled on the pool while it is not empty, so they are run one by one in FIFO order, while
+ * tasks with different keys are run in parallel. There's no watcher: a task that runs for long blocks only its own key.
+ * <p>
+ * Queue depth is always counted; latency (time from enqueueing to start of a task) and duration of tasks are measured
+ * if {@link LongEventQueueEnv#getMetrics()} is on.
+ */
+public class ForkJoinLongEventQueue extends LongEventQueue {
+  /**
+   * Maximum number of tasks run in one turn of a mailbox before it yields the worker to other mailboxes
+   */
+  private static final int MAILBOX_BATCH = 16;
+
+  private static int myInstanceCount = 0;
+  private final String myName;
+  private volatile boolean myNotAliveWarned;
+
+  // sequencing
+  private final TypedKey<Object> myLongEventSequenceKeyKey;
+  private final Object myDefaultSequenceKey = new Object();
+  private final ConcurrentMap<Object, Mailbox> myMailboxes = new ConcurrentHashMap<Object, Mailbox>();
+
+  // global gates
+  private final ImmediateThreadGate myKeylessImmediateGate = new ImmediateLongEventGate(null);
+  private final ThreadGate myKeylessOptimalGate = new NonImmediateLongEventGate(null, true);
+  private final ThreadGate myKeylessQueuedGate = new NonImmediateLongEventGate(null, false);
+
+  // settings
+  private final boolean myDebug;
+  private final boolean myMetrics;
+  private final long myDebugStatPeriod;
+  private final long myMinIntervalBetweenWarnings;
+  private final long myNormalTaskDuration;
+
+  private final ForkJoinPool myPool;
+  @Nullable
+  private final ContextFrame myTopFrame;
+  private volatile boolean myStopped = false;
+
+  // metrics
+  private final AtomicInteger myQueueDepth = new AtomicInteger();
+  private final AtomicLong myTaskCount = new AtomicLong();
+  private final AtomicLong myTotalLatency = new AtomicLong();
+  private final AtomicLong myMaxLatency = new AtomicLong();
+  private final AtomicLong myTotalDuration = new AtomicLong();
+  private final AtomicLong myMaxDuration = new AtomicLong();
+  private final AtomicLong myLastDebugOutput = new AtomicLong();
+  private final AtomicLong myLastSlowTaskWarning = new AtomicLong();
+
+  public ForkJoinLongEventQueue(LongEventQueueEnv env) {
+    myNormalTaskDuration = env.getNormalTaskDuration();
+    myDebugStatPeriod = env.getDebugStatPeriod();
+    myMinIntervalBetweenWarnings = env.getMinIntervalBetweenWarnings();
+    myDebug = env.getDebug();
+    myMetrics = env.getMetrics();
+
+    myName = getNextName();
+    myLongEventSequenceKeyKey = TypedKey.create(myName + ".SK");
+    myTopFrame = Context.getTopFrame();
+    int parallelism = env.getSingleThread() ? 1 : Math.max(1, env.getMaxThreads());
+    myPool = new ForkJoinPool(parallelism, new WorkerFactory(), null, true);
+  }
+
+  public ForkJoinLongEventQueue() {
+    this(new LongEventQueueEnv());
+  }
+
+  protected ImmediateThreadGate getImmediateGate(@Nullable Object key) {
+    if (!checkAlive()) {
+      return ThreadGate.STRAIGHT;
+    }
+    return key == null ? myKeylessImmediateGate : new ImmediateLongEventGate(key);
+  }
+
+  protected ThreadGate getNonImmediateGate(@Nullable Object key, boolean optimal) {
+    if (!checkAlive()) {
+      return ThreadGate.STRAIGHT;
+    }
+    if (key == null) {
+      return optimal ? myKeylessOptimalGate : myKeylessQueuedGate;
+    } else {
+      return new NonImmediateLongEventGate(key, optimal);
+    }
+  }
+
+  /**
+   * Lets the enqueued tasks finish, new tasks are not accepted.
+   */
+  public void shutdownGracefully() {
+    if (!checkAlive()) {
+      return;
+    }
+    myStopped = true;
+    log("shutting down gracefully");
+    myPool.shutdown();
+  }
+
+  public void shutdownImmediately() {
+    if (!checkAlive()) {
+      return;
+    }
+    myStopped = true;
+    log("shutting down immediately");
+    myPool.shutdownNow();
+    myMailboxes.clear();
+  }
+
+  public boolean isAlive() {
+    return !myStopped;
+  }
+
+  /**
+   * @return number of tasks that are enqueued and not started yet
+   */
+  public int getQueueDepth() {
+    return myQueueDepth.get();
+  }
+
+  /**
+   * @return number of sequence keys that have tasks enqueued or running
+   */
+  public int getActiveKeyCount() {
+    return myMailboxes.size();
+  }
+
+  /**
+   * @return number of finished tasks
+   */
+  public long getTaskCount() {
+    return myTaskCount.get();
+  }
+
+  /**
+   * @return average time between enqueueing and start of a task in milliseconds, 0 if metrics are off
+   */
+  public long getAverageLatency() {
+    long count = myTaskCount.get();
+    return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(myTotalLatency.get() / count);
+  }
+
+  /**
+   * @return maximum time between enqueueing and start of a task in milliseconds, 0 if metrics are off
+   */
+  public long getMaxLatency() {
+    return TimeUnit.NANOSECONDS.toMillis(myMaxLatency.get());
+  }
+
+  /**
+   * @return average running time of a task in milliseconds, 0 if metrics are off
+   */
+  public long getAverageDuration() {
+    long count = myTaskCount.get();
+    return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(myTotalDuration.get() / count);
+  }
+
+  /**
+   * @return maximum running time of a task in milliseconds, 0 if metrics are off
+   */
+  public long getMaxDuration() {
+    return TimeUnit.NANOSECONDS.toMillis(myMaxDuration.get());
+  }
+
+  public String getStats() {
+    if (myStopped)
+      return "<shutting down>";
+    StringBuilder r = new StringBuilder();
+    r.append("[depth: ").append(getQueueDepth()).append("; keys: ").append(getActiveKeyCount());
+    r.append("; threads: ").append(myPool.getPoolSize()).append("; tasks: ").append(getTaskCount());
+    if (myMetrics) {
+      r.append("; latency avg/max: ").append(getAverageLatency()).append('/').append(getMaxLatency()).append("ms");
+      r.append("; duration avg/max: ").append(getAverageDuration()).append('/').append(getMaxDuration()).append("ms");
+    }
+    return r.append(']').toString();
+  }
+
+  public String toString() {
+    return myName;
+  }
+
+  private boolean checkAlive() {
+    boolean result = isAlive();
+    if (!result) {
+      assert false : this;
+      if (!myNotAliveWarned) {
+        warn("not alive, not serving further requests");
+        myNotAliveWarned = true;
+      }
+    }
+    return result;
+  }
+
+  private boolean enqueue(Task task) {
+    if (myStopped) {
+      log("(shutting down)   task " + task + " is not enqueued");
+      return false;
+    }
+    Object key = task.getSequenceKey();
+    while (true) {
+      Mailbox mailbox = myMailboxes.get(key);
+      if (mailbox == null) {
+        Mailbox created = new Mailbox(key);
+        mailbox = myMailboxes.putIfAbsent(key, created);
+        if (mailbox == null)
+          mailbox = created;
+      }
+      if (mailbox.offer(task))
+        return true;
+      // the mailbox has just drained and left the map
+    }
+  }
+
+  private void schedule(Mailbox mailbox) {
+    try {
+      myPool.execute(mailbox);
+    } catch (RejectedExecutionException e) {
+      myMailboxes.remove(mailbox.getKey(), mailbox);
+      log("(shutting down)   " + mailbox + " is not scheduled");
+    }
+  }
+
+  private void runTask(Task task) {
+    long start = myMetrics ? System.nanoTime() : 0;
+    if (myMetrics)
+      updateMax(myMaxLatency, accumulate(myTotalLatency, start - task.getEnqueued()));
+    Runnable runnable = task.getRunnable();
+    Thread.currentThread().setContextClassLoader(runnable.getClass().getClassLoader());
+    try {
+      runnable.run();
+    } catch (Throwable e) {
+      if (e instanceof ThreadDeath)
+        throw ((ThreadDeath) e);
+      Log.error(task, e);
+    } finally {
+      myTaskCount.incrementAndGet();
+      if (myMetrics)
+        afterTaskFinish(task, System.nanoTime() - start);
+    }
+  }
+
+  private void afterTaskFinish(Task task, long duration) {
+    updateMax(myMaxDuration, accumulate(myTotalDuration, duration));
+    long now = System.currentTimeMillis();
+    if (duration > TimeUnit.MILLISECONDS.toNanos(myNormalTaskDuration)) {
+      long last = myLastSlowTaskWarning.get();
+      if (now > last + myMinIntervalBetweenWarnings && myLastSlowTaskWarning.compareAndSet(last, now))
+        warn(task + " took " + TimeUnit.NANOSECONDS.toMillis(duration) + "ms " + getStats());
+    }
+    long lastOutput = myLastDebugOutput.get();
+    if (myDebugStatPeriod > 0 && now - lastOutput > myDebugStatPeriod && myLastDebugOutput.compareAndSet(lastOutput, now))
+      Log.debug(myName + ": " + getStats());
+  }
+
+  private static long accumulate(AtomicLong total, long value) {
+    total.addAndGet(value);
+    return value;
+  }
+
+  private static void updateMax(AtomicLong max, long value) {
+    while (true) {
+      long current = max.get();
+      if (value <= current || max.compareAndSet(current, value))
+        return;
+    }
+  }
+
+  private void warn(String message) {
+    Log.warn(myName + ": " + message);
+  }
+
+  private void log(String message) {
+    if (myDebug) {
+      Log.debug(myName + ": " + message);
+    }
+  }
+
+  private static synchronized String getNextName() {
+    return "LongEventQueue#" + (++myInstanceCount);
+  }
+
+
+  private final class Task {
+    @NotNull
+    private final Runnable myRunnable;
+    @NotNull
+    private final Object mySequenceKey;
+    private final long myEnqueued;
+
+    public Task(@NotNull Runnable runnable, @NotNull Object sequenceKey) {
+      myRunnable = runnable;
+      mySequenceKey = sequenceKey;
+      myEnqueued = myMetrics ? System.nanoTime() : 0;
+    }
+
+    @NotNull
+    public Runnable getRunnable() {
+      return myRunnable;
+    }
+
+    @NotNull
+    public Object getSequenceKey() {
+      return mySequenceKey;
+    }
+
+    public long getEnqueued() {
+      return myEnqueued;
+    }
+
+    public String toString() {
+      return "task [" + mySequenceKey + "]:[" + myRunnable + "]";
+    }
+  }
+
+
+  /**
+   * Tasks of one sequence key. Is in the pool while it has tasks, and leaves {@link #myMailboxes} when it becomes
+   * empty; a dead mailbox doesn't accept tasks, so they go to a new one.
+   */
+  private final class Mailbox implements Runnable {
+    private final Object myKey;
+    private final ArrayDeque<Task> myTasks = new ArrayDeque<Task>();
+    private boolean myScheduled;
+    private boolean myDead;
+
+    public Mailbox(Object key) {
+      myKey = key;
+    }
+
+    public Object getKey() {
+      return myKey;
+    }
+
+    public boolean offer(Task task) {
+      synchronized (this) {
+        if (myDead)
+          return false;
+        myTasks.addLast(task);
+        myQueueDepth.incrementAndGet();
+        if (myScheduled)
+          return true;
+        myScheduled = true;
+      }
+      schedule(this);
+      return true;
+    }
+
+    public void run() {
+      int savepoint = Context.savepoint();
+      ContextFrameDataProvider frame = ContextFrameDataProvider.create(myTopFrame);
+      if (frame != null)
+        Context.add(frame, "FJLEQ:Worker");
+      Context.add(InstanceProvider.instance(myKey, myLongEventSequenceKeyKey), "FJLEQ:Mailbox");
+      try {
+        // after graceful shutdown the pool doesn't accept the mailbox again, so it is drained in one turn
+        for (int i = 0; i < MAILBOX_BATCH || myStopped; i++) {
+          Task task = poll();
+          if (task == null)
+            return;
+          runTask(task);
+          if (Thread.currentThread().isInterrupted() && myStopped) {
+            log(this + " is interrupted, exiting");
+            return;
+          }
+        }
+      } finally {
+        Context.restoreSavepoint(savepoint);
+      }
+      // let other keys have the worker
+      schedule(this);
+    }
+
+    @Nullable
+    private Task poll() {
+      synchronized (this) {
+        Task task = myTasks.pollFirst();
+        if (task != null) {
+          myQueueDepth.decrementAndGet();
+          return task;
+        }
+        myScheduled = false;
+        myDead = true;
+      }
+      myMailboxes.remove(myKey, this);
+      return null;
+    }
+
+    public String toString() {
+      return "mailbox [" + myKey + "]";
+    }
+  }
+
+
+  private final class WorkerFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+    private final AtomicInteger myNextWorkerNumber = new AtomicInteger(1);
+
+    public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+      ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {};
+      thread.setName(myName + ":worker#" + myNextWorkerNumber.getAndIncrement());
+      return thread;
+    }
+  }
+
+
+  private class NonImmediateLongEventGate extends ThreadGate {
+    private final Object myKey;
+    private final boolean myOptimal;
+
+    public NonImmediateLongEventGate(Object key, boolean optimal) {
+      myKey = key;
+      myOptimal = optimal;
+    }
+
+    protected void gate(Runnable runnable) throws InterruptedException, InvocationTargetException {
+      Object key = myKey != null ? myKey : Context.get(myLongEventSequenceKeyKey, myDefaultSequenceKey);
+      if (myOptimal && !Context.isAWT() && key.equals(Context.get(myLongEventSequenceKeyKey))) {
+        runnable.run();
+      } else {
+        enqueue(new Task(runnable, key));
+      }
+    }
+
+    protected Target getTarget() {
+      return Target.LONG;
+    }
+
+    protected Type getType() {
+      return myOptimal ? Type.OPTIMAL : Type.QUEUED;
+    }
+  }
+
+
+  private class ImmediateLongEventGate extends ImmediateThreadGate {
+    @Nullable
+    private final Object myKey;
+
+    public ImmediateLongEventGate(@Nullable Object key) {
+      myKey = key;
+    }
+
+    protected void gate(final Runnable runnable) throws InterruptedException, InvocationTargetException {
+      Object key = myKey != null ? myKey : Context.get(myLongEventSequenceKeyKey, myDefaultSequenceKey);
+      if (!Context.isAWT() && key.equals(Context.get(myLongEventSequenceKeyKey))) {
+        runnable.run();
+      } else {
+        final CountDownLatch done = new CountDownLatch(1);
+        boolean enqueued = enqueue(new Task(new Runnable() {
+          public void run() {
+            try {
+              runnable.run();
+            } finally {
+              done.countDown();
+            }
+          }
+        }, key));
+        if (!enqueued)
+          return;
+        // a waiting worker is compensated by the pool, so that waits of workers for each other cannot exhaust it
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+          public boolean block() throws InterruptedException {
+            done.await();
+            return true;
+          }
+
+          public boolean isReleasable() {
+            return done.getCount() == 0;
+          }
+        });
+      }
+    }
+
+    protected Target getTarget() {
+      return Target.LONG;
+    }
+  }
+}
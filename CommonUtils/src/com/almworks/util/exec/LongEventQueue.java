@@ -23,7 +23,12 @@ public static void installStatic(LongEventQueue queue) {
   }
 
   public static void installToContext() {
-    Context.add(InstanceProvider.instance(new LongEventQueueImpl()), "LongEventQueue.installToContext()");
+    Context.add(InstanceProvider.instance(create(new LongEventQueueEnv())), "LongEventQueue.installToContext()");
+  }
+
+  @NotNull
+  public static LongEventQueue create(LongEventQueueEnv env) {
+    return env.getForkJoin() ? new ForkJoinLongEventQueue(env) : new LongEventQueueImpl(env);
   }
 
   public static void removeFromContext() {
@@ -27,4 +27,18 @@ public boolean getDebug() {
   public boolean getSingleThread() {
     return false;
   }
+
+  /**
+   * @return true if tasks should run on {@link ForkJoinLongEventQueue} instead of {@link LongEventQueueImpl}
+   */
+  public boolean getForkJoin() {
+    return false;
+  }
+
+  /**
+   * @return true if the queue should measure latency and duration of tasks (supported by {@link ForkJoinLongEventQueue})
+   */
+  public boolean getMetrics() {
+    return false;
+  }
 }
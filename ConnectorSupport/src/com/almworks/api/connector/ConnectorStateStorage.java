@@ -3,6 +3,7 @@
 import com.almworks.util.collections.MultiMap;
 import org.almworks.util.TypedKey;
 import org.apache.commons.httpclient.Cookie;
+import org.jetbrains.annotations.*;
 
 public interface ConnectorStateStorage {
   void setPersistentLong(String key, long value);
@@ -19,6 +20,16 @@ public interface ConnectorStateStorage {
 
   void removePersistent(String key);
 
+  /**
+   * Stores a large value. Unlike persistent strings, it is written separately and only when it changes.
+   *
+   * @param data null to remove
+   */
+  void setPersistentData(String key, @Nullable byte[] data);
+
+  @Nullable
+  byte[] getPersistentData(String key);
+
   <T> void setRuntime(TypedKey<T> key, T value);
 
   <T> T getRuntime(TypedKey<T> key);
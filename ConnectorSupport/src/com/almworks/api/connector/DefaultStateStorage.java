@@ -4,11 +4,13 @@
 import org.almworks.util.Collections15;
 import org.almworks.util.TypedKey;
 import org.apache.commons.httpclient.Cookie;
+import org.jetbrains.annotations.*;
 
 import java.util.Map;
 
 public class DefaultStateStorage implements ConnectorStateStorage {
   private final Map<String, String> myMap = Collections15.hashMap();
+  private final Map<String, byte[]> myData = Collections15.hashMap();
   private final Map<? extends TypedKey, ?> myRuntimeMap = Collections15.hashMap();
   private MultiMap<String, Cookie> myCookies;
 
@@ -38,6 +40,22 @@ public void removePersistent(String key) {
     }
   }
 
+  public void setPersistentData(String key, @Nullable byte[] data) {
+    synchronized (myMap) {
+      if (data == null)
+        myData.remove(key);
+      else
+        myData.put(key, data);
+    }
+  }
+
+  @Nullable
+  public byte[] getPersistentData(String key) {
+    synchronized (myMap) {
+      return myData.get(key);
+    }
+  }
+
   public void setPersistentLong(String key, long value) {
     setPersistentString(key, String.valueOf(value));
   }
@@ -62,6 +80,7 @@ public <T> T getRuntime(TypedKey<T> key) {
   public void clearPersistent() {
     synchronized (myMap) {
       myMap.clear();
+      myData.clear();
     }
     synchronized (this) {
       myCookies = null;
@@ -6,9 +6,9 @@
 import com.almworks.util.collections.MultiMap;
 import com.almworks.util.commons.Condition;
 import com.almworks.util.files.FileUtil;
-import com.almworks.util.io.IOUtils;
-import com.almworks.util.io.StringTransferTracker;
+import com.almworks.util.io.*;
 import com.almworks.util.xml.JDOMUtils;
+import com.almworks.util.xml.StreamingSAXHandler;
 import com.almworks.util.xml.ZeroEntityResolver;
 import org.almworks.util.*;
 import org.apache.commons.httpclient.*;
@@ -32,6 +32,16 @@
  * @author sereda
  */
 public class DocumentLoader {
+  /**
+   * When set, responses are parsed as they are received rather than collected into a string first
+   */
+  private static final boolean STREAMING = !Env.getBoolean(GlobalProperties.DISABLE_HTTP_STREAMING);
+  /**
+   * How much of a streamed response is kept for the dump and the log
+   */
+  private static final int CAPTURE_LIMIT =
+    Env.getInteger(GlobalProperties.HTTP_CAPTURE_CHARS, 1024, Integer.MAX_VALUE, 256 * 1024);
+
   private final File myFile;
   @Nullable
   private final HttpDumper myDumper;
@@ -41,6 +51,10 @@ public class DocumentLoader {
   private HttpResponseData myRawResponse;
   private String myResponse;
   private byte[] myResponseBytes;
+  /**
+   * Beginning and end of the response, if it has been streamed to a parser
+   */
+  private BoundedTextBuffer myCapture;
 
   private StringTransferTracker myTransferTracker;
   private Condition<Integer> myFailedStatusApprover;
@@ -221,19 +235,19 @@ public synchronized Document loadHTML() throws ConnectorException {
     assert hasResponse();
     if (!hasResponse())
       return new Document();
-    String response = null;
+    Reader reader = null;
     try {
-      response = getStringResponse();
-//    Reader reader = new XML10CorrectingStringReader(myResponse);
-      return parseHTML(new InputSource(new StringReader(response)));
+      reader = getResponseReader();
+      return parseHTML(new InputSource(reader));
     } catch (IOException e) {
       Log.debug("load failure", e);
       throw new ConnectionException(myEscapedUrl, "load failure", e);
     } catch (SAXException e) {
-      Log.warn("cannot parse html output:\n----------[ " + myEscapedUrl + " ]----------\n" + response +
-        "\n-------------------------------------");
+      logParseFailure("html", reader);
       Log.warn(e);
       throw new CannotParseException(myEscapedUrl, "cannot parse html output", e);
+    } finally {
+      closeResponseReader(reader);
     }
   }
 
@@ -241,19 +255,48 @@ public synchronized Document loadXML() throws ConnectorException {
     assert hasResponse();
     if (!hasResponse())
       return new Document();
-    String response = null;
+    Reader reader = null;
     try {
-      response = getStringResponse();
-//    Reader reader = new XML10CorrectingStringReader(myResponse);
-      return parseXML(new InputSource(new StringReader(response)));
+      reader = getResponseReader();
+      return parseXML(new InputSource(reader));
     } catch (IOException e) {
       Log.warn("connection failure", e);
       throw new ConnectionException(myEscapedUrl, "connection failure", e);
     } catch (JDOMException e) {
-      Log.warn("cannot parse xml output:\n----------[ " + myEscapedUrl + " ]----------\n" + response +
-        "\n-------------------------------------");
+      logParseFailure("xml", reader);
       Log.warn(e);
       throw new CannotParseException(myEscapedUrl, "cannot parse xml", e);
+    } finally {
+      closeResponseReader(reader);
+    }
+  }
+
+  /**
+   * Parses XML response with the streaming handler, see {@link StreamingSAXHandler}. If the handler stops parsing
+   * with a ConnectorException or a RuntimeException, that exception is rethrown.
+   */
+  public synchronized void loadXML(StreamingSAXHandler handler) throws ConnectorException {
+    assert hasResponse();
+    if (!hasResponse())
+      return;
+    Reader reader = null;
+    try {
+      reader = getResponseReader();
+      parseXML(new InputSource(reader), handler);
+    } catch (IOException e) {
+      Log.warn("connection failure", e);
+      throw new ConnectionException(myEscapedUrl, "connection failure", e);
+    } catch (JDOMException e) {
+      Exception reason = handler.getStopReason();
+      if (reason instanceof ConnectorException)
+        throw (ConnectorException) reason;
+      if (reason instanceof RuntimeException)
+        throw (RuntimeException) reason;
+      logParseFailure("xml", reader);
+      Log.warn(e);
+      throw new CannotParseException(myEscapedUrl, "cannot parse xml", e);
+    } finally {
+      closeResponseReader(reader);
     }
   }
 
@@ -281,6 +324,31 @@ public synchronized byte[] loadBytes() throws IOException {
     }
   }
 
+  public synchronized int getResponseStatusCode() {
+    if (myRawResponse == null) {
+      assert false : myEscapedUrl;
+      return 0;
+    }
+    return myRawResponse.getStatusCode();
+  }
+
+  /**
+   * Replaces the content of the response, for example with a cached one when the server replies that the content
+   * has not been modified.
+   */
+  public synchronized void setCachedResponse(String response) throws ConnectorException {
+    assert hasResponse();
+    if (myRawResponse != null && myResponse == null && myCapture == null) {
+      // release the connection
+      loadString();
+    }
+    myResponse = response;
+    myResponseBytes = null;
+    if (myDumper != null) {
+      myDumper.setResponse(response);
+    }
+  }
+
   public synchronized long getResponseContentLength() {
     if (myRawResponse == null) {
       assert false : myEscapedUrl;
@@ -318,27 +386,78 @@ public synchronized Map<String, String> getResponseHeaders() {
   private byte[] getResponseBytes() throws IOException {
     assert myRawResponse != null;
     if (myResponseBytes == null) {
-      myResponseBytes = transferBytes(myRawResponse);
+      if (myCapture != null)
+        myResponseBytes = getStringResponse().getBytes("UTF-8");
+      else
+        myResponseBytes = transferBytes(myRawResponse);
     }
     return myResponseBytes;
   }
 
-  private InputSource getResponseInputSource() throws IOException {
-    String response = getStringResponse();
-//    Reader reader = new XML10CorrectingStringReader(myResponse);
-    Reader reader = new StringReader(response);
-    return new InputSource(reader);
-  }
-
   private String getStringResponse() throws IOException {
     assert myRawResponse != null || myResponse != null;
     if (myResponse == null) {
-      myResponse = transferString(myRawResponse);
+      if (myCapture != null) {
+        // the response has been streamed to a parser, only the captured text is left
+        if (myCapture.isTruncated())
+          Log.warn("response to " + myEscapedUrl + " has been streamed, using " + CAPTURE_LIMIT + " of " +
+            myCapture.getLength() + " chars");
+        myResponse = myCapture.toString();
+      } else {
+        myResponse = transferString(myRawResponse);
+      }
     }
     String response = myResponse;
     return response;
   }
 
+  /**
+   * Streams the response if it has not been collected and the transfer tracker does not need the whole text,
+   * otherwise reads the collected string. The reader must be closed with {@link #closeResponseReader}.
+   */
+  private Reader getResponseReader() throws IOException {
+    StringTransferTracker tracker = myTransferTracker;
+    boolean streaming = STREAMING && myResponse == null && myResponseBytes == null && myCapture == null &&
+      myRawResponse != null && (tracker == null || tracker instanceof CharTransferTracker);
+    if (!streaming)
+      return new StringReader(getStringResponse());
+    // save memory
+    myTransferTracker = null;
+    long length = myRawResponse.getContentLength();
+    if (length > 0 && tracker != null)
+      tracker.setContentLengthHint(length);
+    myCapture = new BoundedTextBuffer(CAPTURE_LIMIT);
+    return new CapturingReader(myRawResponse.transferToReader(), myCapture, (CharTransferTracker) tracker);
+  }
+
+  private void closeResponseReader(@Nullable Reader reader) {
+    if (reader == null)
+      return;
+    IOUtils.closeReaderIgnoreExceptions(reader);
+    if (reader instanceof CapturingReader && myDumper != null)
+      myDumper.setResponse(myCapture.toString());
+  }
+
+  /**
+   * Logs the response that could not be parsed. A streamed response is read to the end first, so that the log,
+   * the dump and later loads get its tail.
+   */
+  private void logParseFailure(String format, @Nullable Reader reader) {
+    String response;
+    if (reader instanceof CapturingReader) {
+      ((CapturingReader) reader).skipRest();
+      response = myCapture.toString();
+    } else if (myResponse != null) {
+      BoundedTextBuffer buffer = new BoundedTextBuffer(CAPTURE_LIMIT);
+      buffer.append(myResponse);
+      response = buffer.toString();
+    } else {
+      response = null;
+    }
+    Log.warn("cannot parse " + format + " output:\n----------[ " + myEscapedUrl + " ]----------\n" + response +
+      "\n-------------------------------------");
+  }
+
   public synchronized void setTransferTracker(StringTransferTracker tracker) {
     myTransferTracker = tracker;
   }
@@ -571,6 +690,59 @@ private Document parseXML(InputSource source) throws CancelledException, IOExcep
     }
   }
 
+  private void parseXML(InputSource source, StreamingSAXHandler handler)
+    throws CancelledException, IOException, JDOMException
+  {
+    try {
+      myHttpMaterial.checkCancelled();
+      SAXBuilder builder = JDOMUtils.createBuilder(handler);
+      builder.setEntityResolver(new ZeroEntityResolver());
+      builder.build(source);
+      myHttpMaterial.checkCancelled();
+    } catch (HttpCancelledException e) {
+      throw new CancelledException();
+    }
+  }
+
+  /**
+   * Passes the chars read to a capture buffer and a transfer tracker
+   */
+  private static class CapturingReader extends Reader {
+    private final Reader myReader;
+    private final BoundedTextBuffer myCapture;
+    @Nullable
+    private final CharTransferTracker myTracker;
+
+    public CapturingReader(Reader reader, BoundedTextBuffer capture, @Nullable CharTransferTracker tracker) {
+      myReader = reader;
+      myCapture = capture;
+      myTracker = tracker;
+    }
+
+    public int read(char[] buffer, int offset, int length) throws IOException {
+      int read = myReader.read(buffer, offset, length);
+      if (read > 0) {
+        myCapture.append(buffer, offset, read);
+        if (myTracker != null)
+          myTracker.onTransfer(buffer, offset, read);
+      }
+      return read;
+    }
+
+    public void skipRest() {
+      char[] buffer = new char[8192];
+      try {
+        while (read(buffer, 0, buffer.length) >= 0) ;
+      } catch (IOException e) {
+        Log.debug(e);
+      }
+    }
+
+    public void close() throws IOException {
+      myReader.close();
+    }
+  }
+
   private static boolean dumpFileUploadParams(String attachName, File attachFile, String attachContentType) {
     Log.debug(
       "  " + attachName + " = FILE: " + attachFile.getPath() + " (" + attachContentType + "; " + attachFile.length() +
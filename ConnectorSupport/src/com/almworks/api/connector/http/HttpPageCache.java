@@ -0,0 +1,280 @@
+package com.almworks.api.connector.http;
+
+import com.almworks.api.connector.ConnectorException;
+import com.almworks.api.connector.ConnectorStateStorage;
+import com.almworks.util.Pair;
+import com.almworks.util.commons.Condition;
+import com.almworks.util.io.IOUtils;
+import com.almworks.util.text.TextUtil;
+import org.almworks.util.*;
+import org.apache.commons.httpclient.HttpStatus;
+import org.jetbrains.annotations.*;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Conditional GET of pages that rarely change, such as configuration and value list pages. The last content of each
+ * page is kept in the {@link ConnectorStateStorage connector state storage} with its hash and the validators sent by
+ * the server (ETag, Last-Modified). A request for a cached page carries If-None-Match and If-Modified-Since, and if
+ * the server replies 304 Not Modified, the cached content is used. If the server sends no validators, the hash of
+ * the new content tells whether the page has changed.
+ * <p>
+ * The result of parsing a page is kept in memory, so that an unchanged page is not parsed again.
+ * <p>
+ * Usage: {@link #request} before the loader makes the request, {@link Page#receive} after it,
+ * {@link Page#getParsed} to get the result of the last parsing, {@link Page#commit} when the page has been parsed.
+ */
+public class HttpPageCache {
+  private static final TypedKey<HttpPageCache> KEY = TypedKey.create("httpPageCache");
+  private static final String PREFIX = "page.cache.";
+  private static final String ALGORITHM = "SHA-1";
+  private static final String CHARSET = "UTF-8";
+
+  private static final Condition<Integer> NOT_MODIFIED_IS_NOT_FAILURE = new Condition<Integer>() {
+    public boolean isAccepted(Integer status) {
+      return status == null || status != HttpStatus.SC_NOT_MODIFIED;
+    }
+  };
+
+  private final ConnectorStateStorage myStorage;
+  /**
+   * page key => hash of the content and the result of parsing it
+   */
+  private final Map<String, Pair<String, Object>> myParsed = Collections15.hashMap();
+  private final ThreadLocal<List<String>> myRecording = new ThreadLocal<List<String>>();
+
+  HttpPageCache(ConnectorStateStorage storage) {
+    myStorage = storage;
+  }
+
+  public static HttpPageCache getInstance(ConnectorStateStorage storage) {
+    synchronized (storage) {
+      HttpPageCache cache = storage.getRuntime(KEY);
+      if (cache == null) {
+        cache = new HttpPageCache(storage);
+        storage.setRuntime(KEY, cache);
+      }
+      return cache;
+    }
+  }
+
+  /**
+   * Prepares a GET request for the page: if the page is cached, adds its validators to the loader.
+   */
+  public Page request(DocumentLoader loader, String url) {
+    String key = getKey(url);
+    String[] entry = loadEntry(key);
+    String content = null;
+    if (entry != null) {
+      content = loadContent(key, entry[2]);
+      if (content != null) {
+        if (entry[0].length() > 0)
+          loader.addHeader("If-None-Match", entry[0]);
+        if (entry[1].length() > 0)
+          loader.addHeader("If-Modified-Since", entry[1]);
+        loader.setFailedStatusApprover(NOT_MODIFIED_IS_NOT_FAILURE);
+      }
+    }
+    return new Page(loader, url, key, content == null ? null : entry, content);
+  }
+
+  /**
+   * Starts recording of the pages received by the current thread, see {@link #stopRecording}.
+   */
+  public void startRecording() {
+    myRecording.set(Collections15.<String>arrayList());
+  }
+
+  /**
+   * @return a hash of the hashes of the pages received by the current thread since {@link #startRecording}, in the
+   * order they were received; null if none were received
+   */
+  @Nullable
+  public String stopRecording() {
+    List<String> recorded = myRecording.get();
+    myRecording.remove();
+    if (recorded == null || recorded.isEmpty())
+      return null;
+    return hash(TextUtil.separate(recorded, "\n"));
+  }
+
+  private void record(String key, String hash) {
+    List<String> recorded = myRecording.get();
+    if (recorded != null)
+      recorded.add(key + ":" + hash);
+  }
+
+  @Nullable
+  private String[] loadEntry(String key) {
+    String entry = myStorage.getPersistentString(PREFIX + key);
+    if (entry == null)
+      return null;
+    String[] r = entry.split("\n", -1);
+    return r.length == 3 ? r : null;
+  }
+
+  @Nullable
+  private String loadContent(String key, String hash) {
+    byte[] data = myStorage.getPersistentData(PREFIX + key);
+    if (data == null)
+      return null;
+    try {
+      String content = IOUtils.transferToString(new GZIPInputStream(new ByteArrayInputStream(data)), CHARSET, null);
+      if (hash.equals(hash(content)))
+        return content;
+      Log.debug("HPC: cached content does not match " + key);
+    } catch (IOException e) {
+      Log.debug("HPC: cannot read " + key, e);
+    }
+    return null;
+  }
+
+  private void store(String key, String eTag, String lastModified, String hash, @Nullable String content) {
+    if (content != null) {
+      try {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(data);
+        out.write(content.getBytes(CHARSET));
+        out.close();
+        myStorage.setPersistentData(PREFIX + key, data.toByteArray());
+      } catch (IOException e) {
+        Log.warn("HPC: cannot store " + key, e);
+        return;
+      }
+    }
+    myStorage.setPersistentString(PREFIX + key, eTag + "\n" + lastModified + "\n" + hash);
+  }
+
+  private static String getKey(String url) {
+    return hash(url);
+  }
+
+  private static String hash(String text) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
+      return IOUtils.toHexString(digest.digest(text.getBytes(CHARSET)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new Failure(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new Failure(e);
+    }
+  }
+
+  private static String getHeader(Map<String, String> headers, String name) {
+    for (Map.Entry<String, String> e : headers.entrySet())
+      if (name.equalsIgnoreCase(e.getKey()))
+        return Util.NN(e.getValue()).trim();
+    return "";
+  }
+
+
+  /**
+   * A request for a page
+   */
+  public class Page {
+    private final DocumentLoader myLoader;
+    private final String myUrl;
+    private final String myKey;
+    /**
+     * ETag, Last-Modified and hash of the cached content, or null if the page is not cached
+     */
+    @Nullable
+    private final String[] myCached;
+    @Nullable
+    private final String myCachedContent;
+
+    private String myContent;
+    private String myHash;
+    private String myETag = "";
+    private String myLastModified = "";
+    private boolean myModified = true;
+
+    private Page(DocumentLoader loader, String url, String key, @Nullable String[] cached,
+      @Nullable String cachedContent)
+    {
+      myLoader = loader;
+      myUrl = url;
+      myKey = key;
+      myCached = cached;
+      myCachedContent = cachedContent;
+    }
+
+    /**
+     * Reads the response. If the server says the page has not been modified, gives the loader the cached content,
+     * so that the page may be parsed as usual.
+     */
+    public void receive() throws ConnectorException {
+      if (myCached != null && myLoader.getResponseStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+        myContent = myCachedContent;
+        myLoader.setCachedResponse(myContent);
+        myETag = myCached[0];
+        myLastModified = myCached[1];
+        myHash = myCached[2];
+        myModified = false;
+        Log.debug("HPC: not modified " + myUrl);
+      } else {
+        myContent = myLoader.loadString();
+        myHash = hash(myContent);
+        Map<String, String> headers = myLoader.getResponseHeaders();
+        myETag = getHeader(headers, "ETag");
+        myLastModified = getHeader(headers, "Last-Modified");
+        myModified = myCached == null || !myHash.equals(myCached[2]);
+        if (!myModified)
+          Log.debug("HPC: same content " + myUrl);
+      }
+      record(myKey, myHash);
+    }
+
+    /**
+     * @return false if the content is the same as the cached one
+     */
+    public boolean isModified() {
+      return myModified;
+    }
+
+    /**
+     * @return the result of parsing the same content, if the page has not been modified and the result has been
+     * {@link #commit committed} before in this session
+     */
+    @Nullable
+    public <T> T getParsed(Class<T> resultClass) {
+      if (myModified)
+        return null;
+      Pair<String, Object> parsed;
+      synchronized (myParsed) {
+        parsed = myParsed.get(myKey);
+      }
+      if (parsed == null || !myHash.equals(parsed.getFirst()))
+        return null;
+      Object result = parsed.getSecond();
+      return resultClass.isInstance(result) ? resultClass.cast(result) : null;
+    }
+
+    /**
+     * Caches the content and the result of parsing it. Should be called only when the content has been parsed
+     * successfully, so that error pages are not cached.
+     */
+    public void commit(@Nullable Object parsed) {
+      if (myContent == null) {
+        assert false : myUrl;
+        return;
+      }
+      boolean validatorsChanged =
+        myCached == null || !myETag.equals(myCached[0]) || !myLastModified.equals(myCached[1]);
+      if (myModified || validatorsChanged)
+        store(myKey, myETag, myLastModified, myHash, myModified ? myContent : null);
+      synchronized (myParsed) {
+        if (parsed != null)
+          myParsed.put(myKey, Pair.create(myHash, parsed));
+        else
+          myParsed.remove(myKey);
+      }
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package com.almworks.api.connector.http;
+
+import com.almworks.api.connector.ConnectorException;
+import com.almworks.api.http.DefaultHttpMaterial;
+import com.almworks.api.http.HttpClientProvider;
+import com.almworks.http.HttpLoaderFactoryImpl;
+import com.almworks.util.tests.BaseTestCase;
+import com.almworks.util.xml.JDOMUtils;
+import org.jdom.Document;
+
+public class DocumentLoaderTests extends BaseTestCase {
+  public void testHTMLAfterFailedXML() throws ConnectorException {
+    DocumentLoader loader = createLoader("<html><head><title>Login</title></head><body><p>a<br></body></html>");
+    try {
+      loader.loadXML();
+      fail();
+    } catch (CannotParseException e) {
+      // normal
+    }
+    Document html = loader.loadHTML();
+    assertEquals("Login", JDOMUtils.searchElementTextTrim(html.getRootElement(), "title"));
+  }
+
+  public void testStringAfterXML() throws ConnectorException {
+    String text = "<bugs><bug>1</bug><bug>2</bug></bugs>";
+    DocumentLoader loader = createLoader(text);
+    assertEquals(2, loader.loadXML().getRootElement().getChildren("bug").size());
+    assertEquals(text, loader.loadString());
+  }
+
+  private static DocumentLoader createLoader(String text) throws ConnectorException {
+    DefaultHttpMaterial material = new DefaultHttpMaterial(HttpClientProvider.SIMPLE, new HttpLoaderFactoryImpl());
+    DocumentLoader loader = new DocumentLoader(material);
+    loader.setResponse(new TestResponseData(text));
+    return loader;
+  }
+}
@@ -0,0 +1,85 @@
+package com.almworks.api.connector.http;
+
+import com.almworks.api.connector.ConnectorException;
+import com.almworks.api.connector.DefaultStateStorage;
+import com.almworks.api.http.DefaultHttpMaterial;
+import com.almworks.api.http.HttpClientProvider;
+import com.almworks.http.HttpLoaderFactoryImpl;
+import com.almworks.util.tests.BaseTestCase;
+import org.almworks.util.Collections15;
+
+import java.util.Map;
+
+public class HttpPageCacheTests extends BaseTestCase {
+  private static final String URL = "http://almworks.com/testing";
+
+  private HttpPageCache myCache;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    myCache = HttpPageCache.getInstance(new DefaultStateStorage());
+  }
+
+  protected void tearDown() throws Exception {
+    myCache = null;
+    super.tearDown();
+  }
+
+  public void testSameContentWithoutValidators() throws ConnectorException {
+    HttpPageCache.Page page = receive(new TestResponseData("<a/>"));
+    assertTrue(page.isModified());
+    assertNull(page.getParsed(String.class));
+    page.commit("a");
+
+    page = receive(new TestResponseData("<a/>"));
+    assertFalse(page.isModified());
+    assertEquals("a", page.getParsed(String.class));
+    assertNull(page.getParsed(Integer.class));
+
+    page = receive(new TestResponseData("<b/>"));
+    assertTrue(page.isModified());
+    assertNull(page.getParsed(String.class));
+  }
+
+  public void testNotModified() throws ConnectorException {
+    Map<String, String> headers = Collections15.hashMap();
+    headers.put("ETag", "\"1\"");
+    receive(new TestResponseData("<a/>", 200, headers)).commit("a");
+
+    DocumentLoader loader = createLoader(new TestResponseData("", 304, Collections15.<String, String>hashMap()));
+    HttpPageCache.Page page = myCache.request(loader, URL);
+    page.receive();
+    assertFalse(page.isModified());
+    assertEquals("a", page.getParsed(String.class));
+    assertEquals("a", loader.loadXML().getRootElement().getName());
+  }
+
+  public void testRecording() throws ConnectorException {
+    myCache.startRecording();
+    receive(new TestResponseData("<a/>"));
+    String first = myCache.stopRecording();
+    assertNotNull(first);
+    myCache.startRecording();
+    receive(new TestResponseData("<a/>"));
+    assertEquals(first, myCache.stopRecording());
+    myCache.startRecording();
+    receive(new TestResponseData("<b/>"));
+    assertFalse(first.equals(myCache.stopRecording()));
+    myCache.startRecording();
+    assertNull(myCache.stopRecording());
+  }
+
+  private HttpPageCache.Page receive(TestResponseData response) throws ConnectorException {
+    DocumentLoader loader = createLoader(response);
+    HttpPageCache.Page page = myCache.request(loader, URL);
+    page.receive();
+    return page;
+  }
+
+  private static DocumentLoader createLoader(TestResponseData response) throws ConnectorException {
+    DefaultHttpMaterial material = new DefaultHttpMaterial(HttpClientProvider.SIMPLE, new HttpLoaderFactoryImpl());
+    DocumentLoader loader = new DocumentLoader(material);
+    loader.setResponse(response);
+    return loader;
+  }
+}
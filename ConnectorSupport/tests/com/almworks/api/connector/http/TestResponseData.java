@@ -15,9 +15,17 @@
 */
 class TestResponseData implements HttpResponseData {
   private final String myResponse;
+  private final int myStatusCode;
+  private final Map<String, String> myHeaders;
 
   public TestResponseData(String response) {
+    this(response, 200, new HashMap<String, String>());
+  }
+
+  public TestResponseData(String response, int statusCode, Map<String, String> headers) {
     myResponse = response;
+    myStatusCode = statusCode;
+    myHeaders = headers;
   }
 
   @Override
@@ -40,6 +48,11 @@ public long getContentLength() {
     return myResponse.length();
   }
 
+  @Override
+  public int getStatusCode() {
+    return myStatusCode;
+  }
+
   @Override
   public long transferToStream(OutputStream output, @Nullable StreamTransferTracker tracker) throws IOException {
     try {
@@ -60,10 +73,15 @@ public byte[] transferToBytes(StreamTransferTracker transferTracker) throws IOEx
     return myResponse.getBytes("UTF-8");
   }
 
+  @Override
+  public Reader transferToReader() throws IOException {
+    return new StringReader(myResponse);
+  }
+
   @NotNull
   @Override
   public Map<String, String> getResponseHeaders() {
-    return new HashMap<String, String>();
+    return myHeaders;
   }
 
   @Override
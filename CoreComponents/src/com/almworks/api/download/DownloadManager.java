@@ -39,4 +39,10 @@ public interface DownloadManager {
 
   @NotNull
   DownloadedFile getDownloadStatus(String key);
+
+  /**
+   * @return SHA-256 of the content of a downloaded file, as a hex string, or null if the file is not a download
+   */
+  @Nullable
+  String getContentHash(File file);
 }
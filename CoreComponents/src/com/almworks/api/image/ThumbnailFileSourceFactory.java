@@ -0,0 +1,16 @@
+package com.almworks.api.image;
+
+import com.almworks.util.threads.CanBlock;
+import org.jetbrains.annotations.*;
+
+import java.io.File;
+
+/**
+ * Source factory that knows the file of an image. Thumbnails of such images are decoded subsampled, without loading
+ * the full image, and are cached on disk.
+ */
+public interface ThumbnailFileSourceFactory extends ThumbnailSourceFactory {
+  @CanBlock
+  @Nullable
+  File getSourceFile(String imageId);
+}
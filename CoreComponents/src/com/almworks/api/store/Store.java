@@ -13,4 +13,10 @@ public interface Store {
   StoreAccess access(String path);
 
   StoreAccess access(String path, StoreFeature[] features);
+
+  /**
+   * Hints that the data of this store and its sub-stores are going to be loaded soon, so they may be read from the
+   * storage in one request. Does not block.
+   */
+  void prefetch();
 }
@@ -0,0 +1,531 @@
+package com.almworks.download;
+
+import com.almworks.util.io.IOUtils;
+import org.almworks.util.Collections15;
+import org.almworks.util.Log;
+import org.jetbrains.annotations.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Content-addressed storage of downloaded files. Each distinct content is kept once, under its SHA-256, and files of
+ * download entries are hard links to it, so the same attachment downloaded for many bugs or many times takes space
+ * once. Linked files are made read-only: an edit of one of them would change the others and break the hash.
+ * <p>
+ * Where the file system cannot link, the stored content is moved to the first file that needs it, and later files
+ * get copies of it. Content is deleted when its last file is unlinked.
+ * <p>
+ * Total size of the content may be limited: when it is exceeded, least recently stored or linked content is evicted
+ * together with the files linked to it.
+ */
+class ContentStore {
+  private static final String ALGORITHM = "SHA-256";
+  private static final String TEMP_PREFIX = "__";
+  private static final int HASH_LENGTH = 64;
+  private static final int BLOCK_SIZE = 65536;
+
+  private final File myDir;
+  private final long myLimit;
+
+  private final Object myLock = new Object();
+  /**
+   * hash => content, from the least to the most recently accessed
+   */
+  private final LinkedHashMap<String, Content> myContent = new LinkedHashMap<String, Content>();
+  /**
+   * linked file => hash
+   */
+  private final Map<File, String> myLinks = Collections15.hashMap();
+  /**
+   * linked files that are copies of the content and take space of their own
+   */
+  private final Set<File> myCopies = Collections15.hashSet();
+  private long myTotalSize;
+
+  /**
+   * @param limit maximum total size of the content in bytes, 0 if unlimited
+   */
+  public ContentStore(File dir, long limit) {
+    myDir = dir;
+    myLimit = limit;
+  }
+
+  /**
+   * Reads the content that is on disk. Content is assumed to be accessed in the order of the given hashes, the
+   * rest is older.
+   *
+   * @param links linked files as returned by {@link #getLinks}, or null if they are not known; if they are known,
+   * stored content that is not linked is deleted
+   * @param order hashes as returned by {@link #getAccessOrder}
+   */
+  public void load(@Nullable Map<File, String> links, List<String> order) {
+    Map<String, Long> found = Collections15.hashMap();
+    File[] dirs = myDir.listFiles();
+    if (dirs != null) {
+      for (File dir : dirs) {
+        if (dir.getName().startsWith(TEMP_PREFIX)) {
+          // left by an interrupted download
+          if (!dir.delete())
+            Log.warn("cannot delete " + dir);
+          continue;
+        }
+        File[] files = dir.isDirectory() ? dir.listFiles() : null;
+        if (files == null)
+          continue;
+        for (File file : files) {
+          String name = file.getName();
+          if (name.length() == HASH_LENGTH && file.isFile())
+            found.put(name, file.length());
+        }
+      }
+    }
+    synchronized (myLock) {
+      myContent.clear();
+      myLinks.clear();
+      myCopies.clear();
+      myTotalSize = 0;
+      Map<String, Content> contents = Collections15.hashMap();
+      for (Map.Entry<String, Long> e : found.entrySet())
+        contents.put(e.getKey(), new Content(e.getValue(), true));
+      if (links != null) {
+        for (Map.Entry<File, String> e : links.entrySet()) {
+          File file = e.getKey();
+          String hash = e.getValue();
+          if (!file.isFile())
+            continue;
+          Content content = contents.get(hash);
+          if (content == null) {
+            content = new Content(file.length(), false);
+            contents.put(hash, content);
+          }
+          content.myFiles.add(file);
+          myLinks.put(file, hash);
+          if (!content.myStored || !isSameFile(file, getContentFile(hash)))
+            myCopies.add(file);
+        }
+        for (Iterator<Map.Entry<String, Content>> ii = contents.entrySet().iterator(); ii.hasNext();) {
+          Map.Entry<String, Content> e = ii.next();
+          if (e.getValue().myFiles.isEmpty()) {
+            deleteFile(getContentFile(e.getKey()));
+            ii.remove();
+          }
+        }
+      }
+      for (Map.Entry<String, Content> e : contents.entrySet())
+        if (!order.contains(e.getKey()))
+          myContent.put(e.getKey(), e.getValue());
+      for (String hash : order) {
+        Content content = contents.get(hash);
+        if (content != null)
+          myContent.put(hash, content);
+      }
+      for (Content content : myContent.values())
+        if (content.myStored)
+          myTotalSize += content.mySize;
+      for (File file : myCopies)
+        myTotalSize += myContent.get(myLinks.get(file)).mySize;
+    }
+  }
+
+  public Writer createWriter() throws IOException {
+    if (!myDir.isDirectory() && !myDir.mkdirs())
+      throw new IOException("cannot create " + myDir);
+    File file = File.createTempFile(TEMP_PREFIX + "content", ".tmp", myDir);
+    return new Writer(file);
+  }
+
+  /**
+   * Links the target file to the content committed by a {@link Writer}, replacing the target, and makes it
+   * read-only. Has to be called once for each commit, even if the commit is not needed any more: until then the
+   * content is neither evicted nor deleted.
+   */
+  public File link(String hash, File target) throws IOException {
+    try {
+      File source;
+      synchronized (myLock) {
+        Content content = touch(hash);
+        if (content == null)
+          throw new FileNotFoundException(hash);
+        deleteExisting(target);
+        if (content.myStored) {
+          File file = getContentFile(hash);
+          if (createLink(target, file)) {
+            addFile(target, hash, content, false);
+            return target;
+          }
+          if (content.myFiles.isEmpty() && content.myReserved == 1) {
+            // nothing else needs the stored content, so it can be moved instead of copied
+            Files.move(file.toPath(), target.toPath());
+            content.myStored = false;
+            myTotalSize -= content.mySize;
+            addFile(target, hash, content, true);
+            return target;
+          }
+          source = file;
+        } else {
+          if (content.myFiles.isEmpty())
+            throw new FileNotFoundException(hash);
+          source = content.myFiles.get(0);
+        }
+      }
+      // the reservation keeps the source in place while it is copied
+      copy(source, target);
+      synchronized (myLock) {
+        addFile(target, hash, myContent.get(hash), true);
+      }
+      return target;
+    } finally {
+      synchronized (myLock) {
+        release(hash);
+      }
+    }
+  }
+
+  /**
+   * Deletes the linked file, and the content if no other file is linked to it.
+   *
+   * @return true if the file was linked, false if it is not known to the store and has not been deleted
+   */
+  public boolean unlink(File file) {
+    synchronized (myLock) {
+      String hash = myLinks.remove(file);
+      if (hash == null)
+        return false;
+      Content content = myContent.get(hash);
+      if (myCopies.remove(file))
+        myTotalSize -= content.mySize;
+      content.myFiles.remove(file);
+      if (!deleteFile(file))
+        Log.warn("cannot delete " + file);
+      if (!content.myFiles.isEmpty())
+        makeReadOnly(content.myFiles.get(0));
+      removeUnused(hash, content);
+      return true;
+    }
+  }
+
+  @Nullable
+  public String getHash(File file) {
+    synchronized (myLock) {
+      return myLinks.get(file);
+    }
+  }
+
+  public Map<File, String> getLinks() {
+    synchronized (myLock) {
+      return Collections15.hashMap(myLinks);
+    }
+  }
+
+  /**
+   * @return hashes of the content from the least to the most recently accessed
+   */
+  public List<String> getAccessOrder() {
+    synchronized (myLock) {
+      return Collections15.arrayList(myContent.keySet());
+    }
+  }
+
+  /**
+   * @return space taken by the stored content and the copies of it
+   */
+  public long getTotalSize() {
+    synchronized (myLock) {
+      return myTotalSize;
+    }
+  }
+
+  public int getContentCount() {
+    synchronized (myLock) {
+      return myContent.size();
+    }
+  }
+
+  /**
+   * Deletes least recently accessed content and the files linked to it while the total size is over the limit.
+   * The most recently accessed content and content that is being linked are never evicted.
+   *
+   * @return deleted linked files
+   */
+  @NotNull
+  public List<File> evict() {
+    List<File> deleted = Collections15.arrayList();
+    synchronized (myLock) {
+      if (myLimit <= 0)
+        return deleted;
+      Iterator<Map.Entry<String, Content>> ii = myContent.entrySet().iterator();
+      while (myTotalSize > myLimit && myContent.size() > 1 && ii.hasNext()) {
+        Map.Entry<String, Content> e = ii.next();
+        String hash = e.getKey();
+        Content content = e.getValue();
+        if (content.myReserved > 0)
+          continue;
+        for (Iterator<File> jj = content.myFiles.iterator(); jj.hasNext();) {
+          File file = jj.next();
+          if (!deleteFile(file)) {
+            Log.warn("cannot evict " + file);
+            continue;
+          }
+          deleted.add(file);
+          jj.remove();
+          myLinks.remove(file);
+          if (myCopies.remove(file))
+            myTotalSize -= content.mySize;
+        }
+        if (!content.myFiles.isEmpty())
+          continue;
+        if (content.myStored) {
+          if (!deleteFile(getContentFile(hash))) {
+            Log.warn("cannot evict " + hash);
+            continue;
+          }
+          myTotalSize -= content.mySize;
+        }
+        ii.remove();
+      }
+    }
+    if (!deleted.isEmpty())
+      Log.debug("[DMI] evicted " + deleted.size() + " files, content size is " + getTotalSize());
+    return deleted;
+  }
+
+  private File getContentFile(String hash) {
+    return new File(new File(myDir, hash.substring(0, 2)), hash);
+  }
+
+  /**
+   * Makes the content the most recently accessed.
+   */
+  @Nullable
+  private Content touch(String hash) {
+    Content content = myContent.remove(hash);
+    if (content != null)
+      myContent.put(hash, content);
+    return content;
+  }
+
+  private void addFile(File file, String hash, Content content, boolean copy) {
+    makeReadOnly(file);
+    content.myFiles.add(file);
+    myLinks.put(file, hash);
+    if (copy && myCopies.add(file))
+      myTotalSize += content.mySize;
+  }
+
+  private void release(String hash) {
+    Content content = myContent.get(hash);
+    if (content != null) {
+      content.myReserved--;
+      removeUnused(hash, content);
+    }
+  }
+
+  private void removeUnused(String hash, Content content) {
+    if (!content.myFiles.isEmpty() || content.myReserved > 0)
+      return;
+    if (content.myStored) {
+      if (!deleteFile(getContentFile(hash))) {
+        Log.warn("cannot delete content " + hash);
+        return;
+      }
+      myTotalSize -= content.mySize;
+    }
+    myContent.remove(hash);
+  }
+
+  /**
+   * Moves the written file into the store, unless the same content is there already, and reserves the content for
+   * {@link #link}.
+   */
+  private String add(File temp, String hash, long size) throws IOException {
+    File file = getContentFile(hash);
+    synchronized (myLock) {
+      Content content = touch(hash);
+      if (content != null) {
+        if (!temp.delete())
+          Log.warn("cannot delete " + temp);
+      } else {
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs())
+          throw new IOException("cannot create " + dir);
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        content = new Content(size, true);
+        myContent.put(hash, content);
+        myTotalSize += size;
+      }
+      content.myReserved++;
+    }
+    return hash;
+  }
+
+  private static void copy(File source, File target) throws IOException {
+    File temp = File.createTempFile(TEMP_PREFIX, ".tmp", target.getParentFile());
+    try {
+      Files.copy(source.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      if (temp.exists() && !temp.delete())
+        Log.warn("cannot delete " + temp);
+    }
+  }
+
+  private static boolean createLink(File link, File existing) {
+    try {
+      Files.createLink(link.toPath(), existing.toPath());
+      return true;
+    } catch (IOException e) {
+      Log.debug("cannot link " + link + " (" + e + ")");
+    } catch (UnsupportedOperationException e) {
+      Log.debug("cannot link " + link + " (" + e + ")");
+    }
+    return false;
+  }
+
+  private static boolean isSameFile(File a, File b) {
+    try {
+      return b.isFile() && Files.isSameFile(a.toPath(), b.toPath());
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static void deleteExisting(File file) throws IOException {
+    if (file.exists() && !deleteFile(file))
+      throw new IOException("cannot delete " + file);
+  }
+
+  /**
+   * Read-only files cannot be deleted on some systems, so the file is made writable if it is not deleted at first.
+   * Hard links share the attribute, so the caller makes the remaining links read-only again.
+   */
+  private static boolean deleteFile(File file) {
+    if (!file.exists() || file.delete())
+      return true;
+    file.setWritable(true);
+    return file.delete();
+  }
+
+  private static void makeReadOnly(File file) {
+    if (!file.setReadOnly())
+      Log.debug("cannot make read-only " + file);
+  }
+
+
+  private static class Content {
+    private final long mySize;
+    /**
+     * the content is in the store; otherwise it is only in the linked files
+     */
+    private boolean myStored;
+    private final List<File> myFiles = Collections15.arrayList();
+    /**
+     * number of commits that have not been linked yet
+     */
+    private int myReserved;
+
+    private Content(long size, boolean stored) {
+      mySize = size;
+      myStored = stored;
+    }
+  }
+
+
+  /**
+   * Writes content to a temporary file in chunks, computing the hash on the way.
+   */
+  public class Writer {
+    private final File myFile;
+    private final FileOutputStream myOutput;
+    private final FileChannel myChannel;
+    private final MessageDigest myDigest;
+    private long mySize;
+    private boolean myClosed;
+
+    private Writer(File file) throws IOException {
+      myFile = file;
+      myOutput = new FileOutputStream(file);
+      myChannel = myOutput.getChannel();
+      try {
+        myDigest = MessageDigest.getInstance(ALGORITHM);
+      } catch (NoSuchAlgorithmException e) {
+        abort();
+        throw new IOException(e);
+      }
+    }
+
+    /**
+     * Stream that writes to the file channel directly. Chunks written to it have to be passed to {@link #update}.
+     */
+    public OutputStream getOutput() {
+      return myOutput;
+    }
+
+    /**
+     * Accounts a chunk that has been written to {@link #getOutput()}.
+     */
+    public void update(ByteBuffer chunk) {
+      mySize += chunk.remaining();
+      myDigest.update(chunk);
+    }
+
+    public void write(ByteBuffer chunk) throws IOException {
+      ByteBuffer copy = chunk.duplicate();
+      while (chunk.hasRemaining())
+        myChannel.write(chunk);
+      update(copy);
+    }
+
+    public void write(InputStream input) throws IOException {
+      byte[] bytes = new byte[BLOCK_SIZE];
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      int read;
+      while ((read = input.read(bytes)) >= 0) {
+        buffer.clear().limit(read);
+        write(buffer);
+      }
+    }
+
+    /**
+     * @return the written file; valid until {@link #commit} or {@link #abort}
+     */
+    public File getFile() throws IOException {
+      close();
+      return myFile;
+    }
+
+    /**
+     * Moves the written file into the store, unless the same content is there already. The result has to be passed
+     * to {@link ContentStore#link}.
+     *
+     * @return hash of the content
+     */
+    public String commit() throws IOException {
+      close();
+      return add(myFile, IOUtils.toHexString(myDigest.digest()), mySize);
+    }
+
+    public void abort() {
+      try {
+        close();
+      } catch (IOException e) {
+        // ignore
+      }
+      if (myFile.exists() && !myFile.delete())
+        Log.warn("cannot delete " + myFile);
+    }
+
+    private void close() throws IOException {
+      if (!myClosed) {
+        myClosed = true;
+        myOutput.close();
+      }
+    }
+  }
+}
@@ -6,6 +6,7 @@
 import com.almworks.api.store.Store;
 import com.almworks.api.store.StoreUtils;
 import com.almworks.util.AppBook;
+import com.almworks.util.Env;
 import com.almworks.util.Pair;
 import com.almworks.util.commons.Condition;
 import com.almworks.util.events.FireEventSupport;
@@ -14,8 +15,7 @@
 import com.almworks.util.i18n.*;
 import com.almworks.util.io.IOUtils;
 import com.almworks.util.io.StreamTransferTracker;
-import com.almworks.util.io.persist.PersistableHashMap;
-import com.almworks.util.io.persist.PersistableString;
+import com.almworks.util.io.persist.*;
 import com.almworks.util.model.BasicScalarModel;
 import com.almworks.util.progress.Progress;
 import com.almworks.util.progress.ProgressSource;
@@ -32,7 +32,9 @@
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static com.almworks.util.collections.Functional.filter;
 import static org.almworks.util.Collections15.arrayList;
@@ -53,7 +55,16 @@ public class DownloadManagerImpl implements DownloadManager, Startable {
   private static final LText DOWNLOAD_INTERRUPTED =
     AppBook.text(X + "DOWNLOAD_INTERRUPTED", "Download was interrupted");
 
+  /**
+   * Limit of the total size of downloaded content in megabytes, 0 if unlimited. Eviction deletes the downloaded files
+   * from the download folder, so it is off unless the user sets the limit.
+   */
+  private static final int CONTENT_LIMIT_MB = Env.getInteger("download.limit.mb", 0, Integer.MAX_VALUE, 0);
+  private static final String CONTENT_LINKS_STORE = "content";
+  private static final String CONTENT_ORDER_STORE = "content.order";
+
   private final DownloadOwnerResolverImpl myDownloadOwnerResolver;
+  private final ContentStore myContent;
 
   private Bottleneck mySaver;
 
@@ -71,6 +82,7 @@ public DownloadManagerImpl(Store store, WorkArea workArea) {
     myStore = store;
     myWorkArea = workArea;
     myDownloadOwnerResolver = new DownloadOwnerResolverImpl();
+    myContent = new ContentStore(new File(workArea.getDownloadDir(), ".content"), CONTENT_LIMIT_MB * 1024L * 1024L);
   }
 
   public Detach addFileDownloadListener(final String key, final ThreadGate gate, final FileDownloadListener listener) {
@@ -119,6 +131,12 @@ public DownloadedFile getDownloadStatus(String key) {
     return entry == null ? (DownloadedFile) new EmptyDownloadedFile(key) : entry;
   }
 
+  @Nullable
+  public String getContentHash(File file) {
+    ensureLoaded();
+    return myContent.getHash(file);
+  }
+
 
   public void removeFileDownloadListener(String key, FileDownloadListener listener) {
     synchronized (myLock) {
@@ -208,13 +226,8 @@ private DownloadedFile storeFile(String attachmentURL, String filename, String m
       entryChanged(entry);
     }
     File existingFile = entry.getFile();
-    if (existingFile != null) {
-      try {
-        FileUtil.deleteFile(existingFile, true);
-      } catch (InterruptedException e) {
-        throw new RuntimeInterruptedException(e);
-      }
-    }
+    if (existingFile != null)
+      deleteFile(existingFile);
 
     long length = source instanceof byte[] ? ((byte[]) source).length : ((File) source).length();
 
@@ -224,11 +237,22 @@ private DownloadedFile storeFile(String attachmentURL, String filename, String m
     entryChanged(entry);
 
     try {
+      ContentStore.Writer writer = myContent.createWriter();
       File resultFile;
-      if (source instanceof byte[]) {
-        resultFile = makeFile(filename, null, mimeType, (byte[]) source);
-      } else {
-        resultFile = makeFile(filename, null, mimeType, (File) source);
+      try {
+        if (source instanceof byte[]) {
+          writer.write(ByteBuffer.wrap((byte[]) source));
+        } else {
+          FileInputStream input = new FileInputStream((File) source);
+          try {
+            writer.write(input);
+          } finally {
+            IOUtils.closeStreamIgnoreExceptions(input);
+          }
+        }
+        resultFile = makeFile(filename, null, mimeType, writer);
+      } finally {
+        writer.abort();
       }
       entry.setFile(resultFile);
       entry.setMimeType(mimeType);
@@ -242,6 +266,7 @@ private DownloadedFile storeFile(String attachmentURL, String filename, String m
       entryChanged(entry);
       throw e;
     }
+    evictContent();
     return entry;
   }
 
@@ -338,7 +363,7 @@ public void doDetach() {
     });
     DetachComposite life = new DetachComposite();
     detach.add(life);
-    File tempFile = null;
+    ContentStore.Writer writer = null;
     try {
       try {
         DownloadTracker tracker = new DownloadTracker();
@@ -354,33 +379,35 @@ public void doDetach() {
         material.setCancelFlag(life, cancelFlag);
         material.setQuiet(noninteractive);
         HttpResponseData data = loader.load();
-        Pair<File, FileOutputStream> pair = createTemporaryFile();
-        tempFile = pair.getFirst();
-        FileOutputStream output = pair.getSecond();
+        writer = myContent.createWriter();
         waiting.setDone();
         tracker.setLength(data.getContentLength());
+        tracker.setWriter(writer);
         //noinspection CatchGenericClass
         try {
-          data.transferToStream(output, tracker);
+          // chunks go straight to the file channel, the tracker hashes them
+          data.transferToStream(writer.getOutput(), tracker);
         } catch (RuntimeException e) {
           // any exception may happen if we close connection concurrently
           if (Boolean.TRUE == cancelFlag.getValue())
             throw new HttpCancelledException();
           else
             throw e;
-        } finally {
-          IOUtils.closeStreamIgnoreExceptions(output);
         }
         String mimeType = Util.NN(data.getContentType());
-        owner.validateDownload(argument, tempFile, mimeType);
+        owner.validateDownload(argument, writer.getFile(), mimeType);
         String contentFilename = decodeFilename(data.getContentFilename());
-        File resultFile = makeFile(contentFilename, request.getSuggestedFilename(), mimeType, tempFile);
+        File resultFile = makeFile(contentFilename, request.getSuggestedFilename(), mimeType, writer);
+        File replacedFile = entry.getFile();
         entry.setFile(resultFile);
+        if (replacedFile != null && !replacedFile.equals(resultFile))
+          deleteFile(replacedFile);
         entry.setMimeType(mimeType);
         entry.setSize(resultFile.length());
         entry.setLastModified(resultFile.lastModified());
         entry.setState(DownloadedFile.State.READY);
         entryChanged(entry);
+        evictContent();
 // done!
       } catch (CannotCreateLoaderException e) {
         setError(entry, CANNOT_INITIATE_DOWNLOAD, e, cancelFlag);
@@ -401,12 +428,9 @@ public void doDetach() {
     } catch (HttpCancelledException e) {
       setError(entry, CANCELLED_ERROR, e);
     } finally {
-      if (tempFile != null) {
+      if (writer != null) {
         try {
-          FileUtil.deleteFile(tempFile, true);
-        } catch (InterruptedException e) {
-          Thread.currentThread().interrupt();
-// ignore
+          writer.abort();
         } catch (Exception e) {
           // ignore
           Log.warn("fin", e);
@@ -439,44 +463,42 @@ private static String decodeFilename(@Nullable String filename) {
     return processedName;
   }
 
-  private Pair<File, FileOutputStream> createTemporaryFile() throws IOException {
-    File dir = myWorkArea.getDownloadDir();
-    int c = 0;
-    IOException lastException = null;
-    int attempts = 10;
-    for (int i = 0; i < attempts; i++) {
-      c += (int) (System.currentTimeMillis() / 1000);
-      String name = "__" + Integer.toHexString(c) + ".tmp";
-      File file = new File(dir, name);
-      if (!file.exists()) {
-        try {
-          FileOutputStream stream = new FileOutputStream(file);
-          return Pair.create(file, stream);
-        } catch (FileNotFoundException e) {
-          lastException = new IOException("cannot create temporary file in " + dir);
-        }
-      }
-      try {
-        Thread.sleep(50);
-      } catch (InterruptedException e) {
-        throw new RuntimeInterruptedException(e);
-      }
-    }
-    throw lastException != null ? lastException : new IOException("cannot create temporary file in " + dir);
-  }
-
-  private File makeFile(String contentFilename, String suggestedName, String mimeType, File tempFile)
+  private File makeFile(String contentFilename, String suggestedName, String mimeType, ContentStore.Writer writer)
     throws IOException
   {
     File file = chooseTargetFile(contentFilename, suggestedName, mimeType);
-    FileUtil.copyFile(tempFile, file);
-    return file;
+    return myContent.link(writer.commit(), file);
   }
 
-  private File makeFile(String contentFilename, String suggestedName, String mimeType, byte[] data) throws IOException {
-    File file = chooseTargetFile(contentFilename, suggestedName, mimeType);
-    FileUtil.writeFile(file, data);
-    return file;
+  /**
+   * Deletes a file of an entry; the content of a linked file is deleted with its last link.
+   */
+  private void deleteFile(File file) {
+    if (myContent.unlink(file))
+      return;
+    try {
+      FileUtil.deleteFile(file, true);
+    } catch (InterruptedException e) {
+      throw new RuntimeInterruptedException(e);
+    }
+  }
+
+  /**
+   * Marks the entries whose files have been evicted from the content store as lost.
+   */
+  private void evictContent() {
+    List<File> evicted = myContent.evict();
+    if (evicted.isEmpty())
+      return;
+    Set<File> files = Collections15.hashSet(evicted);
+    List<DownloadEntry> entries = arrayList();
+    synchronized (myLock) {
+      for (DownloadEntry entry : myDownloads.values())
+        if (files.contains(entry.getFile()))
+          entries.add(entry);
+    }
+    for (DownloadEntry entry : entries)
+      checkEntryFile(entry);
   }
 
   private File chooseTargetFile(String contentFilename, String suggestedName, String mimeType) throws IOException {
@@ -548,6 +570,16 @@ private void doSave() {
       map.set(myDownloads);
     }
     StoreUtils.storePersistable(myStore, "*", map);
+    PersistableHashMap<File, String> links = createLinksPersister();
+    links.set(myContent.getLinks());
+    StoreUtils.storePersistable(myStore, CONTENT_LINKS_STORE, links);
+    PersistableArrayList<String> order = PersistableArrayList.create(new PersistableString());
+    order.set(myContent.getAccessOrder());
+    StoreUtils.storePersistable(myStore, CONTENT_ORDER_STORE, order);
+  }
+
+  private static PersistableHashMap<File, String> createLinksPersister() {
+    return PersistableHashMap.create(new PersistableFile(), new PersistableString());
   }
 
   private PersistableHashMap<String, DownloadEntry> createPersister() {
@@ -562,6 +594,12 @@ private void doLoad() {
       }
     }
     map.clear();
+    PersistableHashMap<File, String> links = createLinksPersister();
+    PersistableArrayList<String> order = PersistableArrayList.create(new PersistableString());
+    boolean restored = StoreUtils.restorePersistable(myStore, CONTENT_LINKS_STORE, links) &&
+      StoreUtils.restorePersistable(myStore, CONTENT_ORDER_STORE, order);
+    myContent.load(restored ? links.access() : null,
+      restored ? order.access() : Collections15.<String>arrayList());
 // clear state from entries that were downloading when the application terminated
     DownloadEntry[] entriesArray;
     synchronized (myLock) {
@@ -616,8 +654,14 @@ private void ensureLoaded() {
   private static class DownloadTracker implements StreamTransferTracker {
     private final Progress myProgress = new Progress("DTR");
     private long myTotal = -1;
+    private ContentStore.Writer myWriter;
 
     public void onTransfer(long bytesTransferred, ByteBuffer lastChunk) {
+      if (myWriter != null) {
+        ByteBuffer chunk = lastChunk.duplicate();
+        chunk.flip();
+        myWriter.update(chunk);
+      }
       if (myTotal > 0 && bytesTransferred > 0) {
         float percent = Math.min(1.0F * bytesTransferred / myTotal, 1.0F);
         String activity = DOWNLOADED_PERCENT.format((int) (percent * 100), (long) (myTotal / 1024));
@@ -632,5 +676,9 @@ public ProgressSource getProgress() {
     public void setLength(long length) {
       myTotal = length;
     }
+
+    public void setWriter(ContentStore.Writer writer) {
+      myWriter = writer;
+    }
   }
 }
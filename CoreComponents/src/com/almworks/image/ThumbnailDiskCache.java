@@ -0,0 +1,304 @@
+package com.almworks.image;
+
+import com.almworks.api.download.DownloadManager;
+import com.almworks.util.io.IOUtils;
+import com.almworks.util.threads.CanBlock;
+import org.almworks.util.Collections15;
+import org.almworks.util.Log;
+import org.jetbrains.annotations.*;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Second level of thumbnail cache: pre-scaled thumbnails stored as PNG files named by the content hash of the
+ * source image and the thumbnail size, so they survive restarts and renames of the source. Missing thumbnails are
+ * decoded with subsampling, so a big source image is never decoded in full.
+ * <p>
+ * Downloaded files are hashed by the download manager already; other sources are hashed here. Total size of the
+ * thumbnails is limited, least recently used ones are deleted when it is exceeded.
+ */
+class ThumbnailDiskCache {
+  private static final String ALGORITHM = "SHA-256";
+  private static final String SUFFIX = ".png";
+  private static final String TEMP_PREFIX = "__thumb";
+  private static final String TEMP_SUFFIX = ".tmp";
+  private static final int BLOCK_SIZE = 65536;
+  private static final int MAX_HASHES = 1000;
+
+  @Nullable
+  private final File myDir;
+  private final long myLimit;
+  @Nullable
+  private final DownloadManager myDownloadManager;
+
+  private final Object myLock = new Object();
+  /**
+   * path, length and modification time of a source => content hash
+   */
+  private final Map<String, String> myHashes = Collections15.linkedHashMap(16, 0.75F, true, MAX_HASHES);
+  /**
+   * name of a cached thumbnail => size, from the least to the most recently used; null until the directory is read
+   */
+  private LinkedHashMap<String, Long> myFiles;
+  private long myTotalSize;
+
+  /**
+   * @param dir directory of the cached thumbnails, null to only decode
+   * @param limit maximum total size of the cached thumbnails in bytes, 0 if unlimited
+   * @param downloadManager source of hashes of downloaded files, may be null
+   */
+  public ThumbnailDiskCache(@Nullable File dir, long limit, @Nullable DownloadManager downloadManager) {
+    myDir = dir;
+    myLimit = limit;
+    myDownloadManager = downloadManager;
+  }
+
+  /**
+   * @return thumbnail that fits into maxSize, or null if the source cannot be decoded with ImageIO
+   */
+  @CanBlock
+  @Nullable
+  public BufferedImage getThumbnail(File source, Dimension maxSize) {
+    File cached = null;
+    try {
+      if (myDir != null) {
+        cached = new File(myDir, getHash(source) + "_" + maxSize.width + "x" + maxSize.height + SUFFIX);
+        if (cached.isFile()) {
+          BufferedImage image = ImageIO.read(cached);
+          if (image != null) {
+            touch(cached);
+            return image;
+          }
+        }
+      }
+      Dimension sourceSize = new Dimension();
+      BufferedImage image = decode(source, maxSize, sourceSize);
+      if (image != null && cached != null && image.getWidth() < sourceSize.width)
+        store(image, cached);
+      return image;
+    } catch (IOException e) {
+      Log.debug("TDC: cannot make thumbnail of " + source, e);
+      return null;
+    } catch (RuntimeException e) {
+      // readers may fail on broken images with anything
+      Log.debug("TDC: cannot decode " + source, e);
+      return null;
+    }
+  }
+
+  /**
+   * Decodes the image with the greatest subsampling that keeps it not smaller than the thumbnail, and scales the
+   * result down to the thumbnail size.
+   *
+   * @param sourceSize receives the size of the source image
+   * @return thumbnail, or null if there's no ImageIO reader for the source
+   */
+  @CanBlock
+  @Nullable
+  static BufferedImage decode(File source, Dimension maxSize, Dimension sourceSize) throws IOException {
+    ImageInputStream input = ImageIO.createImageInputStream(source);
+    if (input == null)
+      return null;
+    try {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+      if (!readers.hasNext())
+        return null;
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(input, true, true);
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        sourceSize.setSize(width, height);
+        if (width <= 0 || height <= 0)
+          return null;
+        Dimension thumbSize = getThumbnailSize(width, height, maxSize);
+        int subsampling = Math.max(1, Math.min(width / thumbSize.width, height / thumbSize.height));
+        ImageReadParam param = reader.getDefaultReadParam();
+        if (subsampling > 1)
+          param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        BufferedImage image = reader.read(0, param);
+        if (image.getWidth() == thumbSize.width && image.getHeight() == thumbSize.height)
+          return image;
+        return scale(image, thumbSize);
+      } finally {
+        reader.dispose();
+      }
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * @return size of the image scaled to fit into maxSize with the aspect ratio kept, not greater than the image
+   */
+  static Dimension getThumbnailSize(int width, int height, Dimension maxSize) {
+    if (height <= maxSize.height && width <= maxSize.width)
+      return new Dimension(width, height);
+    int thumbHeight = maxSize.height;
+    int thumbWidth = maxSize.width;
+    float thumbRatio = ((float) thumbWidth) / thumbHeight;
+    float sourceRatio = ((float) width) / height;
+    if (thumbRatio < sourceRatio) {
+      thumbHeight = Math.max((int) (thumbWidth / sourceRatio), 1);
+    } else {
+      thumbWidth = Math.max((int) (thumbHeight * sourceRatio), 1);
+    }
+    return new Dimension(thumbWidth, thumbHeight);
+  }
+
+  private static BufferedImage scale(BufferedImage image, Dimension size) {
+    BufferedImage result = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = result.createGraphics();
+    try {
+      g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      g.drawImage(image, 0, 0, size.width, size.height, null);
+    } finally {
+      g.dispose();
+    }
+    return result;
+  }
+
+  private String getHash(File source) throws IOException {
+    if (myDownloadManager != null) {
+      String hash = myDownloadManager.getContentHash(source);
+      if (hash != null)
+        return hash;
+    }
+    String key = source.getAbsolutePath() + "|" + source.length() + "|" + source.lastModified();
+    String hash;
+    synchronized (myLock) {
+      hash = myHashes.get(key);
+    }
+    if (hash == null) {
+      MessageDigest digest;
+      try {
+        digest = MessageDigest.getInstance(ALGORITHM);
+      } catch (NoSuchAlgorithmException e) {
+        throw new IOException(e);
+      }
+      InputStream input = new FileInputStream(source);
+      try {
+        byte[] buffer = new byte[BLOCK_SIZE];
+        int read;
+        while ((read = input.read(buffer)) >= 0)
+          digest.update(buffer, 0, read);
+      } finally {
+        IOUtils.closeStreamIgnoreExceptions(input);
+      }
+      hash = IOUtils.toHexString(digest.digest());
+      synchronized (myLock) {
+        myHashes.put(key, hash);
+      }
+    }
+    return hash;
+  }
+
+  private void store(BufferedImage image, File file) {
+    assert myDir != null;
+    if (!myDir.isDirectory() && !myDir.mkdirs()) {
+      Log.debug("TDC: cannot create " + myDir);
+      return;
+    }
+    synchronized (myLock) {
+      // orphaned temp files are deleted on load, so load before creating ours
+      loadFiles();
+    }
+    File temp = null;
+    try {
+      temp = File.createTempFile(TEMP_PREFIX, TEMP_SUFFIX, myDir);
+      if (ImageIO.write(image, "png", temp) && (file.delete() || !file.exists()) && temp.renameTo(file)) {
+        added(file);
+        return;
+      }
+    } catch (IOException e) {
+      Log.debug("TDC: cannot write " + file, e);
+    }
+    if (temp != null && temp.exists() && !temp.delete())
+      Log.debug("TDC: cannot delete " + temp);
+  }
+
+  private void touch(File file) {
+    synchronized (myLock) {
+      loadFiles();
+      Long size = myFiles.remove(file.getName());
+      if (size != null)
+        myFiles.put(file.getName(), size);
+    }
+    // keeps the order of use for the next session
+    if (!file.setLastModified(System.currentTimeMillis()))
+      Log.debug("TDC: cannot touch " + file);
+  }
+
+  private void added(File file) {
+    synchronized (myLock) {
+      loadFiles();
+      Long previous = myFiles.remove(file.getName());
+      long size = file.length();
+      myFiles.put(file.getName(), size);
+      myTotalSize += size - (previous == null ? 0 : previous);
+      evict();
+    }
+  }
+
+  /**
+   * Deletes least recently used thumbnails while the total size is over the limit. The most recently used one is
+   * kept.
+   */
+  private void evict() {
+    assert Thread.holdsLock(myLock);
+    if (myLimit <= 0)
+      return;
+    Iterator<Map.Entry<String, Long>> ii = myFiles.entrySet().iterator();
+    while (myTotalSize > myLimit && myFiles.size() > 1 && ii.hasNext()) {
+      Map.Entry<String, Long> e = ii.next();
+      File file = new File(myDir, e.getKey());
+      if (file.exists() && !file.delete()) {
+        Log.debug("TDC: cannot delete " + file);
+        continue;
+      }
+      myTotalSize -= e.getValue();
+      ii.remove();
+    }
+  }
+
+  private void loadFiles() {
+    assert Thread.holdsLock(myLock);
+    if (myFiles != null)
+      return;
+    myFiles = new LinkedHashMap<String, Long>();
+    File[] files = myDir == null ? null : myDir.listFiles();
+    if (files == null)
+      return;
+    Arrays.sort(files, new Comparator<File>() {
+      public int compare(File o1, File o2) {
+        long m1 = o1.lastModified();
+        long m2 = o2.lastModified();
+        return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+      }
+    });
+    for (File file : files) {
+      if (!file.isFile())
+        continue;
+      String name = file.getName();
+      if (name.endsWith(SUFFIX)) {
+        long size = file.length();
+        myFiles.put(name, size);
+        myTotalSize += size;
+      } else if (name.startsWith(TEMP_PREFIX) && name.endsWith(TEMP_SUFFIX)) {
+        // left by a store() interrupted in a previous session
+        if (!file.delete())
+          Log.debug("TDC: cannot delete " + file);
+      }
+    }
+  }
+}
@@ -1,18 +1,37 @@
 package com.almworks.image;
 
+import com.almworks.api.download.DownloadManager;
 import com.almworks.api.image.*;
+import com.almworks.api.misc.WorkArea;
+import com.almworks.util.Env;
+import com.almworks.util.exec.ThreadFactory;
 import com.almworks.util.exec.ThreadGate;
+import com.almworks.util.threads.CanBlock;
 import com.almworks.util.threads.ThreadAWT;
 import com.almworks.util.threads.Threads;
 import org.almworks.util.*;
 import org.jetbrains.annotations.*;
 
 import java.awt.*;
+import java.io.File;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ThumbnailerImpl implements Thumbnailer {
   public static final int CACHE_SIZE = 100;
+  private static final String THUMBNAILS_SUBDIR = ".thumbnails";
+  /**
+   * Limit of the total size of thumbnails on disk in megabytes, 0 if unlimited
+   */
+  private static final int DISK_CACHE_LIMIT_MB = Env.getInteger("thumbnails.limit.mb", 0, Integer.MAX_VALUE, 64);
+  private static final int DECODE_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+  private final ThumbnailDiskCache myDiskCache;
+  private final ThreadPoolExecutor myDecoder;
 
   private final LinkedHashMap<String, CachedImage> myCache =
     new LinkedHashMap<String, CachedImage>(CACHE_SIZE, 0.75F, true) {
@@ -24,6 +43,19 @@ protected boolean removeEldestEntry(Map.Entry<String, CachedImage> eldest) {
       }
     };
 
+  public ThumbnailerImpl(WorkArea workArea, DownloadManager downloadManager) {
+    myDiskCache = new ThumbnailDiskCache(new File(workArea.getDownloadDir(), THUMBNAILS_SUBDIR),
+      DISK_CACHE_LIMIT_MB * 1024L * 1024L, downloadManager);
+    myDecoder = new ThreadPoolExecutor(DECODE_THREADS, DECODE_THREADS, 10, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<Runnable>(), new java.util.concurrent.ThreadFactory() {
+        private final AtomicInteger myCounter = new AtomicInteger(0);
+
+        public Thread newThread(Runnable r) {
+          return ThreadFactory.create("thumbnails-" + myCounter.incrementAndGet(), r);
+        }
+      });
+    myDecoder.allowCoreThreadTimeOut(true);
+  }
 
   @ThreadAWT
   @Nullable
@@ -63,15 +95,50 @@ private void chainCreateSourceImage(final CachedImage cachedImage, final Thumbna
   {
     factoryGate.execute(new Runnable() {
       public void run() {
-        Image image = sourceImageFactory.createSourceImage(cachedImage.getImageId());
+        if (sourceImageFactory instanceof ThumbnailFileSourceFactory) {
+          File file = ((ThumbnailFileSourceFactory) sourceImageFactory).getSourceFile(cachedImage.getImageId());
+          if (file != null) {
+            chainDecodeThumbnail(cachedImage, file, sourceImageFactory);
+            return;
+          }
+        }
+        loadSourceImage(cachedImage, sourceImageFactory);
+      }
+    });
+  }
+
+  @CanBlock
+  private void loadSourceImage(final CachedImage cachedImage, ThumbnailSourceFactory sourceImageFactory) {
+    Image image = sourceImageFactory.createSourceImage(cachedImage.getImageId());
+    if (image == null) {
+      ThreadGate.AWT.execute(new Runnable() {
+        public void run() {
+          cachedImage.setDone(null);
+        }
+      });
+    } else {
+      chainWaitImage(cachedImage, image);
+    }
+  }
+
+  /**
+   * Takes the thumbnail from the disk cache or decodes it on the decoder pool; falls back to the source factory
+   * if ImageIO cannot read the file.
+   */
+  private void chainDecodeThumbnail(final CachedImage cachedImage, final File file,
+    final ThumbnailSourceFactory sourceImageFactory)
+  {
+    myDecoder.execute(new Runnable() {
+      public void run() {
+        final Image image = myDiskCache.getThumbnail(file, cachedImage.getMaxSize());
         if (image == null) {
+          loadSourceImage(cachedImage, sourceImageFactory);
+        } else {
           ThreadGate.AWT.execute(new Runnable() {
             public void run() {
-              cachedImage.setDone(null);
+              setDone(cachedImage, image, null);
             }
           });
-        } else {
-          chainWaitImage(cachedImage, image);
         }
       }
     });
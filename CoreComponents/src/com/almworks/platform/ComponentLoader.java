@@ -105,10 +105,18 @@ private void prepareContext() {
   }
 
   private void createLongEventQueue() {
-    LongEventQueueImpl queue = new LongEventQueueImpl(new LongEventQueueEnv() {
+    LongEventQueue queue = LongEventQueue.create(new LongEventQueueEnv() {
       public boolean getSingleThread() {
         return Env.getBoolean(GlobalProperties.SINGLE_WORKER);
       }
+
+      public boolean getForkJoin() {
+        return Env.getBoolean(GlobalProperties.FORK_JOIN_WORKERS);
+      }
+
+      public boolean getMetrics() {
+        return Env.getBoolean(GlobalProperties.WORKER_METRICS);
+      }
     });
 
     // this was causing context cycles 8-[]
@@ -150,6 +150,11 @@ public byte[] load(String id) throws IOException, InterruptedException {
     return load(id, StoreFeature.EMPTY_FEATURES_ARRAY);
   }
 
+  @Override
+  public void prefetch(String prefix) {
+    // entries are loaded from their data files one by one anyway
+  }
+
   @Override
   public synchronized void clear(String id) throws IOException {
     Threads.assertLongOperationsAllowed();
@@ -51,6 +51,14 @@ public StoreAccess access(String path, StoreFeature[] features) {
     return new StoreImpl(myStorer, path, features);
   }
 
+  public void prefetch() {
+    try {
+      myStorer.prefetch(myPrefix);
+    } catch (IOException e) {
+      Log.warn("cannot prefetch " + myPrefix);
+    }
+  }
+
   public void store(byte[] data) {
     IOException lastException = null;
     for (int i = 0; i < STORE_WRITE_ATTEMPTS; i++) {
@@ -18,5 +18,11 @@ public interface Storer {
 
   void clear(String id) throws IOException;
 
+  /**
+   * Hints that the entry and all entries under it are going to be loaded soon, so the storer may read them in one
+   * request. Does not block.
+   */
+  void prefetch(String prefix) throws IOException;
+
   boolean isSupported(StoreFeature[] features);
 }
@@ -4,30 +4,58 @@
 import com.almworks.sqlite4java.SQLiteConnection;
 import com.almworks.sqlite4java.SQLiteException;
 import com.almworks.store.*;
+import com.almworks.util.Env;
 import com.almworks.util.Pair;
+import com.almworks.util.text.TextUtil;
 import com.almworks.util.fileformats.FileFormatException;
 import org.almworks.util.ArrayUtil;
+import org.almworks.util.Collections15;
 import org.almworks.util.Log;
 import org.jetbrains.annotations.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * Entries of {@link #prefetch prefetched} subtrees are kept in memory. The cache is updated by the store thread
+ * together with the database, so a cached entry is never older than the database row; entries that are not written
+ * yet are looked up in {@link #myNotWrittenData} first.
+ * <p>
+ * Entries loaded during the first minute are remembered in a snapshot and prefetched on the next start, so the
+ * startup does not wait for the store thread for every entry.
+ */
 public class SQLiteStorer implements Storer {
   private static final byte[] CLEAR = new byte[0];
+  private static final String SNAPSHOT_ID = "$sqliteStore$.snapshot";
+  private static final boolean SNAPSHOT = Env.getBoolean("store.snapshot", true);
+  private static final long SNAPSHOT_PERIOD = 60000;
+  private static final int MAX_SNAPSHOT_SIZE = 5000;
+  private static final Charset SNAPSHOT_CHARSET = Charset.forName("UTF-8");
+
   private final SQLiteStoreThread myThread;
   private final ConcurrentHashMap<String, Pair<byte[], StoreFeature[]>> myNotWrittenData = new ConcurrentHashMap<String, Pair<byte[], StoreFeature[]>>();
+  private final ConcurrentHashMap<String, Pair<byte[], StoreFeature[]>> myCache = new ConcurrentHashMap<String, Pair<byte[], StoreFeature[]>>();
+  private final List<StoreJob.Prefetch> myPrefetches = new CopyOnWriteArrayList<StoreJob.Prefetch>();
   private final SDFFormat myFormat = new SDFFormatV2();
   private static final Pair<byte[],StoreFeature[]> CLEAR_ID = Pair.create(CLEAR, (StoreFeature[])null);
 
+  private final long myStarted = System.currentTimeMillis();
+  /**
+   * Entries loaded since start, null when the snapshot is taken
+   */
+  private Set<String> myLoadedIds = SNAPSHOT ? new LinkedHashSet<String>() : null;
+
   public SQLiteStorer(File dbFile, FileStorer legacyStore) {
     File parentFile = dbFile != null ? dbFile.getParentFile() : null;
     if (parentFile != null) parentFile.mkdirs();
     final SQLiteConnection sqliteConn = new SQLiteConnection(dbFile);
     CrashSQLiteAction.ourConnection = sqliteConn;
     myThread = new SQLiteStoreThread(sqliteConn, new InitJob(legacyStore, myFormat));
+    if (SNAPSHOT) startPrefetch(new StoreJob.SnapshotPrefetch(SNAPSHOT_ID, myCache));
   }
 
   public void stop() {
@@ -44,19 +72,21 @@ public void store(String id, byte[] data, StoreFeature[] features) throws IOExce
         return;
     }
     myNotWrittenData.put(id, Pair.create(data, features));
-    myThread.enqueue(new FlushStore(myNotWrittenData));
+    myThread.enqueue(new FlushStore(this));
   }
 
   @Override
   public byte[] load(String id, StoreFeature[] f) throws IOException, InterruptedException {
+    recordLoad(id);
     Pair<byte[], StoreFeature[]> current = myNotWrittenData.get(id);
+    if (current == null) current = loadPrefetched(id);
     byte[] data;
     StoreFeature[] features;
     if (current == null) {
       StoreJob.Read job = performRead(id);
       data = job.getData();
       features = job.getFeatures();
-    } else if (current != null && current.getFirst() == CLEAR) return null;
+    } else if (current.getFirst() == CLEAR) return null;
     else {
       data = ArrayUtil.arrayCopy(current.getFirst());
       features = current.getSecond();
@@ -70,6 +100,75 @@ public byte[] load(String id, StoreFeature[] f) throws IOException, InterruptedE
     return data;
   }
 
+  /**
+   * @return cached entry, {@link #CLEAR_ID} if a prefetch has found no entry, or null if the entry was not prefetched
+   */
+  @Nullable
+  private Pair<byte[], StoreFeature[]> loadPrefetched(String id) throws InterruptedException {
+    for (StoreJob.Prefetch prefetch : myPrefetches) {
+      if (!prefetch.covers(id)) continue;
+      if (!prefetch.waitDone()) {
+        myPrefetches.remove(prefetch);
+        continue;
+      }
+      if (!prefetch.covers(id)) continue;
+      Pair<byte[], StoreFeature[]> cached = myCache.get(id);
+      return cached != null ? cached : CLEAR_ID;
+    }
+    return null;
+  }
+
+  /**
+   * Loads an entry and all entries under it in one request. Loads of these entries wait for the request instead of
+   * reading them one by one.
+   */
+  @Override
+  public void prefetch(String prefix) {
+    for (StoreJob.Prefetch prefetch : myPrefetches) {
+      if (prefetch instanceof StoreJob.PrefixPrefetch && prefetch.covers(prefix)) return;
+    }
+    startPrefetch(new StoreJob.PrefixPrefetch(prefix, myCache));
+  }
+
+  private void startPrefetch(StoreJob.Prefetch prefetch) {
+    myPrefetches.add(prefetch);
+    myThread.enqueue(prefetch);
+  }
+
+  private boolean isPrefetched(String id) {
+    for (StoreJob.Prefetch prefetch : myPrefetches) {
+      if (prefetch.covers(id)) return true;
+    }
+    return false;
+  }
+
+  private void recordLoad(String id) {
+    synchronized (this) {
+      if (myLoadedIds == null) return;
+      myLoadedIds.add(id);
+      if (myLoadedIds.size() < MAX_SNAPSHOT_SIZE && System.currentTimeMillis() - myStarted < SNAPSHOT_PERIOD) return;
+    }
+    saveSnapshot();
+  }
+
+  void saveSnapshot() {
+    String snapshot;
+    synchronized (this) {
+      if (myLoadedIds == null) return;
+      snapshot = TextUtil.separate(myLoadedIds, "\n");
+      myLoadedIds = null;
+    }
+    myThread.enqueue(new StoreJob.Write(SNAPSHOT_ID, snapshot.getBytes(SNAPSHOT_CHARSET), StoreFeature.EMPTY_FEATURES_ARRAY));
+  }
+
+  static List<String> parseSnapshot(byte[] snapshot) {
+    List<String> ids = Collections15.arrayList();
+    for (String id : new String(snapshot, SNAPSHOT_CHARSET).split("\n")) {
+      if (id.length() > 0) ids.add(id);
+    }
+    return ids;
+  }
+
   StoreJob.Read performRead(String id) throws InterruptedException, IOException {
     StoreJob.Read job = new StoreJob.Read(id, 2);
     myThread.enqueue(job);
@@ -84,7 +183,7 @@ public void clear(String id) throws IOException {
     Pair<byte[], StoreFeature[]> current = myNotWrittenData.get(id);
     if (current != null && current.getFirst() == CLEAR) return;
     myNotWrittenData.put(id, CLEAR_ID);
-    myThread.enqueue(new FlushStore(myNotWrittenData));
+    myThread.enqueue(new FlushStore(this));
   }
 
   @Override
@@ -99,12 +198,18 @@ int getPendingCount() {
     return myNotWrittenData.size();
   }
 
+  int getCachedCount() {
+    return myCache.size();
+  }
+
   private static class FlushStore extends StoreJob {
+    private final SQLiteStorer myStorer;
     private final ConcurrentHashMap<String, Pair<byte[], StoreFeature[]>> myData;
 
-    FlushStore(ConcurrentHashMap<String, Pair<byte[], StoreFeature[]>> data) {
+    FlushStore(SQLiteStorer storer) {
       super(1);
-      myData = data;
+      myStorer = storer;
+      myData = storer.myNotWrittenData;
     }
 
     @Override
@@ -125,10 +230,11 @@ private void updateId(SQLiteConnection connection, String id) throws SQLiteExcep
         byte[] data = toWrite.getFirst();
         writeRow(connection, id, data, features);
       }
+      // cache is updated before the entry leaves not written data, so loads never see older value
+      if (myStorer.isPrefetched(id)) myStorer.myCache.put(id, toWrite);
       myData.remove(id, toWrite);
     }
 
-
     private boolean isEqualData(byte[] bytes1, byte[] bytes2) {
       if (bytes1 == bytes2) return true;
       if (bytes1 == null || bytes2 == null) return false;
@@ -1,10 +1,15 @@
 package com.almworks.store.sqlite;
 
+import com.almworks.api.store.Store;
 import com.almworks.api.store.StoreFeature;
 import com.almworks.sqlite4java.*;
+import com.almworks.util.Pair;
+import org.almworks.util.Collections15;
 import org.almworks.util.Log;
 import org.jetbrains.annotations.*;
 
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -107,6 +112,16 @@ static void writeRow(SQLiteConnection connection, String id, byte[] data, StoreF
     }
   }
 
+  static StoreFeature[] toFeatures(@Nullable String featureId) {
+    if (featureId == null) return StoreFeature.EMPTY_FEATURES_ARRAY;
+    StoreFeature feature = StoreFeature.findByName(featureId);
+    if (feature == null) {
+      Log.error("Unknown feaure " + featureId);
+      return StoreFeature.EMPTY_FEATURES_ARRAY;
+    }
+    return new StoreFeature[]{feature};
+  }
+
   static class Write extends StoreJob {
     private final byte[] myData;
     private final String myId;
@@ -157,13 +172,7 @@ public StoreFeature[] getFeatures() {
       synchronized (this) {
         featureId = myFeatureId;
       }
-      if (featureId == null) return StoreFeature.EMPTY_FEATURES_ARRAY;
-      StoreFeature feature = StoreFeature.findByName(featureId);
-      if (feature == null) {
-        Log.error("Unknown feaure " + featureId);
-        return StoreFeature.EMPTY_FEATURES_ARRAY;
-      }
-      return new StoreFeature[]{feature};
+      return toFeatures(featureId);
     }
 
     @Override
@@ -190,6 +199,112 @@ public String toString() {
     }
   }
 
+  /**
+   * Reads several entries in one job and puts them to the cache of the storer.
+   */
+  abstract static class Prefetch extends StoreJob {
+    private final Map<String, Pair<byte[], StoreFeature[]>> myCache;
+
+    Prefetch(Map<String, Pair<byte[], StoreFeature[]>> cache) {
+      super(2);
+      myCache = cache;
+    }
+
+    /**
+     * @return false if the entry surely is not loaded by this job
+     */
+    public abstract boolean covers(String id);
+
+    protected void loaded(String id, byte[] data, String featureId) {
+      myCache.put(id, Pair.create(data, toFeatures(featureId)));
+    }
+  }
+
+  /**
+   * Loads an entry and all entries under it with one range scan.
+   */
+  static class PrefixPrefetch extends Prefetch {
+    private static final SQLParts SQL_READ_PREFIX = new SQLParts("SELECT " + ID_COLUMN + ", " + DATA_COLUMN + ", " +
+      FEAUTE_COLUMN + " FROM " + TABLE + " WHERE " + ID_COLUMN + "=? OR (" + ID_COLUMN + ">? AND " + ID_COLUMN + "<?)");
+
+    private final String myPrefix;
+
+    PrefixPrefetch(String prefix, Map<String, Pair<byte[], StoreFeature[]>> cache) {
+      super(cache);
+      myPrefix = prefix;
+    }
+
+    @Override
+    public boolean covers(String id) {
+      return id.startsWith(myPrefix) &&
+        (id.length() == myPrefix.length() || id.startsWith(Store.DELIMITER, myPrefix.length()));
+    }
+
+    @Override
+    protected void doPerform(SQLiteConnection connection) throws SQLiteException {
+      SQLiteStatement st = connection.prepare(SQL_READ_PREFIX);
+      try {
+        st.bind(1, myPrefix);
+        // '/' follows the delimiter '.'
+        st.bind(2, myPrefix + Store.DELIMITER);
+        st.bind(3, myPrefix + "/");
+        while (st.step()) loaded(st.columnString(0), st.columnBlob(1), st.columnString(2));
+      } finally {
+        st.dispose();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "StoreJob-prefetch: " + myPrefix;
+    }
+  }
+
+  /**
+   * Loads the entries listed in a snapshot entry. Until the job is done any entry may be listed.
+   */
+  static class SnapshotPrefetch extends Prefetch {
+    private final String mySnapshotId;
+    private volatile Set<String> myIds;
+
+    SnapshotPrefetch(String snapshotId, Map<String, Pair<byte[], StoreFeature[]>> cache) {
+      super(cache);
+      mySnapshotId = snapshotId;
+    }
+
+    @Override
+    public boolean covers(String id) {
+      Set<String> ids = myIds;
+      return ids == null || ids.contains(id);
+    }
+
+    @Override
+    protected void doPerform(SQLiteConnection connection) throws SQLiteException {
+      Set<String> ids = Collections15.hashSet();
+      SQLiteStatement st = connection.prepare(Read.SQL_READ);
+      try {
+        st.bind(1, mySnapshotId);
+        if (st.step()) {
+          byte[] snapshot = st.columnBlob(0);
+          if (snapshot != null) ids.addAll(SQLiteStorer.parseSnapshot(snapshot));
+        }
+        for (String id : ids) {
+          st.reset(true);
+          st.bind(1, id);
+          if (st.step()) loaded(id, st.columnBlob(0), st.columnString(1));
+        }
+      } finally {
+        st.dispose();
+      }
+      myIds = ids;
+    }
+
+    @Override
+    public String toString() {
+      return "StoreJob-snapshot: " + mySnapshotId;
+    }
+  }
+
   static final StoreJob INIT_SCHEMA = new StoreJob(1) {
     private static final String CREATE_STORE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE +
       " (" + ID_COLUMN + " TEXT UNIQUE NOT NULL, " + DATA_COLUMN + " BLOB)";
@@ -0,0 +1,110 @@
+package com.almworks.download;
+
+import com.almworks.util.files.FileUtil;
+import com.almworks.util.tests.BaseTestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.List;
+
+public class ContentStoreTests extends BaseTestCase {
+  private File myDir;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = createTempDir();
+  }
+
+  protected void tearDown() throws Exception {
+    FileUtil.deleteDirectoryWithContents(myDir);
+    myDir = null;
+    super.tearDown();
+  }
+
+  public void testSameContentIsStoredOnce() throws IOException {
+    ContentStore store = new ContentStore(new File(myDir, ".content"), 0);
+    String hash1 = store(store, "log");
+    String hash2 = store(store, "log");
+    String hash3 = store(store, "screenshot");
+    assertEquals(hash1, hash2);
+    assertFalse(hash1.equals(hash3));
+    assertEquals(2, store.getContentCount());
+    assertEquals(3 + 10, store.getTotalSize());
+
+    File a = store.link(hash1, new File(myDir, "a.log"));
+    File b = store.link(hash2, new File(myDir, "b.log"));
+    assertEquals("log", FileUtil.readFile(a));
+    assertEquals("log", FileUtil.readFile(b));
+    assertEquals(hash1, store.getHash(b));
+    assertTrue(store.evict().isEmpty());
+
+    ContentStore reloaded = new ContentStore(new File(myDir, ".content"), 0);
+    reloaded.load(store.getLinks(), store.getAccessOrder());
+    // the screenshot is not linked
+    assertEquals(1, reloaded.getContentCount());
+    assertEquals(3, reloaded.getTotalSize());
+    assertEquals(hash1, reloaded.getHash(a));
+  }
+
+  public void testUnlinkDeletesContentWithLastLink() throws IOException {
+    ContentStore store = new ContentStore(new File(myDir, ".content"), 0);
+    File a = store.link(store(store, "log"), new File(myDir, "a.log"));
+    File b = store.link(store(store, "log"), new File(myDir, "b.log"));
+    assertTrue(isReadOnly(a));
+    assertTrue(isReadOnly(b));
+
+    assertTrue(store.unlink(a));
+    assertFalse(a.exists());
+    assertEquals("log", FileUtil.readFile(b));
+    assertTrue(isReadOnly(b));
+    assertEquals(1, store.getContentCount());
+
+    assertTrue(store.unlink(b));
+    assertFalse(b.exists());
+    assertEquals(0, store.getContentCount());
+    assertEquals(0, store.getTotalSize());
+    assertFalse(store.unlink(b));
+  }
+
+  public void testEvictLeastRecentlyUsed() throws IOException {
+    ContentStore store = new ContentStore(new File(myDir, ".content"), 10);
+    String old = store(store, "aaaaa");
+    File oldFile = store.link(old, new File(myDir, "old.txt"));
+    store.link(old, new File(myDir, "old2.txt"));
+    String used = store(store, "bbbbb");
+    store.link(used, new File(myDir, "used.txt"));
+    assertTrue(store.evict().isEmpty());
+
+    store(store, "ccccc");
+    List<File> evicted = store.evict();
+    assertEquals(2, evicted.size());
+    assertFalse(oldFile.exists());
+    assertNull(store.getHash(oldFile));
+    assertEquals(10, store.getTotalSize());
+    assertEquals("bbbbb", FileUtil.readFile(new File(myDir, "used.txt")));
+  }
+
+  /**
+   * File.canWrite() is true for the superuser, whatever the permissions are
+   */
+  private static boolean isReadOnly(File file) throws IOException {
+    PosixFileAttributeView view = Files.getFileAttributeView(file.toPath(), PosixFileAttributeView.class);
+    if (view == null)
+      return !file.canWrite();
+    return !view.readAttributes().permissions().contains(PosixFilePermission.OWNER_WRITE);
+  }
+
+  private static String store(ContentStore store, String content) throws IOException {
+    ContentStore.Writer writer = store.createWriter();
+    try {
+      writer.write(ByteBuffer.wrap(content.getBytes("UTF-8")));
+      return writer.commit();
+    } finally {
+      writer.abort();
+    }
+  }
+}
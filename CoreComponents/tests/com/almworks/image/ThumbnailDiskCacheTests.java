@@ -0,0 +1,109 @@
+package com.almworks.image;
+
+import com.almworks.util.files.FileUtil;
+import com.almworks.util.tests.BaseTestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+public class ThumbnailDiskCacheTests extends BaseTestCase {
+  private File myDir;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = createTempDir();
+  }
+
+  protected void tearDown() throws Exception {
+    FileUtil.deleteDirectoryWithContents(myDir);
+    myDir = null;
+    super.tearDown();
+  }
+
+  public void testSubsampledThumbnailIsCached() throws IOException {
+    File source = createImage("big.png", 2000, 1000);
+    File cacheDir = new File(myDir, ".thumbnails");
+    ThumbnailDiskCache cache = new ThumbnailDiskCache(cacheDir, 0, null);
+
+    BufferedImage thumbnail = cache.getThumbnail(source, new Dimension(128, 128));
+    assertNotNull(thumbnail);
+    assertEquals(128, thumbnail.getWidth());
+    assertEquals(64, thumbnail.getHeight());
+    File[] cached = cacheDir.listFiles();
+    assertNotNull(cached);
+    assertEquals(1, cached.length);
+    assertTrue(cached[0].getName(), cached[0].getName().endsWith("_128x128.png"));
+
+    // same content under another name is served from disk
+    File copy = new File(myDir, "copy.png");
+    FileUtil.copyFile(source, copy);
+    assertTrue(source.delete());
+    BufferedImage fromDisk = new ThumbnailDiskCache(cacheDir, 0, null).getThumbnail(copy, new Dimension(128, 128));
+    assertNotNull(fromDisk);
+    assertEquals(128, fromDisk.getWidth());
+    assertEquals(1, cacheDir.listFiles().length);
+  }
+
+  public void testLeastRecentlyUsedThumbnailsAreDeleted() throws IOException {
+    File first = createImage("first.png", 2000, 1000);
+    File second = createImage("second.png", 1000, 2000);
+    File cacheDir = new File(myDir, ".thumbnails");
+    Dimension size = new Dimension(128, 128);
+    assertNotNull(new ThumbnailDiskCache(cacheDir, 0, null).getThumbnail(first, size));
+    File[] cached = cacheDir.listFiles();
+    assertEquals(1, cached.length);
+    String firstName = cached[0].getName();
+
+    // room for one thumbnail of this size
+    ThumbnailDiskCache cache = new ThumbnailDiskCache(cacheDir, cached[0].length() + 1, null);
+    assertNotNull(cache.getThumbnail(second, size));
+    cached = cacheDir.listFiles();
+    assertEquals(1, cached.length);
+    assertFalse(firstName.equals(cached[0].getName()));
+  }
+
+  public void testOrphanedTempFilesAreDeleted() throws IOException {
+    File source = createImage("big.png", 2000, 1000);
+    File cacheDir = new File(myDir, ".thumbnails");
+    assertTrue(cacheDir.mkdirs());
+    File orphan = new File(cacheDir, "__thumb123.tmp");
+    FileUtil.writeFile(orphan, "interrupted");
+    File other = new File(cacheDir, "other.tmp");
+    FileUtil.writeFile(other, "not ours");
+
+    assertNotNull(new ThumbnailDiskCache(cacheDir, 0, null).getThumbnail(source, new Dimension(128, 128)));
+    assertFalse(orphan.exists());
+    assertTrue(other.exists());
+    assertEquals(2, cacheDir.listFiles().length);
+  }
+
+  public void testSmallImageIsNotScaled() throws IOException {
+    File source = createImage("small.png", 50, 30);
+    File cacheDir = new File(myDir, ".thumbnails");
+    BufferedImage image = new ThumbnailDiskCache(cacheDir, 0, null).getThumbnail(source, new Dimension(128, 128));
+    assertNotNull(image);
+    assertEquals(50, image.getWidth());
+    assertEquals(30, image.getHeight());
+    assertFalse(cacheDir.exists());
+  }
+
+  public void testNotAnImage() throws IOException {
+    File source = new File(myDir, "text.png");
+    FileUtil.writeFile(source, "not an image");
+    assertNull(new ThumbnailDiskCache(null, 0, null).getThumbnail(source, new Dimension(128, 128)));
+  }
+
+  private File createImage(String name, int width, int height) throws IOException {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = image.createGraphics();
+    g.setColor(Color.RED);
+    g.fillRect(0, 0, width / 2, height);
+    g.dispose();
+    File file = new File(myDir, name);
+    assertTrue(ImageIO.write(image, "png", file));
+    return file;
+  }
+}
@@ -3,6 +3,7 @@
 import com.almworks.api.store.StoreFeature;
 import com.almworks.store.StorerFixture;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 
@@ -58,6 +59,38 @@ public void testMigration() throws IOException, InterruptedException {
     assertTrue(Arrays.equals(secureBytes, aRead.getData()));
   }
 
+  public void testPrefetch() throws IOException, InterruptedException {
+    File file = new File(myWorkArea.getStorerDir(), "prefetch.db");
+    mySQL = new SQLiteStorer(file, null);
+    byte[] bytes = {1, 2, 4};
+    for (String id : new String[] {"a", "a.b", "a.b.c", "ab", "b"})
+      mySQL.store(id, bytes, StoreFeature.EMPTY_FEATURES_ARRAY);
+    assertTrue(Arrays.equals(bytes, mySQL.load("b", StoreFeature.EMPTY_FEATURES_ARRAY)));
+    mySQL.saveSnapshot();
+    mySQL.performRead("b");
+    mySQL.stop();
+
+    mySQL = new SQLiteStorer(file, null);
+    mySQL.performRead("b");
+    assertEquals(1, mySQL.getCachedCount());
+    mySQL.prefetch("a");
+    mySQL.prefetch("a.b");
+    mySQL.performRead("b");
+    assertEquals(4, mySQL.getCachedCount());
+    assertTrue(Arrays.equals(bytes, mySQL.load("a.b.c", StoreFeature.EMPTY_FEATURES_ARRAY)));
+    assertTrue(Arrays.equals(bytes, mySQL.load("ab", StoreFeature.EMPTY_FEATURES_ARRAY)));
+    assertNull(mySQL.load("a.x", StoreFeature.EMPTY_FEATURES_ARRAY));
+
+    byte[] other = {3};
+    mySQL.store("a.x", other, StoreFeature.EMPTY_FEATURES_ARRAY);
+    mySQL.clear("a.b");
+    mySQL.performRead("b");
+    assertEquals(0, mySQL.getPendingCount());
+    assertTrue(Arrays.equals(other, mySQL.load("a.x", StoreFeature.EMPTY_FEATURES_ARRAY)));
+    assertNull(mySQL.load("a.b", StoreFeature.EMPTY_FEATURES_ARRAY));
+    assertNull(mySQL.performRead("a.b").getData());
+  }
+
   public void testOverwriteFeatures() throws IOException, InterruptedException {
     mySQL = new SQLiteStorer(null, null);
     byte[] bytes = {1, 2, 4};
@@ -1,6 +1,7 @@
 package com.almworks.api.application.tree;
 
 import com.almworks.items.api.*;
+import com.almworks.items.util.BatchCounter;
 import com.almworks.util.commons.Procedure2;
 import com.almworks.util.exec.ThreadGate;
 import com.almworks.util.threads.*;
@@ -14,6 +15,25 @@
 import java.util.Map;
 
 public class ItemsPreviewManager {
+  /**
+   * Job that counts items of a filter. Filters of all such jobs from one pass are counted together, see
+   * {@link BatchCounter}, so a child node filters the items of its parent instead of the whole database.
+   */
+  public interface CountJob extends Procedure2<Lifespan, DBReader> {
+    /**
+     * Called in the read transaction before the pass.
+     *
+     * @return filter to count, or null if the job has to be {@link #invoke invoked}
+     */
+    @Nullable
+    DBFilter getCountFilter();
+
+    /**
+     * Called instead of {@link #invoke} with the number of items in the {@link #getCountFilter filter}
+     */
+    void setCount(Lifespan lifespan, long count);
+  }
+
   private final Object myLock = new Object();
 
   /**
@@ -121,13 +141,26 @@ private void calculate(DBReader reader) {
         myDetachMap.put(jobKey, detaches[i]);
       }
     }
+    long start = System.currentTimeMillis();
+    BatchCounter counter = new BatchCounter(reader);
+    DBFilter[] filters = new DBFilter[jobs.length];
+    for (int i = 0; i < jobs.length; i++) {
+      if (jobs[i] instanceof CountJob && !detaches[i].isEnded()) {
+        filters[i] = ((CountJob) jobs[i]).getCountFilter();
+        if (filters[i] != null)
+          counter.add(filters[i].getExpr());
+      }
+    }
     for (int i = 0; i < jobs.length; i++) {
       Procedure2<Lifespan, DBReader> node = jobs[i];
       Lifespan lifespan = detaches[i];
       if (lifespan.isEnded())
         continue;
       try {
-        node.invoke(lifespan, reader);
+        if (filters[i] != null)
+          ((CountJob) node).setCount(lifespan, counter.count(filters[i].getExpr()));
+        else
+          node.invoke(lifespan, reader);
       } finally {
         try {
           DetachComposite detach;
@@ -143,5 +176,7 @@ private void calculate(DBReader reader) {
         }
       }
     }
+    Log.debug("ItemsPreviewManager: " + jobs.length + " jobs, " + counter.getScanCount() + " scans, " +
+      counter.getFilterCount() + " filters, " + (System.currentTimeMillis() - start) + "ms");
   }
 }
@@ -2,6 +2,7 @@
 
 import com.almworks.api.application.ItemsCollector;
 import com.almworks.integers.*;
+import com.almworks.integers.util.LongSetBuilder;
 import com.almworks.items.api.*;
 import com.almworks.util.Getter;
 import com.almworks.util.L;
@@ -17,7 +18,11 @@
 import util.concurrent.Synchronized;
 import util.concurrent.SynchronizedInt;
 
+import java.util.Collections;
+
 public class ItemViewAdapter extends AbstractItemSource {
+  private static final int PREFETCH_PAGE_SIZE = 500;
+
   private final TypedKey<ScalarModel<Long>> REQUIRED_CN_MODEL_KEY = key(ScalarModel.class);
 
   private final DBFilter myItemFilter;
@@ -148,19 +153,28 @@ private void onPlusItems(
     LongIterable items, final boolean useCount,
     final ItemsCollector collector, final ReloadOp op, final DBReader reader)
   {
+    LongList plusItems;
     if(mySubFilter != null) {
-      reader.query(mySubFilter).filterItems(items, new LongCollectorAdapter() {
-        public void add(long value) {
-          // todo(IS): careful review - see javadocs for filterItems
-          if(!onPlusItem(value, useCount, collector, op, reader)) {
-            throw new DBOperationCancelledException();
-          }
-        }
-      });
+      LongSetBuilder filtered = new LongSetBuilder();
+      reader.query(mySubFilter).filterItems(items, filtered);
+      plusItems = filtered.toSortedCollection();
     } else {
-      for(final LongIterator i = items.iterator(); i.hasNext();) {
-        onPlusItem(i.next(), useCount, collector, op, reader);
+      plusItems = LongCollections.toSortedUnique(items);
+    }
+    // The first page is a single item: while it is loaded, the reader learns which attributes are read,
+    // so the following pages are loaded with one query per attribute.
+    int pageStart = 0;
+    int pageSize = 1;
+    while(pageStart < plusItems.size()) {
+      int pageEnd = Math.min(pageStart + pageSize, plusItems.size());
+      reader.prefetchValues(plusItems.subList(pageStart, pageEnd), Collections.<DBAttribute<?>>emptySet());
+      for(int i = pageStart; i < pageEnd; i++) {
+        if(!onPlusItem(plusItems.get(i), useCount, collector, op, reader)) {
+          return;
+        }
       }
+      pageStart = pageEnd;
+      pageSize = PREFETCH_PAGE_SIZE;
     }
   }
 
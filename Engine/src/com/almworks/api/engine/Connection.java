@@ -219,6 +219,12 @@ SyncTask synchronizeItemView(Constraint validRemoteQueryConstraint, @Nullable DB
 
   boolean matchAllWords(long item, char[][] charWords, String[] stringWords, DBReader reader);
 
+  /**
+   * @return index over the texts checked by {@link #matchAllWords}, or null if the connection does not index texts
+   */
+  @Nullable
+  DBTextIndex getTextIndex();
+
   boolean isAllowedByLicense();
 
   @Nullable
@@ -5,6 +5,7 @@
 import com.almworks.api.image.*;
 import com.almworks.engine.gui.AttachmentProperty;
 import com.almworks.engine.gui.AttachmentsEnv;
+import com.almworks.util.Pair;
 import com.almworks.util.components.ThumbnailViewCellGeometry;
 import com.almworks.util.components.ThumbnailViewUI;
 import com.almworks.util.exec.Context;
@@ -27,7 +28,7 @@
 import java.util.List;
 
 class AttachmentThumbnailUI<T extends Attachment>
-  implements ThumbnailViewUI<T>, ThumbnailSourceFactory, ThumbnailReadyNotificator
+  implements ThumbnailViewUI<T>, ThumbnailFileSourceFactory, ThumbnailReadyNotificator
 {
   private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
   private static final int MAX_THUMB_FIT_HEIGHT = 300;
@@ -221,6 +222,26 @@ public void onThumbnailReady(String imageId, Image thumbnail) {
   @Nullable
   public Image createSourceImage(String imageId) {
     Threads.assertLongOperationsAllowed();
+    Pair<File, String> source = getSource(imageId);
+    if (source != null) {
+      return ImageUtil.loadImageFromFile(source.getFirst(), source.getSecond());
+    } else {
+      return null;
+    }
+  }
+
+  @CanBlock
+  @Nullable
+  public File getSourceFile(String imageId) {
+    Pair<File, String> source = getSource(imageId);
+    return source == null ? null : source.getFirst();
+  }
+
+  /**
+   * @return file and MIME type of the image
+   */
+  @Nullable
+  private Pair<File, String> getSource(String imageId) {
     String url = StringUtil.substringBeforeFirst(imageId, ID_SEPARATOR);
     String mimeType = null;
     File file = null;
@@ -237,11 +258,7 @@ public Image createSourceImage(String imageId) {
         mimeType = FileUtil.guessMimeType(filename);
       }
     }
-    if (file != null) {
-      return ImageUtil.loadImageFromFile(file, mimeType);
-    } else {
-      return null;
-    }
+    return file == null ? null : Pair.create(file, mimeType);
   }
 
 
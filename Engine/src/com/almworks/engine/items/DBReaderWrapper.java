@@ -6,6 +6,7 @@
 import com.almworks.util.bool.BoolExpr;
 import org.jetbrains.annotations.*;
 
+import java.util.Collection;
 import java.util.Map;
 
 /**
@@ -30,6 +31,17 @@ public <T> T getValue(long item, DBAttribute<T> attribute) {
     return myReader.getValue(item, attribute);
   }
 
+  @NotNull
+  @Override
+  public DBValueColumns getValues(LongList items, Collection<? extends DBAttribute<?>> attributes) {
+    return myReader.getValues(items, attributes);
+  }
+
+  @Override
+  public void prefetchValues(LongList items, Collection<? extends DBAttribute<?>> attributes) {
+    myReader.prefetchValues(items, attributes);
+  }
+
   @Override
   public long getTransactionIcn() {
     return myReader.getTransactionIcn();
@@ -15,6 +15,16 @@ public DBTriggerWrapper(DBTrigger trigger) {
     myTrigger = trigger;
   }
 
+  @Override
+  public boolean isIncremental() {
+    return myTrigger.isIncremental();
+  }
+
+  @Override
+  public int getVersion() {
+    return myTrigger.getVersion();
+  }
+
   @Override
   public void apply(LongList itemsSorted, DBWriter writer) {
     DBWriterWrapper wrappedWriter = wrapWriter(writer);
@@ -413,6 +413,11 @@ public boolean isAllowedByLicense() {
     return true;
   }
 
+  @Nullable
+  public DBTextIndex getTextIndex() {
+    return null;
+  }
+
   @NotNull
   @Override
   public final AListModel<? extends ConstraintDescriptor> getDescriptors() {
@@ -50,6 +50,7 @@ public BaseConnectionContext(Connection connection, ComponentContainer container
     myConnection = connection;
     myContainer = container;
     myStore = store;
+    myStore.prefetch();
     myDefaultAuthHandler = container.instantiate(BasicHttpAuthHandler.class);
     myConnectorStateStorage = new StoreBasedConnectionStateStorage(store, "con.st.st");
   }
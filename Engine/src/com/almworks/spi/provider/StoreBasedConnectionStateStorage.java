@@ -2,6 +2,7 @@
 
 import com.almworks.api.connector.ConnectorStateStorage;
 import com.almworks.api.store.Store;
+import com.almworks.api.store.StoreAccess;
 import com.almworks.api.store.StoreUtils;
 import com.almworks.util.collections.MultiMap;
 import com.almworks.util.exec.ThreadGate;
@@ -9,8 +10,11 @@
 import com.almworks.util.threads.Bottleneck;
 import org.almworks.util.*;
 import org.apache.commons.httpclient.Cookie;
+import org.jetbrains.annotations.*;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class StoreBasedConnectionStateStorage implements ConnectorStateStorage {
   private final String myStoreId;
@@ -24,6 +28,12 @@ public class StoreBasedConnectionStateStorage implements ConnectorStateStorage {
   private final PersistableMultiMap<String, Cookie> myCookiePersister =
     PersistableMultiMap.create(new PersistableString(), new PersistableSerializable(Cookie.class));
 
+  /**
+   * Keys of the persistent data records, so that they can be cleared; the store cannot list them
+   */
+  private final Set<String> myDataKeys = Collections15.hashSet();
+  private final PersistableHashSet<String> myDataKeysPersister = PersistableHashSet.create(new PersistableString());
+
   private final Map<? extends TypedKey, ?> myRuntimeMap = Collections15.hashMap();
 
   private boolean myLoaded;
@@ -85,6 +95,24 @@ public synchronized void removePersistent(String key) {
     }
   }
 
+  public void setPersistentData(String key, @Nullable byte[] data) {
+    synchronized (this) {
+      ensureLoaded();
+      if (data == null ? myDataKeys.remove(key) : myDataKeys.add(key))
+        myStoreBottleneck.request();
+    }
+    StoreAccess access = myStore.access(getDataId(key));
+    if (data == null)
+      access.clear();
+    else
+      access.store(data);
+  }
+
+  @Nullable
+  public byte[] getPersistentData(String key) {
+    return myStore.access(getDataId(key)).load();
+  }
+
   public synchronized <T> void setRuntime(TypedKey<T> key, T value) {
     key.putTo(myRuntimeMap, value);
   }
@@ -93,11 +121,18 @@ public synchronized <T> T getRuntime(TypedKey<T> key) {
     return key.getFrom(myRuntimeMap);
   }
 
-  public synchronized void clearPersistent() {
-    myLoaded = true;
-    myMap.clear();
-    myCookies = null;
-    myStoreBottleneck.request();
+  public void clearPersistent() {
+    List<String> dataKeys;
+    synchronized (this) {
+      ensureLoaded();
+      myMap.clear();
+      myCookies = null;
+      dataKeys = Collections15.arrayList(myDataKeys);
+      myDataKeys.clear();
+      myStoreBottleneck.request();
+    }
+    for (String key : dataKeys)
+      myStore.access(getDataId(key)).clear();
   }
 
   private void ensureLoaded() {
@@ -117,6 +152,8 @@ private void ensureLoaded() {
     } else {
       myCookies = myCookiePersister.copy();
     }
+    if (StoreUtils.restorePersistable(myStore, getDataKeysId(), myDataKeysPersister))
+      myDataKeys.addAll(myDataKeysPersister.access());
     myLoaded = true;
   }
 
@@ -132,9 +169,19 @@ private synchronized void store() {
       myCookiePersister.set(myCookies);
       StoreUtils.storePersistable(myStore, cookiesId, myCookiePersister);
     }
+    myDataKeysPersister.set(myDataKeys);
+    StoreUtils.storePersistable(myStore, getDataKeysId(), myDataKeysPersister);
   }
 
   private String getCookiesId() {
     return myStoreId + ".cookies";
   }
+
+  private String getDataKeysId() {
+    return myStoreId + ".datakeys";
+  }
+
+  private String getDataId(String key) {
+    return myStoreId + ".data." + key;
+  }
 }
@@ -0,0 +1,166 @@
+package com.almworks.syncreg;
+
+import org.almworks.util.Collections15;
+import org.jetbrains.annotations.*;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * Immutable index of the cubes of an {@link EquidimensionalSet}. For each axis it keeps bitmaps of the cubes that
+ * have the axis, that include or exclude values on it, and bitmaps of the cubes by each included and excluded value,
+ * so that containment checks are bitmap operations rather than a scan of all cubes.
+ * <p>
+ * Cubes are numbered by their index in the set at the time the index is built.
+ */
+final class CubeIndex {
+  private final int myCubes;
+  private final Map<String, Axis> myAxes = Collections15.hashMap();
+
+  CubeIndex(EquidimensionalSet set) {
+    myCubes = set.getCubeCount();
+    int dimensions = set.getDimensions();
+    for (int cube = 0; cube < myCubes; cube++) {
+      for (int axisIndex = 0; axisIndex < dimensions; axisIndex++) {
+        String attribute = set.getAttribute(cube, axisIndex);
+        Axis axis = myAxes.get(attribute);
+        if (axis == null) {
+          axis = new Axis();
+          myAxes.put(attribute, axis);
+        }
+        axis.add(cube, set.getValues(cube, axisIndex, false), set.getValues(cube, axisIndex, true));
+      }
+    }
+  }
+
+  public boolean isEmpty() {
+    return myCubes == 0;
+  }
+
+  /**
+   * @return cubes with same or more generic constraints than the sample
+   * @see EquidimensionalSet#encompasses
+   */
+  public BitSet findEncompassing(NumberedCube sample) {
+    BitSet r = new BitSet();
+    r.set(0, myCubes);
+    for (Map.Entry<String, Axis> e : myAxes.entrySet()) {
+      Axis axis = e.getValue();
+      int sampleIndex = sample.getAttributeIndex(e.getKey());
+      if (sampleIndex == -1) {
+        // cubes with this axis are more specific than the sample
+        r.andNot(axis.myCubes);
+      } else {
+        long[] included = sample.getIncludedValues(sampleIndex);
+        long[] excluded = sample.getExcludedValues(sampleIndex);
+        if (included != null && included.length > 0) {
+          for (long value : included)
+            andNot(r, axis.myExcludedBy.get(value));
+          // cubes that include values on this axis must include all of the sample's
+          BitSet notIncludingAll = (BitSet) axis.myIncluding.clone();
+          notIncludingAll.andNot(intersection(axis.myIncluding, axis.myIncludedBy, included));
+          r.andNot(notIncludingAll);
+        } else if (excluded != null && excluded.length > 0) {
+          // cannot tell if a set defined by inclusion contains a set defined by exclusion
+          r.andNot(axis.myIncluding);
+          // cubes may only exclude what the sample excludes
+          for (Map.Entry<Long, BitSet> x : axis.myExcludedBy.entrySet())
+            if (Arrays.binarySearch(excluded, x.getKey()) < 0)
+              r.andNot(x.getValue());
+        }
+      }
+      if (r.isEmpty())
+        break;
+    }
+    return r;
+  }
+
+  /**
+   * @return cubes with same or more specific constraints than the sample
+   * @see EquidimensionalSet#removeEncompassedBy
+   */
+  public BitSet findEncompassedBy(NumberedCube sample) {
+    BitSet r = new BitSet();
+    r.set(0, myCubes);
+    String[] attributes = sample.getAttributes();
+    for (int sampleIndex = 0; sampleIndex < attributes.length && !r.isEmpty(); sampleIndex++) {
+      Axis axis = myAxes.get(attributes[sampleIndex]);
+      if (axis == null)
+        return new BitSet();
+      r.and(axis.myCubes);
+      BitSet excludingOnly = (BitSet) axis.myExcluding.clone();
+      excludingOnly.andNot(axis.myIncluding);
+      long[] included = sample.getIncludedValues(sampleIndex);
+      long[] excluded = sample.getExcludedValues(sampleIndex);
+      if (excluded != null && excluded.length > 0) {
+        for (long value : excluded)
+          andNot(r, axis.myIncludedBy.get(value));
+        // cubes defined by exclusion must exclude all of the sample's
+        BitSet notExcludingAll = (BitSet) excludingOnly.clone();
+        notExcludingAll.andNot(intersection(excludingOnly, axis.myExcludedBy, excluded));
+        r.andNot(notExcludingAll);
+      }
+      if (included != null && included.length > 0) {
+        // cubes may only include what the sample includes
+        for (Map.Entry<Long, BitSet> x : axis.myIncludedBy.entrySet())
+          if (Arrays.binarySearch(included, x.getKey()) < 0)
+            r.andNot(x.getValue());
+        r.andNot(excludingOnly);
+      }
+    }
+    return r;
+  }
+
+  private static void andNot(BitSet target, @Nullable BitSet set) {
+    if (set != null)
+      target.andNot(set);
+  }
+
+  /**
+   * @return those of the cubes that are in the bitmaps of all the values
+   */
+  private static BitSet intersection(BitSet cubes, Map<Long, BitSet> byValue, long[] values) {
+    BitSet r = (BitSet) cubes.clone();
+    for (int i = 0; i < values.length && !r.isEmpty(); i++) {
+      BitSet set = byValue.get(values[i]);
+      if (set == null)
+        r.clear();
+      else
+        r.and(set);
+    }
+    return r;
+  }
+
+
+  private static final class Axis {
+    private final BitSet myCubes = new BitSet();
+    private final BitSet myIncluding = new BitSet();
+    private final BitSet myExcluding = new BitSet();
+    private final Map<Long, BitSet> myIncludedBy = Collections15.hashMap();
+    private final Map<Long, BitSet> myExcludedBy = Collections15.hashMap();
+
+    private void add(int cube, @Nullable long[] included, @Nullable long[] excluded) {
+      myCubes.set(cube);
+      if (included != null) {
+        myIncluding.set(cube);
+        addValues(cube, myIncludedBy, included);
+      }
+      if (excluded != null) {
+        myExcluding.set(cube);
+        addValues(cube, myExcludedBy, excluded);
+      }
+    }
+
+    private static void addValues(int cube, Map<Long, BitSet> byValue, long[] values) {
+      for (long value : values) {
+        BitSet set = byValue.get(value);
+        if (set == null) {
+          set = new BitSet();
+          byValue.put(value, set);
+        }
+        set.set(cube);
+      }
+    }
+  }
+}
@@ -2,10 +2,12 @@
 
 import com.almworks.util.io.persist.FormatException;
 import org.almworks.util.*;
+import org.jetbrains.annotations.*;
 import util.external.CompactChar;
 import util.external.CompactInt;
 
 import java.io.*;
+import java.util.BitSet;
 
 final class EquidimensionalSet {
   private static final int MAX_CUBES = 10000;
@@ -51,6 +53,11 @@ final class EquidimensionalSet {
    */
   private long[] myValues;
 
+  /**
+   * index of the cubes, built on demand and dropped on change
+   */
+  @Nullable
+  private CubeIndex myIndex;
 
   public EquidimensionalSet(int dimensions) {
     myDimensions = dimensions;
@@ -58,6 +65,7 @@ public EquidimensionalSet(int dimensions) {
 
   public void addCube(NumberedCube numberedCube) {
     // todo find adjacent hypercubes
+    myIndex = null;
     int cubeIndex = myCubes++;
     String[] attributes = numberedCube.getAttributes();
     assert attributes.length == myDimensions : numberedCube;
@@ -127,161 +135,74 @@ public void clear() {
     myValues = Const.EMPTY_LONGS;
     myValuesCount = 0;
     myValuesIndex = Const.EMPTY_INTS;
+    myIndex = null;
   }
 
   /**
    * @return true if this set contains a hypercube with same or more generic constraints
    */
   public boolean encompasses(NumberedCube cube) {
-    for (int i = 0; i < myCubes; i++) {
-      if (encompasses(i, cube))
-        return true;
-    }
-    return false;
+    return !getIndex().findEncompassing(cube).isEmpty();
   }
 
+  /**
+   * Removes hypercubes with same or more specific constraints
+   */
   public void removeEncompassedBy(NumberedCube cube) {
-    int i = 0;
-    while (i < myCubes) {
-      if (encompassedBy(i, cube)) {
-        remove(i);
-      } else {
-        i++;
-      }
-    }
+    remove(getIndex().findEncompassedBy(cube));
   }
 
   /**
-   * @return true if the argument encompasses the contained sample (index cubeIndex)
-   *         it happens only if:
-   *         a) each dimension in sample is represented in my sample
-   *         b) each dimension in sample encompasses corresponding dimension in my sample
+   * Removes hypercubes with same or more generic constraints
    */
-  private boolean encompassedBy(int cubeIndex, NumberedCube sample) {
-    String[] attributes = sample.getAttributes();
-    for (int sampleIndex = 0; sampleIndex < attributes.length; sampleIndex++) {
-      String attributeID = attributes[sampleIndex];
-      int attributeIndex = findAttribute(cubeIndex, attributeID);
-      if (attributeIndex == -1) {
-        // my cube does not have attribute specified by sample cube
-        return false;
-      }
-      long[] cubeIncluded = sample.getIncludedValues(sampleIndex);
-      long[] cubeExcluded = sample.getExcludedValues(sampleIndex);
-      int offset4 = (cubeIndex * myDimensions + attributeIndex) * 4;
-      int includesStart = myValuesIndex[offset4];
-      int includesCount = myValuesIndex[offset4 + 1];
-      int excludesStart = myValuesIndex[offset4 + 2];
-      int excludesCount = myValuesIndex[offset4 + 3];
-      boolean dimensionEncompasses = dimensionEncompasses(cubeIncluded, 0,
-        cubeIncluded == null ? 0 : cubeIncluded.length, cubeExcluded, 0, cubeExcluded == null ? 0 : cubeExcluded.length,
-        myValues, includesStart, includesCount, myValues, excludesStart, excludesCount);
-      if (!dimensionEncompasses) {
-        // sample dimension is less generic
-        return false;
-      }
-    }
-    return true;
-  }
-
-  private int findAttribute(int cubeIndex, String attributeID) {
-    int offset = cubeIndex * myDimensions;
-    for (int i = 0; i < myDimensions; i++) {
-      if (Util.equals(myAttributes[offset + i], attributeID))
-        return i;
-    }
-    return -1;
+  public void removeEncompassing(NumberedCube cube) {
+    remove(getIndex().findEncompassing(cube));
   }
 
   /**
-   * Returns true if hyperplane called "super" encompasses hyperplane called "sub".
-   * superIncluded, superIncludedStart, superIncludedCount - define the array that contains "included" values in super
-   * superExcludedXXX, subIncludedXXX, subExcludedXXX - the same
+   * @return index of the current cubes; it is not affected by later changes of the set
    */
-  private boolean dimensionEncompasses(long[] superIncluded, int superIncludedStart, int superIncludedCount,
-    long[] superExcluded, int superExcludedStart, int superExcludedCount, long[] subIncluded, int subIncludedStart,
-    int subIncludedCount, long[] subExcluded, int subExcludedStart, int subExcludedCount)
-  {
-    if (superExcludedStart >= 0 && superExcluded != null) {
-      if (subIncludedStart >= 0 && subIncluded != null) {
-        if (ArrayUtil.hasIntersection(subIncluded, subIncludedStart, subIncludedCount, superExcluded,
-          superExcludedStart, superExcludedCount))
-        {
-          // sample includes some values for attribute that are specifically excluded in my cube
-          return false;
-        }
-      } else {
-        if (subExcludedStart >= 0 && subExcluded != null) {
-          if (!ArrayUtil.containsAll(subExcluded, subExcludedStart, subExcludedCount, superExcluded,
-            superExcludedStart, superExcludedCount))
-          {
-            // sample does not exclude all attributes that are excluded in my cube
-            return false;
-          }
-        }
-      }
+  public CubeIndex getIndex() {
+    CubeIndex index = myIndex;
+    if (index == null) {
+      index = new CubeIndex(this);
+      myIndex = index;
     }
+    return index;
+  }
 
-    if (superIncludedStart >= 0 && superIncluded != null) {
-      if (subIncludedStart >= 0 && subIncluded != null) {
-        if (!ArrayUtil.containsAll(superIncluded, superIncludedStart, superIncludedCount, subIncluded,
-          subIncludedStart, subIncludedCount))
-        {
-          // sample has some other allowed attribute value than the values in my cube
-          return false;
-        }
-      } else if (subExcludedStart >= 0 && subExcluded != null) {
-        // cannot tell if a set defined by inclusion contains a set defined by exclusion without having the full set
-        return false;
-      }
-    }
-    return true;
+  int getDimensions() {
+    return myDimensions;
   }
 
-  public void removeEncompassing(NumberedCube numberedCube) {
-    int i = 0;
-    while (i < myCubes) {
-      if (encompasses(i, numberedCube)) {
-        remove(i);
-      } else {
-        i++;
-      }
-    }
+  int getCubeCount() {
+    return myCubes;
+  }
+
+  String getAttribute(int cubeIndex, int attributeIndex) {
+    return myAttributes[cubeIndex * myDimensions + attributeIndex];
   }
 
   /**
-   * @return true if the contained cube (index cubeIndex) encompasses the argument
-   *         it happens only if:
-   *         a) each dimension in my cube is represented in sample
-   *         b) each dimension in my cube encompasses corresponding dimension in sample
+   * @return sorted included or excluded values of the cube's attribute, null if there are none
    */
-  private boolean encompasses(int cubeIndex, NumberedCube sample) {
-    for (int attributeIndex = 0; attributeIndex < myDimensions; attributeIndex++) {
-      int offset = cubeIndex * myDimensions + attributeIndex;
-      String attributeID = myAttributes[offset];
-      int sampleIndex = sample.getAttributeIndex(attributeID);
-      if (sampleIndex == -1) {
-        // sample does not have this attribute; thus we are more specific than the sample
-        return false;
-      }
-      long[] sampleIncluded = sample.getIncludedValues(sampleIndex);
-      long[] sampleExcluded = sample.getExcludedValues(sampleIndex);
-      int offset4 = offset * 4;
-      int includesStart = myValuesIndex[offset4];
-      int includesCount = myValuesIndex[offset4 + 1];
-      int excludesStart = myValuesIndex[offset4 + 2];
-      int excludesCount = myValuesIndex[offset4 + 3];
-
-      boolean dimensionEncompasses = dimensionEncompasses(myValues, includesStart, includesCount, myValues,
-        excludesStart, excludesCount, sampleIncluded, 0, sampleIncluded == null ? 0 : sampleIncluded.length,
-        sampleExcluded, 0, sampleExcluded == null ? 0 : sampleExcluded.length);
-
-      if (!dimensionEncompasses) {
-        // this dimension is less generic
-        return false;
-      }
+  @Nullable
+  long[] getValues(int cubeIndex, int attributeIndex, boolean excluded) {
+    int offset = (cubeIndex * myDimensions + attributeIndex) * 4 + (excluded ? 2 : 0);
+    int start = myValuesIndex[offset];
+    int count = myValuesIndex[offset + 1];
+    if (start < 0 || count <= 0)
+      return null;
+    long[] r = new long[count];
+    System.arraycopy(myValues, start, r, 0, count);
+    return r;
+  }
+
+  private void remove(BitSet cubes) {
+    // from the end, so that indexes of the cubes to be removed are not shifted
+    for (int i = cubes.previousSetBit(myCubes - 1); i >= 0; i = cubes.previousSetBit(i - 1)) {
+      remove(i);
     }
-    return true;
   }
 
   private void remove(int cubeIndex) {
@@ -296,6 +217,7 @@ private void remove(int cubeIndex) {
     System.arraycopy(myValuesIndex, (offset + myDimensions) * 4, myValuesIndex, offset * 4, moveCount * 4);
     System.arraycopy(myAttributes, offset + myDimensions, myAttributes, offset, moveCount);
     myCubes--;
+    myIndex = null;
   }
 
   private void removeValues(int ii) {
@@ -342,6 +264,7 @@ public void load(DataInput in) throws IOException {
     myAttributes = attributes;
     myValuesIndex = index;
     myValues = values;
+    myIndex = null;
   }
 
   private long[] newLongArray(int valuesCount) {
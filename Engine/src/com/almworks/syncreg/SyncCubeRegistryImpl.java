@@ -19,6 +19,10 @@ class SyncCubeRegistryImpl implements SyncCubeRegistry {
   private final EquidimensionalSet[] mySets = new EquidimensionalSet[MAX_DIMENSIONS];
   private boolean myAllSynchronized = false;
   private final Object myLock = new Object();
+  /**
+   * State for {@link #isSynced}, replaced under myLock after each change
+   */
+  private volatile Snapshot mySnapshot;
   private final SyncRegistry.Listener myListener;
 
   private boolean myDump = Env.getBoolean("cube.dump");
@@ -34,25 +38,36 @@ public SyncCubeRegistryImpl(SyncRegistry.Listener listener) {
     myListener = listener;
     for (int i = 0; i < mySets.length; i++)
       mySets[i] = new EquidimensionalSet(i + 1);
+    updateSnapshot();
   }
 
   @ThreadSafe
   public boolean isSynced(@Nullable Hypercube<DBAttribute<?>, Long> cube) {
     if (cube == null) return false;
-    synchronized (myLock) {
-      if (myAllSynchronized)
-        return true;
-      int axes = cube.getAxisCount();
-      if (axes == 0)
-        return false;
-      NumberedCube numberedCube = SyncCubeUtils.convert(cube);
-      for (int i = 1; i <= axes && i <= MAX_DIMENSIONS; i++) {
-        EquidimensionalSet set = mySets[i - 1];
-        if (set.encompasses(numberedCube))
-          return true;
-      }
+    Snapshot snapshot = mySnapshot;
+    if (snapshot.myAllSynchronized)
+      return true;
+    int axes = cube.getAxisCount();
+    if (axes == 0)
       return false;
+    NumberedCube numberedCube = null;
+    for (int i = 1; i <= axes && i <= MAX_DIMENSIONS; i++) {
+      CubeIndex index = snapshot.myIndexes[i - 1];
+      if (index.isEmpty())
+        continue;
+      if (numberedCube == null)
+        numberedCube = SyncCubeUtils.convert(cube);
+      if (!index.findEncompassing(numberedCube).isEmpty())
+        return true;
     }
+    return false;
+  }
+
+  private void updateSnapshot() {
+    CubeIndex[] indexes = new CubeIndex[MAX_DIMENSIONS];
+    for (int i = 0; i < MAX_DIMENSIONS; i++)
+      indexes[i] = mySets[i].getIndex();
+    mySnapshot = new Snapshot(myAllSynchronized, indexes);
   }
 
   public void setSynced(@NotNull Hypercube<DBAttribute<?>, Long> cube) {
@@ -66,6 +81,7 @@ public void setSynced(@NotNull Hypercube<DBAttribute<?>, Long> cube) {
         for (EquidimensionalSet set : mySets) {
           set.clear();
         }
+        updateSnapshot();
       }
       if (!already)
         myListener.onSyncRegistryChanged(true, false);
@@ -88,6 +104,7 @@ public void setSynced(@NotNull Hypercube<DBAttribute<?>, Long> cube) {
         }
         if (axisCount <= MAX_DIMENSIONS)
           mySets[axisCount - 1].addCube(numberedCube);
+        updateSnapshot();
       }
       dump();
       myListener.onSyncRegistryChanged(true, false);
@@ -114,6 +131,7 @@ public void setUnsynced(@NotNull Hypercube<DBAttribute<?>, Long> cube) {
           }
         }
       }
+      updateSnapshot();
     }
     dump();
     myListener.onSyncRegistryChanged(false, true);
@@ -202,6 +220,7 @@ void load(DataInput in) throws IOException {
     }
     myAllSynchronized = allSynchronized;
     System.arraycopy(sets, 0, mySets, 0, Math.min(mySets.length, sets.length));
+    updateSnapshot();
     dump();
   }
 
@@ -213,4 +232,15 @@ void save(DataOutput out) throws IOException {
       set.save(out);
     }
   }
+
+
+  private static final class Snapshot {
+    private final boolean myAllSynchronized;
+    private final CubeIndex[] myIndexes;
+
+    public Snapshot(boolean allSynchronized, CubeIndex[] indexes) {
+      myAllSynchronized = allSynchronized;
+      myIndexes = indexes;
+    }
+  }
 }
@@ -370,6 +370,10 @@ public boolean matchAllWords(long item, char[][] charWords, String[] stringWords
     throw new UnsupportedOperationException();
   }
 
+  public DBTextIndex getTextIndex() {
+    return null;
+  }
+
   @NotNull
   @Override
   public BasicScalarModel<AutoSyncMode> getAutoSyncMode() {
@@ -52,6 +52,20 @@ public void testRemoval() {
     checkRemoveEncompassing(new String[] {"1 +1; 2 +1", "1 +2; 2 +2,3,4", "1 +1; 2 +2"}, "1 +2; 2 +2,3", new String[] {"1 +1; 2 +1", "1 +1; 2 +2"});
   }
 
+  public void testIndexIsSnapshot() {
+    EquidimensionalSet set = createSet(new String[] {"1 +1; 2 +1", "1 +2; 2 -1", "1 -3; 2 +1,2"});
+    CubeIndex index = set.getIndex();
+    assertSame(index, set.getIndex());
+    assertEquals(2, index.findEncompassing(cube("1 +1; 2 +1")).cardinality());
+    assertEquals(2, index.findEncompassedBy(cube("1 +1,2")).cardinality());
+
+    set.removeEncompassing(cube("1 +1; 2 +1"));
+    assertNotSame(index, set.getIndex());
+    assertEquals(2, index.findEncompassing(cube("1 +1; 2 +1")).cardinality());
+    assertTrue(set.getIndex().findEncompassing(cube("1 +1; 2 +1")).isEmpty());
+    assertEquals(1, set.getIndex().findEncompassing(cube("1 +2; 2 +3")).cardinality());
+  }
+
   private void checkRemoveEncompassing(String[] initial, String removed, String[] mustRemain) {
     EquidimensionalSet set = createSet(initial);
     set.removeEncompassing(cube(removed));
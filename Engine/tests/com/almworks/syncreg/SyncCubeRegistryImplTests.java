@@ -6,6 +6,8 @@
 import org.almworks.util.Collections15;
 
 import java.io.*;
+import java.util.List;
+import java.util.Random;
 import java.util.SortedSet;
 
 public class SyncCubeRegistryImplTests extends BaseTestCase {
@@ -64,6 +66,38 @@ public void testUnion() {
     //assertTrue(myRegistry.isSynced(cube("1 +1,2")));
   }
 
+  public void testManyCubes() {
+    Random random = new Random(239);
+    List<String> cubes = Collections15.arrayList();
+    for (int i = 0; i < 3000; i++) {
+      StringBuilder cube = new StringBuilder();
+      int axes = 1 + random.nextInt(3);
+      int attribute = random.nextInt(4);
+      for (int j = 0; j < axes; j++) {
+        if (j > 0)
+          cube.append("; ");
+        attribute += 1 + random.nextInt(3);
+        cube.append(attribute).append(" +").append(random.nextInt(50));
+        for (int k = random.nextInt(4); k > 0; k--)
+          cube.append(',').append(50 + random.nextInt(50));
+      }
+      cubes.add(cube.toString());
+    }
+    for (String cube : cubes)
+      myRegistry.setSynced(cube(cube));
+    for (int pass = 0; pass < 5; pass++) {
+      for (String cube : cubes) {
+        // a registered cube may be replaced only with a more generic one
+        assertTrue(cube, myRegistry.isSynced(cube(cube)));
+      }
+    }
+    assertFalse(myRegistry.isSynced(cube("1 +1000")));
+    assertFalse(myRegistry.isSynced(cube("100 +1")));
+
+    myRegistry.setUnsynced(cube(cubes.get(0)));
+    assertFalse(myRegistry.isSynced(cube(cubes.get(0))));
+  }
+
   public void testPersistance() throws IOException {
     checkPersistence("");
     checkPersistence("1 +1");
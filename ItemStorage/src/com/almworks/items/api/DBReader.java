@@ -5,11 +5,33 @@
 import com.almworks.util.bool.BoolExpr;
 import org.jetbrains.annotations.*;
 
+import java.util.Collection;
 import java.util.Map;
 
 public interface DBReader {
   <T> T getValue(long item, DBAttribute<T> attribute);
 
+  /**
+   * Loads values of the attributes for all the items at once. Each attribute table is read with a single query
+   * over the whole set of items, which is much cheaper than calling {@link #getValue} for every pair.
+   *
+   * @param items items to load, not necessarily sorted or unique
+   */
+  @NotNull
+  DBValueColumns getValues(LongList items, Collection<? extends DBAttribute<?>> attributes);
+
+  /**
+   * Loads values like {@link #getValues} and keeps them until the end of the transaction (or until the next call),
+   * so that subsequent {@link #getValue} calls for these items are served from memory.
+   * <p>
+   * Attributes that are requested for the prefetched items but were not among the prefetched are remembered and
+   * get prefetched by the following calls within the same transaction. So a caller that reads items page by page
+   * needs not know exactly which attributes are going to be read.
+   * <p>
+   * Prefetch is a hint: implementations may ignore it.
+   */
+  void prefetchValues(LongList items, Collection<? extends DBAttribute<?>> attributes);
+
   DBQuery query(BoolExpr<DP> expr);
 
   long getTransactionIcn();
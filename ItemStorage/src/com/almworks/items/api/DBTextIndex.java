@@ -0,0 +1,130 @@
+package com.almworks.items.api;
+
+import com.almworks.integers.*;
+import com.almworks.integers.util.LongSetBuilder;
+import com.almworks.items.dp.DPIntersects;
+import com.almworks.util.bool.BoolExpr;
+import org.almworks.util.Collections15;
+import org.almworks.util.Util;
+import org.jetbrains.annotations.*;
+
+import java.util.*;
+
+/**
+ * Trigram index over the texts of items.
+ * <p>
+ * For every indexed item the index keeps the set of case-insensitive trigrams (three consecutive characters) found in
+ * the texts that the subclass {@link #collectTexts collects} for the item. The set is stored in a set attribute,
+ * so the (gram, item) pairs form a postings table that is maintained incrementally as a {@link DBTrigger}: the index
+ * is updated for the items changed since the last transaction seen by the index.
+ * <p>
+ * {@link #candidates} builds a query that intersects postings of the trigrams of the searched words.
+ * The result is a superset of items that contain all the words as substrings (ignoring case), so the
+ * exact matching should be applied to the candidates as a verification.
+ */
+public abstract class DBTextIndex extends DBTrigger {
+  /**
+   * Maximum number of trigrams used in a query, each trigram adds a join.
+   */
+  private static final int MAX_QUERY_GRAMS = 16;
+  private static final int GRAM_LENGTH = 3;
+  /**
+   * Version of the stored grams, to be increased when the way they are collected changes, so the index is rebuilt
+   */
+  private static final int FORMAT_VERSION = 1;
+
+  private final DBAttribute<Set<Long>> myGrams;
+
+  protected DBTextIndex(String id, BoolExpr<DP> indexedItems) {
+    super(id, indexedItems);
+    myGrams = DBAttribute.Set(id + ":grams", "Text Index Grams", Long.class);
+  }
+
+  /**
+   * Adds all searchable texts of the item to the target. Called in the write transaction that updates the index.
+   */
+  protected abstract void collectTexts(long item, DBReader reader, Collection<String> target);
+
+  /**
+   * Builds a query for the items that may contain all the words. The index reflects committed transactions, so
+   * changes made by the current write transaction are not seen by the query.
+   * @return the query, or null if the index cannot narrow the search: either the index has not been built yet or
+   * all words are shorter than three characters
+   */
+  @Nullable
+  public BoolExpr<DP> candidates(DBReader reader, String[] words) {
+    if (!isBuilt(reader)) return null;
+    LongSetBuilder grams = new LongSetBuilder();
+    for (String word : words) {
+      if (word != null) collectGrams(word, grams);
+    }
+    LongList sorted = grams.toSortedCollection();
+    if (sorted.isEmpty()) return null;
+    List<BoolExpr<DP>> terms = Collections15.arrayList();
+    int step = Math.max(1, (sorted.size() + MAX_QUERY_GRAMS - 1) / MAX_QUERY_GRAMS);
+    for (int i = 0; i < sorted.size(); i += step) {
+      terms.add(DPIntersects.create(myGrams, Collections.singleton(sorted.get(i))));
+    }
+    return BoolExpr.and(terms);
+  }
+
+  private boolean isBuilt(DBReader reader) {
+    long item = reader.findMaterialized(this);
+    return item > 0 && TRIGGER_UPDATE_ICN.getValue(item, reader) != null &&
+      Util.NN(TRIGGER_VERSION.getValue(item, reader), 0) == getVersion();
+  }
+
+  @Override
+  public boolean isIncremental() {
+    return true;
+  }
+
+  /**
+   * Combines the format of the grams with the {@link #getTextsVersion version} of the collected texts
+   */
+  @Override
+  public final int getVersion() {
+    return FORMAT_VERSION * 1000 + getTextsVersion();
+  }
+
+  /**
+   * Version of the texts that {@link #collectTexts} collects, to be increased when they change, so the index is
+   * rebuilt. Should be less than 1000.
+   */
+  protected int getTextsVersion() {
+    return 0;
+  }
+
+  @Override
+  public void apply(LongList itemsSorted, DBWriter writer) {
+    LongList indexed = writer.query(getExpr()).filterItemsSorted(itemsSorted);
+    List<String> texts = Collections15.arrayList();
+    LongSetBuilder grams = new LongSetBuilder();
+    for (LongIterator ii = itemsSorted.iterator(); ii.hasNext();) {
+      long item = ii.next();
+      if (indexed.binarySearch(item) < 0) {
+        if (writer.getValue(item, myGrams) != null) writer.setValue(item, myGrams, null);
+        continue;
+      }
+      texts.clear();
+      collectTexts(item, writer, texts);
+      for (String text : texts) {
+        if (text != null) collectGrams(text, grams);
+      }
+      LongList itemGrams = grams.toSortedCollection();
+      writer.setValue(item, myGrams, itemGrams.isEmpty() ? null : Collections15.hashSet(itemGrams.toList()));
+      grams.clear(true);
+    }
+  }
+
+  static void collectGrams(String text, LongCollector target) {
+    int length = text.length();
+    if (length < GRAM_LENGTH) return;
+    long gram = 0;
+    for (int i = 0; i < length; i++) {
+      char c = Character.toLowerCase(text.charAt(i));
+      gram = ((gram << 16) | c) & 0xFFFFFFFFFFFFL;
+      if (i >= GRAM_LENGTH - 1) target.add(gram);
+    }
+  }
+}
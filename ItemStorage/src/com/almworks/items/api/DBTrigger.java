@@ -8,6 +8,7 @@ public abstract class DBTrigger extends DBIdentifiedObject {
   private final static DBNamespace NS = Database.NS.subNs("trigger");
   public static final DBAttribute<Long> TRIGGER_UPDATE_ICN = NS.longAttr("icn", "Trigger Update ICN", false);
   public static final DBAttribute<LongList> LAST_RESULT_SET = NS.longList("resultSet", "Last Result Set");
+  public static final DBAttribute<Integer> TRIGGER_VERSION = NS.integer("version", "Trigger Version", false);
 
   private final BoolExpr<DP> myExpr;
   
@@ -21,5 +22,26 @@ public BoolExpr<DP> getExpr() {
     return myExpr;
   }
 
+  /**
+   * Incremental trigger keeps its results in the database between sessions. When such trigger is registered again,
+   * it is not re-applied to all matching items: only the items changed since its last application are processed,
+   * unless the {@link #getVersion version} of the trigger has changed.
+   * <p>
+   * The set of matching items is not kept for an incremental trigger, so a transaction costs it only as much as the
+   * number of changed items. Its {@link #apply} gets all items changed since the last application, whether they match
+   * the expression or not, and has to check them itself.
+   */
+  public boolean isIncremental() {
+    return false;
+  }
+
+  /**
+   * Version of the results of an incremental trigger. When the results in the database were built by another version,
+   * the trigger is re-applied to all matching items.
+   */
+  public int getVersion() {
+    return 0;
+  }
+
   public abstract void apply(LongList itemsSorted, DBWriter writer);
 }
@@ -0,0 +1,44 @@
+package com.almworks.items.api;
+
+import com.almworks.integers.LongList;
+import org.jetbrains.annotations.*;
+
+import java.util.Collection;
+
+/**
+ * Values of several attributes for a set of items, loaded in bulk with {@link DBReader#getValues}.
+ * The values are stored column-wise: for each attribute there is one column with the values for all items,
+ * addressed by the index of the item in {@link #getItemsSorted()}.
+ * <p>
+ * The values are a snapshot of the transaction that loaded them and are not updated afterwards.
+ */
+public interface DBValueColumns {
+  /**
+   * @return unique and sorted list of the loaded items
+   */
+  @NotNull
+  LongList getItemsSorted();
+
+  @NotNull
+  Collection<DBAttribute<?>> getAttributes();
+
+  boolean hasAttribute(DBAttribute<?> attribute);
+
+  /**
+   * @return index of the item in {@link #getItemsSorted()}, or negative value if the item was not loaded
+   */
+  int indexOf(long item);
+
+  /**
+   * @param index index of the item in {@link #getItemsSorted()}
+   * @return the value, same as {@link DBReader#getValue} would return in the loading transaction
+   */
+  @Nullable
+  <T> T getValueAt(int index, DBAttribute<T> attribute);
+
+  /**
+   * @return the value, or null if either the item or the attribute were not loaded
+   */
+  @Nullable
+  <T> T getValue(long item, DBAttribute<T> attribute);
+}
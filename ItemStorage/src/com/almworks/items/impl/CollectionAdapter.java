@@ -1,6 +1,5 @@
 package com.almworks.items.impl;
 
-import com.almworks.integers.LongIterator;
 import com.almworks.integers.LongList;
 import com.almworks.items.impl.dbadapter.DBColumn;
 import com.almworks.items.impl.dbadapter.DBTable;
@@ -36,23 +35,15 @@ public void writeValueToStream(DataOutput out, Object userValue, TransactionCont
 
   @Override
   public Object arrayGet(Object storage, int index) {
-    Object scalarArray = ObjectArrayAccessor.INSTANCE.getObjectValue(storage, index);
-    if (scalarArray == null)
-      return emptyCollection();
+    Collection values = (Collection) ObjectArrayAccessor.INSTANCE.getObjectValue(storage, index);
+    if (values == null)
+      return null;
+    // the caller is free to modify the returned collection
     Collection target = createCollection();
-    NullableArrayStorageAccessor accessor = myScalarAdapter.getNullableAccessor();
-    int i = 0;
-    while (true) {
-      Object value = accessor.getObjectValue(scalarArray, i);
-      if (value == null)
-        break;
-      target.add(value);
-    }
+    target.addAll(values);
     return target;
   }
 
-  protected abstract Collection emptyCollection();
-
   protected abstract Collection createCollection();
 
 
@@ -126,36 +117,28 @@ public Object arrayLoad(LongList itemsSorted, @Nullable SQLiteLongArray itemsArr
       SQLiteStatement select = context.prepare(parts);
       try {
         Object result = null;
-        LongIterator ii = itemsSorted.iterator();
-        long nextItem = ii.hasNext() ? -1 : ii.next();
         int itemIndex = 0;
-        select.step();
-        while (select.hasRow()) {
+        int itemCount = itemsSorted.size();
+        boolean hasRow = select.step();
+        while (hasRow) {
           long item = select.columnLong(0);
-          while (nextItem < item && nextItem >= 0) {
-            result = ObjectArrayAccessor.INSTANCE.setNull(result, itemIndex);
-            nextItem = ii.hasNext() ? -1 : ii.next();
+          // items without values are left null
+          while (itemIndex < itemCount && itemsSorted.get(itemIndex) < item) {
             itemIndex++;
           }
-          if (nextItem != item) {
-            Log.error("inconsistent result " + nextItem + " " + item);
+          boolean found = itemIndex < itemCount && itemsSorted.get(itemIndex) == item;
+          if (!found) {
+            Log.error(this + ": inconsistent result " + item + " [" + itemIndex + "]");
           }
-          Object value = null;
-          int valueIndex = 0;
+          Collection value = createCollection();
           do {
-            value = myScalarAdapter.loadNullableUserValueIntoArrayStorage(value, valueIndex++, select, 1, context);
-            select.step();
-          } while (select.hasRow() && select.columnLong(0) == item);
-          result = ObjectArrayAccessor.INSTANCE.setObjectValue(result, itemIndex, value);
-          itemIndex++;
-        }
-        while (nextItem >= 0) {
-          result = ObjectArrayAccessor.INSTANCE.setNull(result, itemIndex);
-          nextItem = ii.hasNext() ? -1 : ii.next();
-          itemIndex++;
-        }
-        if (itemIndex != itemsSorted.size()) {
-          Log.error(this + ": inconsistent result [" + itemIndex + "][" + itemsSorted + "]");
+            value.add(myScalarAdapter.loadUserValue(select, 1, context));
+            hasRow = select.step();
+          } while (hasRow && select.columnLong(0) == item);
+          if (found) {
+            result = ObjectArrayAccessor.INSTANCE.setObjectValue(result, itemIndex, value);
+            itemIndex++;
+          }
         }
         return result;
       } finally {
@@ -5,6 +5,7 @@
 import com.almworks.items.dp.*;
 import com.almworks.items.impl.dbadapter.*;
 import com.almworks.items.impl.migrations.DBMigrationProcedure;
+import com.almworks.items.impl.migrations.IndexedAttributeMap;
 import com.almworks.items.impl.migrations.ObfuscatedAttributeMap;
 import com.almworks.items.impl.scalars.*;
 import com.almworks.items.impl.sqlite.SQLUtil;
@@ -108,6 +109,7 @@ public void registerStandardScalarAdapters() {
 
   public void registerStandardMigrations() {
     myMigrations.add(new ObfuscatedAttributeMap());
+    myMigrations.add(new IndexedAttributeMap());
   }
 
   public Collection<DBMigrationProcedure> getMigrations() {
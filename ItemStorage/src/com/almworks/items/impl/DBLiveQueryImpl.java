@@ -3,6 +3,7 @@
 import com.almworks.integers.*;
 import com.almworks.integers.util.LongSetBuilder;
 import com.almworks.items.api.*;
+import com.almworks.items.util.DatabaseUtil;
 import com.almworks.util.LazySubscription;
 import com.almworks.util.bool.BoolExpr;
 import com.almworks.util.bool.Reductions;
@@ -15,6 +16,7 @@
 import org.jetbrains.annotations.*;
 
 import java.util.Map;
+import java.util.Set;
 
 public class DBLiveQueryImpl implements DBLiveQuery {
   private final BoolExpr<DP> myExpr;
@@ -29,6 +31,16 @@ public class DBLiveQueryImpl implements DBLiveQuery {
 
   private long myIcn;
 
+  // confined to the update thread
+  private BoolExpr<DP> myAttributesExpr;
+  private Set<DBAttribute> myAttributes;
+
+  // update timings, protected by myLock
+  private int myUpdates;
+  private int myUnaffectedUpdates;
+  private long myLastUpdateNanos;
+  private long myTotalUpdateNanos;
+
   public DBLiveQueryImpl(BoolExpr<DP> expr) {
     myExpr = expr;
   }
@@ -51,6 +63,16 @@ public long getLastProcessedTransactionIcn() {
   }
 
   public void guidedUpdate(long fromIcn, long toIcn, DBEvent incomingEvent, @Nullable BoolExpr<DP> resolvedExpr, DBReader reader, LiveQueryManager.ResolutionSubscription commonSubscription) {
+    guidedUpdate(fromIcn, toIcn, incomingEvent, resolvedExpr, reader, commonSubscription, null);
+  }
+
+  /**
+   * @param update if not null, the query checks only the items that could have changed its result, using
+   * predicate results shared with other queries
+   */
+  public void guidedUpdate(long fromIcn, long toIcn, DBEvent incomingEvent, @Nullable BoolExpr<DP> resolvedExpr,
+    DBReader reader, LiveQueryManager.ResolutionSubscription commonSubscription, @Nullable LiveQueryUpdate update)
+  {
     assert myIcn == fromIcn : this + " " + myIcn + " " + fromIcn;
     boolean fullUpdate = false;
     if (resolvedExpr == null) {
@@ -70,11 +92,24 @@ public void guidedUpdate(long fromIcn, long toIcn, DBEvent incomingEvent, @Nulla
         fireEvent = DBEvent.create(oldItems, affected, myCachedItemsSorted);
       }
     } else if (!incomingEvent.isEmpty()) {
-      LongList update = incomingEvent.getAddedAndChangedSorted();
-      LongSetBuilder setBuilder = new LongSetBuilder();
-      query.filterItems(update, setBuilder);
-      LongList inView = setBuilder.toSortedCollection();
-      LongList affectedSorted = incomingEvent.getAffectedSorted();
+      LongList inView;
+      LongList affectedSorted;
+      if (update == null) {
+        LongSetBuilder setBuilder = new LongSetBuilder();
+        query.filterItems(incomingEvent.getAddedAndChangedSorted(), setBuilder);
+        inView = setBuilder.toSortedCollection();
+        affectedSorted = incomingEvent.getAffectedSorted();
+      } else {
+        boolean affected = update.isAffected(getAffectingAttributes(resolvedExpr));
+        SharedItemFilter filter = update.getFilter(affected);
+        inView = filter.filter(resolvedExpr);
+        affectedSorted = affected ? incomingEvent.getAffectedSorted() : filter.getItemsSorted();
+        if (!affected) {
+          synchronized (myLock) {
+            myUnaffectedUpdates++;
+          }
+        }
+      }
       synchronized (myLock) {
         fireEvent = DBEvent.createAndUpdateCurrent(myCachedItemsSorted, affectedSorted, inView);
         myIcn = toIcn;
@@ -105,6 +140,34 @@ public void independentUpdate(DBReader reader, LiveQueryManager.ResolutionSubscr
     }
   }
 
+  @Nullable
+  private Set<DBAttribute> getAffectingAttributes(BoolExpr<DP> resolvedExpr) {
+    if (!resolvedExpr.equals(myAttributesExpr)) {
+      myAttributes = DatabaseUtil.collectAffectingAttributes(resolvedExpr);
+      myAttributesExpr = resolvedExpr;
+    }
+    return myAttributes;
+  }
+
+  void updateDone(long nanos) {
+    synchronized (myLock) {
+      myUpdates++;
+      myLastUpdateNanos = nanos;
+      myTotalUpdateNanos += nanos;
+    }
+  }
+
+  /**
+   * @return update statistics: number of updates, number of updates that checked only created items, duration of
+   * the last update and total duration of updates in milliseconds
+   */
+  public String getUpdateStatistics() {
+    synchronized (myLock) {
+      return myUpdates + " updates, " + myUnaffectedUpdates + " unaffected, last " + myLastUpdateNanos / 1000000 +
+        "ms, total " + myTotalUpdateNanos / 1000000 + "ms";
+    }
+  }
+
   @NotNull
   private BoolExpr<DP> resolve(@NotNull BoolExpr<DP> expr, DBReader reader, LiveQueryManager.ResolutionSubscription subscription) {
     DP.ResolutionSubscription newSubscription = subscription.createIntersection(myCommonListenersLife.lifespan());
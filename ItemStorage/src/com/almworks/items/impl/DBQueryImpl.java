@@ -141,7 +141,7 @@ public <T> long getItemByKey(DBAttribute<T> attribute, T value) {
 
   private ExtractionProcessor extractor() {
     // todo call once?
-    return ExtractionProcessor.create(myFilter, context());
+    return ExtractionProcessor.createForQuery(myFilter, context());
   }
 
   private TransactionContext context() {
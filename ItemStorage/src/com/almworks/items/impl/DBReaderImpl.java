@@ -1,5 +1,6 @@
 package com.almworks.items.impl;
 
+import com.almworks.integers.LongArray;
 import com.almworks.integers.LongList;
 import com.almworks.items.api.*;
 import com.almworks.items.impl.sqlite.Schema;
@@ -10,9 +11,9 @@
 import gnu.trove.TLongLongHashMap;
 import org.almworks.util.Log;
 import org.almworks.util.TypedKey;
+import org.jetbrains.annotations.*;
 
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 public class DBReaderImpl implements DBReader {
   private static final TypedKey<TLongLongHashMap> ITEM_ICNS = TypedKey.create("itemIcns");
@@ -31,6 +32,13 @@ public AttributeAdapter getAttributeAdapter(DBAttribute<?> attribute) {
   }
 
   public <T> T getValue(long item, DBAttribute<T> attribute) {
+    PrefetchedValues prefetched = PrefetchedValues.get(getTransactionCache());
+    if (prefetched != null) {
+      int index = prefetched.lookup(item, attribute);
+      if (index >= 0) {
+        return prefetched.getValueAt(index, attribute);
+      }
+    }
     try {
       AttributeAdapter adapter = getAttributeAdapter(attribute);
       return (T) adapter.readValue(item, this);
@@ -42,6 +50,42 @@ public <T> T getValue(long item, DBAttribute<T> attribute) {
     }
   }
 
+  @NotNull
+  @Override
+  public DBValueColumns getValues(LongList items, Collection<? extends DBAttribute<?>> attributes) {
+    try {
+      return ValueColumnsImpl.load(toSortedUnique(items), attributes, this);
+    } catch (SQLiteException e) {
+      throw new DBException(e);
+    }
+  }
+
+  @Override
+  public void prefetchValues(LongList items, Collection<? extends DBAttribute<?>> attributes) {
+    PrefetchedValues prefetched = PrefetchedValues.getOrCreate(getTransactionCache());
+    Set<DBAttribute<?>> requested = prefetched.getRequestedAttributes();
+    for (DBAttribute<?> attribute : attributes) {
+      if (PrefetchedValues.isCacheable(attribute)) {
+        requested.add(attribute);
+      }
+    }
+    // drop the previous page before loading: getValue() must not be served from it while loading
+    prefetched.setValues(null);
+    try {
+      prefetched.setValues(ValueColumnsImpl.load(toSortedUnique(items), requested, this));
+    } catch (SQLiteException e) {
+      throw new DBException(e);
+    }
+  }
+
+  private static LongList toSortedUnique(LongList items) {
+    if (items.isUniqueSorted())
+      return items;
+    LongArray sorted = new LongArray(items);
+    sorted.sortUnique();
+    return sorted;
+  }
+
   public com.almworks.items.api.DBQuery query(BoolExpr<DP> expr) {
     return new DBQueryImpl(this, expr);
   }
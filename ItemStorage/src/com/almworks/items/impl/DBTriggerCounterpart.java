@@ -2,8 +2,7 @@
 
 import com.almworks.integers.*;
 import com.almworks.integers.util.LongSetBuilder;
-import com.almworks.items.api.DBTrigger;
-import com.almworks.items.api.DBWriter;
+import com.almworks.items.api.*;
 import com.almworks.items.impl.sqlite.ExtractionProcessor;
 import com.almworks.items.impl.sqlite.TransactionContext;
 import com.almworks.sqlite4java.SQLiteException;
@@ -18,6 +17,10 @@ public DBTriggerCounterpart(DBTrigger trigger) {
   }
 
   public void initialize(DBWriter writer) {
+    if (myTrigger.isIncremental() && isApplied(writer)) {
+      Log.debug("trigger initialize skipped " + myTrigger);
+      return;
+    }
     long start = System.currentTimeMillis();
     Log.debug("trigger initialize " + myTrigger);
     LongArray resultSet = writer.query(myTrigger.getExpr()).copyItemsSorted();
@@ -27,10 +30,21 @@ public void initialize(DBWriter writer) {
     long applied = System.currentTimeMillis();
     Log.debug("trigger applied " + (applied - loaded) + " total time: " + (applied - start) + "ms " + myTrigger);
     long triggerItem = writer.materialize(myTrigger);
-    writer.setValue(triggerItem, DBTrigger.LAST_RESULT_SET, resultSet);
+    if (myTrigger.isIncremental()) {
+      writer.setValue(triggerItem, DBTrigger.LAST_RESULT_SET, null);
+      writer.setValue(triggerItem, DBTrigger.TRIGGER_VERSION, myTrigger.getVersion());
+    } else {
+      writer.setValue(triggerItem, DBTrigger.LAST_RESULT_SET, resultSet);
+    }
     DBTrigger.TRIGGER_UPDATE_ICN.setValue(writer, triggerItem, writer.getTransactionIcn());
   }
 
+  private boolean isApplied(DBReader reader) {
+    long triggerItem = reader.findMaterialized(myTrigger);
+    return triggerItem > 0 && Util.NN(DBTrigger.TRIGGER_UPDATE_ICN.getValue(triggerItem, reader), 0L) > 0
+      && Util.NN(reader.getValue(triggerItem, DBTrigger.TRIGGER_VERSION), 0) == myTrigger.getVersion();
+  }
+
   public void apply(TransactionContext context) throws SQLiteException {
     DBWriterImpl writer = new DBWriterImpl(context, null);
     long triggerItem = writer.materialize(myTrigger);
@@ -41,7 +55,8 @@ public void apply(TransactionContext context) throws SQLiteException {
     }
     Log.debug("trigger maintenance start " + myTrigger);
     long start = System.currentTimeMillis();
-    LongList set = selectChangedItems(writer, myTrigger, triggerItem, context, lastIcn);
+    LongList set = myTrigger.isIncremental() ? selectIncrementalItems(writer, context, lastIcn) :
+      selectChangedItems(writer, myTrigger, triggerItem, context, lastIcn);
     long loaded = System.currentTimeMillis() - start;
     Log.debug("trigger maintenance " + loaded + "ms/" + set.size() + "count " + myTrigger);
     if (!set.isEmpty()) {
@@ -52,6 +67,18 @@ public void apply(TransactionContext context) throws SQLiteException {
     DBTrigger.TRIGGER_UPDATE_ICN.setValue(writer, triggerItem, context.getIcn());
   }
 
+  /**
+   * @return all items changed since the last application of the incremental trigger, or all matching items if it has
+   * not been applied
+   */
+  private LongList selectIncrementalItems(DBWriterImpl writer, TransactionContext context, long lastIcn)
+    throws SQLiteException
+  {
+    if (lastIcn > 0)
+      return context.getChangedItemsSorted(lastIcn + 1);
+    return writer.query(myTrigger.getExpr()).copyItemsSorted();
+  }
+
   private LongList selectChangedItems(DBWriterImpl writer, DBTrigger trigger, long triggerItem, TransactionContext context, long lastIcn) throws SQLiteException {
     LongSetBuilder newSetBuilder = new LongSetBuilder();
     ExtractionProcessor.create(trigger.getExpr(), context).loadItems(context, newSetBuilder);
@@ -12,8 +12,7 @@
 import org.almworks.util.Log;
 import org.jetbrains.annotations.*;
 
-import java.util.Iterator;
-import java.util.Map;
+import java.util.*;
 
 public class DBWriterImpl extends DBReaderImpl implements DBWriter {
   private final WriteHandle<?> myWriteHandle;
@@ -57,6 +56,7 @@ private <T> AttributeAdapter setValue0(long item, DBAttribute<T> attribute, T va
       }
       boolean changed = adapter.writeValue(item, value, this);
       if (changed) {
+        myContext.attributeChanged(attribute);
         itemChanged(item);
         if (!oldReferences.isEmpty()) {
           propagateChangeToOldReferences(oldReferences);
@@ -86,6 +86,7 @@ public long nextItem() {
       st.bind(1, myContext.getIcn());
       st.step();
       item = myContext.getConnection().getLastInsertId();
+      myContext.itemCreated(item);
       itemChanged(item);
       return item;
     } catch (SQLiteException e) {
@@ -106,6 +107,13 @@ public long getItemIcn(long item) {
     return getItemIcnNoCache(item);
   }
 
+  /**
+   * Prefetched values would get stale after the first write, so prefetch is ignored in write transactions.
+   */
+  @Override
+  public void prefetchValues(LongList items, Collection<? extends DBAttribute<?>> attributes) {
+  }
+
   @Override
   public void finallyDo(ThreadGate gate, final Procedure<Boolean> procedure) {
     myWriteHandle.finallyDo(gate, new Procedure<Object>() {
@@ -141,6 +149,7 @@ public void clearAttribute(DBAttribute<?> attribute) {
       String table = myContext.getTableName(adapter.getTable(), false);
       if (table == null)
         return;
+      myContext.attributeChanged(attribute);
       SQLiteStatement st = myContext.prepare(myContext.sql().append("DELETE * FROM ").append(table));
       try {
         st.step();
@@ -6,8 +6,7 @@
 import com.almworks.util.bool.BoolExpr;
 import org.almworks.util.Log;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
 public class InconsistentReader implements DBReader {
   static final ThreadLocal<DBReader> RUNNING_READER = new ThreadLocal<DBReader>();
@@ -26,6 +25,20 @@ public T transaction(DBReader reader) {
     }).waitForCompletion();
   }
 
+  public DBValueColumns getValues(final LongList items, final Collection<? extends DBAttribute<?>> attributes) {
+    return myDatabase.read(DBPriority.BACKGROUND, new ReadTransaction<DBValueColumns>() {
+      public DBValueColumns transaction(DBReader reader) {
+        return reader.getValues(items, attributes);
+      }
+    }).waitForCompletion();
+  }
+
+  /**
+   * Every read is a separate transaction, there's nowhere to keep the prefetched values.
+   */
+  public void prefetchValues(LongList items, Collection<? extends DBAttribute<?>> attributes) {
+  }
+
   public DBQuery query(BoolExpr<DP> expr) {
     assert false;
     return null;
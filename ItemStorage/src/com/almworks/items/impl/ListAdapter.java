@@ -16,11 +16,6 @@ public ListAdapter(DBTable definition, ScalarValueAdapter scalarClass, DBColumn
     super(definition, scalarClass, scalarColumn);
   }
 
-  @Override
-  protected Collection emptyCollection() {
-    return Collections.emptyList();
-  }
-
   @Override
   protected Collection createCollection() {
     return Collections15.arrayList();
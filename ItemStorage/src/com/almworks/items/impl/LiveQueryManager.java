@@ -10,6 +10,7 @@
 import org.almworks.util.detach.Lifespan;
 import org.jetbrains.annotations.*;
 
+import java.io.PrintStream;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -60,7 +61,9 @@ public DBLiveQuery attach(BoolExpr<DP> expr, Lifespan lifespan, DBLiveQuery.List
       }
     }
     filter.addListener(lifespan, listener);
-    database.read(DBPriority.FOREGROUND, createHandle());
+    // updates are run by the query processor one at a time
+    QueryProcessor processor = database.getQueryProcessor();
+    processor.processClient(this);
     return filter;
   }
 
@@ -85,29 +88,49 @@ private void cycleResolutionSubscription() {
 
   private void firstUpdate(DBReader reader) {
     for (DBLiveQueryImpl query : myFilterList) {
-      long start = System.currentTimeMillis();
+      long start = System.nanoTime();
       Log.debug("Live query first update started " + query);
       query.independentUpdate(reader, myCurrentResolutionSubscription);
-      long duration = System.currentTimeMillis() - start;
-      Log.debug("FirstUpdate: " +duration + "ms " + query);
+      long duration = System.nanoTime() - start;
+      query.updateDone(duration);
+      Log.debug("FirstUpdate: " + duration / 1000000 + "ms " + query);
     }
   }
 
   private void subsequentUpdate(DBReader reader, long curIcn) {
-    DBEvent event = curIcn == myIcn ? DBEvent.EMPTY : null;
+    LiveQueryUpdate update = null;
     for (DBLiveQueryImpl query : myFilterList) {
-      long start = System.currentTimeMillis();
+      long start = System.nanoTime();
       if (query.getLastProcessedTransactionIcn() == myIcn) {
-        if (event == null) {
-          event = DBEvent.create(reader.getChangedItemsSorted(myIcn));
+        if (update == null) {
+          update = createUpdate(reader, curIcn);
         }
-        query.guidedUpdate(myIcn, curIcn, event, null, reader, myCurrentResolutionSubscription);
+        query.guidedUpdate(myIcn, curIcn, update.getEvent(), null, reader, myCurrentResolutionSubscription, update);
       } else {
         query.independentUpdate(reader, myCurrentResolutionSubscription);
       }
-      long duration = System.currentTimeMillis() - start;
-      if (duration > 10) Log.debug("Live query subsequent update done " +duration + "ms " + query);
+      long duration = System.nanoTime() - start;
+      query.updateDone(duration);
+      if (duration > 10000000) Log.debug("Live query subsequent update done " + duration / 1000000 + "ms " + query);
+    }
+  }
+
+  private LiveQueryUpdate createUpdate(DBReader reader, long curIcn) {
+    if (curIcn == myIcn)
+      return new LiveQueryUpdate(reader, DBEvent.EMPTY, null);
+    DBEvent event = DBEvent.create(reader.getChangedItemsSorted(myIcn));
+    DatabaseContext context = ((DBReaderImpl) reader).getContext().getDatabaseContext();
+    return new LiveQueryUpdate(reader, event, context.getChangeLog().getChanges(myIcn, curIcn));
+  }
+
+  public void dump(PrintStream writer) {
+    writer.println("=====================================================================================");
+    writer.println("*** LIVE QUERIES");
+    for (DBLiveQueryImpl query : myFilterList) {
+      writer.println(query + ": " + query.getUpdateStatistics());
     }
+    writer.println("=====================================================================================");
+    writer.println();
   }
 
   @Override
@@ -156,7 +179,8 @@ public void onChange() {
         db = myDatabase;
         if (db == null) return;
       }
-      db.read(DBPriority.FOREGROUND, createHandle());
+      QueryProcessor processor = db.getQueryProcessor();
+      processor.processClient(LiveQueryManager.this);
     }
   }
 
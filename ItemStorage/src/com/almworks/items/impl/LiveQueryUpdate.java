@@ -0,0 +1,62 @@
+package com.almworks.items.impl;
+
+import com.almworks.items.api.DBAttribute;
+import com.almworks.items.api.DBEvent;
+import com.almworks.items.api.DBReader;
+import com.almworks.items.impl.sqlite.ChangeLog;
+import org.jetbrains.annotations.*;
+
+import java.util.Set;
+
+/**
+ * Update of all live queries with the changes between two ICNs. A query whose attributes were not written needs
+ * to check only the created items, because other items could not enter or leave it. Predicates are evaluated once
+ * for all queries.
+ */
+class LiveQueryUpdate {
+  private final DBReader myReader;
+  private final DBEvent myEvent;
+  @Nullable
+  private final ChangeLog.Changes myChanges;
+
+  private SharedItemFilter myChangedFilter;
+  private SharedItemFilter myCreatedFilter;
+
+  /**
+   * @param changes attributes and items changed in the update, null if unknown
+   */
+  public LiveQueryUpdate(DBReader reader, DBEvent event, @Nullable ChangeLog.Changes changes) {
+    myReader = reader;
+    myEvent = event;
+    myChanges = changes;
+  }
+
+  public DBEvent getEvent() {
+    return myEvent;
+  }
+
+  /**
+   * @param attributes attributes that affect the query, null if unknown
+   * @return true if items other than created ones may have entered or left the query
+   */
+  public boolean isAffected(@Nullable Set<DBAttribute> attributes) {
+    return myChanges == null || myChanges.isAnyChanged(attributes);
+  }
+
+  /**
+   * @param affected see {@link #isAffected}
+   * @return filter of the items that have to be checked
+   */
+  public SharedItemFilter getFilter(boolean affected) {
+    if (affected) {
+      if (myChangedFilter == null)
+        myChangedFilter = new SharedItemFilter(myReader, myEvent.getAddedAndChangedSorted());
+      return myChangedFilter;
+    } else {
+      assert myChanges != null;
+      if (myCreatedFilter == null)
+        myCreatedFilter = new SharedItemFilter(myReader, myChanges.getCreatedSorted());
+      return myCreatedFilter;
+    }
+  }
+}
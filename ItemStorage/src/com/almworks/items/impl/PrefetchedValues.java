@@ -0,0 +1,89 @@
+package com.almworks.items.impl;
+
+import com.almworks.integers.LongArray;
+import com.almworks.integers.LongList;
+import com.almworks.items.api.DBAttribute;
+import com.almworks.items.util.AttributeMap;
+import org.almworks.util.Collections15;
+import org.almworks.util.TypedKey;
+import org.jetbrains.annotations.*;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Transaction-scoped storage of values bulk-loaded with {@link DBReaderImpl#prefetchValues}.
+ * Keeps the last prefetched page and learns the attributes that are read for the prefetched items.
+ */
+class PrefetchedValues {
+  private static final TypedKey<PrefetchedValues> KEY = TypedKey.create("prefetchedValues");
+
+  private final Set<DBAttribute<?>> myRequested = Collections15.linkedHashSet();
+  private ValueColumnsImpl myValues;
+
+  @Nullable
+  static PrefetchedValues get(Map transactionCache) {
+    return KEY.getFrom(transactionCache);
+  }
+
+  @NotNull
+  static PrefetchedValues getOrCreate(Map transactionCache) {
+    PrefetchedValues values = KEY.getFrom(transactionCache);
+    if (values == null) {
+      values = new PrefetchedValues();
+      KEY.putTo(transactionCache, values);
+    }
+    return values;
+  }
+
+  Set<DBAttribute<?>> getRequestedAttributes() {
+    return myRequested;
+  }
+
+  void setValues(ValueColumnsImpl values) {
+    myValues = values;
+  }
+
+  /**
+   * @return the index of the item in the prefetched page, or negative value if the item is not prefetched or the
+   * value cannot be served from the page
+   */
+  int lookup(long item, DBAttribute<?> attribute) {
+    ValueColumnsImpl values = myValues;
+    if (values == null)
+      return -1;
+    int index = values.indexOf(item);
+    if (index < 0)
+      return -1;
+    if (values.hasAttribute(attribute))
+      return index;
+    if (isCacheable(attribute)) {
+      myRequested.add(attribute);
+    }
+    return -1;
+  }
+
+  <T> T getValueAt(int index, DBAttribute<T> attribute) {
+    T value = myValues.getValueAt(index, attribute);
+    if (value instanceof Date)
+      return (T) new Date(((Date) value).getTime());
+    if (value instanceof LongList)
+      return (T) (((LongList) value).isEmpty() ? LongList.EMPTY : LongArray.copy((LongList) value));
+    return value;
+  }
+
+  /**
+   * Values of mutable classes are not shared between getValue() calls, callers are free to modify them.
+   * Scalar dates and long lists are copied by {@link #getValueAt}; collections are copied by their adapters, but not
+   * their elements, so collections of mutable values are not cached.
+   */
+  static boolean isCacheable(DBAttribute<?> attribute) {
+    Class<?> scalarClass = attribute.getScalarClass();
+    if (scalarClass == AttributeMap.class || scalarClass == byte[].class)
+      return false;
+    if (Date.class.isAssignableFrom(scalarClass) || LongList.class.isAssignableFrom(scalarClass))
+      return attribute.getComposition() == DBAttribute.ScalarComposition.SCALAR;
+    return true;
+  }
+}
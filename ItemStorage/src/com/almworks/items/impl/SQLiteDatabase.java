@@ -236,6 +236,8 @@ public void dump(final PrintStream writer) throws IOException {
     read(DBPriority.FOREGROUND, new ReadTransaction<Object>() {
       public Object transaction(DBReader reader) {
         new HighLevelDumper(reader).dump(writer);
+        myDatabaseContext.getPredicateStatistics().dump(writer);
+        myLiveQueryManager.dump(writer);
         return null;
       }
     }).waitForCompletion();
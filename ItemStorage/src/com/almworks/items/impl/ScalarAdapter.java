@@ -95,17 +95,22 @@ public Object arrayLoad(LongList itemsSorted, SQLiteLongArray itemsArray, Transa
     if (table == null) {
       return null;
     }
+    boolean disposeArray = itemsArray == null;
+    if (disposeArray) {
+      itemsArray = context.useArray(itemsSorted, true, true);
+    }
     String item = DBColumn.ITEM.getName();
-    SQLiteStatement st = context.prepare(context.sql()
-      .append("SELECT t1.value, t2.")
-      .append(myScalarColumn.getName())
-      .append(" FROM ")
-      .append(itemsArray.getName())
-      .append(" t1 LEFT OUTER JOIN ")
-      .append(table)
-      .append(" t2 ON t1.value = t2.")
-      .append(item).append(" ORDER BY 1"));
+    SQLiteStatement st = SQLiteStatement.DISPOSED;
     try {
+      st = context.prepare(context.sql()
+        .append("SELECT t1.value, t2.")
+        .append(myScalarColumn.getName())
+        .append(" FROM ")
+        .append(itemsArray.getName())
+        .append(" t1 LEFT OUTER JOIN ")
+        .append(table)
+        .append(" t2 ON t1.value = t2.")
+        .append(item).append(" ORDER BY 1"));
       Object result = null;
       int index = 0;
       while (st.step()) {
@@ -121,6 +126,9 @@ public Object arrayLoad(LongList itemsSorted, SQLiteLongArray itemsArray, Transa
       return result;
     } finally {
       st.dispose();
+      if (disposeArray) {
+        itemsArray.dispose();
+      }
     }
   }
 
@@ -16,11 +16,6 @@ public SetAdapter(DBTable definition, ScalarValueAdapter scalarClass, DBColumn s
     super(definition, scalarClass, scalarColumn);
   }
 
-  @Override
-  protected Collection emptyCollection() {
-    return Collections.emptySet();
-  }
-
   @Override
   protected Collection createCollection() {
     return Collections15.hashSet();
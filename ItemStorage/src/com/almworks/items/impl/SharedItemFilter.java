@@ -0,0 +1,114 @@
+package com.almworks.items.impl;
+
+import com.almworks.integers.LongArray;
+import com.almworks.integers.LongList;
+import com.almworks.integers.util.LongSetBuilder;
+import com.almworks.items.api.DBReader;
+import com.almworks.items.api.DP;
+import com.almworks.util.bool.BoolExpr;
+import com.almworks.util.bool.BoolOperation;
+import org.almworks.util.Collections15;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Filters a fixed set of items with many expressions in DNF. Every distinct predicate is evaluated once; the results
+ * for the expressions are combined from the results of the predicates.
+ * <p>
+ * Confined to the thread of the read transaction.
+ */
+class SharedItemFilter {
+  private final DBReader myReader;
+  private final LongList myItemsSorted;
+  private final Map<DP, LongList> myAccepted = Collections15.hashMap();
+
+  public SharedItemFilter(DBReader reader, LongList itemsSorted) {
+    myReader = reader;
+    myItemsSorted = itemsSorted;
+  }
+
+  public LongList getItemsSorted() {
+    return myItemsSorted;
+  }
+
+  /**
+   * @return items accepted by the expression, sorted
+   */
+  public LongList filter(BoolExpr<DP> dnf) {
+    if (myItemsSorted.isEmpty())
+      return LongList.EMPTY;
+    BoolExpr.Operation<DP> or = dnf.asOperation(BoolOperation.OR);
+    if (or == null)
+      return filterConjunction(dnf);
+    if (or.isNegated())
+      return myReader.query(dnf).filterItemsSorted(myItemsSorted);
+    LongSetBuilder r = new LongSetBuilder();
+    for (BoolExpr<DP> disjunct : or.getArguments()) {
+      r.mergeFromSortedCollection(filterConjunction(disjunct));
+    }
+    return r.toSortedCollection();
+  }
+
+  private LongList filterConjunction(BoolExpr<DP> expr) {
+    BoolExpr.Operation<DP> and = expr.asOperation(BoolOperation.AND);
+    if (and == null)
+      return filterTerm(expr);
+    if (and.isNegated())
+      return myReader.query(expr).filterItemsSorted(myItemsSorted);
+    List<BoolExpr<DP>> conjuncts = and.getArguments();
+    LongList r = myItemsSorted;
+    for (int i = 0; i < conjuncts.size() && !r.isEmpty(); i++) {
+      r = intersect(r, filterTerm(conjuncts.get(i)));
+    }
+    return r;
+  }
+
+  private LongList filterTerm(BoolExpr<DP> expr) {
+    if (expr == BoolExpr.<DP>TRUE())
+      return myItemsSorted;
+    if (expr == BoolExpr.<DP>FALSE())
+      return LongList.EMPTY;
+    DP dp = expr.getTerm();
+    if (dp == null)
+      return myReader.query(expr).filterItemsSorted(myItemsSorted);
+    LongList accepted = myAccepted.get(dp);
+    if (accepted == null) {
+      accepted = myReader.query(dp.term()).filterItemsSorted(myItemsSorted);
+      myAccepted.put(dp, accepted);
+    }
+    return expr.isNegated() ? subtract(myItemsSorted, accepted) : accepted;
+  }
+
+  private static LongList intersect(LongList a, LongList b) {
+    LongArray r = new LongArray(Math.min(a.size(), b.size()));
+    int i = 0, j = 0;
+    while (i < a.size() && j < b.size()) {
+      long x = a.get(i);
+      long y = b.get(j);
+      if (x < y) {
+        i++;
+      } else if (x > y) {
+        j++;
+      } else {
+        r.add(x);
+        i++;
+        j++;
+      }
+    }
+    return r;
+  }
+
+  private static LongList subtract(LongList a, LongList b) {
+    LongArray r = new LongArray(a.size());
+    int j = 0;
+    for (int i = 0; i < a.size(); i++) {
+      long x = a.get(i);
+      while (j < b.size() && b.get(j) < x)
+        j++;
+      if (j >= b.size() || b.get(j) != x)
+        r.add(x);
+    }
+    return r;
+  }
+}
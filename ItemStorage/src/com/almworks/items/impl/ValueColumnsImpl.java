@@ -0,0 +1,101 @@
+package com.almworks.items.impl;
+
+import com.almworks.integers.LongList;
+import com.almworks.items.api.DBAttribute;
+import com.almworks.items.api.DBValueColumns;
+import com.almworks.items.impl.sqlite.TransactionContext;
+import com.almworks.sqlite4java.SQLiteException;
+import com.almworks.sqlite4java.SQLiteLongArray;
+import org.almworks.util.Collections15;
+import org.jetbrains.annotations.*;
+
+import java.util.*;
+
+class ValueColumnsImpl implements DBValueColumns {
+  private final LongList myItemsSorted;
+  private final Map<DBAttribute<?>, Column> myColumns;
+
+  private ValueColumnsImpl(LongList itemsSorted, Map<DBAttribute<?>, Column> columns) {
+    myItemsSorted = itemsSorted;
+    myColumns = columns;
+  }
+
+  /**
+   * Runs one select per attribute table over the whole set of items.
+   * @param itemsSorted unique and sorted items
+   */
+  static ValueColumnsImpl load(LongList itemsSorted, Collection<? extends DBAttribute<?>> attributes,
+    DBReaderImpl reader) throws SQLiteException
+  {
+    Map<DBAttribute<?>, Column> columns = Collections15.linkedHashMap();
+    if (itemsSorted.isEmpty() || attributes.isEmpty()) {
+      for (DBAttribute<?> attribute : attributes) {
+        columns.put(attribute, new Column(reader.getAttributeAdapter(attribute), null));
+      }
+      return new ValueColumnsImpl(itemsSorted, columns);
+    }
+    TransactionContext context = reader.getContext();
+    SQLiteLongArray array = context.useArray(itemsSorted, true, true);
+    try {
+      for (DBAttribute<?> attribute : attributes) {
+        if (columns.containsKey(attribute))
+          continue;
+        AttributeAdapter adapter = reader.getAttributeAdapter(attribute);
+        Object storage = adapter.arrayLoad(itemsSorted, array, context);
+        columns.put(attribute, new Column(adapter, storage));
+      }
+    } finally {
+      array.dispose();
+    }
+    return new ValueColumnsImpl(itemsSorted, columns);
+  }
+
+  @NotNull
+  public LongList getItemsSorted() {
+    return myItemsSorted;
+  }
+
+  @NotNull
+  public Collection<DBAttribute<?>> getAttributes() {
+    return Collections.unmodifiableSet(myColumns.keySet());
+  }
+
+  public boolean hasAttribute(DBAttribute<?> attribute) {
+    return myColumns.containsKey(attribute);
+  }
+
+  public int indexOf(long item) {
+    return myItemsSorted.binarySearch(item);
+  }
+
+  public <T> T getValueAt(int index, DBAttribute<T> attribute) {
+    Column column = myColumns.get(attribute);
+    if (column == null || index < 0 || index >= myItemsSorted.size())
+      return null;
+    return (T) column.get(index);
+  }
+
+  public <T> T getValue(long item, DBAttribute<T> attribute) {
+    return getValueAt(indexOf(item), attribute);
+  }
+
+  @Override
+  public String toString() {
+    return "values[" + myItemsSorted.size() + "x" + myColumns.size() + "]";
+  }
+
+  private static class Column {
+    private final AttributeAdapter myAdapter;
+    @Nullable
+    private final Object myStorage;
+
+    public Column(AttributeAdapter adapter, Object storage) {
+      myAdapter = adapter;
+      myStorage = storage;
+    }
+
+    public Object get(int index) {
+      return myStorage == null ? null : myAdapter.arrayGet(myStorage, index);
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.almworks.items.impl.migrations;
+
+import com.almworks.integers.LongArray;
+import com.almworks.integers.LongIterator;
+import com.almworks.items.api.*;
+import com.almworks.items.dp.DPEqualsIdentified;
+import com.almworks.items.dp.DPNotNull;
+import com.almworks.items.impl.AttributeAdapter;
+import com.almworks.items.impl.AttributeCache;
+import com.almworks.items.impl.DBWriterImpl;
+import com.almworks.items.util.AttributeMap;
+import com.almworks.sqlite4java.SQLiteException;
+import org.almworks.util.Log;
+
+/**
+ * Rewrites stored attribute maps (shadows, mostly) in the indexed format, which refers to attributes by their items
+ * instead of ids. Items are not marked as changed, as their values stay the same.
+ */
+public class IndexedAttributeMap extends DBMigrationProcedure {
+  public IndexedAttributeMap() {
+    super("com.almworks.items.migrations.IndexedAttributeMap");
+  }
+
+  @Override
+  protected boolean migrate(DBWriter w) {
+    if (!(w instanceof DBWriterImpl)) {
+      Log.warn("cannot migrate attribute maps with " + w);
+      return false;
+    }
+    DBWriterImpl writer = (DBWriterImpl) w;
+    final LongArray attrs = w.query(DPEqualsIdentified.create(DBAttribute.TYPE, DBItemType.ATTRIBUTE)).copyItemsSorted();
+    int count = 0;
+    for (final LongIterator it = attrs.iterator(); it.hasNext();) {
+      final long attr = it.next();
+      if (!AttributeMap.class.getName().equals(w.getValue(attr, DBAttribute.SCALAR_CLASS)))
+        continue;
+      DBAttribute<?> attribute = AttributeCache.get(writer.getContext()).getAttributeByItem(attr, writer.getContext());
+      if (attribute == null) {
+        Log.warn("cannot migrate values of " + attr);
+        continue;
+      }
+      AttributeAdapter adapter = writer.getAttributeAdapter(attribute);
+      LongArray items = w.query(DPNotNull.create(attribute)).copyItemsSorted();
+      for (LongIterator ii = items.iterator(); ii.hasNext();) {
+        long item = ii.next();
+        try {
+          adapter.writeValue(item, w.getValue(item, attribute), writer);
+        } catch (SQLiteException e) {
+          throw new DBException(e);
+        }
+      }
+      count += items.size();
+    }
+    Log.debug("migrated " + count + " attribute maps");
+    return true;
+  }
+}
@@ -12,11 +12,17 @@
 import util.external.CompactInt;
 
 import java.io.*;
+import java.util.Collection;
 import java.util.Set;
 
 // written attributes should be materialized!
 public class ScalarAdapterAttributeMap extends ScalarValueAdapter<AttributeMap> {
   private static final int SIGNATURE = 0xA1151B0E;
+  /**
+   * Attributes are written as their items rather than ids, and the values follow a directory of their lengths, so
+   * a value may be decoded without decoding the ones before it.
+   */
+  private static final int SIGNATURE_INDEXED = 0xA1151B0F;
 
   @Override
   public Class<AttributeMap> getAdaptedClass() {
@@ -58,6 +64,8 @@ public AttributeMap loadUserValue(SQLiteStatement select, int columnIndex, Trans
   @Override
   protected AttributeMap readValueFromStream(DataInput in, TransactionContext context) throws IOException {
     int signature = in.readInt();
+    if (signature == SIGNATURE_INDEXED)
+      return readIndexed(in, context);
     if (signature != SIGNATURE)
       throw new IOException("bad signature");
     AttributeMap r = new AttributeMap();
@@ -80,31 +88,91 @@ protected AttributeMap readValueFromStream(DataInput in, TransactionContext cont
     return r;
   }
 
+  /**
+   * Reads the directory of attribute items and value lengths, then the values. Values are left encoded, except
+   * for nested maps, which need the transaction to be decoded.
+   */
+  private static AttributeMap readIndexed(DataInput in, TransactionContext context) throws IOException {
+    int mapLength = CompactInt.readInt(in);
+    if (mapLength < 0)
+      return null;
+    AttributeCache cache = AttributeCache.get(context);
+    DBAttribute[] attributes = new DBAttribute[mapLength];
+    int[] lengths = new int[mapLength];
+    int total = 0;
+    for (int i = 0; i < mapLength; i++) {
+      long item = CompactInt.readLong(in);
+      attributes[i] = cache.getAttributeByItem(item, context);
+      if (attributes[i] == null)
+        throw new IOException("cannot locate attribute " + item);
+      lengths[i] = CompactInt.readInt(in);
+      if (lengths[i] < 0)
+        throw new IOException("bad length " + lengths[i]);
+      total += lengths[i];
+    }
+    byte[] values = new byte[total];
+    in.readFully(values);
+    AttributeMap r = new AttributeMap();
+    int offset = 0;
+    for (int i = 0; i < mapLength; i++) {
+      DBAttribute attribute = attributes[i];
+      AttributeAdapter adapter = context.getDatabaseContext().getAttributeAdapter(attribute);
+      if (adapter == null)
+        throw new IOException("cannot read " + attribute.getId());
+      EncodedValue value = new EncodedValue(adapter, attribute, values, offset, lengths[i]);
+      if (adapter.getScalarAdapter() instanceof ScalarAdapterAttributeMap)
+        r.put(attribute, value.decode(context));
+      else
+        r.putLazy(attribute, value);
+      offset += lengths[i];
+    }
+    return r;
+  }
+
   @Override
   protected void writeValueToStream(DataOutput out, AttributeMap userValue, TransactionContext context)
     throws IOException
   {
-    out.writeInt(SIGNATURE);
+    out.writeInt(SIGNATURE_INDEXED);
     if (userValue == null) {
       CompactInt.writeInt(out, -1);
       return;
     }
     Set<DBAttribute<?>> attributes = userValue.keySet();
     CompactInt.writeInt(out, attributes.size());
+    IdentifiedObjectCache items = IdentifiedObjectCache.get(context);
+    ByteArrayOutputStream valueBytes = new ByteArrayOutputStream();
+    DataOutputStream values = new DataOutputStream(valueBytes);
     for (DBAttribute attribute : attributes) {
-      CompactChar.writeString(out, attribute.getId());
+      long item = items.getMaterialized(attribute, context);
+      if (item <= 0)
+        throw new IOException("not materialized " + attribute.getId());
       AttributeAdapter adapter = context.getDatabaseContext().getAttributeAdapter(attribute);
       if (adapter == null) {
         throw new IOException("cannot write " + attribute.getId());
       }
-      adapter.writeValueToStream(out, userValue.get(attribute), context);
+      int start = valueBytes.size();
+      AttributeMap.LazyValue lazy = userValue.getLazy(attribute);
+      if (lazy instanceof EncodedValue && ((EncodedValue) lazy).myAdapter == adapter) {
+        ((EncodedValue) lazy).writeTo(values);
+      } else {
+        adapter.writeValueToStream(values, userValue.get(attribute), context);
+      }
+      values.flush();
+      CompactInt.writeLong(out, item);
+      CompactInt.writeInt(out, valueBytes.size() - start);
     }
+    out.write(valueBytes.toByteArray());
   }
 
   @Override
   public void bindParameter(SQLiteStatement statement, int bindIndex, AttributeMap userValue,
     TransactionContext context) throws SQLiteException
   {
+    // attribute items are written instead of ids, so the attributes are materialized before the value is bound
+    if (userValue != null) {
+      materialize(userValue, new DBWriterImpl(context, null));
+    }
     OutputStream os = statement.bindStream(bindIndex);
     try {
       DataOutputStream out = new DataOutputStream(os);
@@ -120,14 +188,23 @@ public void bindParameter(SQLiteStatement statement, int bindIndex, AttributeMap
         // ignore
       }
     }
- 
-    // materialize attributes
-    if (userValue != null) {
-      Set<DBAttribute<?>> attributes = userValue.keySet();
-      if (!attributes.isEmpty()) {
-        DBWriterImpl writer = new DBWriterImpl(context, null);
-        for (DBAttribute<?> attribute : attributes) {
-          writer.materialize(attribute);
+  }
+
+  private static void materialize(AttributeMap map, DBWriterImpl writer) {
+    for (DBAttribute<?> attribute : map.keySet()) {
+      writer.materialize(attribute);
+      if (map.getLazy(attribute) != null) {
+        // lazy values are never maps
+        continue;
+      }
+      Object value = map.get(attribute);
+      if (value instanceof AttributeMap) {
+        materialize((AttributeMap) value, writer);
+      } else if (value instanceof Collection) {
+        for (Object element : (Collection) value) {
+          if (element instanceof AttributeMap) {
+            materialize((AttributeMap) element, writer);
+          }
         }
       }
     }
@@ -137,4 +214,44 @@ public void bindParameter(SQLiteStatement statement, int bindIndex, AttributeMap
   public Object toSearchValue(AttributeMap userValue) {
     return null;
   }
+
+
+  /**
+   * Slice of a stored map that holds one value.
+   */
+  private static class EncodedValue extends AttributeMap.LazyValue {
+    private final AttributeAdapter myAdapter;
+    private final DBAttribute<?> myAttribute;
+    private final byte[] myBytes;
+    private final int myOffset;
+    private final int myLength;
+
+    public EncodedValue(AttributeAdapter adapter, DBAttribute<?> attribute, byte[] bytes, int offset, int length) {
+      myAdapter = adapter;
+      myAttribute = attribute;
+      myBytes = bytes;
+      myOffset = offset;
+      myLength = length;
+    }
+
+    @Override
+    protected Object decode() {
+      // scalar values other than maps do not use the transaction
+      return decode(null);
+    }
+
+    public Object decode(TransactionContext context) {
+      try {
+        return myAdapter.readValueFromStream(
+          new DataInputStream(new ByteArrayInputStream(myBytes, myOffset, myLength)), context);
+      } catch (IOException e) {
+        Log.warn("cannot read " + myAttribute.getId(), e);
+        return null;
+      }
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+      out.write(myBytes, myOffset, myLength);
+    }
+  }
 }
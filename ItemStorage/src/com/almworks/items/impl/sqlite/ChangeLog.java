@@ -0,0 +1,93 @@
+package com.almworks.items.impl.sqlite;
+
+import com.almworks.integers.LongArray;
+import com.almworks.integers.LongList;
+import com.almworks.items.api.DBAttribute;
+import org.almworks.util.Collections15;
+import org.jetbrains.annotations.*;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Remembers which attributes were written and which items were created by the recent transactions of this
+ * process. Transactions are recorded before commit, so a rolled back transaction adds its changes to the next
+ * transaction with the same ICN, which only makes the log less precise.
+ * <p>
+ * Changes made by other processes are not known; ICN ranges that contain such transactions are reported as unknown.
+ */
+public class ChangeLog {
+  private static final int MAX_TRANSACTIONS = 200;
+
+  private final TreeMap<Long, Entry> myEntries = new TreeMap<Long, Entry>();
+
+  public synchronized void record(long icn, TransactionContext context) {
+    Entry entry = myEntries.get(icn);
+    if (entry == null) {
+      entry = new Entry();
+      myEntries.put(icn, entry);
+      if (myEntries.size() > MAX_TRANSACTIONS)
+        myEntries.remove(myEntries.firstKey());
+    }
+    entry.myAttributes.addAll(context.getChangedAttributes());
+    entry.myCreated.addAll(context.getCreatedItemsSorted());
+    entry.myCreated.sortUnique();
+  }
+
+  /**
+   * @return changes made by transactions with ICN greater than fromIcn and not greater than toIcn, or null if some
+   * of these transactions are not known
+   */
+  @Nullable
+  public synchronized Changes getChanges(long fromIcn, long toIcn) {
+    if (toIcn <= fromIcn)
+      return new Changes(Collections.<DBAttribute>emptySet(), LongList.EMPTY);
+    Set<DBAttribute> attributes = Collections15.hashSet();
+    LongArray created = new LongArray();
+    for (long icn = fromIcn + 1; icn <= toIcn; icn++) {
+      Entry entry = myEntries.get(icn);
+      if (entry == null)
+        return null;
+      attributes.addAll(entry.myAttributes);
+      created.addAll(entry.myCreated);
+    }
+    created.sortUnique();
+    return new Changes(attributes, created);
+  }
+
+
+  private static class Entry {
+    private final Set<DBAttribute> myAttributes = Collections15.hashSet();
+    private final LongArray myCreated = new LongArray();
+  }
+
+
+  public static class Changes {
+    private final Set<DBAttribute> myAttributes;
+    private final LongList myCreatedSorted;
+
+    private Changes(Set<DBAttribute> attributes, LongList createdSorted) {
+      myAttributes = attributes;
+      myCreatedSorted = createdSorted;
+    }
+
+    /**
+     * @param attributes null means unknown attributes
+     * @return true if values of any of the attributes might have changed
+     */
+    public boolean isAnyChanged(@Nullable Set<DBAttribute> attributes) {
+      if (attributes == null)
+        return true;
+      for (DBAttribute attribute : attributes) {
+        if (myAttributes.contains(attribute))
+          return true;
+      }
+      return false;
+    }
+
+    public LongList getCreatedSorted() {
+      return myCreatedSorted;
+    }
+  }
+}
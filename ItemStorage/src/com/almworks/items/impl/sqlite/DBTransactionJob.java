@@ -37,6 +37,7 @@ protected void dbrun(TransactionContext context) throws Throwable {
       context.flushChangedItemsICN();
       applyTriggers(context);
       myIcn = context.getIcn();
+      context.getDatabaseContext().getChangeLog().record(myIcn, context);
       context.setProperty(Schema.NEXT_ICN, myIcn + 1);
     }
   }
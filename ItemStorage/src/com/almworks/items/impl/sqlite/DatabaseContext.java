@@ -3,6 +3,8 @@
 import com.almworks.items.api.DBAttribute;
 import com.almworks.items.api.DBException;
 import com.almworks.items.impl.*;
+import com.almworks.items.impl.sqlite.bitmap.BitmapIndexManager;
+import com.almworks.items.impl.sqlite.filter.PredicateStatistics;
 import org.almworks.util.Collections15;
 import org.jetbrains.annotations.*;
 
@@ -11,6 +13,9 @@
 public class DatabaseContext {
   private final DBConfiguration myConfiguration;
   private final Map<DBAttribute, AttributeAdapter> myAttributeAdapters = Collections15.hashMap();
+  private final BitmapIndexManager myBitmapIndexes = new BitmapIndexManager();
+  private final PredicateStatistics myPredicateStatistics = new PredicateStatistics();
+  private final ChangeLog myChangeLog = new ChangeLog();
 
   public DatabaseContext(DBConfiguration configuration) {
     myConfiguration = configuration;
@@ -20,6 +25,18 @@ public DBConfiguration getConfiguration() {
     return myConfiguration;
   }
 
+  public BitmapIndexManager getBitmapIndexes() {
+    return myBitmapIndexes;
+  }
+
+  public PredicateStatistics getPredicateStatistics() {
+    return myPredicateStatistics;
+  }
+
+  public ChangeLog getChangeLog() {
+    return myChangeLog;
+  }
+
   @NotNull
   public AttributeAdapter getAttributeAdapter(DBAttribute<?> attribute) {
     synchronized (myAttributeAdapters) {
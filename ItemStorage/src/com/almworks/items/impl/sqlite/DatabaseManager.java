@@ -18,13 +18,17 @@
 
 public class DatabaseManager {
   private static final Pattern ALLOWED_TEMP_DIR_NAME = Pattern.compile("\\p{ASCII}+");
+  private static final boolean WAL = Env.getBoolean("items.wal", true);
 
   private final String myName;
   @NotNull
   private final DatabaseQueue myMainDB;
 
+  /**
+   * Runs foreground reads; null for in-memory database
+   */
   @Nullable
-  private final DatabaseQueue myShowDB;
+  private final DatabaseReaderPool myShowDB;
 
   @Nullable
   private final DatabaseQueue myMonitorDB;
@@ -46,7 +50,7 @@ public class DatabaseManager {
 
   private Thread myProfilerThread;
 
-  private DatabaseManager(String name, DatabaseQueue mainDB, @Nullable DatabaseQueue showDB, @Nullable DatabaseQueue monitorDB,
+  private DatabaseManager(String name, DatabaseQueue mainDB, @Nullable DatabaseReaderPool showDB, @Nullable DatabaseQueue monitorDB,
     int din, @Nullable DatabaseContext databaseContext)
   {
     myName = "DM[" + name + "]";
@@ -55,7 +59,7 @@ private DatabaseManager(String name, DatabaseQueue mainDB, @Nullable DatabaseQue
     myMonitorDB = monitorDB;
     myDin = din;
     myDatabaseContext = databaseContext;
-    DatabaseQueue queryDB = showDB != null ? showDB : mainDB;
+    DatabaseQueue queryDB = showDB != null ? showDB.getQueryQueue() : mainDB;
     myQueryProcessor = new QueryProcessorImpl(queryDB);
     myFilterManager = new SimpleOldFilterManager(myQueryProcessor, databaseContext);
     myCacheManager = new ValueCacheManager(myQueryProcessor);
@@ -64,7 +68,7 @@ private DatabaseManager(String name, DatabaseQueue mainDB, @Nullable DatabaseQue
 
   private void start() {
     createArrays(myMainDB, 4, TransactionContext.ICN_UPDATE_ARRAY);
-    if (myShowDB != null) createArrays(myShowDB, 4);
+    if (myShowDB != null) myShowDB.createArrays(4);
 
     myCacheManager.attach();
     if (myMonitor != null) {
@@ -81,7 +85,7 @@ public void run() {
     }
   }
 
-  private void createArrays(DatabaseQueue db, final int count, final String... fixedNames) {
+  static void createArrays(DatabaseQueue db, final int count, final String... fixedNames) {
     db.execute(new DatabaseJob() {
       @Override
       protected void dbrun(TransactionContext context) throws Throwable {
@@ -115,9 +119,13 @@ private void dumpCycle() {
       while (!Thread.currentThread().isInterrupted()) {
         Thread.sleep(sleep);
         try {
-          dump("main", myMainDB);
-          dump("view", myShowDB);
-          dump("monitor", myMonitorDB);
+          dump("main", myMainDB.getProfiler());
+          if (myShowDB != null) {
+            for (int i = 0; i < myShowDB.getSize(); i++)
+              dump("view" + (i + 1), myShowDB.getProfiler(i));
+          }
+          if (myMonitorDB != null)
+            dump("monitor", myMonitorDB.getProfiler());
         } catch (RuntimeException e) {
           // ignore
         }
@@ -127,10 +135,7 @@ private void dumpCycle() {
     }
   }
 
-  private void dump(String prefix, DatabaseQueue db) {
-    if (db == null)
-      return;
-    SQLiteProfiler profiler = db.getProfiler();
+  private void dump(String prefix, @Nullable SQLiteProfiler profiler) {
     if (profiler == null)
       return;
     File profileBase = myDatabaseContext.getConfiguration().getProfileBaseFile();
@@ -154,16 +159,20 @@ public static DatabaseManager open(@Nullable File filename, @Nullable File tempD
     throws InterruptedException, SQLiteException
   {
     DatabaseQueue mainDB = null;
-    DatabaseQueue showDB = null;
+    DatabaseReaderPool showDB = null;
     DatabaseQueue monitorDB = null;
     boolean memoryDatabase = filename == null;
     int din;
     try {
-      mainDB = DatabaseQueue.start(filename, "db:main", databaseContext);
+      String journalMode = memoryDatabase || !WAL ? null : "WAL";
+      mainDB = new DatabaseQueue(filename, "db:main", databaseContext);
+      if (journalMode != null)
+        mainDB.setParameter(DatabaseQueue.JOURNAL_MODE, journalMode);
+      mainDB.start();
       din = initDB(mainDB, tempDir);
       if (!memoryDatabase) {
-        showDB = DatabaseQueue.start(filename, "db:view", databaseContext);
-        monitorDB = createMonitorDB(filename, databaseContext);
+        showDB = DatabaseReaderPool.start(filename, "db:view", DatabaseReaderPool.SIZE, databaseContext, journalMode);
+        monitorDB = createMonitorDB(filename, databaseContext, journalMode);
       }
     } catch (SQLiteException e) {
       if (monitorDB != null)
@@ -180,9 +189,13 @@ public static DatabaseManager open(@Nullable File filename, @Nullable File tempD
     return connection;
   }
 
-  private static DatabaseQueue createMonitorDB(File filename, DatabaseContext databaseContext) throws SQLiteException {
+  private static DatabaseQueue createMonitorDB(File filename, DatabaseContext databaseContext,
+    @Nullable String journalMode) throws SQLiteException
+  {
     DatabaseQueue db = new DatabaseQueue(filename, "db:monitor", databaseContext);
     db.setParameter(DatabaseQueue.CACHE_SIZE, 4);
+    if (journalMode != null)
+      db.setParameter(DatabaseQueue.JOURNAL_MODE, journalMode);
     db.start();
     return db;
   }
@@ -269,9 +282,7 @@ private DBTransactionJob createTransactionJob(DBTransaction transaction) {
   }
 
   public DatabaseJob read(DBPriority priority, final DBRead read) {
-    DatabaseQueue queue = priority.isForeground() ? myShowDB : myMainDB;
-    if (queue == null)
-      queue = myMainDB;
+    DatabaseExecutor queue = priority.isForeground() && myShowDB != null ? myShowDB : myMainDB;
     DBReadJob job = new DBReadJob(read);
     job.setPriority(priority.getRelativePriority());
     queue.execute(job);
@@ -303,7 +314,7 @@ public Modifiable getMainQueueEmptySignal() {
   }
 
   public boolean isDbThread() {
-    return isDbThread(myMainDB) || isDbThread(myMonitorDB) || isDbThread(myShowDB);
+    return isDbThread(myMainDB) || isDbThread(myMonitorDB) || (myShowDB != null && myShowDB.isQueueThread());
   }
 
   private static boolean isDbThread(@Nullable DatabaseQueue queue) {
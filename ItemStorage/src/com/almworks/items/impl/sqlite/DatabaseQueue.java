@@ -18,11 +18,13 @@ class DatabaseQueue implements DatabaseExecutor {
   public static final TypedKey<Integer> CACHE_SIZE = TypedKey.create("cacheSize");
   public static final TypedKey<Long> REINCARNATE_TIMEOUT = TypedKey.create("reincarnateTimeout");
   public static final TypedKey<Long> BUSY_TIMEOUT = TypedKey.create("busyTimeout");
+  public static final TypedKey<String> JOURNAL_MODE = TypedKey.create("journalMode");
 
   private static final int DEFAULT_PAGE_SIZE = 4096;
-  private static final int DEFAULT_CACHE_SIZE = 2000;
+  static final int DEFAULT_CACHE_SIZE = 2000;
   private static final long DEFAULT_REINCARNATE_TIMEOUT = 3000;
   private static final long DEFAULT_BUSY_TIMEOUT = Const.HOUR;
+  private static final String DEFAULT_JOURNAL_MODE = "PERSIST";
 
   private static final int STOP_NOT_REQUESTED = 0;
   private static final int STOP_REQUESTED = 1;
@@ -449,7 +451,7 @@ private void initConnection(SQLiteConnection db) throws SQLiteException {
     safeExec(db, "pragma cache_size=" + getParameter(CACHE_SIZE, DEFAULT_CACHE_SIZE));
 //    safeExec(db, "pragma synchronous = OFF");
     safeExec(db, "PRAGMA legacy_file_format = OFF");
-    safeExec(db, "PRAGMA journal_mode = PERSIST");
+    safeExec(db, "PRAGMA journal_mode = " + getParameter(JOURNAL_MODE, DEFAULT_JOURNAL_MODE));
     try {
       db.setBusyTimeout(getParameter(BUSY_TIMEOUT, DEFAULT_BUSY_TIMEOUT));
     } catch (SQLiteException e) {
@@ -560,6 +562,24 @@ private void checkJobs() {
     }
   }
 
+  /**
+   * @return number of pending jobs, including the running one
+   */
+  public int getLoad() {
+    synchronized (myLock) {
+      return myJobs.size() + (myCurrentJob != null ? 1 : 0);
+    }
+  }
+
+  /**
+   * @return true if a job with the identity is waiting in the queue
+   */
+  public boolean hasPendingJob(Object identity) {
+    synchronized (myLock) {
+      return myJobs.containsKey(identity);
+    }
+  }
+
   public boolean isQueueThread() {
     return myThread == Thread.currentThread();
   }
@@ -0,0 +1,123 @@
+package com.almworks.items.impl.sqlite;
+
+import com.almworks.sqlite4java.SQLiteProfiler;
+import com.almworks.util.Env;
+import org.almworks.util.Log;
+import org.jetbrains.annotations.*;
+
+import java.io.File;
+
+/**
+ * Several read-only connections that run foreground reads in parallel. Each job runs in a transaction of one of the
+ * connections, so it sees the database at a single ICN. With WAL journal the readers do not block each other nor
+ * the writer.
+ * <p>
+ * A job goes to the least loaded connection; a job with the same identity as a pending one goes to the connection
+ * where it replaces the pending job. Jobs that keep state in the connection (temporary tables of item sources) or
+ * expect to run one at a time must go to the {@link #getQueryQueue query queue}.
+ */
+class DatabaseReaderPool implements DatabaseExecutor {
+  private static final int DEFAULT_SIZE =
+    Math.min(4, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+  public static final int SIZE = Env.getInteger("items.readers", 1, 16, DEFAULT_SIZE);
+
+  private final DatabaseQueue[] myQueues;
+  private final Object myLock = new Object();
+
+  private DatabaseReaderPool(DatabaseQueue[] queues) {
+    myQueues = queues;
+  }
+
+  /**
+   * @param journalMode journal mode for the connections, null for default
+   */
+  @NotNull
+  public static DatabaseReaderPool start(File dbFile, String name, int size, DatabaseContext databaseContext,
+    @Nullable String journalMode)
+  {
+    DatabaseQueue[] queues = new DatabaseQueue[size];
+    for (int i = 0; i < size; i++) {
+      DatabaseQueue queue = new DatabaseQueue(dbFile, size == 1 ? name : name + "-" + (i + 1), databaseContext);
+      if (journalMode != null)
+        queue.setParameter(DatabaseQueue.JOURNAL_MODE, journalMode);
+      queue.setParameter(DatabaseQueue.CACHE_SIZE, DatabaseQueue.DEFAULT_CACHE_SIZE / size);
+      queue.start();
+      queues[i] = queue;
+    }
+    Log.debug("started " + size + " readers for " + dbFile);
+    return new DatabaseReaderPool(queues);
+  }
+
+  public void execute(DatabaseJob job) {
+    synchronized (myLock) {
+      selectQueue(job).execute(job);
+    }
+  }
+
+  private DatabaseQueue selectQueue(DatabaseJob job) {
+    assert Thread.holdsLock(myLock);
+    Object identity = job.getIdentity();
+    DatabaseQueue best = null;
+    int bestLoad = Integer.MAX_VALUE;
+    // the query queue is checked last, so other readers are preferred when equally loaded
+    for (int i = 1; i <= myQueues.length; i++) {
+      DatabaseQueue queue = myQueues[i % myQueues.length];
+      if (queue.hasPendingJob(identity))
+        return queue;
+      int load = queue.getLoad();
+      if (load < bestLoad) {
+        best = queue;
+        bestLoad = load;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * @return the connection that runs query processor jobs; it also takes its share of pooled reads
+   */
+  public DatabaseQueue getQueryQueue() {
+    return myQueues[0];
+  }
+
+  public void createArrays(int count) {
+    for (DatabaseQueue queue : myQueues)
+      DatabaseManager.createArrays(queue, count);
+  }
+
+  public void stop(boolean gracefully) {
+    for (DatabaseQueue queue : myQueues)
+      queue.stop(gracefully);
+  }
+
+  public void waitFor() throws InterruptedException {
+    for (DatabaseQueue queue : myQueues)
+      queue.waitFor();
+  }
+
+  public void flush() throws InterruptedException {
+    for (DatabaseQueue queue : myQueues)
+      queue.flush();
+  }
+
+  public boolean isQueueThread() {
+    for (DatabaseQueue queue : myQueues)
+      if (queue.isQueueThread())
+        return true;
+    return false;
+  }
+
+  public int getSize() {
+    return myQueues.length;
+  }
+
+  @Nullable
+  public SQLiteProfiler getProfiler(int index) {
+    return myQueues[index].getProfiler();
+  }
+
+  @Override
+  public String toString() {
+    return "DRP[" + myQueues.length + "]";
+  }
+}
@@ -9,6 +9,8 @@
 import com.almworks.items.impl.dbadapter.ItemVisitor;
 import com.almworks.items.impl.sql.SQLItemSelect;
 import com.almworks.items.impl.sql.SQLItemSelectBuilder;
+import com.almworks.items.impl.sqlite.bitmap.BitmapConjunctionOperator;
+import com.almworks.items.impl.sqlite.bitmap.BitmapIndexManager;
 import com.almworks.items.impl.sqlite.filter.*;
 import com.almworks.sqlite4java.*;
 import com.almworks.util.bool.BoolExpr;
@@ -41,10 +43,25 @@ public String toString() {
     return myExtractor.toString();
   }
 
+  /**
+   * Creates a processor for an internal search. Its plan is not kept, because internal searches, such as updates of
+   * triggers, run on every write.
+   */
   public static ExtractionProcessor create(BoolExpr<DP> filter, TransactionContext context)
     throws DBFilterInvalidException
+  {
+    return new ExtractionProcessor(createExtractor(filter, context));
+  }
+
+  /**
+   * Creates a processor for a live query or a {@link com.almworks.items.api.DBQuery}, and keeps its plan for
+   * {@link PredicateStatistics#dump}.
+   */
+  public static ExtractionProcessor createForQuery(BoolExpr<DP> filter, TransactionContext context)
+    throws DBFilterInvalidException
   {
     ExtractionOperator executor = createExtractor(filter, context);
+    context.getDatabaseContext().getPredicateStatistics().recordPlan(filter, executor);
     return new ExtractionProcessor(executor);
   }
 
@@ -82,15 +99,74 @@ private static ExtractionOperator buildConjunction(BoolExpr<DP> expression, Tran
       if (and.isNegated())
         throw new DBFilterInvalidException();
       List<BoolExpr<DP>> conjuncts = and.getArguments();
-      List<ExtractionOperator> operators = Collections15.arrayList(conjuncts.size());
-      for (BoolExpr<DP> conjunct : conjuncts) {
-        operators.add(buildTerm(conjunct, context));
-      }
+      List<ExtractionOperator> operators = chainPredicates(buildTerms(conjuncts, context), context);
       Collections.sort(operators, ExtractionOperator.PERFORMANCE_COMPARATOR);
       return new ChainItemExtractor(operators, true);
     } else {
-      return buildTerm(expression, context);
+      List<ExtractionOperator> operators = buildTerms(Collections.singletonList(expression), context);
+      return operators.size() == 1 ? operators.get(0) : new ChainItemExtractor(operators, true);
+    }
+  }
+
+  /**
+   * Builds operators for the conjuncts. Terms that may be evaluated with bitmap indexes are combined into one
+   * {@link BitmapConjunctionOperator}.
+   */
+  private static List<ExtractionOperator> buildTerms(List<BoolExpr<DP>> conjuncts, TransactionContext context)
+    throws DBFilterInvalidException
+  {
+    BitmapIndexManager bitmaps = context.getDatabaseContext().getBitmapIndexes();
+    List<ExtractionOperator> operators = Collections15.arrayList(conjuncts.size());
+    List<BitmapIndexManager.Term> bitmapTerms = null;
+    List<ExtractionOperator> bitmapFallback = null;
+    for (BoolExpr<DP> conjunct : conjuncts) {
+      ExtractionOperator operator = buildTerm(conjunct, context);
+      BitmapIndexManager.Term term = conjunct instanceof BoolExpr.Literal ? null : bitmaps.createTerm(conjunct);
+      if (term == null) {
+        operators.add(operator);
+        continue;
+      }
+      if (bitmapTerms == null) {
+        bitmapTerms = Collections15.arrayList();
+        bitmapFallback = Collections15.arrayList();
+      }
+      bitmapTerms.add(term);
+      bitmapFallback.add(operator);
+    }
+    if (bitmapTerms != null) {
+      Collections.sort(bitmapFallback, ExtractionOperator.PERFORMANCE_COMPARATOR);
+      ExtractionOperator fallback =
+        bitmapFallback.size() == 1 ? bitmapFallback.get(0) : new ChainItemExtractor(bitmapFallback, true);
+      operators.add(new BitmapConjunctionOperator(bitmaps, bitmapTerms, fallback));
+    }
+    return operators;
+  }
+
+  /**
+   * Replaces predicates that are evaluated in Java with one {@link PredicateChainOperator}, which orders them by
+   * collected statistics. They are still applied after all other operators, so they check only the items selected
+   * by SQL and bitmaps.
+   */
+  private static List<ExtractionOperator> chainPredicates(List<ExtractionOperator> operators,
+    TransactionContext context)
+  {
+    List<ExtractionOperator> predicates = null;
+    for (ExtractionOperator operator : operators) {
+      if (operator instanceof PredicateOperator) {
+        if (predicates == null)
+          predicates = Collections15.arrayList();
+        predicates.add(operator);
+      }
+    }
+    if (predicates == null || predicates.size() < 2)
+      return operators;
+    List<ExtractionOperator> r = Collections15.arrayList(operators.size() - predicates.size() + 1);
+    for (ExtractionOperator operator : operators) {
+      if (!(operator instanceof PredicateOperator))
+        r.add(operator);
     }
+    r.add(new PredicateChainOperator(predicates, context.getDatabaseContext().getPredicateStatistics()));
+    return r;
   }
 
   private static ExtractionOperator buildTerm(BoolExpr<DP> expression, TransactionContext context)
@@ -204,7 +204,7 @@ public void setWorkingFilter(@Nullable FilteringItemSource parent, @Nullable Boo
       myFilterCycle.cycleEnd();
       myParent = parent;
       myWorkingFilter = filter;
-      myExtractionProcessor = ExtractionProcessor.create(filter, context);
+      myExtractionProcessor = ExtractionProcessor.createForQuery(filter, context);
     }
   }
 
@@ -20,6 +20,12 @@ public static LongList distributionCount(TransactionContext context, LongList it
       return LongList.EMPTY;
     if (itemsSorted == null || itemsSorted.isEmpty())
       return LongList.EMPTY;
+    if (groupAttributes.length == 1) {
+      LongList counts =
+        context.getDatabaseContext().getBitmapIndexes().distributionCount(context, itemsSorted, groupAttributes[0]);
+      if (counts != null)
+        return counts;
+    }
     SQLiteLongArray array = null;
     SQLiteStatement st = SQLiteStatement.DISPOSED;
     try {
@@ -37,6 +37,8 @@ public class TransactionContext implements TableResolver {
   private long myIcn = -1;
 
   private ChangedItemsCollector myChangeBuilder;
+  private Set<DBAttribute> myChangedAttributes;
+  private LongArray myCreatedItems;
   private SQLParts myReusableSQL = new SQLParts();
   private boolean myReusableSQLUsed;
 
@@ -317,6 +319,37 @@ private void propagateChanges(DBAttribute attribute, SQLiteLongArray array) thro
   }
 
 
+  /**
+   * Records that values of the attribute were written in this transaction.
+   */
+  public void attributeChanged(DBAttribute<?> attribute) {
+    assert myWriteAllowed : this;
+    if (myChangedAttributes == null)
+      myChangedAttributes = Collections15.hashSet();
+    myChangedAttributes.add(attribute);
+  }
+
+  /**
+   * Records that the item was created in this transaction.
+   */
+  public void itemCreated(long item) {
+    assert myWriteAllowed : this;
+    if (myCreatedItems == null)
+      myCreatedItems = new LongArray();
+    myCreatedItems.add(item);
+  }
+
+  public Set<DBAttribute> getChangedAttributes() {
+    return myChangedAttributes == null ? Collections.<DBAttribute>emptySet() : myChangedAttributes;
+  }
+
+  public LongList getCreatedItemsSorted() {
+    if (myCreatedItems == null)
+      return LongList.EMPTY;
+    myCreatedItems.sortUnique();
+    return myCreatedItems;
+  }
+
   public boolean hasItemChanges() {
     ChangedItemsCollector builder = myChangeBuilder;
     return builder != null && builder.hasChanges();
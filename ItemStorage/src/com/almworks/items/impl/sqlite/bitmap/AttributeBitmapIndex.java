@@ -0,0 +1,205 @@
+package com.almworks.items.impl.sqlite.bitmap;
+
+import com.almworks.integers.LongList;
+import com.almworks.items.api.DBAttribute;
+import com.almworks.items.impl.AttributeAdapter;
+import com.almworks.items.impl.dbadapter.DBColumn;
+import com.almworks.items.impl.sqlite.TransactionContext;
+import com.almworks.sqlite4java.*;
+import gnu.trove.TLongHashSet;
+import gnu.trove.TLongLongHashMap;
+import gnu.trove.TLongObjectHashMap;
+import org.jetbrains.annotations.*;
+
+import java.util.Arrays;
+
+/**
+ * Bitmaps of items for every value of a scalar reference attribute. Items without value are not in any bitmap.
+ * <p>
+ * The index is valid for a certain ICN and is brought to a later ICN by reloading values of the items changed
+ * since then. Guarded by a lock of {@link BitmapIndexManager} for the attribute; readers use immutable
+ * {@link Snapshot snapshots}. Bitmaps that are in a published snapshot are copied before they are changed.
+ */
+class AttributeBitmapIndex {
+  private final DBAttribute<Long> myAttribute;
+  private final int myMaxValues;
+  private final TLongObjectHashMap<ItemBitmap> myBitmaps = new TLongObjectHashMap<ItemBitmap>();
+  private final TLongLongHashMap myItemValues = new TLongLongHashMap();
+  /**
+   * Values which bitmaps have been created or copied since the last {@link #publish}, so they may be changed
+   */
+  private final TLongHashSet myWritable = new TLongHashSet();
+  private long myIcn;
+
+  private AttributeBitmapIndex(DBAttribute<Long> attribute, int maxValues) {
+    myAttribute = attribute;
+    myMaxValues = maxValues;
+  }
+
+  /**
+   * @return the index, or null if the attribute has too many distinct values
+   */
+  @Nullable
+  static AttributeBitmapIndex build(DBAttribute<Long> attribute, int maxValues, TransactionContext context)
+    throws SQLiteException
+  {
+    AttributeBitmapIndex index = new AttributeBitmapIndex(attribute, maxValues);
+    index.myIcn = context.getIcn();
+    return index.load(context, null) ? index : null;
+  }
+
+  public long getIcn() {
+    return myIcn;
+  }
+
+  /**
+   * Brings the index to the ICN of the transaction.
+   * @return false if the attribute has got too many distinct values and the index should be dropped
+   */
+  public boolean update(TransactionContext context) throws SQLiteException {
+    long icn = context.getIcn();
+    if (icn <= myIcn)
+      return true;
+    LongList changed = context.getChangedItemsSorted(myIcn);
+    myIcn = icn;
+    if (changed.isEmpty())
+      return true;
+    for (int i = 0; i < changed.size(); i++) {
+      long item = changed.get(i);
+      if (myItemValues.containsKey(item))
+        setValue(item, 0);
+    }
+    return load(context, changed);
+  }
+
+  /**
+   * @return immutable state of the index at its current ICN
+   */
+  public Snapshot publish() {
+    myWritable.clear();
+    TLongObjectHashMap<ItemBitmap> bitmaps = new TLongObjectHashMap<ItemBitmap>(myBitmaps.size());
+    long[] values = myBitmaps.keys();
+    for (long value : values) {
+      bitmaps.put(value, myBitmaps.get(value));
+    }
+    Arrays.sort(values);
+    return new Snapshot(myIcn, bitmaps, values);
+  }
+
+  private boolean load(TransactionContext context, @Nullable LongList items) throws SQLiteException {
+    AttributeAdapter adapter = context.getDatabaseContext().getAttributeAdapter(myAttribute);
+    String table = context.getTableName(adapter.getTable(), false);
+    if (table == null)
+      return true;
+    String itemColumn = DBColumn.ITEM.getName();
+    SQLParts sql = new SQLParts().append("SELECT ")
+      .append(itemColumn)
+      .append(", ")
+      .append(adapter.getScalarColumn().getName())
+      .append(" FROM ")
+      .append(table);
+    SQLiteLongArray array = null;
+    if (items != null) {
+      array = context.useArray(items, true, true);
+      sql.append(" WHERE ").append(itemColumn).append(" IN ").append(array.getName());
+    }
+    SQLiteStatement st = SQLiteStatement.DISPOSED;
+    try {
+      st = context.prepare(sql);
+      context.addCancellable(st);
+      while (st.step()) {
+        if (!st.columnNull(1))
+          setValue(st.columnLong(0), st.columnLong(1));
+        if (myBitmaps.size() > myMaxValues)
+          return false;
+      }
+      return true;
+    } finally {
+      context.removeCancellable(st);
+      st.dispose();
+      if (array != null)
+        array.dispose();
+    }
+  }
+
+  /**
+   * @param value 0 to remove the item
+   */
+  private void setValue(long item, long value) {
+    long old = myItemValues.get(item);
+    if (old == value)
+      return;
+    if (old != 0) {
+      ItemBitmap bitmap = myBitmaps.get(old);
+      if (bitmap != null) {
+        bitmap = getWritable(old, bitmap);
+        bitmap.remove(item);
+        if (bitmap.isEmpty())
+          myBitmaps.remove(old);
+      }
+    }
+    if (value == 0) {
+      myItemValues.remove(item);
+      return;
+    }
+    myItemValues.put(item, value);
+    ItemBitmap bitmap = myBitmaps.get(value);
+    if (bitmap == null) {
+      bitmap = new ItemBitmap();
+      myBitmaps.put(value, bitmap);
+      myWritable.add(value);
+    } else {
+      bitmap = getWritable(value, bitmap);
+    }
+    bitmap.add(item);
+  }
+
+  private ItemBitmap getWritable(long value, ItemBitmap bitmap) {
+    if (myWritable.contains(value))
+      return bitmap;
+    bitmap = bitmap.copy();
+    myBitmaps.put(value, bitmap);
+    myWritable.add(value);
+    return bitmap;
+  }
+
+  @Override
+  public String toString() {
+    return "ABI[" + myAttribute + ", " + myBitmaps.size() + " values, " + myItemValues.size() + " items @" + myIcn + "]";
+  }
+
+
+  /**
+   * State of the index at some ICN. It is not changed when the index is updated, so it may be used without locking.
+   */
+  static class Snapshot {
+    private final long myIcn;
+    private final TLongObjectHashMap<ItemBitmap> myBitmaps;
+    private final long[] myValues;
+
+    private Snapshot(long icn, TLongObjectHashMap<ItemBitmap> bitmaps, long[] values) {
+      myIcn = icn;
+      myBitmaps = bitmaps;
+      myValues = values;
+    }
+
+    public long getIcn() {
+      return myIcn;
+    }
+
+    /**
+     * @return items having the value, null if there are none. The returned bitmap must not be modified.
+     */
+    @Nullable
+    public ItemBitmap getItems(long value) {
+      return myBitmaps.get(value);
+    }
+
+    /**
+     * @return sorted values, the array must not be modified
+     */
+    public long[] getValues() {
+      return myValues;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package com.almworks.items.impl.sqlite.bitmap;
+
+import com.almworks.integers.LongIterable;
+import com.almworks.integers.LongIterator;
+import com.almworks.integers.util.LongSetBuilder;
+import com.almworks.items.impl.dbadapter.ItemVisitor;
+import com.almworks.items.impl.sql.SQLItemSelectBuilder;
+import com.almworks.items.impl.sqlite.TransactionContext;
+import com.almworks.items.impl.sqlite.filter.*;
+import com.almworks.sqlite4java.SQLiteException;
+
+import java.util.List;
+
+/**
+ * Conjunction of terms evaluated with bitmap indexes. If the indexes cannot be used in a transaction, the
+ * equivalent SQL operator is applied instead.
+ */
+public class BitmapConjunctionOperator extends ExtractionOperator {
+  private final BitmapIndexManager myManager;
+  private final List<BitmapIndexManager.Term> myTerms;
+  private final ExtractionOperator myFallback;
+
+  public BitmapConjunctionOperator(BitmapIndexManager manager, List<BitmapIndexManager.Term> terms,
+    ExtractionOperator fallback)
+  {
+    myManager = manager;
+    myTerms = terms;
+    myFallback = fallback;
+  }
+
+  @Override
+  public int getPerformanceHit() {
+    return -20;
+  }
+
+  @Override
+  public ExtractionFunction apply(TransactionContext context, final ExtractionFunction input) {
+    return new ExtractionFunction() {
+      @Override
+      public void execute(TransactionContext context, ExtractionVisitor visitor) throws SQLiteException {
+        BitmapIndexManager.Selection selection = myManager.select(myTerms, context);
+        if (selection == null) {
+          myFallback.apply(context, input).execute(context, visitor);
+        } else if (input == SingularExtractFunction.EXTRACT_ALL && selection.getIncluded() != null) {
+          visitor.visitStarted(context);
+          visitor.visitItems(context, selection.getIncluded().toSortedList());
+          visitor.visitFinished(context);
+        } else {
+          input.execute(context, new FilteringVisitor(visitor, selection));
+        }
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return "Bitmap" + myTerms;
+  }
+
+
+  private static class FilteringVisitor implements ExtractionVisitor {
+    private final ExtractionVisitor myVisitor;
+    private final BitmapIndexManager.Selection mySelection;
+
+    public FilteringVisitor(ExtractionVisitor visitor, BitmapIndexManager.Selection selection) {
+      myVisitor = visitor;
+      mySelection = selection;
+    }
+
+    public void visitStarted(TransactionContext context) {
+      myVisitor.visitStarted(context);
+    }
+
+    public void visitSQL(TransactionContext context, SQLItemSelectBuilder sql) throws SQLiteException {
+      final LongSetBuilder builder = new LongSetBuilder();
+      sql.build().visitItems(context, new ItemVisitor.ForEachItem() {
+        @Override
+        protected boolean visitItem(long item) {
+          if (mySelection.accepts(item))
+            builder.add(item);
+          return true;
+        }
+      });
+      myVisitor.visitItems(context, builder.toSortedCollection());
+    }
+
+    public void visitItems(TransactionContext context, LongIterable items) throws SQLiteException {
+      LongSetBuilder builder = new LongSetBuilder();
+      for (LongIterator ii = items.iterator(); ii.hasNext();) {
+        long item = ii.next();
+        if (mySelection.accepts(item))
+          builder.add(item);
+      }
+      myVisitor.visitItems(context, builder.toSortedCollection());
+    }
+
+    public void visitFinished(TransactionContext context) throws SQLiteException {
+      myVisitor.visitFinished(context);
+    }
+  }
+}
@@ -0,0 +1,283 @@
+package com.almworks.items.impl.sqlite.bitmap;
+
+import com.almworks.integers.LongArray;
+import com.almworks.integers.LongList;
+import com.almworks.items.api.*;
+import com.almworks.items.dp.DPEquals;
+import com.almworks.items.dp.DPEqualsIdentified;
+import com.almworks.items.impl.DBReaderImpl;
+import com.almworks.items.impl.sqlite.TransactionContext;
+import com.almworks.sqlite4java.SQLiteException;
+import com.almworks.util.Env;
+import com.almworks.util.bool.BoolExpr;
+import org.almworks.util.Collections15;
+import org.almworks.util.Log;
+import org.jetbrains.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps bitmap indexes of low-cardinality scalar reference attributes (types, connections, products, statuses).
+ * <p>
+ * An index is built the first time a filter on the attribute is evaluated and is brought up to date by ICN when it
+ * is used again. If the attribute turns out to have too many distinct values, it is not indexed. Indexes are used
+ * only in read transactions; write transactions and transactions that see an older database state than the
+ * index fall back to SQL.
+ * <p>
+ * An index is built and updated under a lock of its attribute, so filters on other attributes are not held up.
+ * Evaluation uses an immutable snapshot of the index published after the update, without locking; transactions at
+ * the same ICN share the snapshot.
+ */
+public class BitmapIndexManager {
+  private static final boolean ENABLED = Env.getBoolean("items.bitmaps", true);
+  private static final int MAX_VALUES = Env.getInteger("items.bitmaps.values", 16, 100000, 512);
+
+  private final Map<DBAttribute, Holder> myIndexes = Collections15.hashMap();
+  private final Set<DBAttribute> myRejected = Collections15.hashSet();
+  private boolean myEnabled = ENABLED;
+
+  /**
+   * Turns using of bitmap indexes on or off. When turned off, all filters are evaluated with SQL.
+   */
+  public synchronized void setEnabled(boolean enabled) {
+    myEnabled = enabled;
+    if (!enabled)
+      myIndexes.clear();
+  }
+
+  /**
+   * @return term for the predicate if it may be evaluated with a bitmap index, or null
+   */
+  @Nullable
+  public synchronized Term createTerm(BoolExpr<DP> expression) {
+    if (!myEnabled)
+      return null;
+    DP predicate = expression.getTerm();
+    boolean negated = expression.isNegated();
+    if (predicate instanceof DPEqualsIdentified) {
+      DPEqualsIdentified equals = (DPEqualsIdentified) predicate;
+      DBAttribute<Long> attribute = equals.getAttribute();
+      ItemReference value = equals.getValue();
+      if (value == null || !isIndexable(attribute))
+        return null;
+      return new Term(attribute, null, value, negated);
+    }
+    if (predicate instanceof DPEquals) {
+      DPEquals<?> equals = (DPEquals<?>) predicate;
+      DBAttribute<?> attribute = equals.getAttribute();
+      List<?> values = equals.getValues();
+      if (values.isEmpty() || !isIndexable(attribute))
+        return null;
+      LongArray items = new LongArray(values.size());
+      for (Object value : values) {
+        if (!(value instanceof Long) || (Long) value <= 0)
+          return null;
+        items.add((Long) value);
+      }
+      items.sortUnique();
+      return new Term((DBAttribute<Long>) attribute, items, null, negated);
+    }
+    return null;
+  }
+
+  private boolean isIndexable(DBAttribute<?> attribute) {
+    assert Thread.holdsLock(this);
+    return attribute.getComposition() == DBAttribute.ScalarComposition.SCALAR &&
+      Long.class.equals(attribute.getScalarClass()) && !myRejected.contains(attribute);
+  }
+
+  /**
+   * Evaluates conjunction of the terms.
+   * @return selected items, or null if the terms cannot be evaluated with bitmaps in this transaction
+   */
+  @Nullable
+  public Selection select(List<Term> terms, TransactionContext context) throws SQLiteException {
+    ItemBitmap include = null;
+    ItemBitmap exclude = new ItemBitmap();
+    DBReaderImpl reader = null;
+    for (Term term : terms) {
+      AttributeBitmapIndex.Snapshot index = getIndex(term.myAttribute, context);
+      if (index == null)
+        return null;
+      LongList values = term.myValues;
+      if (values == null) {
+        if (reader == null)
+          reader = new DBReaderImpl(context);
+        long value = term.myReference.findItem(reader);
+        values = value > 0 ? LongArray.create(value) : LongList.EMPTY;
+      }
+      ItemBitmap items = new ItemBitmap();
+      for (int i = 0; i < values.size(); i++) {
+        ItemBitmap bitmap = index.getItems(values.get(i));
+        if (bitmap != null)
+          items.or(bitmap);
+      }
+      if (term.myNegated) {
+        exclude.or(items);
+      } else if (include == null) {
+        include = items;
+      } else {
+        include.and(items);
+      }
+    }
+    if (include != null) {
+      include.andNot(exclude);
+      exclude = new ItemBitmap();
+    }
+    return new Selection(include, exclude);
+  }
+
+  /**
+   * Counts items by values of the attribute, in the format of
+   * {@link com.almworks.items.impl.sqlite.ItemsDistribution#distributionCount}.
+   * @return counts, or null if the attribute cannot be counted with bitmaps in this transaction
+   */
+  @Nullable
+  public LongList distributionCount(TransactionContext context, LongList itemsSorted,
+    DBAttribute<?> attribute) throws SQLiteException
+  {
+    synchronized (this) {
+      if (!myEnabled || !isIndexable(attribute))
+        return null;
+    }
+    AttributeBitmapIndex.Snapshot index = getIndex((DBAttribute<Long>) attribute, context);
+    if (index == null)
+      return null;
+    ItemBitmap items = ItemBitmap.create(itemsSorted);
+    long[] values = index.getValues();
+    LongArray r = new LongArray();
+    int counted = 0;
+    for (long value : values) {
+      int count = items.andCardinality(index.getItems(value));
+      if (count > 0) {
+        r.add(value);
+        r.add(count);
+        counted += count;
+      }
+    }
+    int withoutValue = items.size() - counted;
+    if (withoutValue > 0) {
+      r.insert(0, 0);
+      r.insert(1, withoutValue);
+    }
+    return r;
+  }
+
+  @Nullable
+  private AttributeBitmapIndex.Snapshot getIndex(DBAttribute<Long> attribute, TransactionContext context)
+    throws SQLiteException
+  {
+    if (context.isWriteAllowed())
+      return null;
+    Holder holder;
+    synchronized (this) {
+      if (!myEnabled || myRejected.contains(attribute))
+        return null;
+      holder = myIndexes.get(attribute);
+      if (holder == null) {
+        holder = new Holder();
+        myIndexes.put(attribute, holder);
+      }
+    }
+    long icn = context.getIcn();
+    AttributeBitmapIndex.Snapshot snapshot = holder.mySnapshot;
+    if (snapshot != null && snapshot.getIcn() >= icn)
+      return snapshot.getIcn() == icn ? snapshot : null;
+    synchronized (holder) {
+      if (holder.myDropped)
+        return null;
+      snapshot = holder.mySnapshot;
+      if (snapshot != null && snapshot.getIcn() >= icn)
+        return snapshot.getIcn() == icn ? snapshot : null;
+      AttributeBitmapIndex index = holder.myIndex;
+      if (index == null) {
+        index = AttributeBitmapIndex.build(attribute, MAX_VALUES, context);
+        if (index == null) {
+          reject(attribute, holder);
+          return null;
+        }
+        holder.myIndex = index;
+        Log.debug("built " + index);
+      } else if (!index.update(context)) {
+        reject(attribute, holder);
+        return null;
+      }
+      snapshot = index.publish();
+      holder.mySnapshot = snapshot;
+      return snapshot;
+    }
+  }
+
+  private void reject(DBAttribute<Long> attribute, Holder holder) {
+    assert Thread.holdsLock(holder);
+    Log.debug("bitmap index rejected " + attribute + ": too many values");
+    holder.myDropped = true;
+    holder.myIndex = null;
+    holder.mySnapshot = null;
+    synchronized (this) {
+      if (myIndexes.get(attribute) == holder)
+        myIndexes.remove(attribute);
+      myRejected.add(attribute);
+    }
+  }
+
+
+  /**
+   * Index of an attribute; the holder is the lock for building and updating the index
+   */
+  private static class Holder {
+    private AttributeBitmapIndex myIndex;
+    private volatile AttributeBitmapIndex.Snapshot mySnapshot;
+    private boolean myDropped;
+  }
+
+
+  public static class Term {
+    private final DBAttribute<Long> myAttribute;
+    @Nullable
+    private final LongList myValues;
+    @Nullable
+    private final ItemReference myReference;
+    private final boolean myNegated;
+
+    private Term(DBAttribute<Long> attribute, @Nullable LongList values, @Nullable ItemReference reference,
+      boolean negated)
+    {
+      myAttribute = attribute;
+      myValues = values;
+      myReference = reference;
+      myNegated = negated;
+    }
+
+    @Override
+    public String toString() {
+      return (myNegated ? "!" : "") + myAttribute + "=" + (myValues != null ? myValues : myReference);
+    }
+  }
+
+
+  public static class Selection {
+    @Nullable
+    private final ItemBitmap myInclude;
+    private final ItemBitmap myExclude;
+
+    private Selection(@Nullable ItemBitmap include, ItemBitmap exclude) {
+      myInclude = include;
+      myExclude = exclude;
+    }
+
+    /**
+     * @return selected items, or null if all items except {@link #accepts excluded} are selected
+     */
+    @Nullable
+    public ItemBitmap getIncluded() {
+      return myInclude;
+    }
+
+    public boolean accepts(long item) {
+      return myInclude != null ? myInclude.contains(item) : !myExclude.contains(item);
+    }
+  }
+}
@@ -0,0 +1,372 @@
+package com.almworks.items.impl.sqlite.bitmap;
+
+import com.almworks.integers.LongArray;
+import com.almworks.integers.LongList;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of items. Items are split into chunks by the high bits; a chunk with few items is kept as a sorted
+ * array of the low 16 bits, a dense chunk is kept as a 65536-bit bitmap (the Roaring bitmap layout).
+ * <p>
+ * Items must be non-negative and less than 2^47. Not thread-safe.
+ */
+public class ItemBitmap {
+  private static final int ARRAY_MAX = 4096;
+  private static final int BITMAP_WORDS = 1 << 10;
+
+  private int[] myKeys = new int[4];
+  private Chunk[] myChunks = new Chunk[4];
+  private int myChunkCount;
+
+  public static ItemBitmap create(LongList itemsSorted) {
+    ItemBitmap r = new ItemBitmap();
+    for (int i = 0; i < itemsSorted.size(); i++)
+      r.add(itemsSorted.get(i));
+    return r;
+  }
+
+  public ItemBitmap copy() {
+    ItemBitmap r = new ItemBitmap();
+    r.myKeys = myKeys.clone();
+    r.myChunks = new Chunk[myChunks.length];
+    for (int i = 0; i < myChunkCount; i++)
+      r.myChunks[i] = myChunks[i].copy();
+    r.myChunkCount = myChunkCount;
+    return r;
+  }
+
+  public boolean isEmpty() {
+    return myChunkCount == 0;
+  }
+
+  public int size() {
+    int r = 0;
+    for (int i = 0; i < myChunkCount; i++)
+      r += myChunks[i].cardinality();
+    return r;
+  }
+
+  public boolean contains(long item) {
+    int index = findChunk(key(item));
+    return index >= 0 && myChunks[index].contains(low(item));
+  }
+
+  public void add(long item) {
+    assert item >= 0 : item;
+    int key = key(item);
+    int index = findChunk(key);
+    if (index < 0) {
+      index = -index - 1;
+      insertChunk(index, key, new ArrayChunk());
+    }
+    myChunks[index] = myChunks[index].add(low(item));
+  }
+
+  public void remove(long item) {
+    int index = findChunk(key(item));
+    if (index < 0)
+      return;
+    Chunk chunk = myChunks[index].remove(low(item));
+    if (chunk.cardinality() == 0)
+      removeChunk(index);
+    else
+      myChunks[index] = chunk;
+  }
+
+  /**
+   * Removes items that are not in the other bitmap.
+   */
+  public void and(ItemBitmap other) {
+    int j = 0;
+    for (int i = 0; i < myChunkCount; i++) {
+      int index = other.findChunk(myKeys[i]);
+      if (index < 0)
+        continue;
+      Chunk chunk = BitmapChunk.of(myChunks[i]).and(other.myChunks[index]).optimize();
+      if (chunk.cardinality() == 0)
+        continue;
+      myKeys[j] = myKeys[i];
+      myChunks[j] = chunk;
+      j++;
+    }
+    Arrays.fill(myChunks, j, myChunkCount, null);
+    myChunkCount = j;
+  }
+
+  /**
+   * Adds items of the other bitmap.
+   */
+  public void or(ItemBitmap other) {
+    for (int i = 0; i < other.myChunkCount; i++) {
+      int key = other.myKeys[i];
+      int index = findChunk(key);
+      if (index < 0)
+        insertChunk(-index - 1, key, other.myChunks[i].copy());
+      else
+        myChunks[index] = BitmapChunk.of(myChunks[index]).or(other.myChunks[i]).optimize();
+    }
+  }
+
+  /**
+   * Removes items of the other bitmap.
+   */
+  public void andNot(ItemBitmap other) {
+    int j = 0;
+    for (int i = 0; i < myChunkCount; i++) {
+      int index = other.findChunk(myKeys[i]);
+      Chunk chunk = myChunks[i];
+      if (index >= 0)
+        chunk = BitmapChunk.of(chunk).andNot(other.myChunks[index]).optimize();
+      if (chunk.cardinality() == 0)
+        continue;
+      myKeys[j] = myKeys[i];
+      myChunks[j] = chunk;
+      j++;
+    }
+    Arrays.fill(myChunks, j, myChunkCount, null);
+    myChunkCount = j;
+  }
+
+  /**
+   * @return number of items in both bitmaps
+   */
+  public int andCardinality(ItemBitmap other) {
+    int r = 0;
+    for (int i = 0; i < myChunkCount; i++) {
+      int index = other.findChunk(myKeys[i]);
+      if (index >= 0)
+        r += BitmapChunk.of(myChunks[i]).and(other.myChunks[index]).cardinality();
+    }
+    return r;
+  }
+
+  public LongArray toSortedList() {
+    LongArray r = new LongArray(size());
+    for (int i = 0; i < myChunkCount; i++)
+      myChunks[i].addTo(((long) myKeys[i]) << 16, r);
+    return r;
+  }
+
+  @Override
+  public String toString() {
+    return "ItemBitmap[" + size() + "]";
+  }
+
+  private static int key(long item) {
+    return (int) (item >>> 16);
+  }
+
+  private static char low(long item) {
+    return (char) item;
+  }
+
+  private int findChunk(int key) {
+    return Arrays.binarySearch(myKeys, 0, myChunkCount, key);
+  }
+
+  private void insertChunk(int index, int key, Chunk chunk) {
+    if (myChunkCount == myKeys.length) {
+      myKeys = Arrays.copyOf(myKeys, myChunkCount * 2);
+      myChunks = Arrays.copyOf(myChunks, myChunkCount * 2);
+    }
+    System.arraycopy(myKeys, index, myKeys, index + 1, myChunkCount - index);
+    System.arraycopy(myChunks, index, myChunks, index + 1, myChunkCount - index);
+    myKeys[index] = key;
+    myChunks[index] = chunk;
+    myChunkCount++;
+  }
+
+  private void removeChunk(int index) {
+    System.arraycopy(myKeys, index + 1, myKeys, index, myChunkCount - index - 1);
+    System.arraycopy(myChunks, index + 1, myChunks, index, myChunkCount - index - 1);
+    myChunkCount--;
+    myChunks[myChunkCount] = null;
+  }
+
+
+  private static abstract class Chunk {
+    abstract int cardinality();
+
+    abstract boolean contains(char value);
+
+    abstract Chunk add(char value);
+
+    abstract Chunk remove(char value);
+
+    abstract Chunk copy();
+
+    abstract void addTo(long base, LongArray target);
+  }
+
+
+  private static class ArrayChunk extends Chunk {
+    private char[] myValues;
+    private int myCount;
+
+    ArrayChunk() {
+      this(new char[4], 0);
+    }
+
+    ArrayChunk(char[] values, int count) {
+      myValues = values;
+      myCount = count;
+    }
+
+    int cardinality() {
+      return myCount;
+    }
+
+    boolean contains(char value) {
+      return Arrays.binarySearch(myValues, 0, myCount, value) >= 0;
+    }
+
+    Chunk add(char value) {
+      int index = Arrays.binarySearch(myValues, 0, myCount, value);
+      if (index >= 0)
+        return this;
+      if (myCount >= ARRAY_MAX)
+        return BitmapChunk.of(this).add(value);
+      index = -index - 1;
+      if (myCount == myValues.length)
+        myValues = Arrays.copyOf(myValues, Math.min(ARRAY_MAX, myCount * 2));
+      System.arraycopy(myValues, index, myValues, index + 1, myCount - index);
+      myValues[index] = value;
+      myCount++;
+      return this;
+    }
+
+    Chunk remove(char value) {
+      int index = Arrays.binarySearch(myValues, 0, myCount, value);
+      if (index >= 0) {
+        System.arraycopy(myValues, index + 1, myValues, index, myCount - index - 1);
+        myCount--;
+      }
+      return this;
+    }
+
+    Chunk copy() {
+      return new ArrayChunk(Arrays.copyOf(myValues, Math.max(myCount, 4)), myCount);
+    }
+
+    void addTo(long base, LongArray target) {
+      for (int i = 0; i < myCount; i++)
+        target.add(base | myValues[i]);
+    }
+  }
+
+
+  private static class BitmapChunk extends Chunk {
+    private final long[] myWords;
+    private int myCardinality;
+
+    private BitmapChunk(long[] words, int cardinality) {
+      myWords = words;
+      myCardinality = cardinality;
+    }
+
+    /**
+     * @return a new bitmap chunk with the same values
+     */
+    static BitmapChunk of(Chunk chunk) {
+      if (chunk instanceof BitmapChunk) {
+        BitmapChunk bitmap = (BitmapChunk) chunk;
+        return new BitmapChunk(bitmap.myWords.clone(), bitmap.myCardinality);
+      }
+      ArrayChunk array = (ArrayChunk) chunk;
+      long[] words = new long[BITMAP_WORDS];
+      for (int i = 0; i < array.myCount; i++) {
+        char value = array.myValues[i];
+        words[value >>> 6] |= 1L << value;
+      }
+      return new BitmapChunk(words, array.myCount);
+    }
+
+    int cardinality() {
+      return myCardinality;
+    }
+
+    boolean contains(char value) {
+      return (myWords[value >>> 6] & (1L << value)) != 0;
+    }
+
+    Chunk add(char value) {
+      if (!contains(value)) {
+        myWords[value >>> 6] |= 1L << value;
+        myCardinality++;
+      }
+      return this;
+    }
+
+    Chunk remove(char value) {
+      if (contains(value)) {
+        myWords[value >>> 6] &= ~(1L << value);
+        myCardinality--;
+      }
+      return myCardinality <= ARRAY_MAX / 2 ? optimize() : this;
+    }
+
+    Chunk copy() {
+      return new BitmapChunk(myWords.clone(), myCardinality);
+    }
+
+    BitmapChunk and(Chunk other) {
+      long[] words = other instanceof BitmapChunk ? ((BitmapChunk) other).myWords : of(other).myWords;
+      for (int i = 0; i < BITMAP_WORDS; i++)
+        myWords[i] &= words[i];
+      return recount();
+    }
+
+    BitmapChunk or(Chunk other) {
+      long[] words = other instanceof BitmapChunk ? ((BitmapChunk) other).myWords : of(other).myWords;
+      for (int i = 0; i < BITMAP_WORDS; i++)
+        myWords[i] |= words[i];
+      return recount();
+    }
+
+    BitmapChunk andNot(Chunk other) {
+      long[] words = other instanceof BitmapChunk ? ((BitmapChunk) other).myWords : of(other).myWords;
+      for (int i = 0; i < BITMAP_WORDS; i++)
+        myWords[i] &= ~words[i];
+      return recount();
+    }
+
+    private BitmapChunk recount() {
+      int r = 0;
+      for (int i = 0; i < BITMAP_WORDS; i++)
+        r += Long.bitCount(myWords[i]);
+      myCardinality = r;
+      return this;
+    }
+
+    /**
+     * @return array chunk with the same values if there are few of them, this chunk otherwise
+     */
+    Chunk optimize() {
+      if (myCardinality > ARRAY_MAX)
+        return this;
+      char[] values = new char[Math.max(myCardinality, 4)];
+      int count = 0;
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        long word = myWords[i];
+        while (word != 0) {
+          int bit = Long.numberOfTrailingZeros(word);
+          values[count++] = (char) ((i << 6) | bit);
+          word &= word - 1;
+        }
+      }
+      return new ArrayChunk(values, count);
+    }
+
+    void addTo(long base, LongArray target) {
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        long word = myWords[i];
+        while (word != 0) {
+          int bit = Long.numberOfTrailingZeros(word);
+          target.add(base | (i << 6) | bit);
+          word &= word - 1;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package com.almworks.items.impl.sqlite.filter;
+
+import com.almworks.items.impl.sqlite.TransactionContext;
+import org.almworks.util.Collections15;
+
+import java.util.*;
+
+/**
+ * Conjunction of predicates evaluated in Java. Every time the operator is applied, the predicates are ordered by
+ * their {@link PredicateStatistics#getRank rank}, so each next predicate checks only the items passed by the
+ * cheaper and more selective ones.
+ */
+public class PredicateChainOperator extends CompositeExtractor {
+  private final PredicateStatistics myStatistics;
+
+  public PredicateChainOperator(List<ExtractionOperator> operators, PredicateStatistics statistics) {
+    super(operators, false);
+    myStatistics = statistics;
+  }
+
+  public ExtractionFunction apply(TransactionContext context, ExtractionFunction input) {
+    ExtractionFunction f = input;
+    for (ExtractionOperator operator : getOrder()) {
+      f = operator.apply(context, f);
+    }
+    return f;
+  }
+
+  List<ExtractionOperator> getOrder() {
+    List<ExtractionOperator> operators = getOperators();
+    final Map<ExtractionOperator, Double> ranks = Collections15.hashMap();
+    for (ExtractionOperator operator : operators) {
+      PredicateOperator p = (PredicateOperator) operator;
+      ranks.put(operator, myStatistics.getRank(p.getPredicate(), p.isNegated()));
+    }
+    List<ExtractionOperator> r = Collections15.arrayList(operators);
+    Collections.sort(r, new Comparator<ExtractionOperator>() {
+      public int compare(ExtractionOperator o1, ExtractionOperator o2) {
+        return Double.compare(ranks.get(o1), ranks.get(o2));
+      }
+    });
+    return r;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder b = new StringBuilder("Predicates(");
+    String sep = "";
+    for (ExtractionOperator operator : getOrder()) {
+      b.append(sep).append(operator);
+      sep = ", ";
+    }
+    return b.append(")").toString();
+  }
+}
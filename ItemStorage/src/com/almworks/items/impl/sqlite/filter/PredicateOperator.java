@@ -0,0 +1,86 @@
+package com.almworks.items.impl.sqlite.filter;
+
+import com.almworks.integers.LongArray;
+import com.almworks.integers.LongIterable;
+import com.almworks.integers.LongIterator;
+import com.almworks.integers.LongList;
+import com.almworks.integers.util.LongSetBuilder;
+import com.almworks.items.api.DP;
+import com.almworks.items.impl.DBReaderImpl;
+import com.almworks.items.impl.sql.SQLItemSelectBuilder;
+import com.almworks.items.impl.sqlite.TransactionContext;
+import com.almworks.sqlite4java.SQLiteException;
+
+/**
+ * Evaluates a predicate in Java for every item of the input. Cost and selectivity of the predicate are recorded
+ * in {@link PredicateStatistics} of the database.
+ */
+public class PredicateOperator extends ExtractionOperator {
+  private final DP myPredicate;
+  private final boolean myNegated;
+
+  public PredicateOperator(DP predicate, boolean negated) {
+    myPredicate = predicate;
+    myNegated = negated;
+  }
+
+  public DP getPredicate() {
+    return myPredicate;
+  }
+
+  public boolean isNegated() {
+    return myNegated;
+  }
+
+  @Override
+  public int getPerformanceHit() {
+    return 20;
+  }
+
+  public ExtractionFunction apply(TransactionContext context, final ExtractionFunction input) {
+    return new ExtractionFunction() {
+      @Override
+      public void execute(TransactionContext context, final ExtractionVisitor visitor) throws SQLiteException {
+        final DBReaderImpl reader = new DBReaderImpl(context);
+        input.execute(context, new ExtractionVisitor() {
+          public void visitStarted(TransactionContext context) {
+            visitor.visitStarted(context);
+          }
+
+          public void visitSQL(TransactionContext context, SQLItemSelectBuilder sql) throws SQLiteException {
+            LongArray items = new LongArray();
+            sql.build().loadItems(context, items);
+            visitItems(context, items);
+          }
+
+          public void visitItems(TransactionContext context, LongIterable items) throws SQLiteException {
+            LongSetBuilder builder = new LongSetBuilder();
+            int checked = 0;
+            long start = System.nanoTime();
+            for (LongIterator ii = items.iterator(); ii.hasNext();) {
+              long item = ii.next();
+              checked++;
+              if (myPredicate.accept(item, reader) ^ myNegated) {
+                builder.add(item);
+              }
+            }
+            long nanos = System.nanoTime() - start;
+            LongList result = builder.toSortedCollection();
+            context.getDatabaseContext().getPredicateStatistics()
+              .record(myPredicate, myNegated, checked, result.size(), nanos);
+            visitor.visitItems(context, result);
+          }
+
+          public void visitFinished(TransactionContext context) throws SQLiteException {
+            visitor.visitFinished(context);
+          }
+        });
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return (myNegated ? "NOT " : "") + myPredicate;
+  }
+}
@@ -0,0 +1,127 @@
+package com.almworks.items.impl.sqlite.filter;
+
+import com.almworks.items.api.DP;
+import com.almworks.util.bool.BoolExpr;
+
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Cost and selectivity of predicates that are evaluated item by item, sampled when the predicates run. Used to run
+ * the predicates of a conjunction in the order of increasing rank: cost per item divided by the share of items the
+ * predicate filters out. A cheap predicate that drops most items runs first, an expensive one gets fewer items.
+ * <p>
+ * Also keeps the plans of recently built queries for {@link #dump}.
+ */
+public class PredicateStatistics {
+  private static final int MAX_PREDICATES = 1000;
+  private static final int MAX_PLANS = 20;
+  /**
+   * Statistics of a predicate that has checked fewer items are not trusted
+   */
+  private static final int MIN_SAMPLE = 50;
+  /**
+   * Counters are halved when this number of items is checked, so the statistics follow changes in data
+   */
+  private static final long DECAY_SAMPLE = 1000000;
+  private static final double DEFAULT_NANOS = 1000;
+  private static final double DEFAULT_ACCEPTED = 0.5;
+
+  private final Map<DP, Stat> myStats = new LinkedHashMap<DP, Stat>(16, 0.75F, true) {
+    protected boolean removeEldestEntry(Map.Entry<DP, Stat> eldest) {
+      return size() > MAX_PREDICATES;
+    }
+  };
+
+  private final Map<BoolExpr<DP>, ExtractionOperator> myPlans =
+    new LinkedHashMap<BoolExpr<DP>, ExtractionOperator>(16, 0.75F, true) {
+      protected boolean removeEldestEntry(Map.Entry<BoolExpr<DP>, ExtractionOperator> eldest) {
+        return size() > MAX_PLANS;
+      }
+    };
+
+  /**
+   * @param checked number of items the predicate was evaluated for
+   * @param passed number of items that passed the (possibly negated) predicate
+   */
+  public synchronized void record(DP predicate, boolean negated, int checked, int passed, long nanos) {
+    if (checked <= 0)
+      return;
+    Stat stat = myStats.get(predicate);
+    if (stat == null) {
+      stat = new Stat();
+      myStats.put(predicate, stat);
+    }
+    stat.myChecked += checked;
+    stat.myAccepted += negated ? checked - passed : passed;
+    stat.myNanos += nanos;
+    stat.myRuns++;
+    if (stat.myChecked > DECAY_SAMPLE) {
+      stat.myChecked /= 2;
+      stat.myAccepted /= 2;
+      stat.myNanos /= 2;
+    }
+  }
+
+  /**
+   * @return expected cost of filtering out one item with the predicate, lower is better
+   */
+  public synchronized double getRank(DP predicate, boolean negated) {
+    Stat stat = myStats.get(predicate);
+    boolean known = stat != null && stat.myChecked >= MIN_SAMPLE;
+    double nanos = known ? (double) stat.myNanos / stat.myChecked : DEFAULT_NANOS;
+    double accepted = known ? (double) stat.myAccepted / stat.myChecked : DEFAULT_ACCEPTED;
+    if (negated)
+      accepted = 1 - accepted;
+    double dropped = 1 - accepted;
+    return dropped <= 0 ? Double.MAX_VALUE : nanos / dropped;
+  }
+
+  public synchronized void recordPlan(BoolExpr<DP> filter, ExtractionOperator plan) {
+    myPlans.put(filter, plan);
+  }
+
+  public void dump(PrintStream writer) {
+    List<Map.Entry<BoolExpr<DP>, ExtractionOperator>> plans;
+    List<Map.Entry<DP, Stat>> stats;
+    synchronized (this) {
+      plans = new ArrayList<Map.Entry<BoolExpr<DP>, ExtractionOperator>>(myPlans.entrySet());
+      stats = new ArrayList<Map.Entry<DP, Stat>>();
+      for (Map.Entry<DP, Stat> e : myStats.entrySet()) {
+        stats.add(new AbstractMap.SimpleEntry<DP, Stat>(e.getKey(), e.getValue().copy()));
+      }
+    }
+    writer.println("=====================================================================================");
+    writer.println("*** RECENT PLANS");
+    for (Map.Entry<BoolExpr<DP>, ExtractionOperator> e : plans) {
+      writer.println(e.getKey());
+      writer.println("  -> " + e.getValue());
+    }
+    writer.println("=====================================================================================");
+    writer.println("*** PREDICATE STATISTICS (runs, items checked, accepted %, ns/item)");
+    for (Map.Entry<DP, Stat> e : stats) {
+      Stat stat = e.getValue();
+      writer.println(e.getKey() + ": " + stat.myRuns + ", " + stat.myChecked + ", " +
+        (stat.myAccepted * 100 / Math.max(stat.myChecked, 1)) + "%, " + (stat.myNanos / Math.max(stat.myChecked, 1)));
+    }
+    writer.println("=====================================================================================");
+    writer.println();
+  }
+
+
+  private static class Stat {
+    private long myRuns;
+    private long myChecked;
+    private long myAccepted;
+    private long myNanos;
+
+    Stat copy() {
+      Stat r = new Stat();
+      r.myRuns = myRuns;
+      r.myChecked = myChecked;
+      r.myAccepted = myAccepted;
+      r.myNanos = myNanos;
+      return r;
+    }
+  }
+}
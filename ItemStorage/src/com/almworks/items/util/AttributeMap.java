@@ -17,13 +17,33 @@ public static <T> AttributeMap singleton(DBAttribute<T> attribute, T value) {
 
   public <T> T put(DBAttribute<T> attribute, T value) {
     if (value != null)
-      return (T) myMap.put(attribute, value);
+      return (T) resolve(myMap.put(attribute, value));
     else
-      return (T) myMap.remove(attribute);
+      return (T) resolve(myMap.remove(attribute));
+  }
+
+  /**
+   * Puts a value that will be decoded when it is requested for the first time.
+   */
+  public void putLazy(DBAttribute<?> attribute, @NotNull LazyValue value) {
+    myMap.put(attribute, value);
+  }
+
+  /**
+   * @return the holder of a value put with {@link #putLazy}, decoded or not; null if the value is not lazy
+   */
+  @Nullable
+  public LazyValue getLazy(DBAttribute<?> attribute) {
+    Object value = myMap.get(attribute);
+    return value instanceof LazyValue ? (LazyValue) value : null;
   }
 
   public <T> void putFrom(AttributeMap other, DBAttribute<T> attribute) {
-    put(attribute, other.get(attribute));
+    LazyValue lazy = other.getLazy(attribute);
+    if (lazy != null)
+      putLazy(attribute, lazy);
+    else
+      put(attribute, other.get(attribute));
   }
 
   @NotNull
@@ -39,7 +59,7 @@ public void putAll(AttributeMap map) {
   }
 
   public <T> T get(DBAttribute<T> attribute) {
-    return (T) myMap.get(attribute);
+    return (T) resolve(myMap.get(attribute));
   }
 
   public boolean containsKey(DBAttribute<?> attribute) {
@@ -57,7 +77,7 @@ public Set<DBAttribute<?>> keySet() {
   public <V> V fold(V parameter, AttributeValueFunction<V> function) {
     V pass = parameter;
     for (Map.Entry<DBAttribute<?>, Object> e : myMap.entrySet()) {
-      Object value = e.getValue();
+      Object value = resolve(e.getValue());
       pass = function.f((DBAttribute<Object>) e.getKey(), value, pass);
     }
     return pass;
@@ -84,7 +104,7 @@ public boolean equals(Object o) {
       return false;
 
     for (Map.Entry<DBAttribute<?>, Object> entry : myMap.entrySet()) {
-      if (!DatabaseUtil.valueEquals(entry.getValue(), theirMap.get(entry.getKey())))
+      if (!DatabaseUtil.valueEquals(resolve(entry.getValue()), resolve(theirMap.get(entry.getKey()))))
         return false;
     }
 
@@ -95,7 +115,7 @@ public boolean equals(Object o) {
   public int hashCode() {
     int h = 0;
     for (Map.Entry<DBAttribute<?>, Object> entry : myMap.entrySet()) {
-      Object value = entry.getValue();
+      Object value = resolve(entry.getValue());
       h += entry.getKey().hashCode() ^ DatabaseUtil.valueHash(value);
     }
     return h;
@@ -103,6 +123,40 @@ public int hashCode() {
 
   @Override
   public String toString() {
-    return myMap.toString();
+    StringBuilder r = new StringBuilder("{");
+    for (Map.Entry<DBAttribute<?>, Object> entry : myMap.entrySet()) {
+      if (r.length() > 1)
+        r.append(", ");
+      r.append(entry.getKey()).append('=').append(resolve(entry.getValue()));
+    }
+    return r.append('}').toString();
+  }
+
+  private static Object resolve(Object value) {
+    return value instanceof LazyValue ? ((LazyValue) value).getValue() : value;
+  }
+
+
+  /**
+   * Value kept in the encoded form until it is requested. Copies of the map share the holder, so the value is
+   * decoded at most once.
+   */
+  public static abstract class LazyValue {
+    private volatile boolean myDecoded;
+    private volatile Object myValue;
+
+    public final Object getValue() {
+      if (!myDecoded) {
+        myValue = decode();
+        myDecoded = true;
+      }
+      return myValue;
+    }
+
+    public final boolean isDecoded() {
+      return myDecoded;
+    }
+
+    protected abstract Object decode();
   }
 }
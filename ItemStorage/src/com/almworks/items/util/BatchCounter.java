@@ -0,0 +1,133 @@
+package com.almworks.items.util;
+
+import com.almworks.integers.LongList;
+import com.almworks.items.api.DBReader;
+import com.almworks.items.api.DP;
+import com.almworks.util.bool.BoolExpr;
+import com.almworks.util.bool.BoolOperation;
+import org.almworks.util.Collections15;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts items of many filters that narrow each other, such as the filters of a navigation tree. A filter of a
+ * child is the conjunction of the parent's conjuncts and its own ones, so the filters are evaluated as a tree: a
+ * filter is evaluated over the items of its longest prefix that is shared with other filters, and only the prefixes
+ * that have no evaluated prefix are queried over the whole database.
+ * <p>
+ * All filters have to be {@link #add added} before the first {@link #count}. Confined to the thread of the read
+ * transaction.
+ */
+public class BatchCounter {
+  private final DBReader myReader;
+
+  /**
+   * Number of added filters that start with the prefix (a filter starts with itself).
+   */
+  private final Map<List<BoolExpr<DP>>, Integer> myUsage = Collections15.hashMap();
+  private final Map<List<BoolExpr<DP>>, LongList> myItems = Collections15.hashMap();
+  private final Map<List<BoolExpr<DP>>, Long> myCounts = Collections15.hashMap();
+
+  private int myScans;
+  private int myFilters;
+
+  public BatchCounter(DBReader reader) {
+    myReader = reader;
+  }
+
+  public void add(BoolExpr<DP> filter) {
+    List<BoolExpr<DP>> conjuncts = getConjuncts(filter);
+    for (int k = 1; k <= conjuncts.size(); k++) {
+      List<BoolExpr<DP>> prefix = conjuncts.subList(0, k);
+      Integer usage = myUsage.get(prefix);
+      myUsage.put(Collections15.arrayList(prefix), usage == null ? 1 : usage + 1);
+    }
+  }
+
+  public long count(BoolExpr<DP> filter) {
+    List<BoolExpr<DP>> conjuncts = getConjuncts(filter);
+    Long count = myCounts.get(conjuncts);
+    if (count != null)
+      return count;
+    LongList items = myItems.get(conjuncts);
+    if (items == null && isShared(conjuncts))
+      items = evaluate(conjuncts);
+    if (items != null)
+      return items.size();
+    int k = findEvaluatedPrefix(conjuncts);
+    long r;
+    if (k == 0) {
+      myScans++;
+      r = myReader.query(toExpr(conjuncts)).count();
+    } else {
+      myFilters++;
+      r = myReader.query(toExpr(conjuncts.subList(k, conjuncts.size()))).filterItemsSorted(evaluate(conjuncts.subList(0, k))).size();
+    }
+    myCounts.put(conjuncts, r);
+    return r;
+  }
+
+  /**
+   * @return number of queries run over the whole database
+   */
+  public int getScanCount() {
+    return myScans;
+  }
+
+  /**
+   * @return number of queries run over the items of an evaluated prefix
+   */
+  public int getFilterCount() {
+    return myFilters;
+  }
+
+  private LongList evaluate(List<BoolExpr<DP>> conjuncts) {
+    LongList items = myItems.get(conjuncts);
+    if (items != null)
+      return items;
+    int k = findEvaluatedPrefix(conjuncts);
+    if (k == 0) {
+      myScans++;
+      items = myReader.query(toExpr(conjuncts)).copyItemsSorted();
+    } else {
+      myFilters++;
+      LongList parent = evaluate(conjuncts.subList(0, k));
+      items = parent.isEmpty() ? LongList.EMPTY :
+        myReader.query(toExpr(conjuncts.subList(k, conjuncts.size()))).filterItemsSorted(parent);
+    }
+    myItems.put(Collections15.arrayList(conjuncts), items);
+    return items;
+  }
+
+  /**
+   * @return length of the longest proper prefix that is evaluated or worth evaluating, 0 if there is none
+   */
+  private int findEvaluatedPrefix(List<BoolExpr<DP>> conjuncts) {
+    for (int k = conjuncts.size() - 1; k > 0; k--) {
+      List<BoolExpr<DP>> prefix = conjuncts.subList(0, k);
+      if (myItems.containsKey(prefix) || isShared(prefix))
+        return k;
+    }
+    return 0;
+  }
+
+  private boolean isShared(List<BoolExpr<DP>> prefix) {
+    Integer usage = myUsage.get(prefix);
+    return usage != null && usage > 1;
+  }
+
+  private static List<BoolExpr<DP>> getConjuncts(BoolExpr<DP> filter) {
+    BoolExpr.Operation<DP> and = filter.asOperation(BoolOperation.AND);
+    if (and == null || and.isNegated())
+      return Collections.singletonList(filter);
+    return and.getArguments();
+  }
+
+  private static BoolExpr<DP> toExpr(List<BoolExpr<DP>> conjuncts) {
+    if (conjuncts.size() == 1)
+      return conjuncts.get(0);
+    return BoolExpr.and(conjuncts);
+  }
+}
@@ -5,6 +5,7 @@
 import com.almworks.util.bool.BoolExpr;
 import org.jetbrains.annotations.*;
 
+import java.util.Collection;
 import java.util.Map;
 
 public class DelegatingReader implements DBReader {
@@ -21,6 +22,17 @@ public <T> T getValue(long item, DBAttribute<T> attribute) {
     return myReader.getValue(item, attribute);
   }
 
+  @NotNull
+  @Override
+  public DBValueColumns getValues(LongList items, Collection<? extends DBAttribute<?>> attributes) {
+    return myReader.getValues(items, attributes);
+  }
+
+  @Override
+  public void prefetchValues(LongList items, Collection<? extends DBAttribute<?>> attributes) {
+    myReader.prefetchValues(items, attributes);
+  }
+
   @Override
   public DBQuery query(BoolExpr<DP> expr) {
     return myReader.query(expr);
@@ -150,5 +150,44 @@ public Object transaction(DBReader reader) throws DBOperationCancelledException
     });
   }
 
+  public void testAttributeMapDecodedOnDemand() {
+    final AttributeMap map = new AttributeMap();
+    map.put(TestData.STRING, "value");
+    map.put(TestData.INT, 239);
+    map.put(TestData.MAP, AttributeMap.singleton(TestData.STRING, "nested"));
+    db.writeForeground(new WriteTransaction<Object>() {
+      @Override
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        writer.setValue(TestData.ITEM1, TestData.MAP, map);
+        return null;
+      }
+    }).waitForCompletion();
+    db.writeForeground(new WriteTransaction<Object>() {
+      @Override
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        AttributeMap stored = writer.getValue(TestData.ITEM1, TestData.MAP);
+        AttributeMap.LazyValue lazy = stored.getLazy(TestData.STRING);
+        assertNotNull(lazy);
+        assertFalse(lazy.isDecoded());
+        assertNull(stored.getLazy(TestData.MAP));
+
+        AttributeMap copy = stored.copy();
+        assertSame(lazy, copy.getLazy(TestData.STRING));
+        assertEquals("value", copy.get(TestData.STRING));
+        assertTrue(lazy.isDecoded());
+        assertFalse(stored.getLazy(TestData.INT).isDecoded());
 
+        writer.setValue(TestData.ITEM2, TestData.MAP, copy);
+        return null;
+      }
+    }).waitForCompletion();
+    db.readForeground(new ReadTransaction<Object>() {
+      @Override
+      public Object transaction(DBReader reader) throws DBOperationCancelledException {
+        assertEquals(map, reader.getValue(TestData.ITEM1, TestData.MAP));
+        assertEquals(map, reader.getValue(TestData.ITEM2, TestData.MAP));
+        return null;
+      }
+    });
+  }
 }
@@ -0,0 +1,74 @@
+package com.almworks.items.api;
+
+import com.almworks.integers.LongArray;
+import com.almworks.integers.LongList;
+import com.almworks.items.dp.DPEquals;
+import com.almworks.items.dp.DPNotNull;
+import com.almworks.util.bool.BoolExpr;
+
+import static com.almworks.items.api.TestData.INT;
+import static com.almworks.items.api.TestData.LINK;
+
+public class BitmapIndexTests extends MemoryDatabaseFixture {
+  public void testQueriesFollowChanges() {
+    final long[] items = new long[6];
+    final long[] values = new long[2];
+    write(new WriteTransaction<Object>() {
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        values[0] = writer.nextItem();
+        values[1] = writer.nextItem();
+        for (int i = 0; i < items.length; i++) {
+          items[i] = writer.nextItem();
+          writer.setValue(items[i], INT, i);
+          if (i < 5)
+            writer.setValue(items[i], LINK, values[i % 2]);
+        }
+        return null;
+      }
+    });
+    BoolExpr<DP> first = DPEquals.create(LINK, values[0]);
+    BoolExpr<DP> both = DPEquals.equalOneOf(LINK, LongArray.create(values).toList());
+    BoolExpr<DP> hasInt = DPNotNull.create(INT);
+    checkQuery(first, items[0], items[2], items[4]);
+    checkQuery(both.and(first.negate()), items[1], items[3]);
+    checkQuery(first.negate().and(hasInt), items[1], items[3], items[5]);
+    checkDistribution(hasInt, 0, 1, values[0], 3, values[1], 2);
+
+    write(new WriteTransaction<Object>() {
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        writer.setValue(items[0], LINK, values[1]);
+        writer.setValue(items[1], LINK, null);
+        writer.setValue(items[5], LINK, values[0]);
+        return null;
+      }
+    });
+    checkQuery(first, items[2], items[4], items[5]);
+    checkQuery(both.and(first.negate()), items[0], items[3]);
+    checkQuery(first.negate().and(hasInt), items[0], items[1], items[3]);
+    checkDistribution(hasInt, 0, 1, values[0], 3, values[1], 2);
+  }
+
+  private void write(WriteTransaction<Object> transaction) {
+    DBResult<Object> result = db.writeForeground(transaction);
+    result.waitForCompletion();
+    assertTrue(result.isSuccessful());
+  }
+
+  private void checkQuery(final BoolExpr<DP> expr, long... expected) {
+    LongList actual = db.readForeground(new ReadTransaction<LongList>() {
+      public LongList transaction(DBReader reader) throws DBOperationCancelledException {
+        return reader.query(expr).copyItemsSorted();
+      }
+    }).waitForCompletion();
+    assertEquals(LongArray.create(expected), actual);
+  }
+
+  private void checkDistribution(final BoolExpr<DP> expr, long... expected) {
+    LongList actual = db.readForeground(new ReadTransaction<LongList>() {
+      public LongList transaction(DBReader reader) throws DBOperationCancelledException {
+        return reader.query(expr).distributionCount(LINK);
+      }
+    }).waitForCompletion();
+    assertEquals(LongArray.create(expected), actual);
+  }
+}
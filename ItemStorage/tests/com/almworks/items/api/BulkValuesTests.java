@@ -0,0 +1,115 @@
+package com.almworks.items.api;
+
+import com.almworks.integers.LongArray;
+import com.almworks.items.util.DatabaseUtil;
+import org.almworks.util.Collections15;
+
+import java.util.*;
+
+public class BulkValuesTests extends MemoryDatabaseFixture {
+  private static final List<DBAttribute<?>> ATTRIBUTES = Collections15.arrayList();
+
+  static {
+    Set<DBAttribute<?>> attributes = Collections15.linkedHashSet();
+    for (DBAttribute<?> a : TestData.VALUESET1.keySet()) attributes.add(a);
+    for (DBAttribute<?> a : TestData.VALUESET2.keySet()) attributes.add(a);
+    ATTRIBUTES.addAll(attributes);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    db.writeForeground(new WriteTransaction<Object>() {
+      @Override
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        TestData.writeMap(TestData.ITEM1, TestData.VALUESET1, writer);
+        TestData.writeMap(TestData.ITEM2, TestData.VALUESET2, writer);
+        writer.setValue(TestData.ITEM3, TestData.STRING, "only string");
+        return null;
+      }
+    }).waitForCompletion();
+  }
+
+  public void testGetValues() {
+    db.readForeground(new ReadTransaction<Object>() {
+      @Override
+      public Object transaction(DBReader reader) throws DBOperationCancelledException {
+        LongArray items = LongArray.create(TestData.ITEM3, TestData.ITEM1, 1, TestData.ITEM2, TestData.ITEM1);
+        DBValueColumns values = reader.getValues(items, ATTRIBUTES);
+        assertEquals(LongArray.create(1, TestData.ITEM1, TestData.ITEM2, TestData.ITEM3), values.getItemsSorted());
+        for (int i = 0; i < items.size(); i++) {
+          long item = items.get(i);
+          for (DBAttribute<?> attribute : ATTRIBUTES) {
+            checkValue(item, attribute, reader.getValue(item, attribute), values.getValue(item, attribute));
+          }
+        }
+        assertNull(values.getValue(TestData.ITEM1, DBAttribute.NAME));
+        assertNull(values.getValue(5, TestData.STRING));
+        return null;
+      }
+    }).waitForCompletion();
+  }
+
+  public void testPrefetchLearnsAttributes() {
+    db.readForeground(new ReadTransaction<Object>() {
+      @Override
+      public Object transaction(DBReader reader) throws DBOperationCancelledException {
+        reader.prefetchValues(LongArray.create(TestData.ITEM1), Collections.singleton(TestData.STRING));
+        assertEquals(TestData.VALUESET1.get(TestData.STRING), reader.getValue(TestData.ITEM1, TestData.STRING));
+        // not prefetched - read from DB and remembered
+        assertEquals(TestData.VALUESET1.get(TestData.INT), reader.getValue(TestData.ITEM1, TestData.INT));
+        reader.prefetchValues(LongArray.create(TestData.ITEM2, TestData.ITEM3),
+          Collections.<DBAttribute<?>>singleton(TestData.INT_LIST));
+        for (DBAttribute<?> attribute : Arrays.<DBAttribute<?>>asList(TestData.STRING, TestData.INT, TestData.INT_LIST)) {
+          checkValue(TestData.ITEM2, attribute, TestData.VALUESET2.get(attribute),
+            reader.getValue(TestData.ITEM2, attribute));
+        }
+        assertEquals("only string", reader.getValue(TestData.ITEM3, TestData.STRING));
+        assertNull(reader.getValue(TestData.ITEM3, TestData.INT));
+        return null;
+      }
+    }).waitForCompletion();
+  }
+
+  public void testPrefetchedMutableValuesAreNotShared() {
+    db.writeForeground(new WriteTransaction<Object>() {
+      @Override
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        writer.setValue(TestData.ITEM3, TestData.DATE, new Date(1000));
+        writer.setValue(TestData.ITEM3, TestData.LONG_LIST_SCALAR, LongArray.create(1, 2));
+        writer.setValue(TestData.ITEM3, TestData.DATE_LIST, Arrays.asList(new Date(2000)));
+        return null;
+      }
+    }).waitForCompletion();
+    db.readForeground(new ReadTransaction<Object>() {
+      @Override
+      public Object transaction(DBReader reader) throws DBOperationCancelledException {
+        reader.prefetchValues(LongArray.create(TestData.ITEM3),
+          Arrays.<DBAttribute<?>>asList(TestData.DATE, TestData.LONG_LIST_SCALAR, TestData.DATE_LIST));
+        reader.getValue(TestData.ITEM3, TestData.DATE).setTime(5000);
+        assertEquals(new Date(1000), reader.getValue(TestData.ITEM3, TestData.DATE));
+        ((LongArray) reader.getValue(TestData.ITEM3, TestData.LONG_LIST_SCALAR)).add(3);
+        assertEquals(LongArray.create(1, 2), reader.getValue(TestData.ITEM3, TestData.LONG_LIST_SCALAR));
+        reader.getValue(TestData.ITEM3, TestData.DATE_LIST).get(0).setTime(5000);
+        assertEquals(Arrays.asList(new Date(2000)), reader.getValue(TestData.ITEM3, TestData.DATE_LIST));
+        return null;
+      }
+    }).waitForCompletion();
+  }
+
+  public void testPrefetchIgnoredInWriteTransaction() {
+    db.writeForeground(new WriteTransaction<Object>() {
+      @Override
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        writer.prefetchValues(LongArray.create(TestData.ITEM1), Collections.singleton(TestData.STRING));
+        writer.setValue(TestData.ITEM1, TestData.STRING, "changed");
+        assertEquals("changed", writer.getValue(TestData.ITEM1, TestData.STRING));
+        return null;
+      }
+    }).waitForCompletion();
+  }
+
+  private static void checkValue(long item, DBAttribute<?> attribute, Object expected, Object actual) {
+    assertTrue(item + " " + attribute + ": " + expected + " " + actual, DatabaseUtil.valueEquals(expected, actual));
+  }
+}
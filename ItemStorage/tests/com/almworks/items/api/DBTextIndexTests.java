@@ -0,0 +1,167 @@
+package com.almworks.items.api;
+
+import com.almworks.integers.LongArray;
+import com.almworks.items.dp.DPNotNull;
+import com.almworks.items.dp.DPTextMatch;
+import com.almworks.items.impl.DBTriggerCounterpart;
+import com.almworks.util.bool.BoolExpr;
+import com.almworks.util.commons.Procedure;
+import org.almworks.util.Util;
+
+import java.util.Collection;
+
+public class DBTextIndexTests extends MemoryDatabaseFixture {
+  public static final DBAttribute<String> TEXT = DBAttribute.String("textIndexTest:a:text", "Text");
+  public static final DBAttribute<String> TEXT2 = DBAttribute.String("textIndexTest:a:text2", "Text 2");
+  private static final DBTextIndex INDEX = new DBTextIndex("textIndexTest:o:index", DPNotNull.create(TEXT)) {
+    @Override
+    protected void collectTexts(long item, DBReader reader, Collection<String> target) {
+      target.add(reader.getValue(item, TEXT));
+      target.add(reader.getValue(item, TEXT2));
+    }
+  };
+
+  private final long[] myItems = new long[4];
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        for (int i = 0; i < myItems.length; i++) myItems[i] = writer.nextItem();
+        writer.setValue(myItems[0], TEXT, "The quick brown fox");
+        writer.setValue(myItems[1], TEXT, "jumps over the LAZY dog");
+        writer.setValue(myItems[2], TEXT, "lazy");
+        writer.setValue(myItems[2], TEXT2, "brown dog");
+        writer.setValue(myItems[3], TEXT2, "not indexed: brown fox");
+      }
+    });
+  }
+
+  public void testBuild() {
+    checkCandidates(null, "brown");
+    db.registerTrigger(INDEX);
+    flushWriteQueue();
+    checkCandidates(LongArray.create(myItems[0], myItems[2]), "brown");
+    checkCandidates(LongArray.create(myItems[1], myItems[2]), "Lazy", "dog");
+    checkCandidates(LongArray.create(myItems[0]), "QUICK");
+    checkCandidates(LongArray.create(), "cat");
+    checkCandidates(null, "ox", "a");
+  }
+
+  public void testUpdate() {
+    db.registerTrigger(INDEX);
+    flushWriteQueue();
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        writer.setValue(myItems[0], TEXT, "lazy cat");
+        writer.setValue(myItems[2], TEXT, null);
+        writer.setValue(myItems[3], TEXT, "quick");
+      }
+    });
+    checkCandidates(LongArray.create(myItems[0], myItems[1]), "lazy");
+    checkCandidates(LongArray.create(myItems[3]), "brown", "fox");
+    checkCandidates(LongArray.create(), "dog", "brown");
+  }
+
+  public void testCandidatesIncludeMatches() {
+    db.registerTrigger(INDEX);
+    flushWriteQueue();
+    for (final String word : new String[] {"the", "row", "over the", "zy d", "fox", "g"}) {
+      db.readForeground(new ReadTransaction<Object>() {
+        @Override
+        public Object transaction(DBReader reader) throws DBOperationCancelledException {
+          BoolExpr<DP> matches = DPTextMatch.contains(TEXT, word).or(DPTextMatch.contains(TEXT2, word));
+          BoolExpr<DP> candidates = Util.NN(INDEX.candidates(reader, new String[] {word}), BoolExpr.<DP>TRUE());
+          LongArray expected = reader.query(matches.and(DPNotNull.create(TEXT))).copyItemsSorted();
+          LongArray actual = reader.query(matches.and(candidates)).copyItemsSorted();
+          assertEquals(word, expected, actual);
+          return null;
+        }
+      }).waitForCompletion();
+    }
+  }
+
+  public void testChangedItemsAreIndexedWithoutResultSet() {
+    db.registerTrigger(INDEX);
+    flushWriteQueue();
+    final long[] bear = {0};
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        bear[0] = writer.nextItem();
+        writer.setValue(bear[0], TEXT, "brown bear");
+      }
+    });
+    checkCandidates(LongArray.create(myItems[0], myItems[2], bear[0]), "brown");
+    db.readForeground(new ReadTransaction<Object>() {
+      @Override
+      public Object transaction(DBReader reader) throws DBOperationCancelledException {
+        long trigger = reader.findMaterialized(INDEX);
+        assertNull(reader.getValue(trigger, DBTrigger.LAST_RESULT_SET));
+        assertEquals(INDEX.getVersion(), (int) reader.getValue(trigger, DBTrigger.TRIGGER_VERSION));
+        return null;
+      }
+    }).waitForCompletion();
+  }
+
+  /**
+   * Initializes the triggers as registration in a new session does, without maintaining them afterwards
+   */
+  public void testNewVersionRebuildsIndex() {
+    initialize(INDEX);
+    checkCandidates(LongArray.create(myItems[0]), "quick");
+    final int[] collected = {0};
+    DBTextIndex secondText = new DBTextIndex("textIndexTest:o:index", DPNotNull.create(TEXT)) {
+      @Override
+      protected void collectTexts(long item, DBReader reader, Collection<String> target) {
+        collected[0]++;
+        target.add(reader.getValue(item, TEXT2));
+      }
+
+      @Override
+      protected int getTextsVersion() {
+        return 1;
+      }
+    };
+    initialize(secondText);
+    assertEquals(3, collected[0]);
+    checkCandidates(secondText, LongArray.create(), "quick");
+    checkCandidates(secondText, LongArray.create(myItems[2]), "brown");
+    checkCandidates(null, "quick");
+
+    initialize(secondText);
+    assertEquals(3, collected[0]);
+  }
+
+  private void initialize(final DBTrigger trigger) {
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        new DBTriggerCounterpart(trigger).initialize(writer);
+      }
+    });
+  }
+
+  private void checkCandidates(final LongArray expected, final String... words) {
+    checkCandidates(INDEX, expected, words);
+  }
+
+  private void checkCandidates(final DBTextIndex index, final LongArray expected, final String... words) {
+    db.readForeground(new ReadTransaction<Object>() {
+      @Override
+      public Object transaction(DBReader reader) throws DBOperationCancelledException {
+        BoolExpr<DP> candidates = index.candidates(reader, words);
+        if (expected == null) {
+          assertNull(candidates);
+        } else {
+          assertNotNull(candidates);
+          assertEquals(expected, reader.query(candidates).copyItemsSorted());
+        }
+        return null;
+      }
+    }).waitForCompletion();
+  }
+}
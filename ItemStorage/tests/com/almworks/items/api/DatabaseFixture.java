@@ -44,6 +44,8 @@ protected SQLiteDatabase createFileDatabase() {
       File file = createFileName();
       tempFiles.add(file);
       tempFiles.add(new File(file.getPath() + "-journal"));
+      tempFiles.add(new File(file.getPath() + "-wal"));
+      tempFiles.add(new File(file.getPath() + "-shm"));
       File tempDir = new File(file.getParent(), file.getName() + "-tempdir");
       assertTrue(tempDir.mkdir());
       assertTrue(tempDir.isDirectory());
@@ -0,0 +1,99 @@
+package com.almworks.items.api;
+
+import com.almworks.integers.LongArray;
+import com.almworks.items.dp.DPEquals;
+import com.almworks.items.impl.DBLiveQueryImpl;
+import com.almworks.util.bool.BoolExpr;
+import org.almworks.util.detach.DetachComposite;
+
+import static com.almworks.items.api.TestData.*;
+
+public class LiveQueryRoutingTests extends MemoryDatabaseFixture {
+  private final DetachComposite myLife = new DetachComposite();
+
+  protected void tearDown() throws Exception {
+    myLife.detach();
+    super.tearDown();
+  }
+
+  public void testUnaffectedQueriesCheckCreatedItems() throws InterruptedException {
+    BoolExpr<DP> one = DPEquals.create(INT, 1);
+    BoolExpr<DP> x = DPEquals.create(STRING, "x");
+    DBLiveQuery notOne = db.liveQuery(myLife, one.negate(), DBLiveQuery.Listener.DEAF);
+    DBLiveQuery isX = db.liveQuery(myLife, x, DBLiveQuery.Listener.DEAF);
+    DBLiveQuery oneOrX = db.liveQuery(myLife, one.or(x), DBLiveQuery.Listener.DEAF);
+
+    final long[] items = new long[3];
+    write(new WriteTransaction<Object>() {
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        items[0] = writer.nextItem();
+        writer.setValue(items[0], INT, 1);
+        items[1] = writer.nextItem();
+        writer.setValue(items[1], STRING, "x");
+        return null;
+      }
+    }, notOne, isX, oneOrX);
+    check(notOne, one.negate());
+    assertTrue(notOne.copyItems().contains(items[1]));
+    check(isX, items[1]);
+    check(oneOrX, items[0], items[1]);
+
+    write(new WriteTransaction<Object>() {
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        writer.setValue(items[0], BOOL, true);
+        items[2] = writer.nextItem();
+        writer.setValue(items[2], BOOL, true);
+        return null;
+      }
+    }, notOne, isX, oneOrX);
+    check(notOne, one.negate());
+    assertTrue(notOne.copyItems().contains(items[2]));
+    check(isX, items[1]);
+    check(oneOrX, items[0], items[1]);
+
+    write(new WriteTransaction<Object>() {
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        writer.setValue(items[0], STRING, "x");
+        writer.setValue(items[1], STRING, null);
+        return null;
+      }
+    }, notOne, isX, oneOrX);
+    check(notOne, one.negate());
+    check(isX, items[0]);
+    check(oneOrX, items[0]);
+
+    String statistics = ((DBLiveQueryImpl) isX).getUpdateStatistics();
+    assertFalse(statistics, statistics.contains(" 0 unaffected"));
+    String dump = db.dumpString();
+    assertTrue(dump, dump.contains("LIVE QUERIES"));
+  }
+
+  private void write(WriteTransaction<Object> transaction, DBLiveQuery... queries) throws InterruptedException {
+    DBResult<Object> result = db.writeForeground(transaction);
+    result.waitForCompletion();
+    assertTrue(result.isSuccessful());
+    long icn = result.getCommitIcn();
+    for (DBLiveQuery query : queries) {
+      for (int i = 0; i < 500 && !query.isTransactionResultVisible(icn); i++)
+        Thread.sleep(10);
+      assertTrue(query.isTransactionResultVisible(icn));
+    }
+  }
+
+  private void check(DBLiveQuery query, final BoolExpr<DP> expr) {
+    LongArray expected = db.readForeground(new ReadTransaction<LongArray>() {
+      public LongArray transaction(DBReader reader) throws DBOperationCancelledException {
+        return reader.query(expr).copyItemsSorted();
+      }
+    }).waitForCompletion();
+    LongArray items = query.copyItems();
+    items.sortUnique();
+    assertEquals(expected, items);
+  }
+
+  private void check(DBLiveQuery query, long... expected) {
+    LongArray items = query.copyItems();
+    items.sortUnique();
+    assertEquals(LongArray.create(expected), items);
+  }
+}
@@ -0,0 +1,102 @@
+package com.almworks.items.api;
+
+import com.almworks.integers.LongList;
+import com.almworks.items.dp.DPEquals;
+import com.almworks.util.bool.BoolExpr;
+
+import static com.almworks.items.api.TestData.INT;
+
+public class PredicateOrderTests extends MemoryDatabaseFixture {
+  private static final int COUNT = 200;
+
+  public void testSelectivePredicateRunsFirst() {
+    db.writeForeground(new WriteTransaction<Object>() {
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        for (int i = 0; i < COUNT; i++)
+          writer.setValue(writer.nextItem(), INT, i);
+        return null;
+      }
+    }).waitForCompletion();
+    Counting even = new Counting("even", 2, 20000);
+    Counting small = new Counting("small", -10, 0);
+    BoolExpr<DP> filter = even.term().and(small.term());
+    for (int i = 0; i < 3; i++)
+      assertEquals(5, count(filter));
+    int checked = even.myCalls;
+    assertEquals(5, count(filter));
+    assertEquals(10, even.myCalls - checked);
+    String dump = db.dumpString();
+    assertTrue(dump, dump.contains("PREDICATE STATISTICS"));
+    assertTrue(dump, dump.contains("Predicates(small, even)"));
+  }
+
+  public void testTriggerPlansAreNotRecorded() {
+    final Counting triggered = new Counting("triggered", 1, 0);
+    db.registerTrigger(new DBTrigger("test:predicateOrder:trigger", triggered.term()) {
+      public void apply(LongList itemsSorted, DBWriter writer) {
+      }
+    });
+    // the initial load of the trigger is a query, push its plan out of the recent plans
+    for (int i = 0; i < 30; i++)
+      count(DPEquals.create(INT, i));
+    for (int i = 0; i < 3; i++) {
+      db.writeForeground(new WriteTransaction<Object>() {
+        public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+          writer.setValue(writer.nextItem(), INT, 1);
+          return null;
+        }
+      }).waitForCompletion();
+    }
+    assertTrue(triggered.myCalls > 0);
+    String dump = db.dumpString();
+    String plans = dump.substring(dump.indexOf("RECENT PLANS"), dump.indexOf("PREDICATE STATISTICS"));
+    assertFalse(plans, plans.contains("triggered"));
+  }
+
+  private long count(final BoolExpr<DP> filter) {
+    return db.readForeground(new ReadTransaction<Long>() {
+      public Long transaction(DBReader reader) throws DBOperationCancelledException {
+        return reader.query(filter).count();
+      }
+    }).waitForCompletion();
+  }
+
+
+  /**
+   * Accepts values divisible by the divisor, or values less than -divisor if the divisor is negative
+   */
+  private static class Counting extends DP {
+    private final String myName;
+    private final int myDivisor;
+    private final long myNanos;
+    private volatile int myCalls;
+
+    public Counting(String name, int divisor, long nanos) {
+      myName = name;
+      myDivisor = divisor;
+      myNanos = nanos;
+    }
+
+    public boolean accept(long item, DBReader reader) {
+      myCalls++;
+      long until = System.nanoTime() + myNanos;
+      while (System.nanoTime() < until);
+      Integer value = reader.getValue(item, INT);
+      if (value == null)
+        return false;
+      return myDivisor > 0 ? value % myDivisor == 0 : value < -myDivisor;
+    }
+
+    protected boolean equalDP(DP other) {
+      return this == other;
+    }
+
+    protected int hashCodeDP() {
+      return myName.hashCode();
+    }
+
+    public String toString() {
+      return myName;
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package com.almworks.items.impl.migrations;
+
+import com.almworks.items.api.*;
+import com.almworks.items.impl.AttributeAdapter;
+import com.almworks.items.impl.DBWriterImpl;
+import com.almworks.items.impl.dbadapter.DBColumn;
+import com.almworks.items.impl.sqlite.TransactionContext;
+import com.almworks.items.util.AttributeMap;
+import com.almworks.sqlite4java.SQLiteException;
+import com.almworks.sqlite4java.SQLiteStatement;
+import util.external.CompactChar;
+import util.external.CompactInt;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+public class IndexedAttributeMapTests extends MemoryDatabaseFixture {
+  /**
+   * Signature of the format that refers to attributes by their ids
+   */
+  private static final int LEGACY_SIGNATURE = 0xA1151B0E;
+  private static final int INDEXED_SIGNATURE = 0xA1151B0F;
+
+  private static final DBAttribute<AttributeMap> SHADOW =
+    DBAttribute.Scalar("com.almworks.items.test:attribute:shadow", "Shadow", AttributeMap.class);
+  private static final DBAttribute<String> SUMMARY =
+    DBAttribute.String("com.almworks.items.test:attribute:summary", "Summary");
+  private static final DBAttribute<Integer> PRIORITY =
+    DBAttribute.Int("com.almworks.items.test:attribute:priority", "Priority");
+  private static final DBAttribute<Date> MODIFIED =
+    DBAttribute.Scalar("com.almworks.items.test:attribute:modified", "Modified", Date.class);
+  private static final DBAttribute<List<String>> KEYWORDS =
+    DBAttribute.StringList("com.almworks.items.test:attribute:keywords", "Keywords");
+
+  private final AttributeMap myShadow = new AttributeMap();
+  private long myItem;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    myShadow.put(SUMMARY, "Summary of the bug");
+    myShadow.put(PRIORITY, 3);
+    myShadow.put(MODIFIED, new Date(1234567890000L));
+    myShadow.put(KEYWORDS, Arrays.asList("crash", "regression"));
+    myItem = write(new Function<Long>() {
+      public Long apply(DBWriterImpl writer) {
+        long item = writer.nextItem();
+        writer.setValue(item, SHADOW, myShadow);
+        return item;
+      }
+    });
+  }
+
+  public void testReadLegacyMap() {
+    final byte[] legacy = writeLegacyBlob();
+    assertEquals(LEGACY_SIGNATURE, signature(legacy));
+    db.readForeground(new ReadTransaction<Object>() {
+      public Object transaction(DBReader reader) {
+        assertEquals(myShadow, reader.getValue(myItem, SHADOW));
+        return null;
+      }
+    }).waitForCompletion();
+  }
+
+  public void testMigrateLegacyMaps() {
+    final byte[] legacy = writeLegacyBlob();
+    final long icn = db.readForeground(new ReadTransaction<Long>() {
+      public Long transaction(DBReader reader) {
+        return reader.getItemIcn(myItem);
+      }
+    }).waitForCompletion();
+    byte[] migrated = write(new Function<byte[]>() {
+      public byte[] apply(DBWriterImpl writer) throws Exception {
+        assertTrue(new IndexedAttributeMap().migrate(writer));
+        return readBlob(writer.getContext());
+      }
+    });
+    assertEquals(INDEXED_SIGNATURE, signature(migrated));
+    // attribute ids are replaced with attribute items
+    assertTrue(legacy.length + " " + migrated.length, migrated.length < legacy.length);
+    db.readForeground(new ReadTransaction<Object>() {
+      public Object transaction(DBReader reader) {
+        assertEquals(myShadow, reader.getValue(myItem, SHADOW));
+        assertEquals(icn, reader.getItemIcn(myItem));
+        return null;
+      }
+    }).waitForCompletion();
+  }
+
+  /**
+   * Replaces the stored shadow with the same map in the legacy format.
+   * @return the legacy blob
+   */
+  private byte[] writeLegacyBlob() {
+    return write(new Function<byte[]>() {
+      public byte[] apply(DBWriterImpl writer) throws Exception {
+        TransactionContext context = writer.getContext();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(LEGACY_SIGNATURE);
+        CompactInt.writeInt(out, myShadow.size());
+        for (DBAttribute<?> attribute : myShadow.keySet()) {
+          CompactChar.writeString(out, attribute.getId());
+          context.getDatabaseContext().getAttributeAdapter(attribute).writeValueToStream(out, myShadow.get(attribute),
+            context);
+        }
+        out.close();
+        AttributeMapTable table = new AttributeMapTable(context);
+        SQLiteStatement update = context.prepare(context.sql().append("UPDATE ").append(table.myName).append(" SET ")
+          .append(table.myColumn.getName()).append(" = ? WHERE ").append(DBColumn.ITEM.getName()).append(" = ?"));
+        try {
+          update.bind(1, bytes.toByteArray());
+          update.bind(2, myItem);
+          update.step();
+        } finally {
+          update.dispose();
+        }
+        return readBlob(context);
+      }
+    });
+  }
+
+  private byte[] readBlob(TransactionContext context) throws SQLiteException {
+    AttributeMapTable table = new AttributeMapTable(context);
+    SQLiteStatement select = context.prepare(context.sql().append("SELECT ").append(table.myColumn.getName())
+      .append(" FROM ").append(table.myName).append(" WHERE ").append(DBColumn.ITEM.getName()).append(" = ?"));
+    try {
+      select.bind(1, myItem);
+      assertTrue(select.step());
+      return select.columnBlob(0);
+    } finally {
+      select.dispose();
+    }
+  }
+
+  private static int signature(byte[] blob) {
+    try {
+      return new DataInputStream(new ByteArrayInputStream(blob)).readInt();
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private <T> T write(final Function<T> function) {
+    return db.writeForeground(new WriteTransaction<T>() {
+      public T transaction(DBWriter writer) {
+        try {
+          return function.apply((DBWriterImpl) writer);
+        } catch (Exception e) {
+          throw new AssertionError(e);
+        }
+      }
+    }).waitForCompletion();
+  }
+
+
+  private interface Function<T> {
+    T apply(DBWriterImpl writer) throws Exception;
+  }
+
+
+  private static class AttributeMapTable {
+    private final String myName;
+    private final DBColumn myColumn;
+
+    public AttributeMapTable(TransactionContext context) throws SQLiteException {
+      AttributeAdapter adapter = context.getDatabaseContext().getAttributeAdapter(SHADOW);
+      myName = context.getTableName(adapter.getTable(), false);
+      myColumn = adapter.getScalarColumn();
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.almworks.items.impl.sqlite;
+
+import com.almworks.items.api.*;
+import com.almworks.items.impl.DBConfiguration;
+import com.almworks.items.impl.SQLiteDatabase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class DatabaseReaderPoolTests extends DatabaseFixture {
+  private static final DBAttribute<String> NAME = DBAttribute.String("test:name", "name");
+
+  private DatabaseReaderPool myPool;
+
+  protected void tearDown() throws Exception {
+    if (myPool != null) {
+      myPool.stop(false);
+      myPool.waitFor();
+    }
+    super.tearDown();
+  }
+
+  public void testReadsRunInParallel() throws Exception {
+    startPool(2);
+    final CountDownLatch second = new CountDownLatch(1);
+    ReadJob first = new ReadJob() {
+      protected void dbrun(TransactionContext context) throws Throwable {
+        assertTrue(second.await(5, TimeUnit.SECONDS));
+      }
+    };
+    ReadJob other = new ReadJob() {
+      protected void dbrun(TransactionContext context) throws Throwable {
+        second.countDown();
+      }
+    };
+    myPool.execute(first);
+    myPool.execute(other);
+    myPool.flush();
+    assertTrue(first.isSuccessful());
+    assertTrue(other.isSuccessful());
+  }
+
+  public void testWriteDoesNotWaitForReaderSnapshot() throws Exception {
+    SQLiteDatabase db = startPool(1);
+    final CountDownLatch reading = new CountDownLatch(1);
+    final CountDownLatch written = new CountDownLatch(1);
+    final long[] icns = new long[2];
+    ReadJob job = new ReadJob() {
+      protected void dbrun(TransactionContext context) throws Throwable {
+        icns[0] = Schema.getProperty(context.getConnection(), Schema.NEXT_ICN);
+        reading.countDown();
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+        icns[1] = Schema.getProperty(context.getConnection(), Schema.NEXT_ICN);
+      }
+    };
+    myPool.execute(job);
+    assertTrue(reading.await(5, TimeUnit.SECONDS));
+    DBResult<Object> write = db.writeForeground(new WriteTransaction<Object>() {
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        writer.setValue(writer.nextItem(), NAME, "x");
+        return null;
+      }
+    });
+    write.get(5, TimeUnit.SECONDS);
+    assertTrue(write.isSuccessful());
+    written.countDown();
+    myPool.flush();
+    assertTrue(job.isSuccessful());
+    assertEquals(icns[0], icns[1]);
+  }
+
+  private SQLiteDatabase startPool(int size) throws IOException {
+    File file = createFileName();
+    tempFiles.add(file);
+    tempFiles.add(new File(file.getPath() + "-wal"));
+    tempFiles.add(new File(file.getPath() + "-shm"));
+    SQLiteDatabase db = new SQLiteDatabase(file, null);
+    db.start();
+    databases.add(db);
+    flushWriteQueue(db);
+    myPool = DatabaseReaderPool.start(file, "test", size,
+      new DatabaseContext(DBConfiguration.createDefault(file)), "WAL");
+    return db;
+  }
+
+
+  private abstract static class ReadJob extends DatabaseJob {
+    public TransactionType getTransactionType() {
+      return TransactionType.READ_ROLLBACK;
+    }
+  }
+}
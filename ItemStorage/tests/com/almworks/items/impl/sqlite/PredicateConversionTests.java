@@ -28,6 +28,8 @@ public Object transaction(DBWriter writer) throws DBOperationCancelledException
       public Object transaction(DBReader reader) throws DBOperationCancelledException {
         try {
           myContext = ((DBReaderImpl) reader).getContext();
+          // bitmap indexes would replace SQL for reference attributes
+          myContext.getDatabaseContext().getBitmapIndexes().setEnabled(false);
           checkSinglePredicates();
           checkAnds();
           checkOrs();
@@ -0,0 +1,86 @@
+package com.almworks.items.impl.sqlite.bitmap;
+
+import com.almworks.integers.LongArray;
+import com.almworks.util.tests.BaseTestCase;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+public class ItemBitmapTests extends BaseTestCase {
+  private final Random myRandom = new Random(42);
+
+  public void testAddRemove() {
+    ItemBitmap bitmap = new ItemBitmap();
+    TreeSet<Long> expected = new TreeSet<Long>();
+    for (int i = 0; i < 20000; i++) {
+      long item = randomItem();
+      if (myRandom.nextInt(4) == 0) {
+        bitmap.remove(item);
+        expected.remove(item);
+      } else {
+        bitmap.add(item);
+        expected.add(item);
+      }
+    }
+    check(expected, bitmap);
+    for (Long item : expected)
+      assertTrue(bitmap.contains(item));
+    assertFalse(bitmap.contains(300000));
+  }
+
+  public void testOperations() {
+    for (int attempt = 0; attempt < 10; attempt++) {
+      TreeSet<Long> a = randomSet();
+      TreeSet<Long> b = randomSet();
+      ItemBitmap ba = create(a);
+      ItemBitmap bb = create(b);
+
+      TreeSet<Long> expected = new TreeSet<Long>(a);
+      expected.retainAll(b);
+      assertEquals(expected.size(), ba.andCardinality(bb));
+      ItemBitmap r = ba.copy();
+      r.and(bb);
+      check(expected, r);
+
+      expected = new TreeSet<Long>(a);
+      expected.addAll(b);
+      r = ba.copy();
+      r.or(bb);
+      check(expected, r);
+
+      expected = new TreeSet<Long>(a);
+      expected.removeAll(b);
+      r = ba.copy();
+      r.andNot(bb);
+      check(expected, r);
+      check(a, ba);
+    }
+  }
+
+  private TreeSet<Long> randomSet() {
+    TreeSet<Long> r = new TreeSet<Long>();
+    // dense part turns into bitmap chunks, sparse part into array chunks
+    int dense = myRandom.nextInt(30000);
+    for (int i = 0; i < dense; i++)
+      r.add((long) myRandom.nextInt(65536));
+    for (int i = 0; i < 2000; i++)
+      r.add(randomItem());
+    return r;
+  }
+
+  private long randomItem() {
+    return myRandom.nextInt(200000);
+  }
+
+  private static ItemBitmap create(TreeSet<Long> items) {
+    ItemBitmap r = new ItemBitmap();
+    for (Long item : items)
+      r.add(item);
+    return r;
+  }
+
+  private static void check(TreeSet<Long> expected, ItemBitmap bitmap) {
+    assertEquals(expected.size(), bitmap.size());
+    assertEquals(LongArray.create(expected), bitmap.toSortedList());
+  }
+}
@@ -0,0 +1,55 @@
+package com.almworks.items.util;
+
+import com.almworks.items.api.*;
+import com.almworks.items.dp.DPEquals;
+import com.almworks.items.dp.DPNotNull;
+import com.almworks.util.bool.BoolExpr;
+import com.almworks.util.commons.Procedure;
+import org.almworks.util.Collections15;
+
+import java.util.List;
+
+import static com.almworks.items.api.TestData.*;
+
+public class BatchCounterTests extends MemoryDatabaseFixture {
+  public void testChildrenFilterParentItems() {
+    writeNoFail(new Procedure<DBWriter>() {
+      public void invoke(DBWriter writer) {
+        for (int i = 0; i < 100; i++) {
+          long item = writer.nextItem();
+          writer.setValue(item, INT, i % 10);
+          writer.setValue(item, BOOL, i % 2 == 0);
+          if (i % 3 == 0)
+            writer.setValue(item, STRING, "x");
+        }
+      }
+    });
+    final BoolExpr<DP> parent = DPNotNull.create(INT).and(DPEquals.create(BOOL, true));
+    final List<BoolExpr<DP>> filters = Collections15.arrayList();
+    for (int i = 0; i < 10; i++) {
+      BoolExpr<DP> child = parent.and(DPEquals.create(INT, i));
+      filters.add(child);
+      filters.add(child.and(DPEquals.create(STRING, "x")));
+    }
+    filters.add(DPEquals.create(STRING, "x"));
+
+    long[] r = db.readForeground(new ReadTransaction<long[]>() {
+      public long[] transaction(DBReader reader) throws DBOperationCancelledException {
+        BatchCounter counter = new BatchCounter(reader);
+        for (BoolExpr<DP> filter : filters)
+          counter.add(filter);
+        int mismatches = 0;
+        for (BoolExpr<DP> filter : filters)
+          if (reader.query(filter).count() != counter.count(filter))
+            mismatches++;
+        int scans = counter.getScanCount();
+        long count = counter.count(parent.and(DPEquals.create(INT, 4)));
+        return new long[] {mismatches, scans, count, counter.getScanCount()};
+      }
+    }).waitForCompletion();
+    assertEquals(0, r[0]);
+    assertEquals(2, r[1]);
+    assertEquals(10, r[2]);
+    assertEquals(2, r[3]);
+  }
+}
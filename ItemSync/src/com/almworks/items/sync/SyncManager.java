@@ -87,6 +87,13 @@ public interface SyncManager {
 
   DBResult<Object> writeDownloaded(DownloadProcedure<? super DBDrain> procedure);
 
+  /**
+   * Same as {@link #writeDownloaded}, but the procedure may be written in one transaction with other grouped
+   * procedures that are waiting for the database. All procedures of the group get the same result, if one of them
+   * fails the whole group fails. So the procedure should be ready to retry.
+   */
+  DBResult<Object> writeDownloadedGrouped(DownloadProcedure<? super DBDrain> procedure);
+
   /**
    * Checks if the item not locked for upload now
    * @param item item to check
@@ -0,0 +1,85 @@
+package com.almworks.items.sync.edit;
+
+import com.almworks.items.api.DBOperationCancelledException;
+import com.almworks.items.api.DBResult;
+import com.almworks.items.sync.DBDrain;
+import com.almworks.items.sync.DownloadProcedure;
+import org.almworks.util.Collections15;
+import org.almworks.util.Log;
+
+import java.util.List;
+
+/**
+ * Download drain that writes several download procedures in one transaction. Procedures join the group until its
+ * transaction starts or the group is full, so when the database is busy, downloads that arrive meanwhile are
+ * committed together: one transaction, one ICN and one change event for the whole group.
+ * @see SyncManagerImpl#writeDownloadedGrouped
+ */
+class GroupDownloadDrain extends BaseDownloadDrain {
+  private final int myMaxSize;
+  // Guarded by myProcedures
+  private final List<DownloadProcedure<? super DBDrain>> myProcedures = Collections15.arrayList();
+  // Guarded by myProcedures
+  private boolean myClosed = false;
+  private final long myCreated = System.currentTimeMillis();
+  private long myStarted;
+  private DBResult<Object> myResult;
+
+  GroupDownloadDrain(SyncManagerImpl manager, DownloadProcedure<? super DBDrain> first, int maxSize) {
+    super(manager);
+    myMaxSize = maxSize;
+    myProcedures.add(first);
+  }
+
+  /**
+   * @return result of the group transaction, or null if the group does not accept more procedures
+   */
+  DBResult<Object> join(DownloadProcedure<? super DBDrain> procedure) {
+    synchronized (myProcedures) {
+      if (myClosed || myProcedures.size() >= myMaxSize) return null;
+      myProcedures.add(procedure);
+      return myResult;
+    }
+  }
+
+  @Override
+  public DBResult<Object> start() {
+    synchronized (myProcedures) {
+      myResult = super.start();
+      return myResult;
+    }
+  }
+
+  @Override
+  protected void performTransaction() throws DBOperationCancelledException {
+    List<DownloadProcedure<? super DBDrain>> procedures;
+    synchronized (myProcedures) {
+      myClosed = true;
+      procedures = Collections15.arrayList(myProcedures);
+    }
+    myStarted = System.currentTimeMillis();
+    for (DownloadProcedure<? super DBDrain> procedure : procedures) procedure.write(this);
+  }
+
+  @Override
+  protected void onTransactionFinished(DBResult<?> result) {
+    List<DownloadProcedure<? super DBDrain>> procedures;
+    synchronized (myProcedures) {
+      myClosed = true;
+      procedures = Collections15.arrayList(myProcedures);
+    }
+    getManager().groupFinished(this, result.isSuccessful());
+    if (myStarted > 0) {
+      long now = System.currentTimeMillis();
+      Log.debug("download group of " + procedures.size() + " waited " + (myStarted - myCreated) + "ms, written in " +
+        (now - myStarted) + "ms" + (result.isSuccessful() ? "" : " (failed)"));
+    }
+    for (DownloadProcedure<? super DBDrain> procedure : procedures) {
+      try {
+        procedure.onFinished(result);
+      } catch (RuntimeException e) {
+        Log.error(e);
+      }
+    }
+  }
+}
@@ -6,6 +6,7 @@
 import com.almworks.items.sync.*;
 import com.almworks.items.sync.impl.SyncSchema;
 import com.almworks.items.util.AttributeMap;
+import com.almworks.util.Env;
 import com.almworks.util.collections.*;
 import com.almworks.util.commons.Procedure;
 import com.almworks.util.exec.ThreadGate;
@@ -27,6 +28,12 @@ public class SyncManagerImpl implements SyncManager {
   private final SyncStartup myDatabase;
   private final ItemAutoMerge.Selector myOperationSelector;
   private final UploadLocks myUploadLocks = new UploadLocks(myModifiable);
+  // Guarded by myGroupLock
+  private GroupDownloadDrain myOpenGroup = null;
+  // Guarded by myGroupLock
+  private int myGroupSize = MAX_GROUP_SIZE;
+  private final Object myGroupLock = new Object();
+  private static final int MAX_GROUP_SIZE = Env.getInteger("items.sync.download.group", 1, 1000, 32);
 
   public SyncManagerImpl(Database database, ItemAutoMerge.Selector operationSelector) {
     myDatabase = new SyncStartup(database, this);
@@ -88,6 +95,29 @@ public DBResult<Object> writeDownloaded(DownloadProcedure<? super DBDrain> proce
     return new DownloadDrainImpl(this, procedure).start();
   }
 
+  @Override
+  public DBResult<Object> writeDownloadedGrouped(DownloadProcedure<? super DBDrain> procedure) {
+    synchronized (myGroupLock) {
+      if (myOpenGroup != null) {
+        DBResult<Object> result = myOpenGroup.join(procedure);
+        if (result != null) return result;
+      }
+      myOpenGroup = new GroupDownloadDrain(this, procedure, myGroupSize);
+      return myOpenGroup.start();
+    }
+  }
+
+  /**
+   * After a failure the group size drops to one, so a failing procedure does not fail others again. The size is
+   * doubled after each successful group.
+   */
+  void groupFinished(GroupDownloadDrain group, boolean successful) {
+    synchronized (myGroupLock) {
+      if (myOpenGroup == group) myOpenGroup = null;
+      myGroupSize = successful ? Math.min(MAX_GROUP_SIZE, myGroupSize * 2) : 1;
+    }
+  }
+
   @Override
   public void commitEdit(EditCommit commit) {
     if (commit == null) return;
@@ -115,6 +115,7 @@ static class Shadow extends BaseRead {
 
     Shadow(DBReader reader, long item, AttributeMap values, DBAttribute<AttributeMap> shadow) {
       super(reader, item);
+      // the copy shares values that are still encoded; getValue() decodes only the requested ones
       myValues = values.copy();
       myShadow = shadow;
     }
@@ -0,0 +1,90 @@
+package com.almworks.items.sync.edit;
+
+import com.almworks.items.api.*;
+import com.almworks.items.sync.DBDrain;
+import com.almworks.items.sync.DownloadProcedure;
+import com.almworks.items.sync.ItemVersionCreator;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+public class GroupDownloadTests extends SyncFixture {
+  public static final DBAttribute<String> TEXT = DBAttribute.String("test.text", "Text");
+
+  public void testGroupedInOneTransaction() throws InterruptedException, ExecutionException {
+    CountDownLatch release = blockWriteQueue();
+    Download[] downloads = {new Download("a"), new Download("b"), new Download("c")};
+    DBResult<?>[] results = new DBResult<?>[downloads.length];
+    for (int i = 0; i < downloads.length; i++) results[i] = myManager.writeDownloadedGrouped(downloads[i]);
+    release.countDown();
+    for (int i = 0; i < downloads.length; i++) {
+      results[i].waitForCompletion();
+      assertTrue(results[i].isSuccessful());
+      assertEquals(results[0].getCommitIcn(), results[i].getCommitIcn());
+      checkTrunk(downloads[i].myItem, TEXT, downloads[i].myText);
+    }
+  }
+
+  public void testFailureShrinksGroup() throws InterruptedException, ExecutionException {
+    CountDownLatch release = blockWriteQueue();
+    DBResult<?> failed = myManager.writeDownloadedGrouped(new Download(null));
+    Download good = new Download("a");
+    DBResult<?> goodResult = myManager.writeDownloadedGrouped(good);
+    release.countDown();
+    goodResult.waitForCompletion();
+    failed.waitForCompletion();
+    assertFalse(failed.isSuccessful());
+    assertFalse(goodResult.isSuccessful());
+
+    release = blockWriteQueue();
+    failed = myManager.writeDownloadedGrouped(new Download(null));
+    goodResult = myManager.writeDownloadedGrouped(good);
+    release.countDown();
+    goodResult.waitForCompletion();
+    failed.waitForCompletion();
+    assertFalse(failed.isSuccessful());
+    assertTrue(goodResult.isSuccessful());
+    checkTrunk(good.myItem, TEXT, "a");
+  }
+
+  private CountDownLatch blockWriteQueue() throws InterruptedException {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    db.writeBackground(new WriteTransaction<Object>() {
+      @Override
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new DBOperationCancelledException();
+        }
+        return null;
+      }
+    });
+    started.await();
+    return release;
+  }
+
+  private static class Download implements DownloadProcedure<DBDrain> {
+    private final String myText;
+    private long myItem;
+
+    public Download(String text) {
+      myText = text;
+    }
+
+    @Override
+    public void write(DBDrain drain) throws DBOperationCancelledException {
+      if (myText == null) throw new DBOperationCancelledException();
+      ItemVersionCreator creator = drain.createItem();
+      creator.setAlive();
+      creator.setValue(TEXT, myText);
+      myItem = creator.getItem();
+    }
+
+    @Override
+    public void onFinished(DBResult<?> result) {
+    }
+  }
+}
@@ -6,15 +6,27 @@
 import com.almworks.util.model.ScalarModel;
 import com.almworks.util.model.ScalarModelEvent;
 import org.almworks.util.detach.Lifecycle;
+import org.almworks.util.detach.Detach;
 import org.almworks.util.detach.Lifespan;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpConnectionManager;
+import org.jetbrains.annotations.*;
 
+import java.util.*;
+
+/**
+ * Loaders of one material may run in several threads at once. They share the HTTP client and its cookies, but
+ * each thread works for its own {@link HttpOperation}, with its own cancel flag and feedback handler.
+ */
 public class DefaultHttpMaterial implements HttpMaterial {
   private volatile HttpClient myHttpClient = null;
-  private FeedbackHandler myFeedbackHandler = null;
-  private ScalarModel<Boolean> myCancelFlag;
-  private final Lifecycle myCancelFlagDetach = new Lifecycle();
+  private final ThreadLocal<HttpOperation> myOperation = new ThreadLocal<HttpOperation>();
+  /**
+   * Operations of the threads, so that their cancel flags are detached on dispose
+   */
+  private final Set<HttpOperation> myOperations =
+    Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<HttpOperation, Boolean>()));
+  private volatile FeedbackHandler myDefaultFeedbackHandler = null;
   private final HttpClientProvider myHttpClientProvider;
   private String myCharset = null;
   private long myLastServerResponseTime = 0;
@@ -31,28 +43,69 @@ public DefaultHttpMaterial(HttpClientProvider httpClientProvider, HttpLoaderFact
   }
 
   public FeedbackHandler getFeedbackHandler() {
-    return myFeedbackHandler;
+    FeedbackHandler handler = getOperation().getFeedbackHandler();
+    return handler != null ? handler : myDefaultFeedbackHandler;
   }
 
   public void setFeedbackHandler(FeedbackHandler feedbackHandler) {
-    myFeedbackHandler = feedbackHandler;
+    getOperation().setFeedbackHandler(feedbackHandler);
+  }
+
+  public void setDefaultFeedbackHandler(FeedbackHandler feedbackHandler) {
+    myDefaultFeedbackHandler = feedbackHandler;
+  }
+
+  public HttpOperation getOperation() {
+    HttpOperation operation = myOperation.get();
+    if (operation == null) {
+      operation = new HttpOperation();
+      operation.addThread(Thread.currentThread());
+      myOperation.set(operation);
+      myOperations.add(operation);
+    }
+    return operation;
+  }
+
+  public Detach joinOperation(final HttpOperation operation) {
+    final HttpOperation previous = myOperation.get();
+    if (previous == operation)
+      return Detach.NOTHING;
+    final Thread thread = Thread.currentThread();
+    operation.addThread(thread);
+    myOperation.set(operation);
+    return new Detach() {
+      protected void doDetach() {
+        operation.removeThread(thread);
+        if (previous == null)
+          myOperation.remove();
+        else
+          myOperation.set(previous);
+      }
+    };
   }
 
   public HttpClient getHttpClient() {
-    if (myHttpClient == null) {
-      myHttpClient = myHttpClientProvider.createHttpClient();
-      if (myIgnoreProxy) {
-        myHttpClient.getHostConfiguration().setProxyHost(null);
+    HttpClient client = myHttpClient;
+    if (client != null)
+      return client;
+    // concurrent loaders must share the client and its cookies
+    synchronized (this) {
+      if (myHttpClient == null) {
+        client = myHttpClientProvider.createHttpClient();
+        if (myIgnoreProxy) {
+          client.getHostConfiguration().setProxyHost(null);
+        }
+//        JCO-757
+//        client.getState().setCookiePolicy(org.apache.commons.httpclient.cookie.CookiePolicy.COMPATIBILITY);
+        myHttpClient = client;
       }
-//      JCO-757      
-//      myHttpClient.getState().setCookiePolicy(org.apache.commons.httpclient.cookie.CookiePolicy.COMPATIBILITY);
+      return myHttpClient;
     }
-    return myHttpClient;
   }
 
   public void dispose() {
     try {
-      closeConnection();
+      closeConnections(null);
     } catch (Exception e) {
       // whatever
     }
@@ -66,37 +119,58 @@ public void dispose() {
       myHttpClient = null;
     }
 
-    myCancelFlagDetach.dispose();
+    HttpOperation[] operations;
+    synchronized (myOperations) {
+      operations = myOperations.toArray(new HttpOperation[myOperations.size()]);
+    }
+    for (HttpOperation operation : operations)
+      operation.getCancelFlagDetach().dispose();
   }
 
   public void setCancelFlag(Lifespan lifespan, ScalarModel<Boolean> cancelFlag) {
-    myCancelFlagDetach.cycle();
-    myCancelFlag = cancelFlag;
+    final HttpOperation operation = getOperation();
+    Lifecycle cancelFlagDetach = operation.getCancelFlagDetach();
+    cancelFlagDetach.cycle();
+    operation.setCancelFlag(cancelFlag);
     if (cancelFlag != null) {
       ScalarModel.Adapter<Boolean> listener = new ScalarModel.Adapter<Boolean>() {
         public void onScalarChanged(ScalarModelEvent<Boolean> event) {
           Boolean b = event.getNewValue();
           if (b != null && b)
-            closeConnection();
+            closeConnections(operation.getThreads());
         }
       };
-      myCancelFlag.getEventSource().addListener(myCancelFlagDetach.lifespan(), ThreadGate.LONG(this), listener);
-      lifespan.add(myCancelFlagDetach.getCurrentCycleDetach());
+      cancelFlag.getEventSource().addListener(cancelFlagDetach.lifespan(), ThreadGate.LONG(this), listener);
+      lifespan.add(cancelFlagDetach.getCurrentCycleDetach());
     }
   }
 
   public ScalarModel<Boolean> getCancelFlag() {
-    return myCancelFlag;
+    return getOperation().getCancelFlag();
   }
 
+  /**
+   * Closes connections of the current operation, aborting its requests.
+   */
   public void closeConnection() {
+    closeConnections(getOperation().getThreads());
+  }
+
+  /**
+   * @param threads threads whose connections are closed, null for all
+   */
+  private void closeConnections(@Nullable Collection<Thread> threads) {
     HttpClient httpClient = myHttpClient;
     if (httpClient == null) {
       return;
     }
     HttpConnectionManager manager = httpClient.getHttpConnectionManager();
-    if (manager instanceof ExtendedHttpConnectionManager)
+    if (!(manager instanceof ExtendedHttpConnectionManager))
+      return;
+    if (threads == null)
       ((ExtendedHttpConnectionManager) manager).closeConnection();
+    else
+      ((ExtendedHttpConnectionManager) manager).closeConnections(threads);
   }
 
   public void checkCancelled() throws HttpCancelledException {
@@ -105,11 +179,7 @@ public void checkCancelled() throws HttpCancelledException {
   }
 
   public boolean isCancelled() {
-    ScalarModel<Boolean> flag = getCancelFlag();
-    if (flag == null)
-      return false;
-    Boolean b = flag.getValue();
-    return b != null && b.booleanValue();
+    return getOperation().isCancelled();
   }
 
   public String getCharset() {
@@ -56,6 +56,10 @@ public byte[] transferToBytes(StreamTransferTracker transferTracker)
             return stream.toByteArray();
           }
 
+          public Reader transferToReader() throws IOException {
+            return new DecodingReader(getContentStream(), IOUtils.DEFAULT_CHARSET, null);
+          }
+
           public InputStream getContentStream() {
             try {
               if (myStream == null)
@@ -82,6 +86,10 @@ public long getContentLength() {
             return -1;
           }
 
+          public int getStatusCode() {
+            return 200;
+          }
+
           @Nullable
           public URI getLastURI() {
             return null;
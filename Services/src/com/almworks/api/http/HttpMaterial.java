@@ -1,6 +1,7 @@
 package com.almworks.api.http;
 
 import com.almworks.util.model.ScalarModel;
+import org.almworks.util.detach.Detach;
 import org.almworks.util.detach.Lifespan;
 import org.apache.commons.httpclient.HttpClient;
 
@@ -13,20 +14,47 @@ public interface HttpMaterial {
 
   String getCharset();
 
+  /**
+   * @return feedback handler of the current operation, or the default one if the operation has none
+   */
   FeedbackHandler getFeedbackHandler();
 
   HttpClient getHttpClient();
 
   long getLastServerResponseTime();
 
+  /**
+   * @return true if the current operation is cancelled
+   */
   boolean isCancelled();
 
+  /**
+   * Sets the cancel flag of the current operation. When the flag is raised, connections of the operation are closed.
+   */
   void setCancelFlag(Lifespan lifespan, ScalarModel<Boolean> cancelFlag);
 
   void setCharset(String charset);
 
+  /**
+   * Sets the feedback handler of the current operation.
+   */
   void setFeedbackHandler(FeedbackHandler feedbackHandler);
 
+  /**
+   * Sets the feedback handler of the operations that have none.
+   */
+  void setDefaultFeedbackHandler(FeedbackHandler feedbackHandler);
+
+  /**
+   * @return operation that the current thread works for
+   */
+  HttpOperation getOperation();
+
+  /**
+   * Makes the current thread work for the operation of another thread, until the result is detached.
+   */
+  Detach joinOperation(HttpOperation operation);
+
   void setLastServerResponseTime(long time);
 
   void setIgnoreProxy(boolean ignoreProxy);
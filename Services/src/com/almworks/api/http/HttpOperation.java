@@ -0,0 +1,72 @@
+package com.almworks.api.http;
+
+import com.almworks.util.model.ScalarModel;
+import org.almworks.util.Collections15;
+import org.almworks.util.detach.Lifecycle;
+import org.jetbrains.annotations.*;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Cancel flag and feedback handler of an operation of an {@link HttpMaterial}. Each thread that uses a material works
+ * for its own operation, unless it {@link HttpMaterial#joinOperation joins} the operation of another thread. When
+ * the operation is cancelled, connections of all its threads are closed, and only of them.
+ */
+public final class HttpOperation {
+  private final Set<Thread> myThreads = Collections15.hashSet();
+  private final Lifecycle myCancelFlagDetach = new Lifecycle();
+  private volatile ScalarModel<Boolean> myCancelFlag;
+  private volatile FeedbackHandler myFeedbackHandler;
+
+  HttpOperation() {
+  }
+
+  @Nullable
+  public ScalarModel<Boolean> getCancelFlag() {
+    return myCancelFlag;
+  }
+
+  @Nullable
+  public FeedbackHandler getFeedbackHandler() {
+    return myFeedbackHandler;
+  }
+
+  public boolean isCancelled() {
+    ScalarModel<Boolean> flag = myCancelFlag;
+    if (flag == null)
+      return false;
+    Boolean b = flag.getValue();
+    return b != null && b;
+  }
+
+  void setCancelFlag(ScalarModel<Boolean> cancelFlag) {
+    myCancelFlag = cancelFlag;
+  }
+
+  void setFeedbackHandler(FeedbackHandler feedbackHandler) {
+    myFeedbackHandler = feedbackHandler;
+  }
+
+  Lifecycle getCancelFlagDetach() {
+    return myCancelFlagDetach;
+  }
+
+  void addThread(Thread thread) {
+    synchronized (myThreads) {
+      myThreads.add(thread);
+    }
+  }
+
+  void removeThread(Thread thread) {
+    synchronized (myThreads) {
+      myThreads.remove(thread);
+    }
+  }
+
+  List<Thread> getThreads() {
+    synchronized (myThreads) {
+      return Collections15.arrayList(myThreads);
+    }
+  }
+}
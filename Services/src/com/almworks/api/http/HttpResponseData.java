@@ -7,6 +7,7 @@
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.Reader;
 import java.util.Map;
 
 public interface HttpResponseData {
@@ -28,6 +29,11 @@ public interface HttpResponseData {
    */
   String getFullContentType();
 
+  /**
+   * @return HTTP status of the response
+   */
+  int getStatusCode();
+
   /**
    * @return known content length (from headers), or negative value if content is not known
    */
@@ -39,6 +45,12 @@ public interface HttpResponseData {
 
   byte[] transferToBytes(StreamTransferTracker transferTracker) throws IOException;
 
+  /**
+   * @return reader of the content, decoded the same way as by {@link #transferToString}; the content is not
+   * collected in memory. The reader must be closed.
+   */
+  Reader transferToReader() throws IOException;
+
   @NotNull
   Map<String, String> getResponseHeaders();
 
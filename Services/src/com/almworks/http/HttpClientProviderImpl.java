@@ -4,11 +4,14 @@
 import com.almworks.api.http.HttpProxyInfo;
 import com.almworks.util.Env;
 import com.almworks.util.GlobalProperties;
+import com.almworks.util.http.ExtendedHttpConnectionManager;
+import com.almworks.util.http.HttpConnectionPool;
 import org.almworks.util.Log;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.cookie.CookiePolicy;
 import org.apache.commons.httpclient.params.*;
 import org.apache.commons.httpclient.protocol.*;
+import org.jetbrains.annotations.*;
 
 import javax.net.ssl.*;
 
@@ -17,6 +20,8 @@ public class HttpClientProviderImpl implements HttpClientProvider {
   private static final int SOCKET_TIMEOUT = getSocketTimeout();
   private static final String IP_RESOLUTION_POSITIVE_CACHE_SECONDS = "60";
   private static final String IP_RESOLUTION_NEGATIVE_CACHE_SECONDS = "10";
+  private static final int DEFAULT_CONNECTIONS_PER_HOST = 4;
+  private static final int DEFAULT_IDLE_TIMEOUT = 30000;
 
   private static int getSocketTimeout() {
     int timeout = DEFAULT_TIMEOUT;
@@ -38,8 +43,17 @@ private static int getSocketTimeout() {
 
   private final HttpProxyInfo myHttpProxyInfo;
 
+  /**
+   * Keep-alive connections shared by the created clients, null if disabled
+   */
+  @Nullable
+  private final HttpConnectionPool myPool;
+
   public HttpClientProviderImpl(HttpProxyInfo httpProxyInfo) {
     myHttpProxyInfo = httpProxyInfo;
+    myPool = Env.getBoolean(GlobalProperties.DISABLE_HTTP_POOL) ? null : new HttpConnectionPool(
+      Env.getInteger(GlobalProperties.HTTP_CONNECTIONS_PER_HOST, 1, 100, DEFAULT_CONNECTIONS_PER_HOST),
+      Env.getInteger(GlobalProperties.HTTP_IDLE_TIMEOUT, 0, Integer.MAX_VALUE, DEFAULT_IDLE_TIMEOUT));
   }
 
   public HttpClient createHttpClient() {
@@ -47,7 +61,7 @@ public HttpClient createHttpClient() {
     installProtocols();
     installCookiePolicy();
     installNetworkParameters();
-    MyHttpClient httpClient = new MyHttpClient();
+    MyHttpClient httpClient = new MyHttpClient(new ExtendedHttpConnectionManager(myPool));
     httpClient.watchProxy(myHttpProxyInfo);
     HttpConnectionManagerParams params = httpClient.getHttpConnectionManager().getParams();
     params.setConnectionTimeout(SOCKET_TIMEOUT);
@@ -15,6 +15,7 @@
 import org.apache.commons.httpclient.util.DateUtil;
 import org.jetbrains.annotations.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
@@ -638,11 +639,17 @@ private void handleFailedStatus(int statusCode, String statusText) throws HttpCo
   @Nullable
   private HttpResponseData createReply(HttpMethodExecutor executor) throws IOException {
     InputStream content = executor.getResponseBodyAsStream();
+    int statusCode = executor.getStatusCode();
     if (content == null) {
-      Log.warn("got null input stream", new IOException("got null input stream"));
-      return null;
+      if (statusCode != HttpStatus.SC_NOT_MODIFIED) {
+        Log.warn("got null input stream", new IOException("got null input stream"));
+        return null;
+      }
+      // conditional request, the response has no body
+      content = new ByteArrayInputStream(Const.EMPTY_BYTES);
     }
     HttpResponseDataImpl reply = new HttpResponseDataImpl(executor);
+    reply.setStatusCode(statusCode);
     setResponseCharset(reply, executor);
     setServerTime(executor);
     setContentType(reply, executor);
@@ -6,6 +6,7 @@
 import org.almworks.util.Collections15;
 import org.almworks.util.Log;
 import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.httpclient.URI;
 import org.jetbrains.annotations.*;
 
@@ -22,6 +23,7 @@ public class HttpResponseDataImpl implements HttpResponseData {
   private String myFullContentType;
   private String myContentFilename;
   private long myContentLength = -1;
+  private int myStatusCode = HttpStatus.SC_OK;
   private HashMap<String, String> myResponseHeaders = null;
 
   @Nullable
@@ -59,6 +61,33 @@ public synchronized String transferToString(StringTransferTracker tracker) throw
     }
   }
 
+  public synchronized Reader transferToReader() throws IOException {
+    if (myString != null)
+      return new StringReader(myString);
+    assert myContentStream != null : this;
+    InputStream stream = myContentStream;
+    myContentStream = null;
+    if (stream == null) {
+      releaseConnection();
+      return new StringReader("");
+    }
+    try {
+      return new DecodingReader(stream, myCharset, myCharValidator) {
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            releaseConnection();
+          }
+        }
+      };
+    } catch (IOException e) {
+      IOUtils.closeStreamIgnoreExceptions(stream);
+      releaseConnection();
+      throw e;
+    }
+  }
+
   public byte[] transferToBytes(StreamTransferTracker transferTracker) throws IOException {
     try {
       ByteArrayOutputStream stream = new ByteArrayOutputStream();
@@ -129,6 +158,10 @@ public long getContentLength() {
     return myContentLength;
   }
 
+  public int getStatusCode() {
+    return myStatusCode;
+  }
+
   public String getContentFilename() {
     return myContentFilename;
   }
@@ -174,6 +207,10 @@ void setContentLength(long length) {
     myContentLength = length;
   }
 
+  void setStatusCode(int statusCode) {
+    myStatusCode = statusCode;
+  }
+
   static {
     assert Charset.isSupported(HttpLoader.DEFAULT_CHARSET);
   }
@@ -28,7 +28,11 @@ public class MyHttpClient extends HttpClient {
   private boolean myUseProxyAuth = false;
 
   public MyHttpClient() {
-    super(new ExtendedHttpConnectionManager());
+    this(new ExtendedHttpConnectionManager());
+  }
+
+  public MyHttpClient(ExtendedHttpConnectionManager manager) {
+    super(manager);
     myProxyInfo = HttpProxyInfo.NO_PROXY;
     refreshProxyInfo();
   }
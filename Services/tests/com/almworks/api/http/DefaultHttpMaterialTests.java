@@ -0,0 +1,98 @@
+package com.almworks.api.http;
+
+import com.almworks.api.http.auth.HttpAuthChallengeData;
+import com.almworks.api.http.auth.HttpAuthCredentials;
+import com.almworks.util.Pair;
+import com.almworks.util.exec.Context;
+import com.almworks.util.exec.LongEventQueue;
+import com.almworks.util.model.BasicScalarModel;
+import com.almworks.util.tests.BaseTestCase;
+import org.almworks.util.detach.Detach;
+import org.almworks.util.detach.Lifespan;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+public class DefaultHttpMaterialTests extends BaseTestCase {
+  private DefaultHttpMaterial myMaterial;
+  private int myGlobalContext;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    LongEventQueue.installToContext();
+    // cancel flags are set from other threads too
+    myGlobalContext = Context.globalize();
+    myMaterial = new DefaultHttpMaterial(HttpClientProvider.SIMPLE, new DumbHttpLoaderFactory());
+  }
+
+  protected void tearDown() throws Exception {
+    myMaterial.dispose();
+    myMaterial = null;
+    Context.unglobalize(myGlobalContext);
+    LongEventQueue.removeFromContext();
+    super.tearDown();
+  }
+
+  public void testCancelFlagOfOtherThreadIsNotSeen() throws InterruptedException {
+    BasicScalarModel<Boolean> cancelled = BasicScalarModel.createWithValue(Boolean.FALSE, true);
+    myMaterial.setCancelFlag(Lifespan.FOREVER, cancelled);
+    final AtomicReference<Boolean> other = new AtomicReference<Boolean>();
+    runInThread(new Runnable() {
+      public void run() {
+        myMaterial.setCancelFlag(Lifespan.FOREVER, BasicScalarModel.createWithValue(Boolean.FALSE, true));
+        other.set(myMaterial.isCancelled());
+      }
+    });
+    cancelled.setValue(Boolean.TRUE);
+    assertTrue(myMaterial.isCancelled());
+    assertEquals(Boolean.FALSE, other.get());
+  }
+
+  public void testJoinedOperation() throws InterruptedException {
+    final BasicScalarModel<Boolean> cancelled = BasicScalarModel.createWithValue(Boolean.TRUE, true);
+    myMaterial.setCancelFlag(Lifespan.FOREVER, cancelled);
+    final HttpOperation operation = myMaterial.getOperation();
+    final AtomicReference<Boolean> joined = new AtomicReference<Boolean>();
+    final AtomicReference<Boolean> left = new AtomicReference<Boolean>();
+    runInThread(new Runnable() {
+      public void run() {
+        Detach detach = myMaterial.joinOperation(operation);
+        joined.set(myMaterial.isCancelled() && myMaterial.getCancelFlag() == cancelled);
+        detach.detach();
+        left.set(myMaterial.isCancelled());
+      }
+    });
+    assertEquals(Boolean.TRUE, joined.get());
+    assertEquals(Boolean.FALSE, left.get());
+  }
+
+  public void testDefaultFeedbackHandler() throws InterruptedException {
+    final FeedbackHandler defaultHandler = new FeedbackHandler() {
+      public HttpAuthCredentials requestCredentials(HttpAuthChallengeData data,
+        HttpAuthCredentials failedCredentials, boolean quiet)
+      {
+        return null;
+      }
+
+      public Pair<HttpAuthCredentials, String> requestPreliminaryCredentials(String host, int port, boolean proxy) {
+        return null;
+      }
+    };
+    myMaterial.setDefaultFeedbackHandler(defaultHandler);
+    myMaterial.setFeedbackHandler(null);
+    assertSame(defaultHandler, myMaterial.getFeedbackHandler());
+    final AtomicReference<FeedbackHandler> other = new AtomicReference<FeedbackHandler>();
+    runInThread(new Runnable() {
+      public void run() {
+        other.set(myMaterial.getFeedbackHandler());
+      }
+    });
+    assertSame(defaultHandler, other.get());
+  }
+
+  private static void runInThread(Runnable runnable) throws InterruptedException {
+    Thread thread = new Thread(runnable);
+    thread.start();
+    thread.join(5000);
+    assertFalse(thread.isAlive());
+  }
+}
@@ -359,6 +359,52 @@ public void rearrange(int fromIndex, List<T> rearranged) {
     fireRearrange(new SortSublistEvent(fromIndex, fromIndex + length - 1, rearranged, oldSublist, 0));
   }
 
+  /**
+   * Replaces elements starting from fromIndex with the rearranged ones, like {@link #rearrange(int, List)}, when
+   * the caller knows where each element goes.
+   *
+   * @param newIndexes for each replaced element, its index in rearranged
+   */
+  public void rearrange(int fromIndex, List<T> rearranged, int[] newIndexes) {
+    int length = rearranged.size();
+    assert newIndexes.length == length : newIndexes.length + " " + length;
+    List<T> sublist = myElements.subList(fromIndex, fromIndex + length);
+    assert verifyPermutation(sublist, rearranged, newIndexes);
+    for (int i = 0; i < length; i++) {
+      sublist.set(i, rearranged.get(i));
+    }
+    fireRearrange(new PermutationEvent(fromIndex, fromIndex + length - 1, newIndexes, 0));
+  }
+
+  private static <T> boolean verifyPermutation(List<T> sublist, List<T> rearranged, int[] newIndexes) {
+    for (int i = 0; i < newIndexes.length; i++) {
+      assert sublist.get(i) == rearranged.get(newIndexes[i]) : i + " " + newIndexes[i];
+    }
+    return true;
+  }
+
+  private static class PermutationEvent extends RearrangeEvent {
+    private final int myFromIndex;
+    private final int[] myNewIndexes;
+    private final int myTranslateIndex;
+
+    public PermutationEvent(int index0, int index1, int[] newIndexes, int translateIndex) {
+      super(index0, index1, translateIndex);
+      myFromIndex = index0;
+      myNewIndexes = newIndexes;
+      myTranslateIndex = translateIndex;
+    }
+
+    protected int privateGetNewIndex(int oldIndex) {
+      return myFromIndex + myNewIndexes[oldIndex - myFromIndex];
+    }
+
+    public AListEvent translateIndex(int diff) {
+      return new PermutationEvent(myFromIndex, myFromIndex + myNewIndexes.length - 1, myNewIndexes,
+        myTranslateIndex + diff);
+    }
+  }
+
   private class SortSublistEvent extends RearrangeEvent {
     private final List<T> mySublist;
     private final List<T> myOldCopy;
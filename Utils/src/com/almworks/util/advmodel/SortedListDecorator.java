@@ -127,36 +127,149 @@ public void onRemove(int index, int length, RemovedEvent event) {
   }
 
   public void onListRearranged(AListEvent event) {
-    List<int[]> relocations = Collections15.arrayList();
-    int minImageIndex = 0;
-    int maxImageIndex = myImage.getSize() - 1;
-    for (int i = event.getLowAffectedIndex(); i <= event.getHighAffectedIndex(); i++) {
-      final int oldIndex = i;
-      int newIndex = event.getNewIndex(oldIndex);
-      if (newIndex == oldIndex)
+    int[] imageIndexes = getImageIndexes();
+    BitSet affected = new BitSet();
+    int high = Math.min(event.getHighAffectedIndex(), imageIndexes.length - 1);
+    for (int i = event.getLowAffectedIndex(); i <= high; i++) {
+      int newIndex = event.getNewIndex(i);
+      if (newIndex == i)
         continue;
-      int imageIndex = myImage.detectIndex(new Condition<ItemWrapper>() {
-        public boolean isAccepted(ItemWrapper value) {
-          return value.getSourceIndex() == oldIndex;
+      int imageIndex = imageIndexes[i];
+      affected.set(imageIndex);
+      myImage.getAt(imageIndex).setSourceIndex(newIndex);
+    }
+    if (!affected.isEmpty())
+      resort(affected, false);
+  }
+
+  public void onItemsUpdated(UpdateEvent event) {
+    int[] imageIndexes = getImageIndexes();
+    BitSet affected = new BitSet();
+    int high = Math.min(event.getHighAffectedIndex(), imageIndexes.length - 1);
+    for (int i = event.getLowAffectedIndex(); i <= high; i++) {
+      if (!event.isUpdated(i))
+        continue;
+      int imageIndex = imageIndexes[i];
+      affected.set(imageIndex);
+      myImage.getAt(imageIndex).updateItem();
+    }
+    if (!affected.isEmpty())
+      resort(affected, true);
+  }
+
+  /**
+   * @return image index by source index
+   */
+  private int[] getImageIndexes() {
+    int size = myImage.getSize();
+    int[] r = new int[size];
+    for (int i = 0; i < size; i++)
+      r[myImage.getAt(i).getSourceIndex()] = i;
+    return r;
+  }
+
+  /**
+   * Puts affected elements back in order without sorting the whole image. Affected elements that are still in
+   * order with their neighbours stay; the rest are sorted and merged into the others by binary search. Each group
+   * of overlapping moves is reported as a separate rearrangement, so listeners see as changed only the rows between
+   * the old and the new places of moved elements.
+   *
+   * @param affected image indexes of the elements which source index or value has changed
+   * @param updated true if values have changed, so the affected elements are to be reported as updated
+   */
+  private void resort(BitSet affected, boolean updated) {
+    int size = myImage.getSize();
+    List<ItemWrapper<T>> remaining = Collections15.arrayList(size);
+    IntArray remainingIndexes = new IntArray(size);
+    IntArray moved = new IntArray();
+    ItemWrapper<T> previous = null;
+    for (int i = 0; i < size; i++) {
+      ItemWrapper<T> wrapper = myImage.getAt(i);
+      if (affected.get(i)) {
+        int next = affected.nextClearBit(i);
+        if ((previous != null && previous.compareTo(wrapper) >= 0) ||
+          (next < size && wrapper.compareTo(myImage.getAt(next)) >= 0))
+        {
+          moved.add(i);
+          continue;
         }
-      });
-      assert imageIndex != -1;
-      minImageIndex = Math.min(minImageIndex, imageIndex);
-      maxImageIndex = Math.max(maxImageIndex, imageIndex);
-      relocations.add(new int[] {imageIndex, newIndex});
+      }
+      remaining.add(wrapper);
+      remainingIndexes.add(i);
+      previous = wrapper;
+    }
+    int[] newIndexes = null;
+    if (moved.size() > 0) {
+      newIndexes = merge(remaining, remainingIndexes, moved);
+      fireMoves(newIndexes);
     }
-    if (!relocations.isEmpty()) {
-      for (Iterator<int[]> iterator = relocations.iterator(); iterator.hasNext();) {
-        int[] ints = iterator.next();
-        int imageIndex = ints[0];
-        myImage.getAt(imageIndex).setSourceIndex(ints[1]);
+    if (updated) {
+      BitSet updatedIndexes = new BitSet(size);
+      for (int i = affected.nextSetBit(0); i >= 0; i = affected.nextSetBit(i + 1))
+        updatedIndexes.set(newIndexes == null ? i : newIndexes[i]);
+      int i = updatedIndexes.nextSetBit(0);
+      while (i >= 0) {
+        int end = updatedIndexes.nextClearBit(i);
+        myImage.updateRange(i, end - 1);
+        i = updatedIndexes.nextSetBit(end);
       }
     }
-    myImage.sortOrUpdate(minImageIndex, maxImageIndex, Containers.comparablesComparator(), mySortPolicy);
+    assert Containers.isOrderValid(myImage.toList(), Containers.comparablesComparator());
   }
 
-  public void onItemsUpdated(UpdateEvent event) {
-    onListRearranged(event);
+  /**
+   * @return new image index by old image index
+   */
+  private int[] merge(List<ItemWrapper<T>> remaining, IntArray remainingIndexes, IntArray moved) {
+    Integer[] sorted = new Integer[moved.size()];
+    for (int i = 0; i < sorted.length; i++)
+      sorted[i] = moved.get(i);
+    Arrays.sort(sorted, new Comparator<Integer>() {
+      public int compare(Integer o1, Integer o2) {
+        return myImage.getAt(o1).compareTo(myImage.getAt(o2));
+      }
+    });
+    int[] newIndexes = new int[myImage.getSize()];
+    int newIndex = 0;
+    int from = 0;
+    for (Integer index : sorted) {
+      int place = Collections.binarySearch(remaining.subList(from, remaining.size()), myImage.getAt(index));
+      assert place < 0 : place;
+      place = from - place - 1;
+      for (; from < place; from++)
+        newIndexes[remainingIndexes.get(from)] = newIndex++;
+      newIndexes[index] = newIndex++;
+    }
+    for (; from < remaining.size(); from++)
+      newIndexes[remainingIndexes.get(from)] = newIndex++;
+    return newIndexes;
+  }
+
+  /**
+   * Applies the permutation to the image by independent segments, each being rearranged within itself.
+   */
+  private void fireMoves(int[] newIndexes) {
+    List<ItemWrapper<T>> image = Collections15.arrayList(myImage.toList());
+    int start = 0;
+    int maxNewIndex = -1;
+    for (int i = 0; i < newIndexes.length; i++) {
+      maxNewIndex = Math.max(maxNewIndex, newIndexes[i]);
+      if (maxNewIndex != i)
+        continue;
+      if (i > start) {
+        int length = i - start + 1;
+        List<ItemWrapper<T>> rearranged = Collections15.arrayList(length);
+        for (int j = 0; j < length; j++)
+          rearranged.add(null);
+        int[] segment = new int[length];
+        for (int j = 0; j < length; j++) {
+          segment[j] = newIndexes[start + j] - start;
+          rearranged.set(segment[j], image.get(start + j));
+        }
+        myImage.rearrange(start, rearranged, segment);
+      }
+      start = i + 1;
+    }
   }
 
   public void forceUpdateAt(int index) {
@@ -203,7 +316,7 @@ else if (sourceIndex > lastIndex)
   }
 
   private static class ItemWrapper<T> implements Comparable<ItemWrapper<T>> {
-    private final T myItem;
+    private T myItem;
     private int mySourceIndex;
     private final SortedListDecorator<T> myDecorator;
 
@@ -230,6 +343,10 @@ public int getSourceIndex() {
       return mySourceIndex;
     }
 
+    public void updateItem() {
+      myItem = myDecorator.mySource.getAt(mySourceIndex);
+    }
+
     public void setSourceIndex(int newIndex) {
       mySourceIndex = newIndex;
     }
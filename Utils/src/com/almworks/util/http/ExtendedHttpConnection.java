@@ -5,6 +5,7 @@
 import org.almworks.util.Failure;
 import org.almworks.util.RuntimeInterruptedException;
 import org.apache.commons.httpclient.*;
+import org.jetbrains.annotations.*;
 import util.concurrent.SynchronizedBoolean;
 
 import java.io.IOException;
@@ -12,8 +13,16 @@
 public class ExtendedHttpConnection extends HttpConnection {
   private static boolean NO_GUARDING = Env.getBoolean("no.connection.guard", false);
 
+  @Nullable
+  private final HttpConnectionPool myPool;
+
   public ExtendedHttpConnection(HostConfiguration hostConfiguration) {
+    this(hostConfiguration, null);
+  }
+
+  ExtendedHttpConnection(HostConfiguration hostConfiguration, @Nullable HttpConnectionPool pool) {
     super(hostConfiguration);
+    myPool = pool;
   }
 
   public synchronized void open() throws IOException {
@@ -52,7 +61,24 @@ public Void run() throws IOException {
     }
   }
 
+  public void tunnelCreated() throws IllegalStateException, IOException {
+    super.tunnelCreated();
+    opened(true);
+  }
+
   private void performOpen() throws IOException {
     super.open();
+    opened(false);
+  }
+
+  private void opened(boolean tunnel) throws IOException {
+    if (myPool == null)
+      return;
+    try {
+      myPool.onOpened(this, getSocket(), tunnel);
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
   }
 }
@@ -1,39 +1,238 @@
 package com.almworks.util.http;
 
+import org.almworks.util.Collections15;
+import org.almworks.util.Failure;
+import org.almworks.util.RuntimeInterruptedException;
 import org.apache.commons.httpclient.*;
+import org.jetbrains.annotations.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Connection manager of an HTTP client that may be used by several threads at once. With a {@link HttpConnectionPool
+ * pool}, each thread leases its own connection. Without one, there is a single connection, and threads take turns:
+ * a thread waits until the request of another thread has released the connection.
+ */
 public class ExtendedHttpConnectionManager extends SimpleHttpConnectionManager {
   private final InfiniteOperationGuard myExtendedConnector = new InfiniteOperationGuard();
 
+  @Nullable
+  private final HttpConnectionPool myPool;
+
+  /**
+   * Connections leased from the pool, by the thread that leased them
+   */
+  private final Map<Thread, HttpConnection> myLeased = Collections15.hashMap();
+
+  private final Object myLock = new Object();
+  /**
+   * Without a pool, the thread whose request uses the single connection
+   */
+  @Nullable
+  private Thread myOwner;
+  private final Set<Thread> myWaiting = Collections15.hashSet();
+  private final Set<Thread> myAborted = Collections15.hashSet();
+
+  public ExtendedHttpConnectionManager() {
+    this(null);
+  }
+
+  /**
+   * @param pool shared connections to use instead of the single own connection; with a pool, the manager may be
+   * used by several threads at once
+   */
+  public ExtendedHttpConnectionManager(@Nullable HttpConnectionPool pool) {
+    myPool = pool;
+  }
+
+  /**
+   * Closes the connections that are in use, aborting their requests. Idle pooled connections are kept.
+   */
   public void closeConnection() {
-    HttpConnection connection = httpConnection;
-    try {
-      super.releaseConnection(connection);
-    } catch (Exception e) {
-      // ignore
+    closeConnections(null);
+  }
+
+  /**
+   * Closes the connections that are used by the threads, aborting their requests and their waiting for a
+   * connection. Connections of other threads are not affected.
+   *
+   * @param threads threads whose connections are closed, null for all
+   */
+  public void closeConnections(@Nullable Collection<Thread> threads) {
+    if (myPool != null) {
+      List<HttpConnection> leased = Collections15.arrayList();
+      synchronized (myLeased) {
+        for (Iterator<Map.Entry<Thread, HttpConnection>> ii = myLeased.entrySet().iterator(); ii.hasNext();) {
+          Map.Entry<Thread, HttpConnection> e = ii.next();
+          if (threads == null || threads.contains(e.getKey())) {
+            leased.add(e.getValue());
+            ii.remove();
+          }
+        }
+      }
+      myPool.abortWaiting(this, threads);
+      for (HttpConnection connection : leased) {
+        connection.close();
+        myPool.release(connection);
+      }
+      return;
+    }
+    synchronized (myLock) {
+      for (Thread thread : myWaiting)
+        if (threads == null || threads.contains(thread))
+          myAborted.add(thread);
+      myLock.notifyAll();
+      if (threads != null && !threads.contains(myOwner))
+        return;
     }
+    HttpConnection connection = httpConnection;
+    releaseSingleConnection(connection, true);
     if (connection != null) {
       connection.close();
     }
   }
 
   public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout) {
+    if (myPool != null)
+      return leaseConnection(hostConfiguration, timeout);
+    acquireConnection(timeout);
     if (httpConnection == null) {
       httpConnection = new ExtendedHttpConnection(hostConfiguration);
       httpConnection.setHttpConnectionManager(this);
       httpConnection.getParams().setDefaults(getParams());
     }
-    releaseConnection(httpConnection);
+    super.releaseConnection(httpConnection);
     return super.getConnectionWithTimeout(hostConfiguration, timeout);
   }
 
+  /**
+   * Waits until no other thread uses the single connection.
+   *
+   * @param timeout milliseconds to wait, 0 to wait forever
+   * @throws RuntimeInterruptedException if the wait is aborted
+   */
+  private void acquireConnection(long timeout) {
+    Thread thread = Thread.currentThread();
+    long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+    synchronized (myLock) {
+      while (myOwner != null && myOwner != thread) {
+        long wait = deadline == 0 ? 0 : deadline - System.currentTimeMillis();
+        if (deadline != 0 && wait <= 0)
+          throw new Failure(new ConnectionPoolTimeoutException("Timeout waiting for connection"));
+        myWaiting.add(thread);
+        try {
+          myLock.wait(wait);
+        } catch (InterruptedException e) {
+          throw new RuntimeInterruptedException(e);
+        } finally {
+          myWaiting.remove(thread);
+        }
+        if (myAborted.remove(thread))
+          throw new RuntimeInterruptedException(new InterruptedException("aborted waiting for connection"));
+      }
+      myOwner = thread;
+    }
+  }
+
+  /**
+   * Like the single connection, a pooled connection that the thread has not released is reused by the thread if
+   * it goes to the same host.
+   */
+  private HttpConnection leaseConnection(HostConfiguration hostConfiguration, long timeout) {
+    assert myPool != null;
+    Thread thread = Thread.currentThread();
+    HttpConnection previous;
+    synchronized (myLeased) {
+      previous = myLeased.remove(thread);
+    }
+    if (previous != null) {
+      finishLastResponse(previous);
+      if (hostConfiguration.hostEquals(previous) && hostConfiguration.proxyEquals(previous)) {
+        synchronized (myLeased) {
+          myLeased.put(thread, previous);
+        }
+        return previous;
+      }
+      myPool.release(previous);
+    }
+    ExtendedHttpConnection connection;
+    try {
+      connection = myPool.lease(hostConfiguration, timeout, this);
+    } catch (ConnectionPoolTimeoutException e) {
+      throw new Failure(e);
+    }
+    connection.setHttpConnectionManager(this);
+    connection.getParams().setDefaults(getParams());
+    synchronized (myLeased) {
+      myLeased.put(thread, connection);
+    }
+    return connection;
+  }
+
+  public void releaseConnection(HttpConnection connection) {
+    if (myPool == null) {
+      releaseSingleConnection(connection, false);
+      return;
+    }
+    boolean leased = false;
+    synchronized (myLeased) {
+      for (Map.Entry<Thread, HttpConnection> e : myLeased.entrySet()) {
+        if (e.getValue() == connection) {
+          myLeased.remove(e.getKey());
+          leased = true;
+          break;
+        }
+      }
+    }
+    if (leased) {
+      finishLastResponse(connection);
+      myPool.release(connection);
+    }
+  }
+
+  /**
+   * @param force if false, the connection is given to the next thread only when released by its owner, so that a
+   * late release of an aborted request does not let two threads use it at once
+   */
+  private void releaseSingleConnection(HttpConnection connection, boolean force) {
+    synchronized (myLock) {
+      if (!force && myOwner != Thread.currentThread())
+        return;
+      try {
+        super.releaseConnection(connection);
+      } catch (Exception e) {
+        // ignore
+      }
+      myOwner = null;
+      myLock.notifyAll();
+    }
+  }
+
   public InfiniteOperationGuard getConnector() {
     return myExtendedConnector;
   }
 
-
   public void closeIdleConnections(long idleTimeout) {
+    if (myPool != null) {
+      // pooled connections are shared with other clients, so only those idle past the pool's timeout are closed
+      myPool.closeIdleConnections(Math.max(idleTimeout, myPool.getIdleTimeout()));
+      return;
+    }
     if (httpConnection != null)
       super.closeIdleConnections(idleTimeout);
   }
+
+  private static void finishLastResponse(HttpConnection connection) {
+    InputStream last = connection.getLastResponseInputStream();
+    if (last != null) {
+      connection.setLastResponseInputStream(null);
+      try {
+        last.close();
+      } catch (IOException e) {
+        connection.close();
+      }
+    }
+  }
 }
@@ -0,0 +1,399 @@
+package com.almworks.util.http;
+
+import com.almworks.util.exec.ThreadFactory;
+import org.almworks.util.Collections15;
+import org.almworks.util.Log;
+import org.almworks.util.RuntimeInterruptedException;
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.jetbrains.annotations.*;
+
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keep-alive connections shared by {@link ExtendedHttpConnectionManager managers} of many HTTP clients. A connection
+ * released by one client stays open and is handed to the next client that talks to the same host through the same
+ * proxy, so sequential and concurrent loaders do not pay for a TCP connect and a TLS handshake on every request.
+ * <p>
+ * Number of connections to a host is limited; clients wait for a free connection when the limit is reached.
+ * Connections that have been idle longer than the idle timeout are closed, by a sweeper thread that runs while there
+ * are idle connections.
+ */
+public class HttpConnectionPool {
+  /**
+   * Idle connections are checked for being closed by the server before reuse, if they've been idle this long
+   */
+  private static final long STALE_CHECK_AFTER = 1000;
+
+  private final int myMaxPerHost;
+  private final long myIdleTimeout;
+
+  private final Object myLock = new Object();
+  /**
+   * Idle connections, the least recently released first
+   */
+  private final List<Idle> myIdle = Collections15.arrayList();
+  private final Set<HttpConnection> myLeased = Collections15.hashSet();
+  /**
+   * thread waiting for a free connection => owner it waits for
+   */
+  private final Map<Thread, Object> myWaiting = Collections15.hashMap();
+  private final Set<Thread> myAborted = Collections15.hashSet();
+  /**
+   * host key => number of open and leased connections
+   */
+  private final Map<String, Integer> myCounts = Collections15.hashMap();
+  @Nullable
+  private Thread mySweeper;
+
+  private long myOpened;
+  private long myReused;
+  private long myFullHandshakes;
+  private long myResumedHandshakes;
+
+  /**
+   * @param maxPerHost maximum number of connections to one host
+   * @param idleTimeout milliseconds after which an idle connection is closed
+   */
+  public HttpConnectionPool(int maxPerHost, long idleTimeout) {
+    myMaxPerHost = Math.max(1, maxPerHost);
+    myIdleTimeout = idleTimeout;
+  }
+
+  public long getIdleTimeout() {
+    return myIdleTimeout;
+  }
+
+  /**
+   * Takes an idle connection to the host or creates a new one. The connection is not necessarily open.
+   *
+   * @param timeout milliseconds to wait for a free connection when the host limit is reached, 0 to wait forever
+   * @param owner who leases the connection, see {@link #abortWaiting}
+   * @throws RuntimeInterruptedException if the wait is aborted
+   */
+  @NotNull
+  ExtendedHttpConnection lease(HostConfiguration hostConfiguration, long timeout, Object owner)
+    throws ConnectionPoolTimeoutException
+  {
+    String key = getKey(hostConfiguration.getHost(), hostConfiguration.getPort(),
+      hostConfiguration.getProtocol().getScheme());
+    long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+    List<HttpConnection> stale = null;
+    ExtendedHttpConnection result = null;
+    boolean checkStale = false;
+    synchronized (myLock) {
+      while (result == null) {
+        long now = System.currentTimeMillis();
+        stale = evictExpired(now, myIdleTimeout, stale);
+        for (int i = myIdle.size() - 1; i >= 0; i--) {
+          Idle idle = myIdle.get(i);
+          if (hostConfiguration.hostEquals(idle.myConnection) && hostConfiguration.proxyEquals(idle.myConnection)) {
+            myIdle.remove(i);
+            result = idle.myConnection;
+            checkStale = now - idle.myReleased >= STALE_CHECK_AFTER;
+            myReused++;
+            break;
+          }
+        }
+        if (result != null)
+          break;
+        int count = getCount(key);
+        if (count >= myMaxPerHost) {
+          // an idle connection to the host through another proxy makes room
+          Idle other = findIdle(key);
+          if (other != null) {
+            myIdle.remove(other);
+            stale = add(stale, other.myConnection);
+            decrement(key);
+            continue;
+          }
+        }
+        if (count < myMaxPerHost) {
+          result = new ExtendedHttpConnection(hostConfiguration, this);
+          myCounts.put(key, count + 1);
+          break;
+        }
+        long wait = deadline == 0 ? 0 : deadline - now;
+        if (deadline != 0 && wait <= 0)
+          throw new ConnectionPoolTimeoutException("Timeout waiting for connection to " + key);
+        Thread thread = Thread.currentThread();
+        myWaiting.put(thread, owner);
+        try {
+          myLock.wait(wait);
+        } catch (InterruptedException e) {
+          throw new RuntimeInterruptedException(e);
+        } finally {
+          myWaiting.remove(thread);
+        }
+        if (myAborted.remove(thread))
+          throw new RuntimeInterruptedException(new InterruptedException("aborted waiting for " + key));
+      }
+      myLeased.add(result);
+    }
+    close(stale);
+    if (checkStale) {
+      try {
+        if (result.closeIfStale())
+          Log.debug("HCP: closed by server " + key);
+      } catch (IOException e) {
+        Log.debug("HCP: stale " + key, e);
+        result.close();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns a leased connection to the pool. A closed connection is forgotten and frees its place.
+   */
+  void release(HttpConnection connection) {
+    List<HttpConnection> stale = null;
+    synchronized (myLock) {
+      if (!myLeased.remove(connection))
+        return;
+      if (connection.isOpen() && connection.getLastResponseInputStream() == null &&
+        connection instanceof ExtendedHttpConnection)
+      {
+        myIdle.add(new Idle((ExtendedHttpConnection) connection, System.currentTimeMillis()));
+        startSweeper();
+      } else {
+        decrement(getKey(connection));
+        stale = add(stale, connection);
+      }
+      stale = evictExpired(System.currentTimeMillis(), myIdleTimeout, stale);
+      myLock.notifyAll();
+    }
+    close(stale);
+  }
+
+  /**
+   * Makes threads that wait in {@link #lease} for the owner give up.
+   *
+   * @param threads threads that give up, null for all threads of the owner
+   */
+  void abortWaiting(Object owner, @Nullable Collection<Thread> threads) {
+    synchronized (myLock) {
+      boolean found = false;
+      for (Map.Entry<Thread, Object> e : myWaiting.entrySet()) {
+        if (e.getValue() == owner && (threads == null || threads.contains(e.getKey()))) {
+          myAborted.add(e.getKey());
+          found = true;
+        }
+      }
+      if (found)
+        myLock.notifyAll();
+    }
+  }
+
+  /**
+   * Closes connections that have been idle for at least idleTimeout milliseconds.
+   */
+  public void closeIdleConnections(long idleTimeout) {
+    List<HttpConnection> stale;
+    synchronized (myLock) {
+      stale = evictExpired(System.currentTimeMillis(), idleTimeout, null);
+    }
+    close(stale);
+  }
+
+  private void startSweeper() {
+    assert Thread.holdsLock(myLock);
+    if (mySweeper != null || myIdleTimeout <= 0)
+      return;
+    Thread sweeper = ThreadFactory.create("http-pool-sweeper", new Runnable() {
+      public void run() {
+        sweep();
+      }
+    });
+    sweeper.setDaemon(true);
+    mySweeper = sweeper;
+    sweeper.start();
+  }
+
+  /**
+   * Closes idle connections as they expire, until there are none.
+   */
+  private void sweep() {
+    while (true) {
+      List<HttpConnection> stale = null;
+      synchronized (myLock) {
+        if (myIdle.isEmpty()) {
+          mySweeper = null;
+          return;
+        }
+        long now = System.currentTimeMillis();
+        long wait = myIdle.get(0).myReleased + myIdleTimeout - now;
+        if (wait > 0) {
+          try {
+            myLock.wait(wait);
+          } catch (InterruptedException e) {
+            mySweeper = null;
+            return;
+          }
+        } else {
+          stale = evictExpired(now, myIdleTimeout, null);
+          myLock.notifyAll();
+        }
+      }
+      close(stale);
+    }
+  }
+
+  public int getIdleCount() {
+    synchronized (myLock) {
+      return myIdle.size();
+    }
+  }
+
+  public int getLeasedCount() {
+    synchronized (myLock) {
+      return myLeased.size();
+    }
+  }
+
+  /**
+   * @return number of connections that were opened, that is, of TCP connects
+   */
+  public long getOpenedCount() {
+    synchronized (myLock) {
+      return myOpened;
+    }
+  }
+
+  /**
+   * @return number of times an idle connection was given out instead of a new one
+   */
+  public long getReusedCount() {
+    synchronized (myLock) {
+      return myReused;
+    }
+  }
+
+  /**
+   * @return number of TLS handshakes that negotiated a new session
+   */
+  public long getFullHandshakeCount() {
+    synchronized (myLock) {
+      return myFullHandshakes;
+    }
+  }
+
+  /**
+   * @return number of TLS handshakes that resumed a cached session
+   */
+  public long getResumedHandshakeCount() {
+    synchronized (myLock) {
+      return myResumedHandshakes;
+    }
+  }
+
+  /**
+   * Called by a pooled connection when it has connected to the host or proxy, or has created a secure tunnel through
+   * a proxy. Completes the TLS handshake on a secure socket, so that it is accounted.
+   */
+  void onOpened(HttpConnection connection, @Nullable Socket socket, boolean tunnel) throws IOException {
+    Boolean resumed = null;
+    if (socket instanceof SSLSocket) {
+      long started = System.currentTimeMillis();
+      SSLSocket ssl = (SSLSocket) socket;
+      ssl.startHandshake();
+      resumed = ssl.getSession().getCreationTime() < started;
+    }
+    String stats;
+    synchronized (myLock) {
+      if (!tunnel)
+        myOpened++;
+      if (resumed != null) {
+        if (resumed)
+          myResumedHandshakes++;
+        else
+          myFullHandshakes++;
+      }
+      stats = toString();
+    }
+    Log.debug("HCP: " + (resumed == null ? "connected to " : resumed ? "resumed TLS session with " : "TLS handshake with ") +
+      getKey(connection) + " " + stats);
+  }
+
+  public String toString() {
+    synchronized (myLock) {
+      return "HCP[leased " + myLeased.size() + ", idle " + myIdle.size() + ", opened " + myOpened + ", reused " +
+        myReused + ", handshakes " + myFullHandshakes + " full/" + myResumedHandshakes + " resumed]";
+    }
+  }
+
+  private List<HttpConnection> evictExpired(long now, long idleTimeout,
+    @Nullable List<HttpConnection> stale)
+  {
+    for (Iterator<Idle> ii = myIdle.iterator(); ii.hasNext();) {
+      Idle idle = ii.next();
+      if (now - idle.myReleased < idleTimeout)
+        break;
+      ii.remove();
+      decrement(getKey(idle.myConnection));
+      stale = add(stale, idle.myConnection);
+    }
+    return stale;
+  }
+
+  @Nullable
+  private Idle findIdle(String key) {
+    for (Idle idle : myIdle)
+      if (key.equals(getKey(idle.myConnection)))
+        return idle;
+    return null;
+  }
+
+  private int getCount(String key) {
+    Integer count = myCounts.get(key);
+    return count == null ? 0 : count;
+  }
+
+  private void decrement(String key) {
+    int count = getCount(key) - 1;
+    if (count > 0)
+      myCounts.put(key, count);
+    else
+      myCounts.remove(key);
+  }
+
+  private static String getKey(HttpConnection connection) {
+    return getKey(connection.getHost(), connection.getPort(), connection.getProtocol().getScheme());
+  }
+
+  private static String getKey(String host, int port, String scheme) {
+    return scheme + "://" + host + ":" + port;
+  }
+
+  private static <T> List<T> add(@Nullable List<T> list, T element) {
+    if (list == null)
+      list = Collections15.arrayList();
+    list.add(element);
+    return list;
+  }
+
+  private static void close(@Nullable List<? extends HttpConnection> connections) {
+    if (connections != null)
+      for (HttpConnection connection : connections)
+        connection.close();
+  }
+
+
+  private static class Idle {
+    private final ExtendedHttpConnection myConnection;
+    private final long myReleased;
+
+    public Idle(ExtendedHttpConnection connection, long released) {
+      myConnection = connection;
+      myReleased = released;
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package com.almworks.util.io;
+
+/**
+ * Keeps a bounded part of a text that is appended in chunks: all of it while it is short, and its beginning and
+ * its end when it is long. The end is kept in a ring buffer.
+ */
+public class BoundedTextBuffer {
+  private final char[] myHead;
+  private final char[] myTail;
+  private int myHeadLength;
+  /**
+   * Position of the next char in the tail ring
+   */
+  private int myTailPosition;
+  private long myLength;
+
+  /**
+   * @param limit number of chars to keep; half of them is kept from the beginning of a long text and half from
+   * its end
+   */
+  public BoundedTextBuffer(int limit) {
+    int head = Math.max(1, limit / 2);
+    myHead = new char[head];
+    myTail = new char[Math.max(1, limit - head)];
+  }
+
+  public void append(char[] chars, int offset, int length) {
+    myLength += length;
+    int toHead = Math.min(length, myHead.length - myHeadLength);
+    if (toHead > 0) {
+      System.arraycopy(chars, offset, myHead, myHeadLength, toHead);
+      myHeadLength += toHead;
+      offset += toHead;
+      length -= toHead;
+    }
+    if (length > myTail.length) {
+      offset += length - myTail.length;
+      length = myTail.length;
+    }
+    while (length > 0) {
+      int n = Math.min(length, myTail.length - myTailPosition);
+      System.arraycopy(chars, offset, myTail, myTailPosition, n);
+      myTailPosition = (myTailPosition + n) % myTail.length;
+      offset += n;
+      length -= n;
+    }
+  }
+
+  public void append(String text) {
+    append(text.toCharArray(), 0, text.length());
+  }
+
+  /**
+   * @return number of chars appended
+   */
+  public long getLength() {
+    return myLength;
+  }
+
+  /**
+   * @return true if some of the text in the middle has been dropped
+   */
+  public boolean isTruncated() {
+    return myLength > myHead.length + myTail.length;
+  }
+
+  /**
+   * @return the text if it is not truncated, otherwise its beginning and its end with a note between them
+   */
+  public String toString() {
+    long tailLength = myLength - myHeadLength;
+    StringBuilder r = new StringBuilder((int) Math.min(myLength, myHead.length + myTail.length) + 64);
+    r.append(myHead, 0, myHeadLength);
+    if (tailLength <= 0)
+      return r.toString();
+    if (tailLength > myTail.length) {
+      r.append("\n\n[... ").append(tailLength - myTail.length).append(" chars skipped ...]\n\n");
+      r.append(myTail, myTailPosition, myTail.length - myTailPosition);
+      r.append(myTail, 0, myTailPosition);
+    } else {
+      int start = (int) ((myTailPosition - tailLength + myTail.length) % myTail.length);
+      if (start + tailLength <= myTail.length) {
+        r.append(myTail, start, (int) tailLength);
+      } else {
+        r.append(myTail, start, myTail.length - start);
+        r.append(myTail, 0, myTailPosition);
+      }
+    }
+    return r.toString();
+  }
+}
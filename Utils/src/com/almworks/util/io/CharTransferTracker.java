@@ -0,0 +1,12 @@
+package com.almworks.util.io;
+
+/**
+ * Tracker of a transfer that is not collected into a string. Instead of the whole text transferred so far, it is
+ * given each decoded chunk.
+ */
+public interface CharTransferTracker extends StringTransferTracker {
+  /**
+   * Is called when a chunk is transferred. IMPORTANT: DO NOT MODIFY the chars.
+   */
+  void onTransfer(char[] chars, int offset, int length);
+}
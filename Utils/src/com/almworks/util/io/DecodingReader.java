@@ -0,0 +1,51 @@
+package com.almworks.util.io;
+
+import org.almworks.util.Log;
+import org.jetbrains.annotations.*;
+
+import java.io.*;
+
+/**
+ * Reads characters from a stream the way {@link IOUtils#transferToString(InputStream, String, CharValidator)} does,
+ * without collecting them into a string: malformed input and characters rejected by the validator are replaced
+ * with '?'.
+ */
+public class DecodingReader extends Reader {
+  private static final char INVALID_CHAR_REPLACEMENT = '?';
+
+  private final Reader myReader;
+  @Nullable
+  private final CharValidator myValidator;
+
+  public DecodingReader(InputStream input, String charset, @Nullable CharValidator validator)
+    throws UnsupportedEncodingException
+  {
+    myReader = new InputStreamReader(input, IOUtils.createDecoder(charset));
+    myValidator = validator == CharValidator.ALL_VALID ? null : validator;
+  }
+
+  public int read(char[] buffer, int offset, int length) throws IOException {
+    int read;
+    try {
+      read = myReader.read(buffer, offset, length);
+    } catch (NullPointerException e) {
+      // thrown if the connection is closed concurrently, see IOUtils.readWorkaround()
+      Log.debug(e);
+      throw new IOException("read cancelled [NPE]");
+    } catch (IllegalStateException e) {
+      Log.debug(e);
+      throw new IOException("read cancelled [ISE]");
+    }
+    CharValidator validator = myValidator;
+    if (validator != null) {
+      for (int i = offset; i < offset + read; i++)
+        if (!validator.isValid(buffer[i]))
+          buffer[i] = INVALID_CHAR_REPLACEMENT;
+    }
+    return read;
+  }
+
+  public void close() throws IOException {
+    myReader.close();
+  }
+}
@@ -95,15 +95,7 @@ public static String transferToString(InputStream inputStream, String charset, C
     ReadableByteChannel input = Channels.newChannel(inputStream);
     ByteBuffer bytes = ByteBuffer.allocateDirect(BLOCK_SIZE);
     CharBuffer chars = CharBuffer.allocate(BLOCK_SIZE);
-    CharsetDecoder decoder;
-    try {
-      decoder = Charset.forName(charset).newDecoder();
-    } catch (IllegalArgumentException e) {
-      Log.warn("charset " + charset, e);
-      throw new UnsupportedEncodingException(charset);
-    }
-    decoder.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
-    decoder.replaceWith(INVALID_CHARS_REPLACEMENT);
+    CharsetDecoder decoder = createDecoder(charset);
 
     int totalRead = 0;
     while (true) {
@@ -140,6 +132,22 @@ public static String transferToString(InputStream inputStream, String charset, C
     return result.substring(0, result.length());
   }
 
+  /**
+   * @return decoder that replaces malformed and unmappable input
+   */
+  static CharsetDecoder createDecoder(String charset) throws UnsupportedEncodingException {
+    CharsetDecoder decoder;
+    try {
+      decoder = Charset.forName(charset).newDecoder();
+    } catch (IllegalArgumentException e) {
+      Log.warn("charset " + charset, e);
+      throw new UnsupportedEncodingException(charset);
+    }
+    decoder.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    decoder.replaceWith(INVALID_CHARS_REPLACEMENT);
+    return decoder;
+  }
+
   private static int readWorkaround(ReadableByteChannel input, ByteBuffer bytes) throws IOException {
     try {
       return input.read(bytes);
@@ -286,9 +294,12 @@ public static String md5sum(String data) throws NoSuchAlgorithmException, Unsupp
 
   public static String md5sum(byte[] dataBytes) throws NoSuchAlgorithmException {
     MessageDigest md5 = MessageDigest.getInstance("MD5");
-    byte[] digest = md5.digest(dataBytes);
+    return toHexString(md5.digest(dataBytes));
+  }
+
+  public static String toHexString(byte[] bytes) {
     StringBuilder b = new StringBuilder();
-    for (byte bt : digest) {
+    for (byte bt : bytes) {
       String s = Integer.toHexString(((int) bt) & 0xFF);
       if (s.length() == 1) {
         b.append('0');
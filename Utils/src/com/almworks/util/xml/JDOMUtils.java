@@ -9,6 +9,7 @@
 import org.jdom.*;
 import org.jdom.filter.AbstractFilter;
 import org.jdom.input.SAXBuilder;
+import org.jdom.input.SAXHandler;
 import org.jdom.output.Format;
 import org.jdom.output.XMLOutputter;
 import org.jetbrains.annotations.*;
@@ -71,6 +72,8 @@ public boolean isAccepted(Element p, Element c) {
     }
   };
 
+  private static final String XERCES_DRIVER = "org.apache.xerces.parsers.SAXParser";
+
   private static volatile boolean ourTriedXerces = false;
 
   private static volatile boolean ourUseXerces = false;
@@ -79,6 +82,31 @@ private JDOMUtils() {
   }
 
   public static SAXBuilder createBuilder() {
+    if (isXercesUsable())
+      return createXercesBuilder();
+    else
+      return new SAXBuilder();
+  }
+
+  /**
+   * Creates a builder that passes parsing events to the given handler instead of a fresh {@link SAXHandler}.
+   * Useful with {@link StreamingSAXHandler} to process large documents without building the whole tree.
+   */
+  public static SAXBuilder createBuilder(final SAXHandler handler) {
+    String driver = null;
+    if (isXercesUsable()) {
+      fixContextClassLoader();
+      driver = XERCES_DRIVER;
+    }
+    return new SAXBuilder(driver, false) {
+      @Override
+      protected SAXHandler createContentHandler() {
+        return handler;
+      }
+    };
+  }
+
+  private static boolean isXercesUsable() {
     if (!ourTriedXerces) {
       synchronized (JDOMUtils.class) {
         if (!ourTriedXerces) {
@@ -98,14 +126,15 @@ public static SAXBuilder createBuilder() {
         }
       }
     }
-
-    if (ourUseXerces)
-      return createXercesBuilder();
-    else
-      return new SAXBuilder();
+    return ourUseXerces;
   }
 
   private static SAXBuilder createXercesBuilder() {
+    fixContextClassLoader();
+    return new SAXBuilder(XERCES_DRIVER, false);
+  }
+
+  private static void fixContextClassLoader() {
     Thread thread = Thread.currentThread();
     ClassLoader loader = JDOMUtils.class.getClassLoader();
     assert loader != null;
@@ -115,7 +144,6 @@ private static SAXBuilder createXercesBuilder() {
       Log.debug("thread: " + Thread.currentThread(), new Throwable());
       thread.setContextClassLoader(loader);
     }
-    return new SAXBuilder("org.apache.xerces.parsers.SAXParser", false);
   }
 
   /**
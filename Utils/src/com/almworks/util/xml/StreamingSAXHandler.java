@@ -0,0 +1,69 @@
+package com.almworks.util.xml;
+
+import org.jdom.Element;
+import org.jdom.input.SAXHandler;
+import org.jetbrains.annotations.*;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+/**
+ * JDOM handler that builds the top-level children of the root element one by one. As soon as such child element is
+ * closed, it is detached from the document and passed to {@link #processElement}, so the document never holds more
+ * than one of them. The root element (with its attributes) is available via {@link #getDocument()} from the start.
+ * <p>
+ * If processing fails, parsing is stopped: the builder throws JDOMException and the original exception is
+ * available via {@link #getStopReason()}.
+ */
+public abstract class StreamingSAXHandler extends SAXHandler {
+  @Nullable
+  private final String myElementName;
+  private int myDepth;
+  private Exception myStopReason;
+
+  /**
+   * @param elementName name of the root's children to process, null to process all children
+   */
+  protected StreamingSAXHandler(@Nullable String elementName) {
+    myElementName = elementName;
+  }
+
+  protected abstract void processElement(@NotNull Element element) throws Exception;
+
+  @Nullable
+  public Exception getStopReason() {
+    return myStopReason;
+  }
+
+  /**
+   * @return depth of the current element, 1 for the root element
+   */
+  protected int getDepth() {
+    return myDepth;
+  }
+
+  @Override
+  public void startElement(String namespaceURI, String localName, String qName, Attributes atts)
+    throws SAXException
+  {
+    super.startElement(namespaceURI, localName, qName, atts);
+    myDepth++;
+  }
+
+  @Override
+  public void endElement(String namespaceURI, String localName, String qName) throws SAXException {
+    Element element = myDepth == 2 ? getCurrentElement() : null;
+    super.endElement(namespaceURI, localName, qName);
+    myDepth--;
+    if (element == null)
+      return;
+    element.detach();
+    if (myElementName != null && !myElementName.equals(element.getName()))
+      return;
+    try {
+      processElement(element);
+    } catch (Exception e) {
+      myStopReason = e;
+      throw new SAXException(e);
+    }
+  }
+}
@@ -4,7 +4,11 @@
 import com.almworks.util.tests.CollectionsCompare;
 import com.almworks.util.tests.GUITestCase;
 
+import org.almworks.util.Collections15;
+
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 /**
  * @author : Dyoma
@@ -130,4 +134,53 @@ public void onRemove(int index, int length, AListModel.RemovedEvent event) {
     });
     mySource.remove("1");
   }
+
+  public void testIncrementalResort() {
+    mySource.addAll("a", "c", "e", "g", "i");
+    myModel.setComparator(String.CASE_INSENSITIVE_ORDER);
+    final List<AListModel.AListEvent> events = Collections15.arrayList();
+    myModel.addListener(new AListModel.Adapter() {
+      public void onListRearranged(AListModel.AListEvent event) {
+        events.add(event);
+      }
+
+      public void onItemsUpdated(AListModel.UpdateEvent event) {
+        events.add(event);
+      }
+    });
+    mySource.replaceAt(1, "h");
+    CHECK.order(new String[] {"a", "e", "g", "h", "i"}, myModel.toList());
+    assertEquals(2, events.size());
+    AListModel.RearrangeEvent move = (AListModel.RearrangeEvent) events.get(0);
+    assertEquals(1, move.getLowAffectedIndex());
+    assertEquals(3, move.getHighAffectedIndex());
+    assertEquals(3, move.getNewIndex(1));
+    assertEquals(1, move.getNewIndex(2));
+    assertEquals(4, move.getNewIndex(4));
+    AListModel.UpdateEvent update = (AListModel.UpdateEvent) events.get(1);
+    assertEquals(3, update.getLowAffectedIndex());
+    assertEquals(3, update.getHighAffectedIndex());
+
+    events.clear();
+    mySource.replaceAt(3, "f");
+    CHECK.order(new String[] {"a", "e", "f", "h", "i"}, myModel.toList());
+    assertEquals(1, events.size());
+    assertTrue(((AListModel.UpdateEvent) events.get(0)).isUpdated(2));
+  }
+
+  public void testManyUpdates() {
+    Random random = new Random(239);
+    for (int i = 0; i < 2000; i++)
+      mySource.addElement(String.valueOf(random.nextInt(1000)));
+    myModel.setComparator(String.CASE_INSENSITIVE_ORDER);
+    for (int pass = 0; pass < 5; pass++) {
+      for (int i = 0; i < 300; i++)
+        mySource.replaceAt_NoFire(random.nextInt(mySource.getSize()), String.valueOf(random.nextInt(1000)));
+      mySource.updateAll();
+      List<String> expected = Collections15.arrayList(mySource.toList());
+      Collections.sort(expected, String.CASE_INSENSITIVE_ORDER);
+      CHECK.order(expected, myModel.toList());
+      assertTrue(myModel.verifyIntegrity());
+    }
+  }
 }
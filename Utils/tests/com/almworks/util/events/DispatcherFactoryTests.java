@@ -0,0 +1,123 @@
+package com.almworks.util.events;
+
+import com.almworks.util.tests.BaseTestCase;
+import org.almworks.util.Collections15;
+import org.almworks.util.detach.Lifespan;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+public class DispatcherFactoryTests extends BaseTestCase {
+  private final List<String> myCalls = Collections15.arrayList();
+
+  public void testGeneratedDispatcher() {
+    FireEventSupport<Wide> support = FireEventSupport.createSynchronized(Wide.class);
+    support.addStraightListener(Lifespan.FOREVER, new WideListener());
+    Wide dispatcher = support.getDispatcher();
+    assertTrue(dispatcher instanceof EventDispatcher);
+    assertTrue(DispatcherFactory.getInvoker(Wide.class).isGenerated());
+
+    dispatcher.none();
+    dispatcher.primitives(-1, Long.MAX_VALUE, 0.5, true);
+    dispatcher.many("a", 2, 3L, null, 'e', 6.5F);
+    assertEquals(0, dispatcher.value((byte) 7, (short) 8));
+    dispatcher.base(new int[] {1, 2});
+    dispatcher.inherited("x");
+    assertEquals(Arrays.asList("none", "primitives -1 " + Long.MAX_VALUE + " 0.5 true", "many a 2 3 null e 6.5",
+      "value 7 8", "base [1, 2]", "inherited x"), myCalls);
+  }
+
+  public void testSnapshotDispatcher() {
+    FireEventSupport<Wide> support = FireEventSupport.createSynchronized(Wide.class);
+    support.addStraightListener(Lifespan.FOREVER, new WideListener());
+    Wide snapshot = support.getDispatcherSnapshot();
+    assertTrue(snapshot instanceof EventDispatcher);
+    support.addStraightListener(Lifespan.FOREVER, new WideListener());
+    snapshot.many("a", 2, 3L, "d", 'e', 6.5F);
+    assertEquals(Arrays.asList("many a 2 3 d e 6.5"), myCalls);
+  }
+
+  public void testInterfaceWithHiddenTypesIsProxied() {
+    FireEventSupport<Hidden> support = FireEventSupport.createSynchronized(Hidden.class);
+    support.addStraightListener(Lifespan.FOREVER, new Hidden() {
+      public void hidden(int a, Secret b) {
+        myCalls.add("hidden " + a + " " + b.myValue);
+      }
+    });
+    Hidden dispatcher = support.getDispatcher();
+    assertTrue(Proxy.isProxyClass(dispatcher.getClass()));
+    assertFalse(DispatcherFactory.getInvoker(Hidden.class).isGenerated());
+    dispatcher.hidden(1, new Secret("b"));
+    support.getDispatcherSnapshot().hidden(2, new Secret("c"));
+    assertEquals(Arrays.asList("hidden 1 b", "hidden 2 c"), myCalls);
+  }
+
+  public void testDispatcherIsNotEqualToOthers() {
+    Wide dispatcher = FireEventSupport.createSynchronized(Wide.class).getDispatcher();
+    assertTrue(dispatcher.equals(dispatcher));
+    assertFalse(dispatcher.equals(FireEventSupport.createSynchronized(Wide.class).getDispatcher()));
+  }
+
+
+  public interface Base {
+    void base(int[] values);
+  }
+
+
+  public interface Wide extends Base {
+    void none();
+
+    void primitives(int i, long l, double d, boolean b);
+
+    void many(String a, int b, long c, Object d, char e, float f);
+
+    int value(byte b, short s);
+
+    default void inherited(String s) {
+      throw new UnsupportedOperationException(s);
+    }
+  }
+
+
+  public interface Hidden {
+    void hidden(int a, Secret b);
+  }
+
+
+  static class Secret {
+    private final String myValue;
+
+    public Secret(String value) {
+      myValue = value;
+    }
+  }
+
+
+  private class WideListener implements Wide {
+    public void base(int[] values) {
+      myCalls.add("base " + Arrays.toString(values));
+    }
+
+    public void none() {
+      myCalls.add("none");
+    }
+
+    public void primitives(int i, long l, double d, boolean b) {
+      myCalls.add("primitives " + i + " " + l + " " + d + " " + b);
+    }
+
+    public void many(String a, int b, long c, Object d, char e, float f) {
+      myCalls.add("many " + a + " " + b + " " + c + " " + d + " " + e + " " + f);
+    }
+
+    public int value(byte b, short s) {
+      myCalls.add("value " + b + " " + s);
+      return 1;
+    }
+
+    public void inherited(String s) {
+      myCalls.add("inherited " + s);
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package com.almworks.util.exec;
+
+import com.almworks.util.tests.BaseTestCase;
+import org.almworks.util.Collections15;
+import util.concurrent.SynchronizedBoolean;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ForkJoinLongEventQueueTests extends BaseTestCase {
+  private final LongEventQueueEnv myQueueEnv = new LongEventQueueEnv() {
+    public int getMaxThreads() {
+      return 4;
+    }
+
+    public boolean getForkJoin() {
+      return true;
+    }
+
+    public boolean getMetrics() {
+      return true;
+    }
+  };
+
+  private ForkJoinLongEventQueue myQueue;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    myQueue = (ForkJoinLongEventQueue) LongEventQueue.create(myQueueEnv);
+  }
+
+  protected void tearDown() throws Exception {
+    myQueue.shutdownGracefully();
+    myQueue = null;
+    super.tearDown();
+  }
+
+  public void testOrderPerKey() throws InterruptedException {
+    final int CHAINS = 8;
+    final int LENGTH = 200;
+    final List<List<Integer>> runs = Collections15.arrayList();
+    for (int i = 0; i < CHAINS; i++)
+      runs.add(Collections.synchronizedList(Collections15.<Integer>arrayList()));
+    final CountDownLatch done = new CountDownLatch(CHAINS * LENGTH);
+    for (int j = 0; j < LENGTH; j++) {
+      for (int i = 0; i < CHAINS; i++) {
+        final List<Integer> run = runs.get(i);
+        final int number = j;
+        myQueue.queued("" + i).execute(new Runnable() {
+          public void run() {
+            run.add(number);
+            done.countDown();
+          }
+        });
+      }
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    for (List<Integer> run : runs) {
+      assertEquals(LENGTH, run.size());
+      for (int j = 0; j < LENGTH; j++)
+        assertEquals(j, (int) run.get(j));
+    }
+    assertEquals(0, myQueue.getQueueDepth());
+    assertEquals(CHAINS * LENGTH, myQueue.getTaskCount());
+  }
+
+  public void testSlowKeyDoesNotBlockOthers() throws InterruptedException {
+    final SynchronizedBoolean released = new SynchronizedBoolean(false);
+    final SynchronizedBoolean afterSlow = new SynchronizedBoolean(false);
+    myQueue.queued("slow").execute(new Runnable() {
+      public void run() {
+        try {
+          released.waitForValue(true);
+        } catch (InterruptedException e) {
+          fail();
+        }
+      }
+    });
+    myQueue.queued("slow").execute(new Runnable() {
+      public void run() {
+        afterSlow.set(true);
+      }
+    });
+    final CountDownLatch fast = new CountDownLatch(10);
+    for (int i = 0; i < 10; i++) {
+      myQueue.queued("fast" + i).execute(new Runnable() {
+        public void run() {
+          fast.countDown();
+        }
+      });
+    }
+    assertTrue(fast.await(5, TimeUnit.SECONDS));
+    assertFalse(afterSlow.get());
+    assertEquals(1, myQueue.getQueueDepth());
+    released.set(true);
+    assertTrue(afterSlow.waitForValue(true, 5000));
+  }
+
+  public void testImmediateAndOptimalInSequence() throws InterruptedException {
+    final SynchronizedBoolean inline = new SynchronizedBoolean(false);
+    final SynchronizedBoolean immediate = new SynchronizedBoolean(false);
+    final CountDownLatch done = new CountDownLatch(1);
+    myQueue.queued("key").execute(new Runnable() {
+      public void run() {
+        final Thread thread = Thread.currentThread();
+        myQueue.optimal().execute(new Runnable() {
+          public void run() {
+            inline.set(Thread.currentThread() == thread);
+          }
+        });
+        // waits for another key; the pool has to compensate for the blocked worker
+        for (int i = 0; i < 10; i++) {
+          myQueue.immediate("other" + i).execute(new Runnable() {
+            public void run() {
+              immediate.set(true);
+            }
+          });
+        }
+        done.countDown();
+      }
+    });
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertTrue(inline.get());
+    assertTrue(immediate.get());
+  }
+}
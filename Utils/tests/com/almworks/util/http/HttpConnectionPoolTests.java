@@ -0,0 +1,250 @@
+package com.almworks.util.http;
+
+import com.almworks.util.tests.BaseTestCase;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.methods.GetMethod;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class HttpConnectionPoolTests extends BaseTestCase {
+  private ServerSocket myServer;
+  private final AtomicInteger myAccepted = new AtomicInteger();
+  private final AtomicInteger myMaxOpen = new AtomicInteger();
+  private final AtomicInteger myOpen = new AtomicInteger();
+  private volatile int myDelay;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    myServer = new ServerSocket(0);
+    Thread thread = new Thread("keep-alive-server") {
+      public void run() {
+        serve();
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  protected void tearDown() throws Exception {
+    myServer.close();
+    myServer = null;
+    super.tearDown();
+  }
+
+  public void testConnectionSharedByClients() throws IOException {
+    HttpConnectionPool pool = new HttpConnectionPool(2, 10000);
+    for (int i = 0; i < 5; i++)
+      assertEquals("ok", get(createClient(pool)));
+    assertEquals(1, myAccepted.get());
+    assertEquals(1, pool.getOpenedCount());
+    assertEquals(4, pool.getReusedCount());
+    assertEquals(1, pool.getIdleCount());
+    assertEquals(0, pool.getLeasedCount());
+
+    pool.closeIdleConnections(0);
+    assertEquals(0, pool.getIdleCount());
+    assertEquals("ok", get(createClient(pool)));
+    assertEquals(2, myAccepted.get());
+  }
+
+  public void testLimitPerHost() throws InterruptedException {
+    final HttpConnectionPool pool = new HttpConnectionPool(2, 10000);
+    myDelay = 50;
+    final int THREADS = 6;
+    final CountDownLatch done = new CountDownLatch(THREADS);
+    final AtomicInteger ok = new AtomicInteger();
+    final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+    for (int i = 0; i < THREADS; i++) {
+      new Thread() {
+        public void run() {
+          try {
+            if ("ok".equals(get(createClient(pool))))
+              ok.incrementAndGet();
+          } catch (IOException e) {
+            failure.compareAndSet(null, e);
+          } finally {
+            done.countDown();
+          }
+        }
+      }.start();
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertNull(String.valueOf(failure.get()), failure.get());
+    assertEquals(THREADS, ok.get());
+    assertTrue(myMaxOpen.get() <= 2);
+    assertEquals(myAccepted.get(), pool.getOpenedCount());
+    assertEquals(THREADS, pool.getOpenedCount() + pool.getReusedCount());
+  }
+
+  public void testIdleConnectionsAreSwept() throws Exception {
+    HttpConnectionPool pool = new HttpConnectionPool(2, 100);
+    assertEquals("ok", get(createClient(pool)));
+    assertEquals(1, pool.getIdleCount());
+    long deadline = System.currentTimeMillis() + 5000;
+    while (pool.getIdleCount() > 0 && System.currentTimeMillis() < deadline)
+      Thread.sleep(20);
+    assertEquals(0, pool.getIdleCount());
+  }
+
+  public void testCloseConnectionAbortsWaiting() throws Exception {
+    HttpConnectionPool pool = new HttpConnectionPool(1, 10000);
+    HttpClient client = createClient(pool);
+    GetMethod held = new GetMethod(getUrl());
+    client.executeMethod(held);
+    final ExtendedHttpConnectionManager manager = new ExtendedHttpConnectionManager(pool);
+    final HttpClient waiting = new HttpClient(manager);
+    final CountDownLatch failed = new CountDownLatch(1);
+    Thread thread = new Thread() {
+      public void run() {
+        try {
+          get(waiting);
+        } catch (Exception e) {
+          failed.countDown();
+        }
+      }
+    };
+    thread.start();
+    Thread.sleep(100);
+    manager.closeConnection();
+    assertTrue(failed.await(5, TimeUnit.SECONDS));
+
+    held.releaseConnection();
+    assertEquals(1, pool.getIdleCount());
+    assertEquals("ok", get(waiting));
+    assertEquals(1, myAccepted.get());
+  }
+
+  public void testCloseConnectionsOfOtherThread() throws Exception {
+    HttpConnectionPool pool = new HttpConnectionPool(2, 10000);
+    final ExtendedHttpConnectionManager manager = new ExtendedHttpConnectionManager(pool);
+    final HttpClient client = new HttpClient(manager);
+    GetMethod held = new GetMethod(getUrl());
+    client.executeMethod(held);
+    final CountDownLatch leased = new CountDownLatch(1);
+    final CountDownLatch closed = new CountDownLatch(1);
+    final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+    Thread other = new Thread() {
+      public void run() {
+        try {
+          client.executeMethod(new GetMethod(getUrl()));
+          leased.countDown();
+          closed.await();
+        } catch (Exception e) {
+          failure.set(e);
+        }
+      }
+    };
+    other.start();
+    assertTrue(leased.await(5, TimeUnit.SECONDS));
+    assertEquals(2, pool.getLeasedCount());
+    manager.closeConnections(Collections.singleton(other));
+    closed.countDown();
+    other.join(5000);
+    assertNull(String.valueOf(failure.get()), failure.get());
+    assertEquals(1, pool.getLeasedCount());
+
+    assertEquals("ok", held.getResponseBodyAsString());
+    held.releaseConnection();
+    assertEquals(1, pool.getIdleCount());
+  }
+
+  public void testSingleConnectionIsTakenInTurns() throws InterruptedException {
+    final HttpClient client = new HttpClient(new ExtendedHttpConnectionManager());
+    myDelay = 50;
+    final int THREADS = 4;
+    final CountDownLatch done = new CountDownLatch(THREADS);
+    final AtomicInteger ok = new AtomicInteger();
+    final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+    for (int i = 0; i < THREADS; i++) {
+      new Thread() {
+        public void run() {
+          try {
+            if ("ok".equals(get(client)))
+              ok.incrementAndGet();
+          } catch (IOException e) {
+            failure.compareAndSet(null, e);
+          } finally {
+            done.countDown();
+          }
+        }
+      }.start();
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertNull(String.valueOf(failure.get()), failure.get());
+    assertEquals(THREADS, ok.get());
+    assertEquals(1, myAccepted.get());
+  }
+
+  private HttpClient createClient(HttpConnectionPool pool) {
+    return new HttpClient(new ExtendedHttpConnectionManager(pool));
+  }
+
+  private String get(HttpClient client) throws IOException {
+    GetMethod method = new GetMethod(getUrl());
+    try {
+      client.executeMethod(method);
+      return method.getResponseBodyAsString();
+    } finally {
+      method.releaseConnection();
+    }
+  }
+
+  private String getUrl() {
+    return "http://localhost:" + myServer.getLocalPort() + "/";
+  }
+
+  private void serve() {
+    while (true) {
+      final Socket socket;
+      try {
+        socket = myServer.accept();
+      } catch (IOException e) {
+        return;
+      }
+      myAccepted.incrementAndGet();
+      new Thread("keep-alive-connection") {
+        public void run() {
+          int open = myOpen.incrementAndGet();
+          while (true) {
+            int max = myMaxOpen.get();
+            if (open <= max || myMaxOpen.compareAndSet(max, open))
+              break;
+          }
+          try {
+            respond(socket);
+          } catch (Exception e) {
+            // closed
+          } finally {
+            myOpen.decrementAndGet();
+            try {
+              socket.close();
+            } catch (IOException e) {
+              // ignore
+            }
+          }
+        }
+      }.start();
+    }
+  }
+
+  private void respond(Socket socket) throws Exception {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+    OutputStream output = socket.getOutputStream();
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.length() > 0)
+        continue;
+      if (myDelay > 0)
+        Thread.sleep(myDelay);
+      output.write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\nContent-Type: text/plain\r\n\r\nok".getBytes("ISO-8859-1"));
+      output.flush();
+    }
+  }
+}
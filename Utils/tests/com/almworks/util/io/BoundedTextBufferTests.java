@@ -0,0 +1,41 @@
+package com.almworks.util.io;
+
+import com.almworks.util.tests.BaseTestCase;
+
+public class BoundedTextBufferTests extends BaseTestCase {
+  public void testShortText() {
+    BoundedTextBuffer buffer = new BoundedTextBuffer(10);
+    append(buffer, "abc", "defg");
+    assertFalse(buffer.isTruncated());
+    assertEquals("abcdefg", buffer.toString());
+    append(buffer, "hij");
+    assertFalse(buffer.isTruncated());
+    assertEquals("abcdefghij", buffer.toString());
+  }
+
+  public void testLongText() {
+    BoundedTextBuffer buffer = new BoundedTextBuffer(6);
+    append(buffer, "ab", "cdef", "ghijk", "l", "mn");
+    assertTrue(buffer.isTruncated());
+    assertEquals(14, buffer.getLength());
+    String text = buffer.toString();
+    assertTrue(text, text.startsWith("abc"));
+    assertTrue(text, text.endsWith("lmn"));
+    assertTrue(text, text.contains(" 8 chars skipped "));
+  }
+
+  public void testChunkLongerThanLimit() {
+    BoundedTextBuffer buffer = new BoundedTextBuffer(4);
+    append(buffer, "0123456789", "x");
+    String text = buffer.toString();
+    assertTrue(text, text.startsWith("01"));
+    assertTrue(text, text.endsWith("9x"));
+  }
+
+  private static void append(BoundedTextBuffer buffer, String... chunks) {
+    for (String chunk : chunks) {
+      char[] chars = ("." + chunk + ".").toCharArray();
+      buffer.append(chars, 1, chunk.length());
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.almworks.util.xml;
+
+import com.almworks.util.tests.BaseTestCase;
+import org.almworks.util.Collections15;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+import org.jetbrains.annotations.*;
+import org.xml.sax.InputSource;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+public class StreamingSAXHandlerTests extends BaseTestCase {
+  private static final String XML =
+    "<bugs version=\"1\"><bug id=\"1\"><text>a</text><bug>inner</bug></bug><other/><bug id=\"2\"/></bugs>";
+
+  public void testProcessElements() throws JDOMException, IOException {
+    final List<String> processed = Collections15.arrayList();
+    StreamingSAXHandler handler = new StreamingSAXHandler("bug") {
+      protected void processElement(@NotNull Element element) {
+        assertNull(element.getParent());
+        Element root = getDocument().getRootElement();
+        assertEquals("1", root.getAttributeValue("version"));
+        assertEquals(0, root.getChildren().size());
+        processed.add(element.getAttributeValue("id") + ":" + element.getChildText("text"));
+      }
+    };
+    build(handler);
+    assertEquals(Collections15.arrayList("1:a", "2:null"), processed);
+    assertNull(handler.getStopReason());
+  }
+
+  public void testStop() throws IOException {
+    final List<String> processed = Collections15.arrayList();
+    final IllegalStateException failure = new IllegalStateException();
+    StreamingSAXHandler handler = new StreamingSAXHandler(null) {
+      protected void processElement(@NotNull Element element) {
+        processed.add(element.getName());
+        throw failure;
+      }
+    };
+    try {
+      build(handler);
+      fail();
+    } catch (JDOMException e) {
+      // expected
+    }
+    assertEquals(Collections15.arrayList("bug"), processed);
+    assertSame(failure, handler.getStopReason());
+  }
+
+  private static void build(StreamingSAXHandler handler) throws JDOMException, IOException {
+    JDOMUtils.createBuilder(handler).build(new InputSource(new StringReader(XML)));
+  }
+}